@@ -0,0 +1,95 @@
+package formulaParser;
+
+import pipe.dataLayer.Transition;
+import formulaParser.formulaAbsyntree.Sentence;
+
+/**
+ * The formula of a transition parsed once, so that its guard can be checked
+ * (Interpreter mode 0) and its action applied (Interpreter mode 1) for any
+ * number of token bindings without running the parser again. Transition
+ * keeps one and throws it away when its formula is changed.
+ *
+ * The parsed formula is compiled by FormulaCompiler the first time it is
+ * used, and again whenever the variables on the output arcs of the
+ * transition have changed. The compiled formula, and the Interpreter it
+ * falls back on, keep state while they run, so a CompiledFormula must only
+ * be used by one thread at a time. The Interpreter leaves its results in the
+ * nodes of the syntax tree and does not set one where it reports an error.
+ * A check that reports errors is therefore repeated by the Interpreter on a
+ * freshly parsed tree, which is kept in place of the old one, so it gives
+ * the same result as parsing the formula for every check.
+ */
+public class CompiledFormula {
+
+	private final String formula;
+	private Sentence absyn;
+	private FormulaCompiler.Program program;
+	private FormulaCompiler.Program[] conjuncts;
+
+	public CompiledFormula(String formula) {
+		this.formula = formula;
+		this.absyn = parse();
+	}
+
+	/**
+	 * @return the formula this was parsed from
+	 */
+	public String getFormula() {
+		return formula;
+	}
+
+	/**
+	 * Checks the guard for the tokens currently bound in the symbol table
+	 * of the transition.
+	 */
+	public boolean check(Transition transition) {
+		ErrorMsg errorMsg = new ErrorMsg(formula);
+		boolean result = program(transition).evaluate(transition, 0, errorMsg);
+		if (errorMsg.anyErrors) {
+			errorMsg = new ErrorMsg(formula);
+			absyn = parse();
+			program = null;
+			conjuncts = null;
+			absyn.accept(new Interpreter(errorMsg, transition, 0));
+			result = absyn.bool_val;
+		}
+		return result;
+	}
+
+	/**
+	 * Applies the formula to the symbol table of the transition to work out
+	 * the tokens it sends to its output places.
+	 */
+	public void fire(Transition transition) {
+		ErrorMsg errorMsg = new ErrorMsg(formula);
+		program(transition).evaluate(transition, 1, errorMsg);
+		if (errorMsg.anyErrors) {
+			absyn = parse();
+			program = null;
+			conjuncts = null;
+		}
+	}
+
+	/**
+	 * Gives the formulas this one is the conjunction of, compiled, so that a
+	 * search for a binding can check each of them as soon as the variables
+	 * it uses are bound. Each of them must be evaluated in check mode only.
+	 */
+	public FormulaCompiler.Program[] conjuncts(Transition transition) {
+		if (conjuncts == null || !conjuncts[0].isCompiledFor(transition)) {
+			conjuncts = FormulaCompiler.compileConjuncts(absyn, transition);
+		}
+		return conjuncts;
+	}
+
+	private FormulaCompiler.Program program(Transition transition) {
+		if (program == null || !program.isCompiledFor(transition)) {
+			program = FormulaCompiler.compile(absyn, transition);
+		}
+		return program;
+	}
+
+	private Sentence parse() {
+		return new Parse(formula, new ErrorMsg(formula)).absyn;
+	}
+}
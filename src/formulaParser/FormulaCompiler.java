@@ -0,0 +1,923 @@
+package formulaParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import pipe.dataLayer.Arc;
+import pipe.dataLayer.BasicType;
+import pipe.dataLayer.Token;
+import pipe.dataLayer.Transition;
+import formulaParser.formulaAbsyntree.*;
+
+/**
+ * Turns the syntax tree of a transition formula into a tree of small
+ * evaluators, one for each node, which give the same results as the
+ * Interpreter in both check (mode 0) and fire (mode 1) mode.
+ *
+ * Everything the Interpreter works out again on every visit is settled when
+ * the formula is compiled: which node type each child is, the symbol table
+ * slot of each variable, the position of an indexed variable, the value of
+ * each constant and whether the left hand side of an equation is a variable
+ * on an output arc. Variables are looked up in the symbol table at most once
+ * per evaluation.
+ *
+ * Quantifiers, membership tests, set expressions, division and the
+ * assignments the Interpreter does not support yet are left to the
+ * Interpreter, which is run on just that part of the tree. As with the
+ * Interpreter, a compiled formula must only be used by one thread at a time.
+ */
+public class FormulaCompiler {
+
+	private static final Object UNLOADED = new Object();
+
+	private static final int BOOL = 1;
+	private static final int INT = 2;
+	private static final int STRING = 3;
+	private static final int EMPTY = 4;
+
+	private final ArrayList<String> arcOutVarList;
+	private final HashMap<String, Integer> slotIndex = new HashMap<String, Integer>();
+	private final ArrayList<String> slotKeys = new ArrayList<String>();
+	private boolean complete = true;
+
+	private FormulaCompiler(ArrayList<String> arcOutVarList) {
+		this.arcOutVarList = arcOutVarList;
+	}
+
+	/**
+	 * compile()
+	 * Compiles the parsed formula of a transition, using the variables on
+	 * its output arcs as they are now.
+	 * @param absyn the parsed formula
+	 * @param transition the transition the formula belongs to
+	 * @return the compiled formula
+	 */
+	public static Program compile(Sentence absyn, Transition transition) {
+		FormulaCompiler compiler =
+			new FormulaCompiler(new ArrayList<String>(transition.getArcOutVarList()));
+		if (isFormula(absyn.f)) {
+			return compiler.program(compiler.formula(absyn.f));
+		}
+		compiler.complete = false;
+		return compiler.program(new SentenceFallback(absyn));
+	}
+
+	/**
+	 * compileConjuncts()
+	 * Compiles each of the formulas the parsed formula of a transition is the
+	 * conjunction of, so that each can be checked on its own. The formula is
+	 * true in check mode when all of them are.
+	 * @param absyn the parsed formula
+	 * @param transition the transition the formula belongs to
+	 * @return the compiled conjuncts, in the order they appear in the formula
+	 */
+	public static Program[] compileConjuncts(Sentence absyn, Transition transition) {
+		if (!isFormula(absyn.f)) {
+			return new Program[] { compile(absyn, transition) };
+		}
+		ArrayList<Formula> conjuncts = new ArrayList<Formula>();
+		split(absyn.f, conjuncts);
+		ArrayList<String> arcOutVarList = new ArrayList<String>(transition.getArcOutVarList());
+		Program[] programs = new Program[conjuncts.size()];
+		for (int i = 0; i < programs.length; i++) {
+			FormulaCompiler compiler = new FormulaCompiler(arcOutVarList);
+			programs[i] = compiler.program(compiler.formula(conjuncts.get(i)));
+		}
+		return programs;
+	}
+
+	private static void split(Formula f, ArrayList<Formula> conjuncts) {
+		if (f instanceof CpFormula && ((CpFormula) f).cf instanceof AndFormula) {
+			AndFormula and = (AndFormula) ((CpFormula) f).cf;
+			if (isFormula(and.f1) && isFormula(and.f2)) {
+				split(and.f1, conjuncts);
+				split(and.f2, conjuncts);
+				return;
+			}
+		}
+		conjuncts.add(f);
+	}
+
+	private Program program(Cond root) {
+		return new Program(root, arcOutVarList,
+				slotKeys.toArray(new String[slotKeys.size()]), complete);
+	}
+
+	/**
+	 * A compiled formula, together with the state of the evaluation it is
+	 * running.
+	 */
+	public static class Program {
+
+		private final Cond root;
+		private final String[] arcOutVars;
+		private final String[] keys;
+		private final Object[] slots;
+		private final boolean complete;
+
+		private SymbolTable symTable;
+		private Transition transition;
+		private ErrorMsg errorMsg;
+		private Interpreter interpreter;
+		private int mode;
+
+		private Program(Cond root, ArrayList<String> arcOutVarList, String[] keys,
+				boolean complete) {
+			this.root = root;
+			this.arcOutVars = arcOutVarList.toArray(new String[arcOutVarList.size()]);
+			this.keys = keys;
+			this.slots = new Object[keys.length];
+			this.complete = complete;
+		}
+
+		/**
+		 * getVariables()
+		 * @return the names of the variables the formula reads or assigns, or
+		 * null if part of it is left to the Interpreter, which may read any
+		 * of them
+		 */
+		public String[] getVariables() {
+			return complete ? (String[]) keys.clone() : null;
+		}
+
+		/**
+		 * isCompiledFor()
+		 * Tells whether the transition still has the output arc variables the
+		 * formula was compiled with.
+		 * @param transition
+		 * @return false if the formula has to be compiled again
+		 */
+		public boolean isCompiledFor(Transition transition) {
+			Iterator<Arc> arcs = transition.getArcOutList().iterator();
+			for (int i = 0; i < arcOutVars.length; i++) {
+				if (!arcs.hasNext()) {
+					return false;
+				}
+				String var = arcs.next().getVar();
+				if (var == null ? arcOutVars[i] != null : !var.equals(arcOutVars[i])) {
+					return false;
+				}
+			}
+			return !arcs.hasNext();
+		}
+
+		/**
+		 * evaluate()
+		 * Evaluates the formula for the tokens bound in the symbol table of the
+		 * transition, as the Interpreter would.
+		 * @param transition
+		 * @param mode 0 to check the formula, 1 to apply it when firing
+		 * @param errorMsg collects the errors the Interpreter would report
+		 * @return the value of the formula
+		 */
+		public boolean evaluate(Transition transition, int mode, ErrorMsg errorMsg) {
+			this.transition = transition;
+			this.symTable = transition.getTransSymbolTable();
+			this.mode = mode;
+			this.errorMsg = errorMsg;
+			this.interpreter = null;
+			Arrays.fill(slots, UNLOADED);
+			try {
+				return root.eval(this);
+			} finally {
+				this.transition = null;
+				this.symTable = null;
+				this.errorMsg = null;
+				this.interpreter = null;
+				Arrays.fill(slots, null);
+			}
+		}
+
+		Object lookup(int slot) {
+			Object binder = slots[slot];
+			if (binder == UNLOADED) {
+				binder = symTable.lookup(keys[slot]);
+				slots[slot] = binder;
+			}
+			return binder;
+		}
+
+		void update(int slot, Object binder) {
+			symTable.update(keys[slot], binder);
+			slots[slot] = binder;
+		}
+
+		/**
+		 * Hands the Interpreter for a part of the tree that is not compiled.
+		 * Since it may change the symbol table, every slot is looked up again
+		 * afterwards.
+		 */
+		Interpreter interpreter() {
+			if (interpreter == null) {
+				interpreter = new Interpreter(errorMsg, transition, mode);
+			}
+			Arrays.fill(slots, UNLOADED);
+			return interpreter;
+		}
+	}
+
+	private int slot(String key) {
+		Integer slot = slotIndex.get(key);
+		if (slot == null) {
+			slot = Integer.valueOf(slotKeys.size());
+			slotIndex.put(key, slot);
+			slotKeys.add(key);
+		}
+		return slot.intValue();
+	}
+
+	private static boolean isFormula(Formula f) {
+		return f instanceof AtFormula || f instanceof CpFormula
+			|| f instanceof CpxFormula;
+	}
+
+	/**
+	 * formula()
+	 * Compiles an AtFormula, CpFormula or CpxFormula.
+	 */
+	private Cond formula(Formula f) {
+		Cond cond = null;
+		if (f instanceof AtFormula) {
+			AtomicFormula af = ((AtFormula) f).af;
+			if (af instanceof NotFormula) {
+				if (isFormula(((NotFormula) af).f)) {
+					cond = new Not(formula(((NotFormula) af).f));
+				}
+			} else if (af instanceof AtomicTerm) {
+				cond = atomicTerm((AtomicTerm) af);
+			}
+		} else if (f instanceof CpFormula) {
+			CompoundFormula cf = ((CpFormula) f).cf;
+			if (cf instanceof AndFormula) {
+				cond = connective(Connective.AND, ((AndFormula) cf).f1, ((AndFormula) cf).f2);
+			} else if (cf instanceof OrFormula) {
+				cond = connective(Connective.OR, ((OrFormula) cf).f1, ((OrFormula) cf).f2);
+			} else if (cf instanceof ImpFormula) {
+				cond = connective(Connective.IMP, ((ImpFormula) cf).f1, ((ImpFormula) cf).f2);
+			} else if (cf instanceof EquivFormula) {
+				cond = connective(Connective.EQUIV, ((EquivFormula) cf).f1, ((EquivFormula) cf).f2);
+			}
+		}
+		if (cond == null) {
+			complete = false;
+			cond = new FormulaFallback(f);
+		}
+		return cond;
+	}
+
+	private Cond connective(int op, Formula f1, Formula f2) {
+		if (!isFormula(f1) || !isFormula(f2)) {
+			return null;
+		}
+		return new Connective(op, formula(f1), formula(f2));
+	}
+
+	private Cond atomicTerm(AtomicTerm at) {
+		if (at.t instanceof ConstantTerm) {
+			Constant c = ((ConstantTerm) at.t).c;
+			if (c instanceof NumConstant && number((NumConstant) c) == null) {
+				return null;
+			}
+			return new BoolConst(c instanceof True);
+		} else if (at.t instanceof ExpTerm) {
+			Exp e = ((ExpTerm) at.t).e;
+			if (e instanceof RExp) {
+				return rExp((RExp) e);
+			} else if (e instanceof AExp) {
+				// the value is worked out, but an arithmetic term is never true
+				return new IntDiscard(aExp((AExp) e));
+			}
+		}
+		return null;
+	}
+
+	private Cond rExp(RExp r) {
+		Cond cond = relation(r.re);
+		if (cond == null) {
+			complete = false;
+			cond = new RExpFallback(r);
+		}
+		return cond;
+	}
+
+	private Cond relation(RelExp re) {
+		if (re instanceof GtRel) {
+			return comparison(Comparison.GT, ((GtRel) re).t1, ((GtRel) re).t2);
+		} else if (re instanceof LtRel) {
+			return comparison(Comparison.LT, ((LtRel) re).t1, ((LtRel) re).t2);
+		} else if (re instanceof GeqRel) {
+			return comparison(Comparison.GEQ, ((GeqRel) re).t1, ((GeqRel) re).t2);
+		} else if (re instanceof LeqRel) {
+			return comparison(Comparison.LEQ, ((LeqRel) re).t1, ((LeqRel) re).t2);
+		} else if (re instanceof EqRel) {
+			return equation((EqRel) re);
+		} else if (re instanceof NeqRel) {
+			NeqRel neq = (NeqRel) re;
+			Operand l = operand(neq.t1, false);
+			Operand r = operand(neq.t2, false);
+			if (l == null || r == null) {
+				return null;
+			}
+			return new Equality(false, l, r, neq.pos);
+		}
+		return null;
+	}
+
+	private Cond comparison(int op, Term t1, Term t2) {
+		IntExp l = intTerm(t1);
+		IntExp r = intTerm(t2);
+		if (l == null || r == null) {
+			return null;
+		}
+		return new Comparison(op, l, r);
+	}
+
+	/**
+	 * equation()
+	 * Compiles an EqRel. When its left hand side is a variable on an output
+	 * arc it is always true, and in fire mode it assigns the right hand side
+	 * to that variable.
+	 */
+	private Cond equation(EqRel eq) {
+		Var target = null;
+		if (eq.t1 instanceof VariableTerm) {
+			target = variable((VariableTerm) eq.t1);
+			if (target != null && !arcOutVarList.contains(target.key)) {
+				target = null;
+			}
+		}
+		if (target == null) {
+			Operand l = operand(eq.t1, false);
+			Operand r = operand(eq.t2, true);
+			if (l == null || r == null) {
+				return null;
+			}
+			return new Equality(true, l, r, eq.pos);
+		}
+
+		if (eq.t2 instanceof ExpTerm) {
+			return null;
+		} else if (eq.t2 instanceof VariableTerm) {
+			Var source = variable((VariableTerm) eq.t2);
+			if (source == null) {
+				return null;
+			}
+			return new Assignment(target, source, null);
+		} else if (eq.t2 instanceof ConstantTerm) {
+			Constant c = ((ConstantTerm) eq.t2).c;
+			BasicType value = null;
+			if (c instanceof NumConstant) {
+				Integer n = number((NumConstant) c);
+				if (n == null) {
+					return null;
+				}
+				value = new BasicType();
+				value.kind = 0;
+				value.Tint = n.intValue();
+			} else if (c instanceof StrConstant) {
+				value = new BasicType();
+				value.kind = 1;
+				value.Tstring = ((StrConstant) c).str;
+			}
+			return new Assignment(target, null, value);
+		}
+		return new Assignment(target, null, null);
+	}
+
+	private Var variable(VariableTerm vt) {
+		if (vt.v instanceof IdVariable) {
+			String key = ((IdVariable) vt.v).key;
+			return new Var(key, slot(key), -1);
+		} else if (vt.v instanceof IndexVariable) {
+			String key = ((IndexVariable) vt.v).key;
+			return new Var(key, slot(key), ((IndexVariable) vt.v).index - 1);
+		}
+		return null;
+	}
+
+	private static Integer number(NumConstant c) {
+		try {
+			return Integer.valueOf(c.num.n);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * operand()
+	 * Compiles a side of an EqRel or NeqRel.
+	 */
+	private Operand operand(Term t, boolean allowEmpty) {
+		if (t instanceof ConstantTerm) {
+			Constant c = ((ConstantTerm) t).c;
+			if (c instanceof True) {
+				return Operand.bool(true);
+			} else if (c instanceof False) {
+				return Operand.bool(false);
+			} else if (c instanceof NumConstant) {
+				Integer n = number((NumConstant) c);
+				return n == null ? null : Operand.integer(n.intValue());
+			} else if (c instanceof StrConstant) {
+				return Operand.string(((StrConstant) c).str);
+			}
+		} else if (t instanceof VariableTerm) {
+			Var v = variable((VariableTerm) t);
+			return v == null ? null : new VarOperand(v);
+		} else if (t instanceof ExpTerm) {
+			Exp e = ((ExpTerm) t).e;
+			if (e instanceof RExp) {
+				return new CondOperand(rExp((RExp) e));
+			} else if (e instanceof AExp) {
+				return new IntOperand(aExp((AExp) e));
+			}
+		} else if (t instanceof EmptyTerm && allowEmpty) {
+			return new Operand(EMPTY);
+		}
+		return null;
+	}
+
+	/**
+	 * intTerm()
+	 * Compiles an integer operand of a comparison or an arithmetic
+	 * operator.
+	 */
+	private IntExp intTerm(Term t) {
+		if (t instanceof ConstantTerm) {
+			Constant c = ((ConstantTerm) t).c;
+			if (c instanceof NumConstant) {
+				Integer n = number((NumConstant) c);
+				return n == null ? null : new IntConst(n.intValue());
+			} else if (c instanceof True || c instanceof False
+					|| c instanceof StrConstant) {
+				return new IntConst(0);
+			}
+		} else if (t instanceof VariableTerm) {
+			Var v = variable((VariableTerm) t);
+			return v == null ? null : new IntVar(v);
+		} else if (t instanceof ExpTerm) {
+			if (((ExpTerm) t).e instanceof AExp) {
+				return aExp((AExp) ((ExpTerm) t).e);
+			}
+		}
+		return null;
+	}
+
+	private IntExp aExp(AExp a) {
+		IntExp exp = null;
+		if (a.ae instanceof Plus) {
+			exp = arithmetic(Arithmetic.PLUS, ((Plus) a.ae).t1, ((Plus) a.ae).t2, 0);
+		} else if (a.ae instanceof Minus) {
+			exp = arithmetic(Arithmetic.MINUS, ((Minus) a.ae).t1, ((Minus) a.ae).t2, 0);
+		} else if (a.ae instanceof Mul) {
+			exp = arithmetic(Arithmetic.MUL, ((Mul) a.ae).t1, ((Mul) a.ae).t2, 0);
+		} else if (a.ae instanceof Mod) {
+			exp = arithmetic(Arithmetic.MOD, ((Mod) a.ae).t1, ((Mod) a.ae).t2, ((Mod) a.ae).pos);
+		} else if (a.ae instanceof NegExp) {
+			IntExp t = intTerm(((NegExp) a.ae).t);
+			if (t != null) {
+				exp = new Negation(t);
+			}
+		}
+		if (exp == null) {
+			complete = false;
+			exp = new AExpFallback(a);
+		}
+		return exp;
+	}
+
+	private IntExp arithmetic(int op, Term t1, Term t2, int pos) {
+		IntExp l = intTerm(t1);
+		IntExp r = intTerm(t2);
+		if (l == null || r == null) {
+			return null;
+		}
+		return new Arithmetic(op, l, r, pos);
+	}
+
+	abstract static class Cond {
+		abstract boolean eval(Program p);
+	}
+
+	abstract static class IntExp {
+		abstract int eval(Program p);
+	}
+
+	static class BoolConst extends Cond {
+		private final boolean value;
+
+		BoolConst(boolean value) {
+			this.value = value;
+		}
+
+		boolean eval(Program p) {
+			return value;
+		}
+	}
+
+	static class Not extends Cond {
+		private final Cond f;
+
+		Not(Cond f) {
+			this.f = f;
+		}
+
+		boolean eval(Program p) {
+			return !f.eval(p);
+		}
+	}
+
+	/**
+	 * Both sides are always evaluated, as the Interpreter does, so that
+	 * assignments on either side are made when firing.
+	 */
+	static class Connective extends Cond {
+		static final int AND = 0;
+		static final int OR = 1;
+		static final int IMP = 2;
+		static final int EQUIV = 3;
+
+		private final int op;
+		private final Cond f1, f2;
+
+		Connective(int op, Cond f1, Cond f2) {
+			this.op = op;
+			this.f1 = f1;
+			this.f2 = f2;
+		}
+
+		boolean eval(Program p) {
+			boolean b1 = f1.eval(p);
+			boolean b2 = f2.eval(p);
+			switch (op) {
+			case AND:
+				return b1 && b2;
+			case OR:
+				return b1 || b2;
+			case IMP:
+				return !b1 || b2;
+			default:
+				return b1 == b2;
+			}
+		}
+	}
+
+	static class IntDiscard extends Cond {
+		private final IntExp exp;
+
+		IntDiscard(IntExp exp) {
+			this.exp = exp;
+		}
+
+		boolean eval(Program p) {
+			exp.eval(p);
+			return false;
+		}
+	}
+
+	static class Comparison extends Cond {
+		static final int GT = 0;
+		static final int LT = 1;
+		static final int GEQ = 2;
+		static final int LEQ = 3;
+
+		private final int op;
+		private final IntExp t1, t2;
+
+		Comparison(int op, IntExp t1, IntExp t2) {
+			this.op = op;
+			this.t1 = t1;
+			this.t2 = t2;
+		}
+
+		boolean eval(Program p) {
+			int l = t1.eval(p);
+			int r = t2.eval(p);
+			switch (op) {
+			case GT:
+				return l > r;
+			case LT:
+				return l < r;
+			case GEQ:
+				return l >= r;
+			default:
+				return l <= r;
+			}
+		}
+	}
+
+	/**
+	 * An EqRel or NeqRel whose left hand side is not assigned to.
+	 */
+	static class Equality extends Cond {
+		private final boolean equal;
+		private final Operand t1, t2;
+		private final int pos;
+
+		Equality(boolean equal, Operand t1, Operand t2, int pos) {
+			this.equal = equal;
+			this.t1 = t1;
+			this.t2 = t2;
+			this.pos = pos;
+		}
+
+		boolean eval(Program p) {
+			t1.eval(p);
+			t2.eval(p);
+			int l = t1.type;
+			int r = t2.type;
+			if (l == BOOL && r == BOOL) {
+				return (t1.b == t2.b) == equal;
+			} else if (l == INT && r == INT) {
+				return (t1.i == t2.i) == equal;
+			} else if (l == STRING && r == STRING) {
+				return t1.s.equals(t2.s) == equal;
+			} else if (equal && l == INT && r == EMPTY) {
+				return t1.i == 0;
+			} else if (equal && l == STRING && r == EMPTY) {
+				return t1.s.isEmpty();
+			}
+			p.errorMsg.error(pos, equal
+					? "EqRel::LHS type cannot compare with RHS!"
+					: "NeqRel::LHS type cannot compare with RHS!");
+			return false;
+		}
+	}
+
+	/**
+	 * An EqRel whose left hand side is a variable on an output arc. The value
+	 * is either another variable or a constant; for any other right hand side
+	 * nothing is assigned.
+	 */
+	static class Assignment extends Cond {
+		private final Var target;
+		private final Var source;
+		private final BasicType constant;
+
+		Assignment(Var target, Var source, BasicType constant) {
+			this.target = target;
+			this.source = source;
+			this.constant = constant;
+		}
+
+		boolean eval(Program p) {
+			if (p.mode != 1) {
+				return true;
+			}
+			if (source != null && source.index < 0 && target.index < 0) {
+				p.update(target.slot, p.lookup(source.slot));
+				return true;
+			}
+			BasicType value = source != null ? source.element(p) : constant;
+			if (value == null || (value.kind != 0 && value.kind != 1)) {
+				return true;
+			}
+			Token tok = (Token) p.lookup(target.slot);
+			BasicType element = target.element(tok);
+			if (value.kind == 0) {
+				element.Tint = value.Tint;
+			} else {
+				element.Tstring = value.Tstring;
+			}
+			p.update(target.slot, tok);
+			return true;
+		}
+	}
+
+	/**
+	 * A variable, or one element of it when index is not negative.
+	 */
+	static class Var {
+		final String key;
+		final int slot;
+		final int index;
+
+		Var(String key, int slot, int index) {
+			this.key = key;
+			this.slot = slot;
+			this.index = index;
+		}
+
+		BasicType element(Token tok) {
+			return index < 0 ? tok.Tlist.firstElement() : tok.Tlist.elementAt(index);
+		}
+
+		BasicType element(Program p) {
+			return element((Token) p.lookup(slot));
+		}
+	}
+
+	/**
+	 * A side of an equation, which leaves its type and value in its fields.
+	 */
+	static class Operand {
+		int type;
+		boolean b;
+		int i;
+		String s;
+
+		Operand(int type) {
+			this.type = type;
+		}
+
+		static Operand bool(boolean b) {
+			Operand o = new Operand(BOOL);
+			o.b = b;
+			return o;
+		}
+
+		static Operand integer(int i) {
+			Operand o = new Operand(INT);
+			o.i = i;
+			return o;
+		}
+
+		static Operand string(String s) {
+			Operand o = new Operand(STRING);
+			o.s = s;
+			return o;
+		}
+
+		void eval(Program p) {
+		}
+	}
+
+	static class VarOperand extends Operand {
+		private final Var v;
+
+		VarOperand(Var v) {
+			super(0);
+			this.v = v;
+		}
+
+		void eval(Program p) {
+			BasicType element = v.element(p);
+			if (element.kind == 0) {
+				type = INT;
+				i = element.Tint;
+			} else if (element.kind == 1) {
+				type = STRING;
+				s = element.Tstring;
+			} else {
+				type = 0;
+			}
+		}
+	}
+
+	static class CondOperand extends Operand {
+		private final Cond cond;
+
+		CondOperand(Cond cond) {
+			super(BOOL);
+			this.cond = cond;
+		}
+
+		void eval(Program p) {
+			b = cond.eval(p);
+		}
+	}
+
+	static class IntOperand extends Operand {
+		private final IntExp exp;
+
+		IntOperand(IntExp exp) {
+			super(INT);
+			this.exp = exp;
+		}
+
+		void eval(Program p) {
+			i = exp.eval(p);
+		}
+	}
+
+	static class IntConst extends IntExp {
+		private final int value;
+
+		IntConst(int value) {
+			this.value = value;
+		}
+
+		int eval(Program p) {
+			return value;
+		}
+	}
+
+	static class IntVar extends IntExp {
+		private final Var v;
+
+		IntVar(Var v) {
+			this.v = v;
+		}
+
+		int eval(Program p) {
+			return v.element(p).Tint;
+		}
+	}
+
+	static class Negation extends IntExp {
+		private final IntExp t;
+
+		Negation(IntExp t) {
+			this.t = t;
+		}
+
+		int eval(Program p) {
+			return -t.eval(p);
+		}
+	}
+
+	static class Arithmetic extends IntExp {
+		static final int PLUS = 0;
+		static final int MINUS = 1;
+		static final int MUL = 2;
+		static final int MOD = 3;
+
+		private final int op;
+		private final IntExp t1, t2;
+		private final int pos;
+
+		Arithmetic(int op, IntExp t1, IntExp t2, int pos) {
+			this.op = op;
+			this.t1 = t1;
+			this.t2 = t2;
+			this.pos = pos;
+		}
+
+		int eval(Program p) {
+			int l = t1.eval(p);
+			int r = t2.eval(p);
+			switch (op) {
+			case PLUS:
+				return l + r;
+			case MINUS:
+				return l - r;
+			case MUL:
+				return l * r;
+			default:
+				if (r == 0) {
+					p.errorMsg.error(pos, "Mod:: Mod by 0!!");
+					return 0;
+				}
+				return l % r;
+			}
+		}
+	}
+
+	static class SentenceFallback extends Cond {
+		private final Sentence s;
+
+		SentenceFallback(Sentence s) {
+			this.s = s;
+		}
+
+		boolean eval(Program p) {
+			s.accept(p.interpreter());
+			return s.bool_val;
+		}
+	}
+
+	static class FormulaFallback extends Cond {
+		private final Formula f;
+
+		FormulaFallback(Formula f) {
+			this.f = f;
+		}
+
+		boolean eval(Program p) {
+			f.accept(p.interpreter());
+			if (f instanceof AtFormula) {
+				return ((AtFormula) f).bool_val;
+			} else if (f instanceof CpFormula) {
+				return ((CpFormula) f).bool_val;
+			}
+			return ((CpxFormula) f).bool_val;
+		}
+	}
+
+	static class RExpFallback extends Cond {
+		private final RExp r;
+
+		RExpFallback(RExp r) {
+			this.r = r;
+		}
+
+		boolean eval(Program p) {
+			r.accept(p.interpreter());
+			return r.bool_val;
+		}
+	}
+
+	static class AExpFallback extends IntExp {
+		private final AExp a;
+
+		AExpFallback(AExp a) {
+			this.a = a;
+		}
+
+		int eval(Program p) {
+			a.accept(p.interpreter());
+			return a.int_val;
+		}
+	}
+}
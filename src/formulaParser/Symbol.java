@@ -21,6 +21,10 @@ public class Symbol {
 		return this.binder;
 	}
 	
+	public void setBinder(Object b){
+		this.binder = b;
+	}
+	
 //	public Symbol(String key, Token b){
 //		type = 0;
 //		this.key = key;
@@ -0,0 +1,359 @@
+package pipe.dataLayer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import formulaParser.ErrorMsg;
+import formulaParser.FormulaCompiler;
+import formulaParser.Symbol;
+import formulaParser.SymbolTable;
+
+/**
+ * Searches the bindings of the tokens in the input places of a high level
+ * transition for those that satisfy its formula, without building every
+ * combination first.
+ *
+ * The input places are bound one at a time, the cheapest first: a place
+ * costs the number of tokens it offers, divided by one more than the number
+ * of conjuncts of the formula that can be checked once it is bound. Each
+ * conjunct is checked as soon as all the variables it uses are bound, and a
+ * false one cuts off every binding of the places still left. Conjuncts that
+ * are partly left to the Interpreter are checked once every place is bound,
+ * and a binding where a conjunct reports errors is checked again by the
+ * whole formula.
+ *
+ * The bindings are given in the form Transition.getToken() takes them: one
+ * index per input arc, into the tokens of its place, with 1 for a powerset
+ * place. While it is searching, the search keeps the tokens of the binding
+ * it is looking at in the symbol table of the transition, in the same
+ * places getToken() puts them; the caller has to clean the table when it is
+ * done.
+ */
+public class BindingSearch implements Iterator<int[]> {
+
+	private final Transition transition;
+	private final int placeCount;
+	private final Place[] places;
+	private final boolean[] powerset;
+	private final FormulaCompiler.Program[] conjuncts;
+
+	/** the input arc bound at each depth of the search */
+	private final int[] order;
+	/** the conjuncts that can be checked once depth places are bound */
+	private final int[][] checks;
+	/** the next token to try at each depth */
+	private final int[] next;
+	/** whether a conjunct checked at a depth reported errors */
+	private final boolean[] uncertain;
+
+	private final int[] binding;
+	private Symbol[] entries;
+	private Symbol[] symbols;
+	private int tableBase;
+
+	private boolean started = false;
+	private boolean found = false;
+	private boolean finished = false;
+
+	public BindingSearch(Transition transition) {
+		this.transition = transition;
+
+		LinkedList<Arc> arcs = transition.getArcInList();
+		placeCount = arcs.size();
+		places = new Place[placeCount];
+		powerset = new boolean[placeCount];
+		String[] vars = new String[placeCount];
+		int i = 0;
+		for (Arc arc : arcs) {
+			places[i] = (Place) arc.getSource();
+			powerset[i] = places[i].getToken().getDataType().getPow();
+			vars[i] = arc.getVar();
+			i++;
+		}
+
+		binding = new int[placeCount];
+		next = new int[placeCount];
+		uncertain = new boolean[placeCount + 1];
+		for (i = 0; i < placeCount; i++) {
+			binding[i] = powerset[i] ? 1 : 0;
+		}
+
+		SymbolTable symTable = transition.getTransSymbolTable();
+		tableBase = symTable.table.size();
+		if (!transition.getToken(false, binding)) {
+			finished = true;
+		}
+		captureSymbols();
+
+		conjuncts = transition.getCompiledFormula().conjuncts(transition);
+
+		// the input arc each conjunct needs bound before it can be checked;
+		// a variable on no input arc is bound from the start
+		int[][] needs = new int[conjuncts.length][];
+		for (int c = 0; c < conjuncts.length; c++) {
+			String[] used = conjuncts[c].getVariables();
+			if (used == null) {
+				needs[c] = null;
+				continue;
+			}
+			ArrayList<Integer> arcsUsed = new ArrayList<Integer>();
+			for (String var : used) {
+				for (int a = 0; a < placeCount; a++) {
+					if (var.equals(vars[a])) {
+						arcsUsed.add(Integer.valueOf(a));
+						break;
+					}
+				}
+			}
+			needs[c] = new int[arcsUsed.size()];
+			for (int k = 0; k < needs[c].length; k++) {
+				needs[c][k] = arcsUsed.get(k).intValue();
+			}
+		}
+
+		order = order(needs);
+		checks = schedule(needs);
+	}
+
+	/**
+	 * order()
+	 * Picks the order to bind the input places in, each time taking the
+	 * place that offers the fewest tokens for each conjunct it lets be
+	 * checked.
+	 */
+	private int[] order(int[][] needs) {
+		int[] order = new int[placeCount];
+		boolean[] bound = new boolean[placeCount];
+		for (int depth = 0; depth < placeCount; depth++) {
+			int best = -1;
+			double bestCost = 0;
+			for (int a = 0; a < placeCount; a++) {
+				if (bound[a]) {
+					continue;
+				}
+				bound[a] = true;
+				int completed = 0;
+				for (int c = 0; c < needs.length; c++) {
+					if (needs[c] != null && contains(needs[c], a)
+							&& allBound(needs[c], bound)) {
+						completed++;
+					}
+				}
+				bound[a] = false;
+				double cost = (double) choices(a) / (1 + completed);
+				if (best < 0 || cost < bestCost) {
+					best = a;
+					bestCost = cost;
+				}
+			}
+			order[depth] = best;
+			bound[best] = true;
+		}
+		return order;
+	}
+
+	/**
+	 * schedule()
+	 * Works out for each depth of the search which conjuncts can be checked
+	 * once that many places are bound.
+	 */
+	private int[][] schedule(int[][] needs) {
+		int[] position = new int[placeCount];
+		for (int depth = 0; depth < placeCount; depth++) {
+			position[order[depth]] = depth;
+		}
+		ArrayList<ArrayList<Integer>> atDepth = new ArrayList<ArrayList<Integer>>();
+		for (int depth = 0; depth <= placeCount; depth++) {
+			atDepth.add(new ArrayList<Integer>());
+		}
+		for (int c = 0; c < needs.length; c++) {
+			int depth = placeCount;
+			if (needs[c] != null) {
+				depth = 0;
+				for (int a : needs[c]) {
+					depth = Math.max(depth, position[a] + 1);
+				}
+			}
+			atDepth.get(depth).add(Integer.valueOf(c));
+		}
+		int[][] checks = new int[placeCount + 1][];
+		for (int depth = 0; depth <= placeCount; depth++) {
+			ArrayList<Integer> list = atDepth.get(depth);
+			checks[depth] = new int[list.size()];
+			for (int k = 0; k < checks[depth].length; k++) {
+				checks[depth][k] = list.get(k).intValue();
+			}
+		}
+		return checks;
+	}
+
+	private static boolean contains(int[] arcs, int a) {
+		for (int x : arcs) {
+			if (x == a) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean allBound(int[] arcs, boolean[] bound) {
+		for (int x : arcs) {
+			if (!bound[x]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int choices(int a) {
+		return powerset[a] ? 1 : places[a].getToken().listToken.size();
+	}
+
+	public boolean hasNext() {
+		if (!found && !finished) {
+			found = advance();
+			finished = !found;
+		}
+		return found;
+	}
+
+	/**
+	 * next()
+	 * @return the next binding that satisfies the formula; its tokens stay
+	 * in the symbol table of the transition until the search goes on
+	 */
+	public int[] next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		found = false;
+		return (int[]) binding.clone();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * advance()
+	 * Goes on from the last binding found, or from the start, to the next
+	 * binding that satisfies the formula.
+	 */
+	private boolean advance() {
+		int depth;
+		if (!started) {
+			started = true;
+			for (int d = 0; d < placeCount; d++) {
+				if (choices(order[d]) == 0) {
+					return false;
+				}
+			}
+			if (!check(0)) {
+				return false;
+			}
+			if (placeCount == 0) {
+				return accept();
+			}
+			depth = 0;
+			next[0] = 0;
+		} else {
+			depth = placeCount - 1;
+		}
+
+		while (depth >= 0) {
+			if (next[depth] >= choices(order[depth])) {
+				depth--;
+				continue;
+			}
+			bind(order[depth], next[depth]++);
+			if (!check(depth + 1)) {
+				continue;
+			}
+			if (depth + 1 == placeCount) {
+				if (accept()) {
+					return true;
+				}
+			} else {
+				depth++;
+				next[depth] = 0;
+			}
+		}
+		return false;
+	}
+
+	private void bind(int a, int token) {
+		if (!powerset[a]) {
+			binding[a] = token;
+			symbols[a].setBinder(places[a].getToken().listToken.get(token));
+		}
+	}
+
+	/**
+	 * check()
+	 * Checks the conjuncts that became checkable at a depth.
+	 * @return false if one of them is false without reporting errors
+	 */
+	private boolean check(int depth) {
+		uncertain[depth] = false;
+		int[] toCheck = checks[depth];
+		for (int k = 0; k < toCheck.length; k++) {
+			ErrorMsg errorMsg = new ErrorMsg(transition.getFormula());
+			boolean value = conjuncts[toCheck[k]].evaluate(transition, 0, errorMsg);
+			if (depth == placeCount) {
+				// the Interpreter may have changed the table
+				restoreTable();
+			}
+			if (errorMsg.anyErrors) {
+				uncertain[depth] = true;
+			} else if (!value) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * accept()
+	 * Decides on a binding all of whose conjuncts were true, or reported
+	 * errors, by checking the whole formula if any reported errors.
+	 */
+	private boolean accept() {
+		for (int depth = 0; depth <= placeCount; depth++) {
+			if (uncertain[depth]) {
+				boolean value = transition.getCompiledFormula().check(transition);
+				restoreTable();
+				return value;
+			}
+		}
+		return true;
+	}
+
+	private void captureSymbols() {
+		ArrayList<Symbol> table = transition.getTransSymbolTable().table;
+		entries = table.subList(tableBase, table.size()).toArray(new Symbol[0]);
+		symbols = new Symbol[placeCount];
+		System.arraycopy(entries, 0, symbols, 0, Math.min(placeCount, entries.length));
+	}
+
+	/**
+	 * restoreTable()
+	 * Puts the tokens of the current binding back in the symbol table if
+	 * evaluating the formula has taken any of them out of it.
+	 */
+	private void restoreTable() {
+		ArrayList<Symbol> table = transition.getTransSymbolTable().table;
+		boolean intact = table.size() == tableBase + entries.length;
+		for (int e = 0; intact && e < entries.length; e++) {
+			intact = table.get(tableBase + e) == entries[e];
+		}
+		if (!intact) {
+			while (table.size() > tableBase) {
+				table.remove(table.size() - 1);
+			}
+			transition.getToken(false, binding);
+			captureSymbols();
+		}
+	}
+}
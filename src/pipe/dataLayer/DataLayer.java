@@ -2,6 +2,8 @@ package pipe.dataLayer;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -19,10 +21,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 //import formulaParser.Yylex;
-import formulaParser.ErrorMsg;
-import formulaParser.Interpreter;
-import formulaParser.Parse;
-import formulaParser.formulaAbsyntree.Sentence;
+import pipe.dataLayer.calculations.CompiledNet;
 import pipe.gui.CreateGui;
 import pipe.gui.Grid;
 import pipe.gui.Pipe;
@@ -147,6 +146,14 @@ public class DataLayer extends Observable implements Cloneable {
 	/** Marking Vector Storage used during animation */
 	private int[] markingVectorAnimationStorage = null;
 
+	/** Compiled copy of the net used during animation */
+	private CompiledNet animationNet = null;
+	/** Transitions with concession in concessionMarking */
+	private BitSet concession = null;
+	private int[] concessionMarking = null;
+	/** Transition fired since concession was worked out, -1 if none */
+	private int firedSinceConcession = -1;
+
 	/** Forward Incidence Matrix */
 	private PNMatrix forwardsIncidenceMatrix = null;
 	/** Backward Incidence Matrix */
@@ -261,6 +268,8 @@ public class DataLayer extends Observable implements Cloneable {
 			newClone.inhibitorsArray = deepCopy(inhibitorsArray);
 			// newClone.tokensArray = deepCopy(tokensArray);
 			newClone.labelsArray = deepCopy(labelsArray);
+			newClone.animationNet = null;
+			newClone.concession = null;
 		} catch (CloneNotSupportedException e) {
 			throw new Error(e);
 		}
@@ -1805,6 +1814,10 @@ public class DataLayer extends Observable implements Cloneable {
 	 * Stores Current Marking
 	 */
 	public void storeState() {
+		// The net can't be edited while it is being animated, so it only needs
+		// compiling once
+		animationNet = new CompiledNet(this);
+		concession = null;
 		int placeSize = placesArray.size();
 		markingVectorAnimationStorage = new int[placeSize];
 		for (int placeNo = 0; placeNo < placeSize; placeNo++) {
@@ -1817,6 +1830,8 @@ public class DataLayer extends Observable implements Cloneable {
 	 * Restores To previous Stored Marking
 	 */
 	public void restoreState() {
+		animationNet = null;
+		concession = null;
 		if (markingVectorAnimationStorage != null) {
 			int placeSize = placesArray.size();
 			for (int placeNo = 0; placeNo < placeSize; placeNo++) {
@@ -1847,6 +1862,7 @@ public class DataLayer extends Observable implements Cloneable {
 							.setCurrentMarking((currentMarkingVector[placeNo] + incidenceMatrix
 									.get(placeNo, transitionNo)));
 				}
+				firedSinceConcession = transitionNo;
 			}
 		}
 		setMatrixChanged();
@@ -2082,21 +2098,53 @@ public class DataLayer extends Observable implements Cloneable {
 			createMatrixes();
 		}
 
-		boolean[] enabledTransitions = getTransitionEnabledStatusArray(this.getTransitions(),
-				this.getCurrentMarkingVector(), this.getBackwardsIncidenceMatrix(),
-				this.getForwardsIncidenceMatrix(), this.getInhibitionMatrix(),
-				this.getCapacityVector(), this.getPlacesCount(), this.getTransitionsCount());
+		BitSet enabledTransitions = getEnabledTransitionSet(this.getCurrentMarkingVector());
 
-		for (int i = 0; i < enabledTransitions.length; i++) {
+		for (int i = 0; i < transitionsArray.size(); i++) {
 			Transition transition = (Transition) transitionsArray.get(i);
-			if (enabledTransitions[i] != transition.isEnabled()) {
-				transition.setEnabled(enabledTransitions[i]);
+			if (enabledTransitions.get(i) != transition.isEnabled()) {
+				transition.setEnabled(enabledTransitions.get(i));
 				setChanged();
 				notifyObservers(transition);
 			}
 		}
 	}
 
+	/**
+	 * Works out which transitions are enabled in the current marking. While
+	 * the net is being animated the transitions with concession are kept from
+	 * one call to the next, so after fireTransition() only the transitions
+	 * that depend on the one fired are tested again. Otherwise the net is
+	 * compiled afresh each time as it may have been edited.
+	 * 
+	 * @param int[] the current marking
+	 * @return BitSet the enabled transitions
+	 */
+	private BitSet getEnabledTransitionSet(int[] marking) {
+		CompiledNet net = animationNet;
+		BitSet enabled = new BitSet(this.getTransitionsCount());
+
+		if (net == null) {
+			net = new CompiledNet(this);
+			net.enabledSet(marking, enabled);
+			return enabled;
+		}
+		if (concession == null || !Arrays.equals(marking, concessionMarking)) {
+			if (concession != null && firedSinceConcession != -1
+					&& net.leadsTo(concessionMarking, marking, firedSinceConcession)) {
+				net.updateConcession(marking, firedSinceConcession, concession);
+			} else {
+				// The marking has been changed some other way
+				concession = new BitSet(net.getTransitionCount());
+				net.concessionSet(marking, concession);
+			}
+			concessionMarking = (int[]) marking.clone();
+		}
+		firedSinceConcession = -1;
+		net.enabledSet(concession, enabled);
+		return enabled;
+	}
+
 	/**
 	 * getTransitionEnabledStatusArray() Calculate which transitions are enabled
 	 * given a specific marking.
@@ -3014,13 +3062,8 @@ public class DataLayer extends Observable implements Cloneable {
 	public boolean checkStatus(Transition transition) {
 		boolean status = false;
 
-		int numOfPlaces = transition.getPlaceInList().size();
-		int loopCount = 0;
 		ArrayList<Place> placeList = transition.getPlaceInList();
 
-		int[] tokens = new int[numOfPlaces];
-		ArrayList tokCombs = new ArrayList();
-
 		// check if all input places emptyness
 		for (Place p : placeList) {
 			if (p.getToken().listToken.isEmpty()) {
@@ -3029,37 +3072,14 @@ public class DataLayer extends Observable implements Cloneable {
 			}
 		}
 
-		// calculate combinations
-		tokCombinations(placeList, tokCombs, loopCount, tokens);
-
-		// print combinations for testing
-		// Iterator it = tokCombs.iterator();
-		// int[] pt = new int[numOfPlaces];
-		// while(it.hasNext()){
-		// pt = (int[])it.next();
-		// System.out.println(" "+pt[0]+" "+pt[1]+" "+pt[2]+" ");
-		// }
-
-		// check
-		int[] comb = new int[numOfPlaces];
-
-		Iterator iTokCombs = tokCombs.iterator();
-		while (iTokCombs.hasNext() && !status) {
-
-			comb = (int[]) iTokCombs.next();
-
-			boolean getTokBool = transition.getToken(false, comb);
-			System.out.println("---------" + transition.getName() + "------");
-			if (getTokBool) {
-				String formula = transition.getFormula();
-				ErrorMsg errorMsg = new ErrorMsg(formula);
-				Parse p = new Parse(formula, errorMsg);
-				Sentence s = p.absyn;
-				s.accept(new Interpreter(errorMsg, transition, 0));
-				status = s.bool_val;
-				transition.getTransSymbolTable().cleanTable();
-			}
+		// check, stopping at the first binding that satisfies the formula
+		int[] comb = null;
+		BindingSearch bindings = new BindingSearch(transition);
+		if (bindings.hasNext()) {
+			comb = bindings.next();
+			status = true;
 		}
+		transition.getTransSymbolTable().cleanTable();
 
 		// fire
 		if (status) {
@@ -3070,11 +3090,7 @@ public class DataLayer extends Observable implements Cloneable {
 
 			transition.getToken(true, comb);
 
-			String formula = transition.getFormula();
-			ErrorMsg errorMsg = new ErrorMsg(formula);
-			Parse p = new Parse(formula, errorMsg);
-			Sentence s = p.absyn;
-			s.accept(new Interpreter(errorMsg, transition, 1));
+			transition.getCompiledFormula().fire(transition);
 
 			transition.sendToken();
 			transition.getTransSymbolTable().cleanTable();
@@ -3106,27 +3122,6 @@ public class DataLayer extends Observable implements Cloneable {
 		}
 	}
 
-	public void tokCombinations(ArrayList<Place> placeList, ArrayList tokCombs, int loopCount,
-			int[] tokens) {
-		if (loopCount == placeList.size()) {
-			int[] pTok = new int[placeList.size()];
-			System.arraycopy(tokens, 0, pTok, 0, placeList.size());
-			tokCombs.add(pTok);
-		} else {
-			int numOfTok = placeList.get(loopCount).getToken().listToken.size();
-			boolean powerset = placeList.get(loopCount).getToken().getDataType().getPow();
-			for (int i = 0; i < numOfTok; i++) {
-				if (powerset) {
-					tokens[loopCount] = 1;
-				} else
-					tokens[loopCount] = i;
-
-				tokCombinations(placeList, tokCombs, loopCount + 1, tokens);
-			}
-		}
-
-	}
-
 	public void setDataTypePool(Vector<DataType> _dtPool) {
 		Iterator idt = _dtPool.iterator();
 		while (idt.hasNext()) {
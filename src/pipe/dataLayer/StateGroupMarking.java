@@ -0,0 +1,185 @@
+package pipe.dataLayer;
+
+import java.util.StringTokenizer;
+
+import pipe.io.NewStateRecord;
+
+
+/**
+ * Classifies markings as start or target states of a passage by testing them
+ * against the conditions of two state groups. Each condition compares the
+ * number of tokens on a place, given by its id or its name, with either a
+ * number or the number of tokens on another place, using one of
+ * <, <=, >, >=, =, == and !=. A marking belongs to a group when it meets
+ * all of the group's conditions.
+ */
+public class StateGroupMarking
+        implements DynamicMarking {
+
+   private static final int LT = 0;
+   private static final int LE = 1;
+   private static final int GT = 2;
+   private static final int GE = 3;
+   private static final int EQ = 4;
+   private static final int NE = 5;
+
+   private final Condition[] start;
+   private final Condition[] target;
+
+
+   /**
+    * StateGroupMarking()
+    * @param pnmlData   The net the markings belong to
+    * @param start      The conditions on start states
+    * @param target     The conditions on target states
+    * @throws IllegalArgumentException if a condition names a place that is
+    *         not in the net, or has an operator that is not understood
+    */
+   public StateGroupMarking(DataLayer pnmlData, StateGroup start,
+           StateGroup target) {
+      Place[] places = pnmlData.getPlaces();
+      this.start = compile(places, start);
+      this.target = compile(places, target);
+   }
+
+
+   public boolean isStartMarking(NewStateRecord marking) {
+      return isStartMarking(marking.getState());
+   }
+
+
+   public boolean isTargetMarking(NewStateRecord marking) {
+      return isTargetMarking(marking.getState());
+   }
+
+
+   public boolean isStartMarking(int[] marking) {
+      return matches(start, marking);
+   }
+
+
+   public boolean isTargetMarking(int[] marking) {
+      return matches(target, marking);
+   }
+
+
+   /**
+    * parseStateGroup()
+    * Makes a state group from conditions written out in full, for example
+    * "P0 > 2 && P1 == P2". Each place may only have one condition.
+    * @param name       The name to give the group
+    * @param conditions The conditions, joined by &&
+    * @return           The state group
+    * @throws IllegalArgumentException if a condition is not a place, an
+    *         operator and a value separated by spaces
+    */
+   public static StateGroup parseStateGroup(String name, String conditions) {
+      StateGroup group = new StateGroup(name, name);
+      String[] parts = conditions.split("&&");
+      for (int i = 0; i < parts.length; i++) {
+         if (parts[i].trim().length() == 0) {
+            continue;
+         }
+         StringTokenizer tokens = new StringTokenizer(parts[i]);
+         if (tokens.countTokens() != 3) {
+            throw new IllegalArgumentException("The condition \"" +
+                    parts[i].trim() + "\" should be a place, an operator " +
+                    "and a value separated by spaces.");
+         }
+         group.addState(tokens.nextToken(), tokens.nextToken(),
+                 tokens.nextToken());
+      }
+      return group;
+   }
+
+
+   private static boolean matches(Condition[] conditions, int[] marking) {
+      for (int i = 0; i < conditions.length; i++) {
+         if (!conditions[i].holds(marking)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+
+   private static Condition[] compile(Place[] places, StateGroup group) {
+      String[] conditions = group.getConditions();
+      Condition[] compiled = new Condition[conditions.length];
+      for (int i = 0; i < conditions.length; i++) {
+         StringTokenizer tokens = new StringTokenizer(conditions[i]);
+         String place = tokens.nextToken();
+         String operator = tokens.nextToken();
+         String value = tokens.nextToken();
+
+         Condition c = new Condition();
+         c.place = findPlace(places, place);
+         c.operator = findOperator(operator);
+         try {
+            c.value = Integer.parseInt(value);
+            c.otherplace = -1;
+         } catch (NumberFormatException e) {
+            c.otherplace = findPlace(places, value);
+         }
+         compiled[i] = c;
+      }
+      return compiled;
+   }
+
+
+   private static int findPlace(Place[] places, String place) {
+      for (int p = 0; p < places.length; p++) {
+         if (place.equals(places[p].getId())) {
+            return p;
+         }
+      }
+      for (int p = 0; p < places.length; p++) {
+         if (place.equals(places[p].getName())) {
+            return p;
+         }
+      }
+      throw new IllegalArgumentException("There is no place " + place + ".");
+   }
+
+
+   private static int findOperator(String operator) {
+      if (operator.equals("<")) {
+         return LT;
+      } else if (operator.equals("<=")) {
+         return LE;
+      } else if (operator.equals(">")) {
+         return GT;
+      } else if (operator.equals(">=")) {
+         return GE;
+      } else if (operator.equals("=") || operator.equals("==")) {
+         return EQ;
+      } else if (operator.equals("!=")) {
+         return NE;
+      }
+      throw new IllegalArgumentException("Unknown operator " + operator +
+              ".");
+   }
+
+
+   private static class Condition {
+      int place;
+      int operator;
+      // The place to compare with, or -1 to compare with value
+      int otherplace;
+      int value;
+
+      boolean holds(int[] marking) {
+         int tokens = marking[place];
+         int other = (otherplace < 0) ? value : marking[otherplace];
+         switch (operator) {
+            case LT: return tokens < other;
+            case LE: return tokens <= other;
+            case GT: return tokens > other;
+            case GE: return tokens >= other;
+            case EQ: return tokens == other;
+            default: return tokens != other;
+         }
+      }
+   }
+
+}
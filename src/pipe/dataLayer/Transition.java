@@ -15,6 +15,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 
+import formulaParser.CompiledFormula;
 import formulaParser.Symbol;
 import formulaParser.SymbolTable;
 import pipe.gui.undo.TransitionFormulaEdit;
@@ -117,6 +118,10 @@ public class Transition
     */
    protected String formula;
    protected String XMLformula;
+   /**
+    * formula parsed, made when first needed and thrown away by setFormula()
+    */
+   protected CompiledFormula compiledFormula;
    protected ArrayList<String> tranVarList = new ArrayList<String>();
    protected ArrayList<String> arcInVarList = new ArrayList<String>();
    protected ArrayList<String> arcOutVarList = new ArrayList<String>();
@@ -456,6 +461,7 @@ public class Transition
 	   String oldFormula = formula;
 	   if (oldFormula == null) oldFormula = "";
 	   formula = formulaInput;
+	   compiledFormula = null;
 //	   formulaLabel.setText(oldFormula);
 //	   formulaLabel.updateSize();
 	   repaint();
@@ -474,6 +480,17 @@ public class Transition
    public String getFormula(){
 	   return formula;
    }
+   
+   /**
+    * Get the formula parsed, ready to check the guard and fire for each
+    * binding of tokens without parsing it again
+    */
+   public CompiledFormula getCompiledFormula(){
+	   if (compiledFormula == null || compiledFormula.getFormula() != formula) {
+		   compiledFormula = new CompiledFormula(formula);
+	   }
+	   return compiledFormula;
+   }
    /**Set the timed transition attribute (for GSPNs)*/
    public UndoableEdit setTimed(boolean change) {
       timed = change;
@@ -0,0 +1,155 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import pipe.io.RGFileWriter;
+
+
+/**
+ * Collects the arcs out of one state of the reachability graph while its
+ * successors are worked out, used by StateSpaceGenerator.
+ *
+ * Arcs to the same state are combined into one, whose rate is the sum of
+ * their rates and whose transition is the one that first led to that state.
+ * The arcs are kept in the order their target states were first reached, in
+ * parallel arrays, with an open addressing hash table of target state id
+ * numbers pointing into them, so finding the arc to a state takes the same
+ * time however many arcs there are.
+ *
+ * Each generation uses its own accumulator, which is cleared and reused for
+ * every state, so nothing is shared between generations.
+ */
+class ArcAccumulator {
+
+   private static final int INITIALCAPACITY = 16;
+   private static final int EMPTY = -1;
+
+   // The arcs, in the order they were added
+   private int[] targets = new int[INITIALCAPACITY];
+   private double[] rates = new double[INITIALCAPACITY];
+   private int[] transitionNos = new int[INITIALCAPACITY];
+   private int count = 0;
+
+   // Indices into the arc arrays, hashed on target state id number
+   private int[] slots = newSlots(INITIALCAPACITY << 1);
+   private int mask = slots.length - 1;
+
+
+   /**
+    * add()
+    * Records an arc from the current state to the state with id number to.
+    * @param to            The id number of the state reached
+    * @param r             The rate of the arc
+    * @param transitionNo  The transition fired to reach it
+    * @return              1 if this is a new arc, or 0 if it was combined
+    *                      with an arc already recorded
+    */
+   int add(int to, double r, int transitionNo) {
+      int slot = home(to);
+      while (slots[slot] != EMPTY) {
+         int arc = slots[slot];
+         if (targets[arc] == to) {
+            rates[arc] += r;
+            return 0;
+         }
+         slot = (slot + 1) & mask;
+      }
+      if (count == targets.length) {
+         grow();
+         slot = home(to);
+         while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+         }
+      }
+      targets[count] = to;
+      rates[count] = r;
+      transitionNos[count] = transitionNo;
+      slots[slot] = count;
+      count++;
+      return 1;
+   }
+
+
+   int size() {
+      return count;
+   }
+
+
+   /**
+    * clear()
+    * Forgets all the arcs, ready for the next state.
+    */
+   void clear() {
+      if (count > slots.length >> 3) {
+         Arrays.fill(slots, EMPTY);
+      } else {
+         for (int i = 0; i < count; i++) {
+            int slot = home(targets[i]);
+            while (slots[slot] != EMPTY) {
+               slots[slot] = EMPTY;
+               slot = (slot + 1) & mask;
+            }
+         }
+      }
+      count = 0;
+   }
+
+
+   /**
+    * write()
+    * Adds all the arcs to a reachability graph file at once.
+    * @param from       The id number of the state the arcs are from
+    * @param rgfile     The reachability graph file
+    * @throws IOException
+    */
+   void write(int from, RGFileWriter rgfile) throws IOException {
+      rgfile.writeTransitions(from, targets, rates, transitionNos, count);
+   }
+
+
+   private int home(int to) {
+      // Spread the bits of consecutive id numbers over the table
+      int h = to * 0x9E3779B9;
+      return (h ^ (h >>> 16)) & mask;
+   }
+
+
+   /**
+    * grow()
+    * Doubles the room for arcs and rebuilds the hash table to match.
+    */
+   private void grow() {
+      int capacity = targets.length << 1;
+      int[] newtargets = new int[capacity];
+      System.arraycopy(targets, 0, newtargets, 0, count);
+      targets = newtargets;
+      double[] newrates = new double[capacity];
+      System.arraycopy(rates, 0, newrates, 0, count);
+      rates = newrates;
+      int[] newtransitionNos = new int[capacity];
+      System.arraycopy(transitionNos, 0, newtransitionNos, 0, count);
+      transitionNos = newtransitionNos;
+
+      slots = newSlots(capacity << 1);
+      mask = slots.length - 1;
+      for (int i = 0; i < count; i++) {
+         int slot = home(targets[i]);
+         while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+         }
+         slots[slot] = i;
+      }
+   }
+
+
+   private static int[] newSlots(int size) {
+      int[] newslots = new int[size];
+      Arrays.fill(newslots, EMPTY);
+      return newslots;
+   }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * Solves for the steady state distribution with the stabilised biconjugate
+ * gradient method, preconditioned with the diagonal. It uses two products
+ * with the matrix an iteration and keeps eight vectors besides the solution.
+ * If the method breaks down it starts again from where it has got to.
+ */
+public class BiCGSTABSolver
+        extends KrylovSolver {
+
+
+   public String getName() {
+      return "BiCGSTAB";
+   }
+
+
+   protected double[] run(SparseMatrix Qt) throws NotConvergingException {
+      int n = Qt.getNumRows();
+      double maxrate = Math.max(maxRate(Qt), Double.MIN_VALUE);
+      double[] x = initialGuess(Qt);
+      double[] r = new double[n];
+      double[] rhat = new double[n];
+      double[] p = new double[n];
+      double[] v = new double[n];
+      double[] phat = new double[n];
+      double[] s = new double[n];
+      double[] shat = new double[n];
+      double[] t = new double[n];
+
+      while (true) {
+         // (Re)start from the current solution
+         residual(Qt, x, r);
+         System.arraycopy(r, 0, rhat, 0, n);
+         for (int i = 0; i < n; i++) {
+            p[i] = 0.0;
+            v[i] = 0.0;
+         }
+         double rho = 1.0;
+         double alpha = 1.0;
+         double omega = 1.0;
+         while (true) {
+            double rhonew = dot(rhat, r);
+            if (rhonew == 0.0) {
+               break;
+            }
+            double beta = (rhonew / rho) * (alpha / omega);
+            for (int i = 0; i < n; i++) {
+               p[i] = r[i] + beta * (p[i] - omega * v[i]);
+            }
+            precondition(Qt, p, phat);
+            multiply(Qt, phat, v);
+            double rhatv = dot(rhat, v);
+            if (rhatv == 0.0) {
+               break;
+            }
+            alpha = rhonew / rhatv;
+            for (int i = 0; i < n; i++) {
+               s[i] = r[i] - alpha * v[i];
+            }
+            precondition(Qt, s, shat);
+            multiply(Qt, shat, t);
+            double tt = dot(t, t);
+            omega = (tt == 0.0) ? 0.0 : dot(t, s) / tt;
+            for (int i = 0; i < n; i++) {
+               x[i] += alpha * phat[i] + omega * shat[i];
+               r[i] = s[i] - omega * t[i];
+            }
+            rho = rhonew;
+            if (converged(norm(r) / maxrate) && verify(Qt, x)) {
+               return x;
+            }
+            if (omega == 0.0) {
+               break;
+            }
+         }
+         // Stop if a restart has not got anywhere
+         if (converged(Qt, x)) {
+            return x;
+         }
+      }
+   }
+
+}
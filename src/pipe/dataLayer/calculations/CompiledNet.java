@@ -0,0 +1,580 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import pipe.dataLayer.DataLayer;
+import pipe.dataLayer.Transition;
+
+
+/**
+ * A compiled, read only copy of the structure of a net used by the analysis
+ * modules to test which transitions are enabled and to fire them.
+ *
+ * The DataLayer matrix getters copy a whole place x transition matrix every
+ * time they are called, which is far too slow to do for every marking of a
+ * state space. A CompiledNet reads the matrices once and keeps, for each
+ * transition, only the arcs that matter to it: its input places and arc
+ * weights, its inhibitor arcs, the places it changes and by how much, and the
+ * places with a capacity restriction. None of the methods that take a marking
+ * allocate anything, and as nothing changes after construction one CompiledNet
+ * can be shared by several threads.
+ *
+ * The arcs of transition t are stored in entries start[t] to start[t + 1] - 1
+ * of the corresponding place and weight arrays.
+ *
+ * It also holds the dependency graph of the net, which records for each
+ * transition t the transitions whose concession can change when t fires:
+ * those with an input arc, inhibitor arc or capacity check on a place that t
+ * changes. A transition has concession when isEnabled() is true for it. The
+ * concession of a new marking can then be worked out from that of the marking
+ * it was reached from by updateConcession(), which only looks at the
+ * transitions that depend on the one fired, and enabledSet() applies the
+ * transition priorities to a concession set.
+ *
+ * Any later change to the DataLayer is not seen by a CompiledNet made before
+ * it.
+ */
+public class CompiledNet {
+
+   private final int placeCount;
+   private final int transitionCount;
+
+   // Input arcs: enabling needs marking[prePlace] >= preWeight
+   private final int[] preStart;
+   private final int[] prePlace;
+   private final int[] preWeight;
+
+   // Inhibitor arcs: enabling needs marking[inhPlace] < inhWeight
+   private final int[] inhStart;
+   private final int[] inhPlace;
+   private final int[] inhWeight;
+
+   // Places with a capacity: enabling needs
+   // marking[capPlace] + capDelta <= capLimit
+   private final int[] capStart;
+   private final int[] capPlace;
+   private final int[] capDelta;
+   private final int[] capLimit;
+
+   // Places whose marking changes when the transition fires
+   private final int[] deltaStart;
+   private final int[] deltaPlace;
+   private final int[] deltaWeight;
+
+   // The transitions that read each place, i.e. test its marking when
+   // checking for concession
+   private final int[] readerStart;
+   private final int[] reader;
+
+   // The dependency graph: the transitions whose concession may change when
+   // each transition fires
+   private final int[] affectedStart;
+   private final int[] affected;
+
+   // The heaviest inhibitor arc from each place, 0 if there are none
+   private final int[] maxInhibitor;
+   private final int[] capacity;
+
+   private final boolean[] timed;
+   private final int[] priority;
+   private final double[] rate;
+
+
+   public CompiledNet(DataLayer pnmlData) {
+      Transition[] trans = pnmlData.getTransitions();
+      int[][] CMinus = pnmlData.getBackwardsIncidenceMatrix();
+      int[][] CPlus = pnmlData.getForwardsIncidenceMatrix();
+      int[][] inhibition = pnmlData.getInhibitionMatrix();
+
+      placeCount = pnmlData.getPlacesCount();
+      transitionCount = trans.length;
+      capacity = (int[])pnmlData.getCapacityVector().clone();
+
+      int pre = 0;
+      int inh = 0;
+      int delta = 0;
+      int capped = 0;
+      for (int p = 0; p < placeCount; p++) {
+         if (capacity[p] > 0) {
+            capped++;
+         }
+         for (int t = 0; t < transitionCount; t++) {
+            if (CMinus[p][t] > 0) {
+               pre++;
+            }
+            if (inhibition[p][t] > 0) {
+               inh++;
+            }
+            if (CPlus[p][t] != CMinus[p][t]) {
+               delta++;
+            }
+         }
+      }
+
+      preStart = new int[transitionCount + 1];
+      prePlace = new int[pre];
+      preWeight = new int[pre];
+      inhStart = new int[transitionCount + 1];
+      inhPlace = new int[inh];
+      inhWeight = new int[inh];
+      capStart = new int[transitionCount + 1];
+      capPlace = new int[capped * transitionCount];
+      capDelta = new int[capped * transitionCount];
+      capLimit = new int[capped * transitionCount];
+      deltaStart = new int[transitionCount + 1];
+      deltaPlace = new int[delta];
+      deltaWeight = new int[delta];
+      maxInhibitor = new int[placeCount];
+
+      pre = inh = delta = capped = 0;
+      for (int t = 0; t < transitionCount; t++) {
+         preStart[t] = pre;
+         inhStart[t] = inh;
+         capStart[t] = capped;
+         deltaStart[t] = delta;
+         for (int p = 0; p < placeCount; p++) {
+            int change = CPlus[p][t] - CMinus[p][t];
+            if (CMinus[p][t] > 0) {
+               prePlace[pre] = p;
+               preWeight[pre++] = CMinus[p][t];
+            }
+            if (inhibition[p][t] > 0) {
+               inhPlace[inh] = p;
+               inhWeight[inh++] = inhibition[p][t];
+               if (inhibition[p][t] > maxInhibitor[p]) {
+                  maxInhibitor[p] = inhibition[p][t];
+               }
+            }
+            // Every capacity has to be checked, even when t doesn't change the
+            // marking of the place, as a place that is already over capacity
+            // disables everything
+            if (capacity[p] > 0) {
+               capPlace[capped] = p;
+               capDelta[capped] = change;
+               capLimit[capped++] = capacity[p];
+            }
+            if (change != 0) {
+               deltaPlace[delta] = p;
+               deltaWeight[delta++] = change;
+            }
+         }
+      }
+      preStart[transitionCount] = pre;
+      inhStart[transitionCount] = inh;
+      capStart[transitionCount] = capped;
+      deltaStart[transitionCount] = delta;
+
+      readerStart = new int[placeCount + 1];
+      reader = new int[findReaders(null)];
+      findReaders(reader);
+      affectedStart = new int[transitionCount + 1];
+      affected = new int[findAffected(null)];
+      findAffected(affected);
+
+      timed = new boolean[transitionCount];
+      priority = new int[transitionCount];
+      rate = new double[transitionCount];
+      for (int t = 0; t < transitionCount; t++) {
+         timed[t] = trans[t].isTimed();
+         priority[t] = trans[t].getPriority();
+         rate[t] = trans[t].getRate();
+      }
+   }
+
+
+   /**
+    * isEnabled()
+    * Tests whether transition t has enough tokens on its input places, isn't
+    * blocked by an inhibitor arc and wouldn't break a place capacity if it
+    * fired. Priorities and the precedence of immediate transitions over timed
+    * ones are not taken into account here as they depend on the other
+    * transitions; use enabledSet() for that. An omega (-1) satisfies any input
+    * arc and never inhibits.
+    * @param marking    The marking to test
+    * @param t          The transition to test
+    */
+   public boolean isEnabled(int[] marking, int t) {
+      for (int k = preStart[t]; k < preStart[t + 1]; k++) {
+         int tokens = marking[prePlace[k]];
+         if ((tokens < preWeight[k]) && (tokens != -1)) {
+            return false;
+         }
+      }
+      for (int k = inhStart[t]; k < inhStart[t + 1]; k++) {
+         if (marking[inhPlace[k]] >= inhWeight[k]) {
+            return false;
+         }
+      }
+      for (int k = capStart[t]; k < capStart[t + 1]; k++) {
+         if (marking[capPlace[k]] + capDelta[k] > capLimit[k]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+
+   /**
+    * concessionSet()
+    * Works out which transitions have concession in a marking.
+    * @param marking    The marking to test
+    * @param concession Cleared and then filled in with the transitions that
+    *                   have concession
+    * @return           The number of transitions with concession
+    */
+   public int concessionSet(int[] marking, BitSet concession) {
+      int count = 0;
+
+      concession.clear();
+      for (int t = 0; t < transitionCount; t++) {
+         if (isEnabled(marking, t)) {
+            concession.set(t);
+            count++;
+         }
+      }
+      return count;
+   }
+
+
+   /**
+    * updateConcession()
+    * Turns the concession set of a marking into that of the marking reached
+    * from it by firing a transition. Only the transitions that depend on the
+    * one fired are looked at.
+    * @param marking    The marking reached
+    * @param fired      The transition fired to reach it
+    * @param concession The concession set of the marking fired from, which is
+    *                   updated
+    */
+   public void updateConcession(int[] marking, int fired, BitSet concession) {
+      for (int k = affectedStart[fired]; k < affectedStart[fired + 1]; k++) {
+         int t = affected[k];
+         concession.set(t, isEnabled(marking, t));
+      }
+   }
+
+
+   /**
+    * updateConcessionForPlace()
+    * Updates a concession set after the marking of a single place has been
+    * changed other than by firing a transition, e.g. by inserting an omega.
+    * @param marking    The new marking
+    * @param p          The place that has changed
+    * @param concession The concession set before the change, which is updated
+    */
+   public void updateConcessionForPlace(int[] marking, int p,
+           BitSet concession) {
+      for (int k = readerStart[p]; k < readerStart[p + 1]; k++) {
+         int t = reader[k];
+         concession.set(t, isEnabled(marking, t));
+      }
+   }
+
+
+   /**
+    * enabledSet()
+    * Works out which transitions can fire in a marking, taking account of
+    * inhibitor arcs, place capacities and transition priorities. If any
+    * immediate transition is enabled only the immediate transitions of the
+    * highest priority are left in the set. Gives the same result as
+    * DataLayer.getTransitionEnabledStatusArray().
+    * @param marking    The marking to test
+    * @param enabled    Cleared and then filled in with the enabled transitions
+    * @return           The number of enabled transitions
+    */
+   public int enabledSet(int[] marking, BitSet enabled) {
+      concessionSet(marking, enabled);
+      return enabledSet(enabled, enabled);
+   }
+
+
+   /**
+    * enabledSet()
+    * Applies the transition priorities to a concession set: if any immediate
+    * transition has concession only the immediate transitions of the highest
+    * priority among them are enabled, otherwise all of them are.
+    * @param concession The transitions with concession in a marking
+    * @param enabled    Filled in with the enabled transitions. It may be
+    *                   concession itself.
+    * @return           The number of enabled transitions
+    */
+   public int enabledSet(BitSet concession, BitSet enabled) {
+      boolean hasImmediate = false;
+      int maxPriority = 0;
+
+      if (enabled != concession) {
+         enabled.clear();
+         enabled.or(concession);
+      }
+      for (int t = enabled.nextSetBit(0); t >= 0;
+              t = enabled.nextSetBit(t + 1)) {
+         if (!timed[t]) {
+            hasImmediate = true;
+            if (priority[t] > maxPriority) {
+               maxPriority = priority[t];
+            }
+         }
+      }
+
+      if (hasImmediate) {
+         for (int t = enabled.nextSetBit(0); t >= 0;
+                 t = enabled.nextSetBit(t + 1)) {
+            if (timed[t] || priority[t] < maxPriority) {
+               enabled.clear(t);
+            }
+         }
+      }
+      return enabled.cardinality();
+   }
+
+
+   /**
+    * isTangible()
+    * Tests whether a marking is tangible given the transitions that have
+    * concession in it.
+    */
+   public boolean isTangible(BitSet concession) {
+      boolean hasTimed = false;
+
+      for (int t = concession.nextSetBit(0); t >= 0;
+              t = concession.nextSetBit(t + 1)) {
+         if (!timed[t]) {
+            return false;
+         }
+         hasTimed = true;
+      }
+      return hasTimed;
+   }
+
+
+   /**
+    * isTangible()
+    * Tests whether a marking is tangible, i.e. at least one transition is
+    * enabled and all the enabled transitions are timed.
+    */
+   public boolean isTangible(int[] marking) {
+      boolean hasTimed = false;
+
+      for (int t = 0; t < transitionCount; t++) {
+         if (isEnabled(marking, t)) {
+            if (!timed[t]) {
+               return false;
+            }
+            hasTimed = true;
+         }
+      }
+      return hasTimed;
+   }
+
+
+   /**
+    * fire()
+    * Works out the marking reached by firing transition t. Places holding an
+    * omega (-1) keep it. The transition is not checked to be enabled.
+    * @param src        The marking to fire t in
+    * @param dst        Filled in with the new marking. It may be src itself.
+    * @param t          The transition to fire
+    */
+   public void fire(int[] src, int[] dst, int t) {
+      if (src != dst) {
+         System.arraycopy(src, 0, dst, 0, placeCount);
+      }
+      for (int k = deltaStart[t]; k < deltaStart[t + 1]; k++) {
+         int p = deltaPlace[k];
+         if (dst[p] != -1) {
+            dst[p] += deltaWeight[k];
+         }
+      }
+   }
+
+
+   /**
+    * fire()
+    * As above, also bringing the hash of the marking up to date. Only the
+    * places t changes are rehashed.
+    * @param hasher     The MarkingHash that hash came from
+    * @param hash       The hash of src
+    * @return           The hash of dst
+    */
+   public long fire(int[] src, int[] dst, int t, MarkingHash hasher,
+           long hash) {
+      if (src != dst) {
+         System.arraycopy(src, 0, dst, 0, placeCount);
+      }
+      for (int k = deltaStart[t]; k < deltaStart[t + 1]; k++) {
+         int p = deltaPlace[k];
+         if (dst[p] != -1) {
+            int tokens = dst[p];
+            dst[p] += deltaWeight[k];
+            hash = hasher.update(hash, p, tokens, dst[p]);
+         }
+      }
+      return hash;
+   }
+
+
+   /**
+    * leadsTo()
+    * Tests whether firing transition t in marking src gives marking dst,
+    * i.e. whether dst = src + the column of the incidence matrix for t.
+    */
+   public boolean leadsTo(int[] src, int[] dst, int t) {
+      int k = deltaStart[t];
+      int end = deltaStart[t + 1];
+
+      for (int p = 0; p < placeCount; p++) {
+         int expected = src[p];
+         if ((k < end) && (deltaPlace[k] == p)) {
+            expected += deltaWeight[k++];
+         }
+         if (expected != dst[p]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+
+   /**
+    * getAffectedTransitions()
+    * @return   The transitions whose concession may change when transition t
+    *           fires
+    */
+   public int[] getAffectedTransitions(int t) {
+      int[] result = new int[affectedStart[t + 1] - affectedStart[t]];
+      System.arraycopy(affected, affectedStart[t], result, 0, result.length);
+      return result;
+   }
+
+
+   public int getPlaceCount() {
+      return placeCount;
+   }
+
+
+   public int getTransitionCount() {
+      return transitionCount;
+   }
+
+
+   public boolean isTimed(int t) {
+      return timed[t];
+   }
+
+
+   public int getPriority(int t) {
+      return priority[t];
+   }
+
+
+   public double getRate(int t) {
+      return rate[t];
+   }
+
+
+   /**
+    * getCapacity()
+    * @return   The capacity of place p, 0 if it is unlimited
+    */
+   public int getCapacity(int p) {
+      return capacity[p];
+   }
+
+
+   /**
+    * getMaxInhibitorWeight()
+    * @return   The weight of the heaviest inhibitor arc from place p, 0 if
+    *           there are none
+    */
+   public int getMaxInhibitorWeight(int p) {
+      return maxInhibitor[p];
+   }
+
+
+   /**
+    * findReaders()
+    * Works out which transitions read each place and fills in readerStart.
+    * @param readers    Filled in with the readers of each place in turn, or
+    *                   null just to count them
+    * @return           The total number of (place, reader) pairs
+    */
+   private int findReaders(int[] readers) {
+      int[] lastreader = new int[placeCount];
+      int[] count = new int[placeCount];
+      Arrays.fill(lastreader, -1);
+
+      for (int t = 0; t < transitionCount; t++) {
+         for (int k = preStart[t]; k < preStart[t + 1]; k++) {
+            addReader(prePlace[k], t, lastreader, count, readers);
+         }
+         for (int k = inhStart[t]; k < inhStart[t + 1]; k++) {
+            addReader(inhPlace[k], t, lastreader, count, readers);
+         }
+         for (int k = capStart[t]; k < capStart[t + 1]; k++) {
+            addReader(capPlace[k], t, lastreader, count, readers);
+         }
+      }
+
+      int total = 0;
+      for (int p = 0; p < placeCount; p++) {
+         if (readers == null) {
+            readerStart[p] = total;
+         }
+         total += count[p];
+      }
+      readerStart[placeCount] = total;
+      return total;
+   }
+
+
+   private void addReader(int p, int t, int[] lastreader, int[] count,
+           int[] readers) {
+      // A transition may test the same place more than once
+      if (lastreader[p] != t) {
+         lastreader[p] = t;
+         if (readers != null) {
+            readers[readerStart[p] + count[p]] = t;
+         }
+         count[p]++;
+      }
+   }
+
+
+   /**
+    * findAffected()
+    * Builds the dependency graph from the places each transition changes and
+    * the readers of those places, and fills in affectedStart.
+    * @param result     Filled in with the transitions affected by each
+    *                   transition in turn, or null just to count them
+    * @return           The total number of edges in the graph
+    */
+   private int findAffected(int[] result) {
+      int[] lastfired = new int[transitionCount];
+      int total = 0;
+      Arrays.fill(lastfired, -1);
+
+      for (int t = 0; t < transitionCount; t++) {
+         affectedStart[t] = total;
+         for (int k = deltaStart[t]; k < deltaStart[t + 1]; k++) {
+            int p = deltaPlace[k];
+            for (int r = readerStart[p]; r < readerStart[p + 1]; r++) {
+               int u = reader[r];
+               if (lastfired[u] != t) {
+                  lastfired[u] = t;
+                  if (result != null) {
+                     result[total] = u;
+                  }
+                  total++;
+               }
+            }
+         }
+      }
+      affectedStart[transitionCount] = total;
+      return total;
+   }
+
+}
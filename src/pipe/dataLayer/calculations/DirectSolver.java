@@ -0,0 +1,60 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import jama.Matrix;
+
+
+/**
+ * Solves for the steady state distribution directly, by LU decomposition with
+ * partial pivoting of the system KrylovSolver sets up, that is pi Q = 0 with
+ * the last equation replaced by the condition that pi sums to 1. The matrix is
+ * expanded into a full one for the decomposition, so this is only meant for
+ * small chains.
+ */
+public class DirectSolver
+        extends LinearSolver {
+
+   // The largest chain that it is sensible to solve this way
+   public static final int MAXSTATES = 1000;
+
+
+   public String getName() {
+      return "LU decomposition";
+   }
+
+
+   protected double[] run(SparseMatrix Qt) throws NotConvergingException {
+      int n = Qt.getNumRows();
+      if (n > MAXSTATES) {
+         throw new NotConvergingException("There are too many states to" +
+                 " solve by LU decomposition.");
+      }
+      double[][] A = new double[n][n];
+      for (int row = 0; row < n - 1; row++) {
+         A[row][row] = Qt.diagonal[row];
+         for (int i = Qt.rowstarts[row]; i < Qt.rowstarts[row + 1]; i++) {
+            A[row][Qt.columns[i]] += Qt.values[i];
+         }
+      }
+      double[] b = new double[n];
+      for (int column = 0; column < n; column++) {
+         A[n - 1][column] = 1.0;
+      }
+      b[n - 1] = 1.0;
+
+      double[] x;
+      try {
+         x = new Matrix(A).solve(new Matrix(b, n)).getColumnPackedCopy();
+      } catch (RuntimeException e) {
+         throw new NotConvergingException("The generator matrix is singular.");
+      }
+      if (!converged(Qt, x)) {
+         throw new NotConvergingException(getName() + " has left a residual" +
+                 " of " + getResidual() + ".");
+      }
+      return x;
+   }
+
+}
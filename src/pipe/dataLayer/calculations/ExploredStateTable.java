@@ -0,0 +1,321 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+
+/**
+ * Used by StateSpaceGenerator and myTree to record every state explored during
+ * state space generation and the id number it was given.
+ *
+ * The markings are packed back to back, in id order, into a single int array
+ * (the arena) so the table costs one int per place per state plus a few ints
+ * of bookkeeping, rather than an object per state. The hash table itself is an
+ * open addressing table with linear probing whose slots hold the id of the
+ * state stored there. A lookup compares the full marking held in the arena, so
+ * two distinct markings that happen to hash to the same value are never
+ * confused with each other. The table doubles in size whenever its load factor
+ * goes above MAXLOADFACTOR. The arena starts with room for no more states than
+ * the initial capacity asks for, and at most INITIALARENASTATES, and doubles
+ * as it fills, so a table that only ever holds a few markings stays small.
+ *
+ * Markings are hashed by a MarkingHash. Callers that already know the hash of
+ * a marking, for instance because they updated it as a transition fired, can
+ * pass it to find() and findOrAdd() and save the table working it out again.
+ * Such hashes must come from the MarkingHash returned by getMarkingHash().
+ */
+public class ExploredStateTable {
+
+   private static final int INITIALCAPACITY = 1 << 10;
+   private static final int INITIALARENASTATES = 1 << 10;
+   private static final double MAXLOADFACTOR = 0.7;
+
+   // Slot value used to mark an empty slot in the hash table
+   private static final int EMPTY = -1;
+
+   private final int statesize;
+   private final MarkingHash hasher;
+
+   // The hash table. Each slot holds the id of a state or EMPTY.
+   private int[] slots;
+   private int mask;
+   private int threshold;
+
+   // All the explored markings, state i starting at arena[i * statesize]
+   private int[] arena;
+   // The hash of each explored state, indexed by id. Kept so that the
+   // table can be grown without rehashing every marking and so that almost
+   // all mismatches are rejected without looking at the arena.
+   private long[] hashes;
+   private int size = 0;
+
+   // Statistics
+   private long lookups = 0;
+   private long probes = 0;
+   private int maxprobelength = 0;
+
+
+   public ExploredStateTable(int statearraysize) {
+      this(new MarkingHash(statearraysize), INITIALCAPACITY);
+   }
+
+
+   public ExploredStateTable(int statearraysize, int initialcapacity) {
+      this(new MarkingHash(statearraysize), initialcapacity);
+   }
+
+
+   public ExploredStateTable(MarkingHash markinghash) {
+      this(markinghash, INITIALCAPACITY);
+   }
+
+
+   public ExploredStateTable(MarkingHash markinghash, int initialcapacity) {
+      hasher = markinghash;
+      statesize = markinghash.getPlaceCount();
+      int capacity = 16;
+      while (capacity < initialcapacity) {
+         capacity <<= 1;
+      }
+      allocateSlots(capacity);
+      int states = Math.min(Math.max(initialcapacity, 1), INITIALARENASTATES);
+      hashes = new long[states];
+      arena = new int[states * statesize];
+   }
+
+
+   /**
+    * find()
+    * Looks up a marking in the table. This does not change the table in any 
+    * way, so several threads may call it at once as long as no states are 
+    * being added at the same time.
+    * @param marking    The marking to look for
+    * @return           The id number of the marking, or -1 if it has not been
+    *                   explored yet
+    */
+   public int find(int[] marking) {
+      return find(marking, hasher.hash(marking));
+   }
+
+
+   /**
+    * find()
+    * As above, for a marking whose hash is already known.
+    * @param hash       The hash of the marking
+    */
+   public int find(int[] marking, long hash) {
+      int slot = probe(marking, hash);
+      return slots[slot];
+   }
+
+
+   /**
+    * findOrAdd()
+    * Looks up a marking in the table and adds it if it isn't there already.
+    * A newly added marking is given the next free id number, which is the
+    * number of states in the table before it was added, so the caller can tell
+    * whether the marking is new by comparing the returned id with size().
+    * @param marking    The marking to look for
+    * @return           The id number of the marking
+    */
+   public int findOrAdd(int[] marking) {
+      return findOrAdd(marking, hasher.hash(marking));
+   }
+
+
+   /**
+    * findOrAdd()
+    * As above, for a marking whose hash is already known.
+    * @param hash       The hash of the marking
+    */
+   public int findOrAdd(int[] marking, long hash) {
+      int slot = probe(marking, hash);
+
+      int length = ((slot - home(hash)) & mask) + 1;
+      lookups++;
+      probes += length;
+      if (length > maxprobelength) {
+         maxprobelength = length;
+      }
+      if (slots[slot] != EMPTY) {
+         return slots[slot];
+      }
+
+      int id = size;
+      ensureArenaCapacity(id + 1);
+      System.arraycopy(marking, 0, arena, id * statesize, statesize);
+      hashes[id] = hash;
+      slots[slot] = id;
+      size++;
+
+      if (size > threshold) {
+         rehash(slots.length << 1);
+      }
+      return id;
+   }
+
+
+   /**
+    * getMarking()
+    * @param id   The id number of an explored state
+    * @return     A copy of the marking of that state
+    */
+   public int[] getMarking(int id) {
+      int[] marking = new int[statesize];
+      System.arraycopy(arena, id * statesize, marking, 0, statesize);
+      return marking;
+   }
+
+
+   public MarkingHash getMarkingHash() {
+      return hasher;
+   }
+
+
+   public int size() {
+      return size;
+   }
+
+
+   public int getCapacity() {
+      return slots.length;
+   }
+
+
+   public double getLoadFactor() {
+      return (double)size / slots.length;
+   }
+
+
+   /**
+    * getAverageProbeLength()
+    * @return   The average number of slots looked at per call to findOrAdd()
+    */
+   public double getAverageProbeLength() {
+      if (lookups == 0) {
+         return 0.0;
+      }
+      return (double)probes / lookups;
+   }
+
+
+   public int getMaxProbeLength() {
+      return maxprobelength;
+   }
+
+
+   /**
+    * getMemoryUsage()
+    * @return   An estimate of the number of bytes held by the table
+    */
+   public long getMemoryUsage() {
+      return 4L * ((long)slots.length + arena.length) + 8L * hashes.length;
+   }
+
+
+   public String getStatistics() {
+      DecimalFormat f = new DecimalFormat();
+      f.setMaximumFractionDigits(3);
+      return "Explored state table: " + size + " states, " + slots.length +
+              " slots, load factor " + f.format(getLoadFactor()) +
+              ", average probe length " + f.format(getAverageProbeLength()) +
+              ", longest probe " + maxprobelength + ", " +
+              (getMemoryUsage() / 1024) + "KB.";
+   }
+
+
+   /**
+    * probe()
+    * Walks the probe sequence for a marking.
+    * @return   The slot holding the marking, or the empty slot that ends its
+    *           probe sequence if it isn't in the table
+    */
+   private int probe(int[] marking, long hash) {
+      int slot = home(hash);
+
+      while (slots[slot] != EMPTY) {
+         int id = slots[slot];
+         if (hashes[id] == hash && sameMarking(marking, id)) {
+            break;
+         }
+         slot = (slot + 1) & mask;
+      }
+      return slot;
+   }
+
+
+   private boolean sameMarking(int[] marking, int id) {
+      int offset = id * statesize;
+      for (int i = 0; i < statesize; i++) {
+         if (arena[offset + i] != marking[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+
+   /**
+    * home()
+    * @return   The first slot in the probe sequence for a hash. MarkingHash
+    *           mixes every bit of its hashes so the low bits will do.
+    */
+   private int home(long hash) {
+      return (int)hash & mask;
+   }
+
+
+   private void allocateSlots(int capacity) {
+      slots = new int[capacity];
+      Arrays.fill(slots, EMPTY);
+      mask = capacity - 1;
+      threshold = (int)(capacity * MAXLOADFACTOR);
+   }
+
+
+   private void rehash(int capacity) {
+      if (capacity <= 0) {
+         throw new OutOfMemoryError("The explored state table cannot grow " +
+                 "beyond " + size + " states.");
+      }
+      allocateSlots(capacity);
+      for (int id = 0; id < size; id++) {
+         int slot = home(hashes[id]);
+         while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+         }
+         slots[slot] = id;
+      }
+   }
+
+
+   private void ensureArenaCapacity(int states) {
+      if (states > hashes.length) {
+         int newlength = hashes.length << 1;
+         if (newlength <= 0) {
+            newlength = Integer.MAX_VALUE - 8;
+         }
+         long[] newhashes = new long[newlength];
+         System.arraycopy(hashes, 0, newhashes, 0, size);
+         hashes = newhashes;
+      }
+      long needed = (long)states * statesize;
+      if (needed > arena.length) {
+         long newlength = Math.max(needed, 2L * arena.length);
+         if (newlength > Integer.MAX_VALUE - 8) {
+            if (needed > Integer.MAX_VALUE - 8) {
+               throw new OutOfMemoryError("The explored states no longer fit " +
+                       "in the state table after " + size + " states.");
+            }
+            newlength = Integer.MAX_VALUE - 8;
+         }
+         int[] newarena = new int[(int)newlength];
+         System.arraycopy(arena, 0, newarena, 0, size * statesize);
+         arena = newarena;
+      }
+   }
+
+}
@@ -0,0 +1,712 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+import pipe.dataLayer.DataLayer;
+import pipe.io.ImmediateAbortException;
+import pipe.io.RGFileWriter;
+
+
+/**
+ * Generates the reachability graph of a GSPN in the same way as
+ * StateSpaceGenerator, but keeps the explored states on disk rather than on
+ * the heap, so the size of the state space is limited by disk space instead
+ * of memory.
+ *
+ * The state space is explored one breadth first layer at a time using delayed
+ * duplicate detection. The tangible successors of every state in the current
+ * layer are collected in a buffer, and whenever the buffer fills up it is
+ * sorted by marking and written out as a run. Once the whole layer has been
+ * expanded the runs are merged, which brings together all the arcs into each
+ * marking, and the merged stream is checked against the runs of states
+ * explored in earlier layers. Those are sorted by marking too, so one
+ * sequential pass over each of them is enough. Markings not found are new:
+ * they are given the next id numbers and make up the next layer. When there
+ * are more than MAXVISITEDRUNS runs of explored states they are merged into
+ * one.
+ *
+ * The states are numbered in a different order from StateSpaceGenerator, but
+ * the file written is an ordinary reachability graph file which
+ * SteadyStateSolver and StateList read as usual. The initial tangible states
+ * are numbered in order of their markings rather than in the order they are
+ * reached, so StateSpaceGenerator.initialDistribution() does not fit them;
+ * generate() returns the initial distribution in its own numbering instead. The states are written to it
+ * as they are numbered. The arcs come out of each merge in order of the state
+ * they go to, and RGFileWriter puts them in order of the state they are from
+ * when the file is finished.
+ */
+public class ExternalStateSpaceGenerator {
+
+   // The most runs of explored states kept before they are merged into one
+   private static final int MAXVISITEDRUNS = 16;
+
+   // The size of the buffer used for each file read or written
+   private static final int BUFFERSIZE = 1 << 16;
+
+   // The fewest successors the buffer holds, however small the budget
+   private static final int MINBUFFERRECORDS = 1 << 10;
+
+   private final int statesize;
+   private final SuccessorGenerator successors;
+   private final CandidateBuffer candidates;
+
+   // Every temporary file made, so that they can all be deleted at the end
+   private final ArrayList tempfiles = new ArrayList();
+
+   // Runs of explored states, each sorted by marking
+   private ArrayList visitedruns = new ArrayList();
+
+   // The states of the next layer to expand, and how many there are
+   private File frontier;
+   private int frontiersize = 0;
+
+   // The reachability graph file, holding the tangible states found, in id
+   // order, and the arcs between them
+   private RGFileWriter rgfile;
+
+   private int numstates = 0;
+   private int numtransitions = 0;
+
+   // The probability of starting in each initial tangible state, by id
+   private double[] initialdistribution;
+
+
+   private ExternalStateSpaceGenerator(DataLayer pnmlData, int statearraysize,
+           long memorybudget) {
+      statesize = statearraysize;
+      successors = new SuccessorGenerator(new CompiledNet(pnmlData));
+      candidates = new CandidateBuffer(memorybudget);
+   }
+
+
+   /**
+    * generate()
+    * Generates the reachability graph of a GSPN and writes it to a file.
+    * @param pnmlData       The net to explore
+    * @param reachGraph     The reachability graph file to write
+    * @param memorybudget   Roughly the most bytes to use for sorting the
+    *                       successors of each layer
+    * @return               The probability of starting in the state with each
+    *                       id number, up to the last initial tangible state
+    * @throws TimelessTrapException
+    * @throws ImmediateAbortException
+    * @throws IOException
+    */
+   public static double[] generate(DataLayer pnmlData, File reachGraph,
+           long memorybudget) throws TimelessTrapException,
+           ImmediateAbortException, IOException {
+      int[] initial = pnmlData.getCurrentMarkingVector();
+      ExternalStateSpaceGenerator generator =
+              new ExternalStateSpaceGenerator(pnmlData, initial.length,
+                                              memorybudget);
+      generator.run(initial, reachGraph);
+      return generator.initialdistribution;
+   }
+
+
+   private void run(int[] initial, File reachGraph)
+           throws TimelessTrapException, ImmediateAbortException,
+           IOException {
+      rgfile = new RGFileWriter(reachGraph, statesize, false, false);
+      try {
+         System.out.println("Beginning Phase I: " +
+                            "Determining initial tangible states...");
+         // The initial tangible states are merged like any other layer, with
+         // no arcs into them
+         if (successors.isTangible(initial)) {
+            candidates.add(initial, -1, 0.0);
+            initialdistribution = new double[] {1.0};
+         } else {
+            SuccessorList initialstates = new SuccessorList();
+            successors.eliminateVanishing(initial, 1.0, -1, initialstates);
+            for (int i = 0; i < initialstates.size(); i++) {
+               candidates.add(initialstates.getMarking(i), -1, 0.0);
+            }
+            initialdistribution = initialDistribution(initialstates);
+         }
+         mergeLayer();
+
+         System.out.println("Beginning Phase II: Exploring state space...");
+         int layer = 0;
+         while (frontiersize > 0) {
+            layer++;
+            expandLayer();
+            int newstates = mergeLayer();
+            System.out.println("Layer " + layer + ": " + newstates +
+                               " new states, " + numstates +
+                               " tangible states and " + numtransitions +
+                               " arcs so far.");
+         }
+
+         System.out.println("Generate Ends, " + numstates +
+                            " tangible states found with " + numtransitions +
+                            " arcs.");
+         System.out.println("Creating reachability graph, please wait...");
+         rgfile.close();
+      } finally {
+         // Does nothing if the file has been finished
+         rgfile.abort();
+         Iterator files = tempfiles.iterator();
+         while (files.hasNext()) {
+            File file = (File)files.next();
+            if (file.exists() && !file.delete()) {
+               System.err.println("Could not delete temporary file " +
+                                  file + ".");
+            }
+         }
+      }
+   }
+
+
+   /**
+    * initialDistribution()
+    * Works out the probability of starting in each initial tangible state.
+    * The first merge numbers them in order of their markings, so the
+    * probabilities are added up in that order, with those of a marking
+    * reached more than once put together.
+    * @param initialstates  The tangible states reached from a vanishing
+    *                       initial marking, with their probabilities
+    * @return               The probability of starting in the state with each
+    *                       id number
+    */
+   private static double[] initialDistribution(
+           final SuccessorList initialstates) {
+      Integer[] order = new Integer[initialstates.size()];
+      for (int i = 0; i < order.length; i++) {
+         order[i] = new Integer(i);
+      }
+      Arrays.sort(order, new Comparator() {
+         public int compare(Object o1, Object o2) {
+            return compareMarkings(
+                    initialstates.getMarking(((Integer)o1).intValue()),
+                    initialstates.getMarking(((Integer)o2).intValue()));
+         }
+      });
+
+      double[] probabilities = new double[order.length];
+      int numinitial = 0;
+      int[] previous = null;
+      for (int k = 0; k < order.length; k++) {
+         int i = order[k].intValue();
+         int[] marking = initialstates.getMarking(i);
+         if ((previous == null) || (compareMarkings(marking, previous) != 0)) {
+            numinitial++;
+            previous = marking;
+         }
+         probabilities[numinitial - 1] += initialstates.getRate(i);
+      }
+      double[] result = new double[numinitial];
+      System.arraycopy(probabilities, 0, result, 0, numinitial);
+      return result;
+   }
+
+
+   /**
+    * expandLayer()
+    * Works out the tangible successors of every state in the frontier and
+    * adds them to the candidate buffer.
+    * @throws TimelessTrapException
+    * @throws IOException
+    */
+   private void expandLayer() throws TimelessTrapException, IOException {
+      DataInputStream input = openInput(frontier);
+      int[] marking = new int[statesize];
+      SuccessorList succ = new SuccessorList();
+
+      try {
+         for (int s = 0; s < frontiersize; s++) {
+            int id = input.readInt();
+            readMarking(input, marking);
+            successors.expand(marking, succ);
+            for (int i = 0; i < succ.size(); i++) {
+               candidates.add(succ.getMarking(i), id, succ.getRate(i));
+            }
+            succ.clear();
+         }
+      } finally {
+         input.close();
+      }
+      frontier.delete();
+   }
+
+
+   /**
+    * mergeLayer()
+    * Merges the runs of candidate successors, gives every marking not
+    * explored before an id number and records the arcs into each marking.
+    * The new markings become the frontier and a new run of explored states.
+    * @return   The number of new states found
+    * @throws ImmediateAbortException
+    * @throws IOException
+    */
+   private int mergeLayer() throws ImmediateAbortException, IOException {
+      ArrayList runfiles = candidates.finish();
+      PriorityQueue merge = new PriorityQueue(Math.max(1, runfiles.size()),
+              CANDIDATEORDER);
+      VisitedRun[] visited = new VisitedRun[visitedruns.size()];
+      File newfrontier = createTempFile();
+      File newvisited = createTempFile();
+      DataOutputStream frontierout = openOutput(newfrontier);
+      DataOutputStream visitedout = openOutput(newvisited);
+      int newstates = 0;
+
+      try {
+         for (int i = 0; i < runfiles.size(); i++) {
+            CandidateRun run = new CandidateRun((File)runfiles.get(i));
+            if (run.next()) {
+               merge.add(run);
+            } else {
+               run.close();
+            }
+         }
+         for (int i = 0; i < visited.length; i++) {
+            visited[i] = new VisitedRun((File)visitedruns.get(i));
+            visited[i].next();
+         }
+
+         int[] current = new int[statesize];
+         int currentid = -1;
+         int from = -1;
+         double rate = 0.0;
+         while (!merge.isEmpty()) {
+            CandidateRun run = (CandidateRun)merge.poll();
+            if ((currentid == -1) ||
+                    (compareMarkings(run.marking, current) != 0)) {
+               if (from != -1) {
+                  writeArc(from, currentid, rate);
+               }
+               from = -1;
+               System.arraycopy(run.marking, 0, current, 0, statesize);
+               currentid = findVisited(visited, current);
+               if (currentid == -1) {
+                  if (numstates == Integer.MAX_VALUE) {
+                     throw new ImmediateAbortException("The state space has " +
+                             "too many states to number.");
+                  }
+                  currentid = numstates++;
+                  newstates++;
+                  writeState(visitedout, current, currentid);
+                  writeState(frontierout, current, currentid);
+                  rgfile.writeState(current);
+               }
+            }
+            // The arcs into a marking come out of the merge in order of the
+            // state they are from, so those from the same state are adjacent
+            if (run.from != -1) {
+               if (run.from == from) {
+                  rate += run.rate;
+               } else {
+                  if (from != -1) {
+                     writeArc(from, currentid, rate);
+                  }
+                  from = run.from;
+                  rate = run.rate;
+               }
+            }
+            if (run.next()) {
+               merge.add(run);
+            } else {
+               run.close();
+            }
+         }
+         if (from != -1) {
+            writeArc(from, currentid, rate);
+         }
+      } finally {
+         while (!merge.isEmpty()) {
+            ((CandidateRun)merge.poll()).close();
+         }
+         for (int i = 0; i < visited.length; i++) {
+            if (visited[i] != null) {
+               visited[i].close();
+            }
+         }
+         frontierout.close();
+         visitedout.close();
+         for (int i = 0; i < runfiles.size(); i++) {
+            ((File)runfiles.get(i)).delete();
+         }
+      }
+
+      frontier = newfrontier;
+      frontiersize = newstates;
+      if (newstates > 0) {
+         visitedruns.add(newvisited);
+         if (visitedruns.size() > MAXVISITEDRUNS) {
+            compactVisitedRuns();
+         }
+      } else {
+         newvisited.delete();
+      }
+      return newstates;
+   }
+
+
+   /**
+    * findVisited()
+    * Looks for a marking in the runs of explored states. The markings must
+    * be looked for in increasing order, as each run is only read forwards.
+    * @return   The id number of the marking, or -1 if it is not in any run
+    */
+   private int findVisited(VisitedRun[] visited, int[] marking)
+           throws IOException {
+      for (int i = 0; i < visited.length; i++) {
+         VisitedRun run = visited[i];
+         while (run.hasRecord && (compareMarkings(run.marking, marking) < 0)) {
+            run.next();
+         }
+         if (run.hasRecord && (compareMarkings(run.marking, marking) == 0)) {
+            return run.id;
+         }
+      }
+      return -1;
+   }
+
+
+   /**
+    * compactVisitedRuns()
+    * Merges all the runs of explored states into a single run.
+    */
+   private void compactVisitedRuns() throws IOException {
+      PriorityQueue merge = new PriorityQueue(visitedruns.size(),
+              VISITEDORDER);
+      File compacted = createTempFile();
+      DataOutputStream output = openOutput(compacted);
+
+      try {
+         for (int i = 0; i < visitedruns.size(); i++) {
+            VisitedRun run = new VisitedRun((File)visitedruns.get(i));
+            if (run.next()) {
+               merge.add(run);
+            } else {
+               run.close();
+            }
+         }
+         while (!merge.isEmpty()) {
+            VisitedRun run = (VisitedRun)merge.poll();
+            writeState(output, run.marking, run.id);
+            if (run.next()) {
+               merge.add(run);
+            } else {
+               run.close();
+            }
+         }
+      } finally {
+         while (!merge.isEmpty()) {
+            ((VisitedRun)merge.poll()).close();
+         }
+         output.close();
+      }
+
+      for (int i = 0; i < visitedruns.size(); i++) {
+         ((File)visitedruns.get(i)).delete();
+      }
+      visitedruns = new ArrayList();
+      visitedruns.add(compacted);
+   }
+
+
+   private void writeArc(int from, int to, double rate) throws IOException {
+      rgfile.writeTransition(from, to, rate, 0);
+      numtransitions++;
+   }
+
+
+   private File createTempFile() throws IOException {
+      File file = File.createTempFile("statespace", ".run");
+      file.deleteOnExit();
+      tempfiles.add(file);
+      return file;
+   }
+
+
+   private static DataOutputStream openOutput(File file) throws IOException {
+      return new DataOutputStream(new BufferedOutputStream(
+              new FileOutputStream(file), BUFFERSIZE));
+   }
+
+
+   private static DataInputStream openInput(File file) throws IOException {
+      return new DataInputStream(new BufferedInputStream(
+              new FileInputStream(file), BUFFERSIZE));
+   }
+
+
+   private void writeState(DataOutputStream output, int[] marking, int id)
+           throws IOException {
+      output.writeInt(id);
+      writeMarking(output, marking);
+   }
+
+
+   private void writeMarking(DataOutputStream output, int[] marking)
+           throws IOException {
+      for (int p = 0; p < statesize; p++) {
+         output.writeInt(marking[p]);
+      }
+   }
+
+
+   private void readMarking(DataInputStream input, int[] marking)
+           throws IOException {
+      for (int p = 0; p < statesize; p++) {
+         marking[p] = input.readInt();
+      }
+   }
+
+
+   /**
+    * compareMarkings()
+    * The order runs are sorted in, comparing the places one by one.
+    */
+   private static int compareMarkings(int[] a, int[] b) {
+      for (int p = 0; p < a.length; p++) {
+         if (a[p] != b[p]) {
+            return (a[p] < b[p]) ? -1 : 1;
+         }
+      }
+      return 0;
+   }
+
+
+   private static final Comparator CANDIDATEORDER = new Comparator() {
+      public int compare(Object o1, Object o2) {
+         CandidateRun a = (CandidateRun)o1;
+         CandidateRun b = (CandidateRun)o2;
+         int order = compareMarkings(a.marking, b.marking);
+         if (order == 0 && a.from != b.from) {
+            order = (a.from < b.from) ? -1 : 1;
+         }
+         return order;
+      }
+   };
+
+
+   private static final Comparator VISITEDORDER = new Comparator() {
+      public int compare(Object o1, Object o2) {
+         return compareMarkings(((VisitedRun)o1).marking,
+                                ((VisitedRun)o2).marking);
+      }
+   };
+
+
+   /**
+    * Holds the successors found while a layer is expanded, each with the id
+    * of the state it is a successor of and the rate of the arc, and writes
+    * them out as sorted runs. The records are packed into an int array: the
+    * marking, the id and then the two halves of the rate.
+    */
+   private class CandidateBuffer {
+
+      private final int recordsize;
+      private final int capacity;
+      private final int[] records;
+      private final int[] order;
+      private final int[] scratch;
+      private int count = 0;
+      private ArrayList runs = new ArrayList();
+
+
+      CandidateBuffer(long memorybudget) {
+         recordsize = statesize + 3;
+         // The records, plus the two ints per record used for sorting
+         long bytesperrecord = 4L * (recordsize + 2);
+         capacity = (int)Math.min((Integer.MAX_VALUE - 8) / recordsize,
+                 Math.max(MINBUFFERRECORDS, memorybudget / bytesperrecord));
+         records = new int[capacity * recordsize];
+         order = new int[capacity];
+         scratch = new int[capacity];
+      }
+
+
+      void add(int[] marking, int from, double rate) throws IOException {
+         if (count == capacity) {
+            flush();
+         }
+         int offset = count * recordsize;
+         System.arraycopy(marking, 0, records, offset, statesize);
+         long bits = Double.doubleToLongBits(rate);
+         records[offset + statesize] = from;
+         records[offset + statesize + 1] = (int)(bits >>> 32);
+         records[offset + statesize + 2] = (int)bits;
+         count++;
+      }
+
+
+      /**
+       * finish()
+       * Writes out whatever is left in the buffer.
+       * @return   The runs written since finish() was last called
+       */
+      ArrayList finish() throws IOException {
+         if (count > 0) {
+            flush();
+         }
+         ArrayList finished = runs;
+         runs = new ArrayList();
+         return finished;
+      }
+
+
+      private void flush() throws IOException {
+         sort();
+         File run = createTempFile();
+         DataOutputStream output = openOutput(run);
+         try {
+            for (int i = 0; i < count; i++) {
+               int offset = order[i] * recordsize;
+               for (int k = 0; k < recordsize; k++) {
+                  output.writeInt(records[offset + k]);
+               }
+            }
+         } finally {
+            output.close();
+         }
+         runs.add(run);
+         count = 0;
+      }
+
+
+      /**
+       * sort()
+       * Sorts the indices of the records by marking and then by the state
+       * they are from, using a bottom up merge sort.
+       */
+      private void sort() {
+         for (int i = 0; i < count; i++) {
+            order[i] = i;
+         }
+         for (int width = 1; width < count; width <<= 1) {
+            for (int lo = 0; lo < count - width; lo += width << 1) {
+               int mid = lo + width;
+               int hi = Math.min(mid + width, count);
+               int i = lo;
+               int j = mid;
+               int k = lo;
+               while ((i < mid) && (j < hi)) {
+                  if (compareRecords(order[i], order[j]) <= 0) {
+                     scratch[k++] = order[i++];
+                  } else {
+                     scratch[k++] = order[j++];
+                  }
+               }
+               while (i < mid) {
+                  scratch[k++] = order[i++];
+               }
+               while (j < hi) {
+                  scratch[k++] = order[j++];
+               }
+               System.arraycopy(scratch, lo, order, lo, hi - lo);
+            }
+         }
+      }
+
+
+      private int compareRecords(int a, int b) {
+         int offseta = a * recordsize;
+         int offsetb = b * recordsize;
+         // The places and then the id of the state the record is from
+         for (int k = 0; k <= statesize; k++) {
+            int x = records[offseta + k];
+            int y = records[offsetb + k];
+            if (x != y) {
+               return (x < y) ? -1 : 1;
+            }
+         }
+         return 0;
+      }
+
+   }
+
+
+   /**
+    * Reads back a sorted run of successors written by CandidateBuffer.
+    */
+   private class CandidateRun {
+
+      final int[] marking = new int[statesize];
+      int from;
+      double rate;
+      private final DataInputStream input;
+      private long remaining;
+
+
+      CandidateRun(File run) throws IOException {
+         remaining = run.length() / (4L * (statesize + 3));
+         input = openInput(run);
+      }
+
+
+      boolean next() throws IOException {
+         if (remaining == 0) {
+            return false;
+         }
+         readMarking(input, marking);
+         from = input.readInt();
+         rate = input.readDouble();
+         remaining--;
+         return true;
+      }
+
+
+      void close() throws IOException {
+         input.close();
+      }
+
+   }
+
+
+   /**
+    * Reads back a sorted run of explored states, each marking followed by its
+    * id number.
+    */
+   private class VisitedRun {
+
+      final int[] marking = new int[statesize];
+      int id;
+      boolean hasRecord = false;
+      private final DataInputStream input;
+      private long remaining;
+
+
+      VisitedRun(File run) throws IOException {
+         remaining = run.length() / (4L * (statesize + 1));
+         input = openInput(run);
+      }
+
+
+      boolean next() throws IOException {
+         if (remaining == 0) {
+            hasRecord = false;
+            return false;
+         }
+         id = input.readInt();
+         readMarking(input, marking);
+         remaining--;
+         hasRecord = true;
+         return true;
+      }
+
+
+      void close() throws IOException {
+         input.close();
+      }
+
+   }
+
+}
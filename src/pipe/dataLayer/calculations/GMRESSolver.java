@@ -0,0 +1,144 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * Solves for the steady state distribution with the generalised minimal
+ * residual method, preconditioned with the diagonal and restarted every
+ * so many iterations to bound the number of vectors kept.
+ */
+public class GMRESSolver
+        extends KrylovSolver {
+
+   private int restart = 30;
+
+
+   public String getName() {
+      return "GMRES(" + restart + ")";
+   }
+
+
+   public int getRestart() {
+      return restart;
+   }
+
+
+   /**
+    * setRestart()
+    * @param restart    The number of iterations between restarts, which is
+    *                   also the number of vectors kept besides the solution
+    */
+   public void setRestart(int restart) {
+      this.restart = restart;
+   }
+
+
+   protected double[] run(SparseMatrix Qt) throws NotConvergingException {
+      int n = Qt.getNumRows();
+      int m = restart;
+      double maxrate = Math.max(maxRate(Qt), Double.MIN_VALUE);
+      double[] x = initialGuess(Qt);
+      double[][] V = new double[m + 1][];
+      double[][] H = new double[m + 1][m];
+      double[] cs = new double[m];
+      double[] sn = new double[m];
+      double[] g = new double[m + 1];
+      double[] y = new double[m];
+      double[] z = new double[n];
+      double[] w = new double[n];
+
+      while (true) {
+         if (V[0] == null) {
+            V[0] = new double[n];
+         }
+         residual(Qt, x, V[0]);
+         double beta = norm(V[0]);
+         if (beta == 0.0) {
+            if (verify(Qt, x)) {
+               return x;
+            }
+            throw new NotConvergingException(getName() + " has broken down.");
+         }
+         for (int i = 0; i < n; i++) {
+            V[0][i] /= beta;
+         }
+         g[0] = beta;
+         for (int i = 1; i <= m; i++) {
+            g[i] = 0.0;
+         }
+
+         int k = 0;
+         boolean done = false;
+         while (!done && (k < m)) {
+            int j = k;
+            precondition(Qt, V[j], z);
+            multiply(Qt, z, w);
+            // Modified Gram-Schmidt
+            for (int i = 0; i <= j; i++) {
+               H[i][j] = dot(w, V[i]);
+               for (int e = 0; e < n; e++) {
+                  w[e] -= H[i][j] * V[i][e];
+               }
+            }
+            H[j + 1][j] = norm(w);
+            if (H[j + 1][j] != 0.0) {
+               if (V[j + 1] == null) {
+                  V[j + 1] = new double[n];
+               }
+               for (int e = 0; e < n; e++) {
+                  V[j + 1][e] = w[e] / H[j + 1][j];
+               }
+            }
+            // Bring the new column into upper triangular form
+            for (int i = 0; i < j; i++) {
+               double temp = cs[i] * H[i][j] + sn[i] * H[i + 1][j];
+               H[i + 1][j] = -sn[i] * H[i][j] + cs[i] * H[i + 1][j];
+               H[i][j] = temp;
+            }
+            double radius = Math.sqrt(H[j][j] * H[j][j] +
+                    H[j + 1][j] * H[j + 1][j]);
+            if (radius == 0.0) {
+               cs[j] = 1.0;
+               sn[j] = 0.0;
+            } else {
+               cs[j] = H[j][j] / radius;
+               sn[j] = H[j + 1][j] / radius;
+            }
+            double lucky = H[j + 1][j];
+            H[j][j] = radius;
+            H[j + 1][j] = 0.0;
+            g[j + 1] = -sn[j] * g[j];
+            g[j] = cs[j] * g[j];
+            k++;
+            done = converged(Math.abs(g[k]) / maxrate) || (lucky == 0.0);
+         }
+
+         // Solve the triangular system and update the solution
+         for (int i = k - 1; i >= 0; i--) {
+            double sum = g[i];
+            for (int l = i + 1; l < k; l++) {
+               sum -= H[i][l] * y[l];
+            }
+            y[i] = (H[i][i] != 0.0) ? sum / H[i][i] : 0.0;
+         }
+         for (int e = 0; e < n; e++) {
+            w[e] = 0.0;
+         }
+         for (int i = 0; i < k; i++) {
+            for (int e = 0; e < n; e++) {
+               w[e] += y[i] * V[i][e];
+            }
+         }
+         precondition(Qt, w, z);
+         for (int e = 0; e < n; e++) {
+            x[e] += z[e];
+         }
+         if (verify(Qt, x)) {
+            return x;
+         }
+      }
+   }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * Solves for the steady state distribution with the Gauss-Seidel method, each
+ * element of pi being worked out in turn from the newest values of the others.
+ * A state with no way out keeps whatever value it has.
+ */
+public class GaussSeidelSolver
+        extends LinearSolver {
+
+
+   public GaussSeidelSolver() {
+      checkInterval = 10;
+   }
+
+
+   public String getName() {
+      return "Gauss-Seidel";
+   }
+
+
+   protected double[] run(SparseMatrix Qt) throws NotConvergingException {
+      double[] x = initialGuess(Qt);
+      do {
+         sweep(Qt, x, 1.0);
+      } while (!converged(Qt, x));
+      return x;
+   }
+
+
+   /**
+    * initialGuess()
+    * @return   A vector of ones, as used by the original solver
+    */
+   static double[] initialGuess(SparseMatrix Qt) {
+      double[] x = new double[Qt.getNumRows()];
+      for (int i = 0; i < x.length; i++) {
+         x[i] = 1.0;
+      }
+      return x;
+   }
+
+
+   /**
+    * sweep()
+    * Does one iteration of successive over relaxation, which with a
+    * relaxation factor of 1 is a Gauss-Seidel iteration.
+    * @param Qt     The transpose of the generator matrix
+    * @param x      The solution, updated in place
+    * @param omega  The relaxation factor
+    */
+   static void sweep(SparseMatrix Qt, double[] x, double omega) {
+      int[] rowstarts = Qt.rowstarts;
+      int[] columns = Qt.columns;
+      double[] values = Qt.values;
+      double[] diagonal = Qt.diagonal;
+      int numrows = Qt.getNumRows();
+      for (int row = 0; row < numrows; row++) {
+         double sum = 0.0;
+         for (int i = rowstarts[row]; i < rowstarts[row + 1]; i++) {
+            sum += values[i] * x[columns[i]];
+         }
+         double aii = diagonal[row];
+         if (aii != 0.0) {
+            x[row] = (1.0 - omega) * x[row] + omega * ((0.0 - sum) / aii);
+         }
+      }
+   }
+
+}
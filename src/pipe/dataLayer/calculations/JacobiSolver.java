@@ -0,0 +1,52 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * Solves for the steady state distribution with the Jacobi method, every
+ * element of pi being worked out from the values of the last iteration. It
+ * needs a second vector, and converges more slowly than Gauss-Seidel, but
+ * the elements of an iteration do not depend on one another. On a periodic
+ * chain it can swap between values for ever instead of converging.
+ */
+public class JacobiSolver
+        extends LinearSolver {
+
+
+   public JacobiSolver() {
+      checkInterval = 10;
+   }
+
+
+   public String getName() {
+      return "Jacobi";
+   }
+
+
+   protected double[] run(SparseMatrix Qt) throws NotConvergingException {
+      int[] rowstarts = Qt.rowstarts;
+      int[] columns = Qt.columns;
+      double[] values = Qt.values;
+      double[] diagonal = Qt.diagonal;
+      int numrows = Qt.getNumRows();
+      double[] x = GaussSeidelSolver.initialGuess(Qt);
+      double[] next = new double[numrows];
+      do {
+         for (int row = 0; row < numrows; row++) {
+            double sum = 0.0;
+            for (int i = rowstarts[row]; i < rowstarts[row + 1]; i++) {
+               sum += values[i] * x[columns[i]];
+            }
+            next[row] = (diagonal[row] != 0.0) ? (0.0 - sum) / diagonal[row]
+                                               : x[row];
+         }
+         double[] swap = x;
+         x = next;
+         next = swap;
+      } while (!converged(Qt, x));
+      return x;
+   }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * The common part of the Krylov subspace solvers. The singular system
+ * pi Q = 0 is turned into a nonsingular one by putting the condition that the
+ * elements of pi sum to 1 in place of the last equation, so that it becomes
+ * A x = b with b zero but for a 1 at the end. The last row of A is never
+ * stored: multiply() works it out as the sum of x. The solvers precondition
+ * with the diagonal of A.
+ *
+ * This only gives a nonsingular system when the chain has a single closed
+ * class of states, so these solvers are not chosen for chains with absorbing
+ * states.
+ */
+abstract class KrylovSolver
+        extends LinearSolver {
+
+
+   /**
+    * multiply()
+    * Works out y = Ax.
+    */
+   static void multiply(SparseMatrix Qt, double[] x, double[] y) {
+      Qt.multiply(x, y);
+      int last = x.length - 1;
+      double sum = 0.0;
+      for (int i = 0; i < x.length; i++) {
+         sum += x[i];
+      }
+      y[last] = sum;
+   }
+
+
+   /**
+    * residual()
+    * Works out r = b - Ax.
+    */
+   static void residual(SparseMatrix Qt, double[] x, double[] r) {
+      multiply(Qt, x, r);
+      for (int i = 0; i < r.length; i++) {
+         r[i] = 0.0 - r[i];
+      }
+      r[r.length - 1] += 1.0;
+   }
+
+
+   /**
+    * precondition()
+    * Works out y = M^-1 x, where M is the diagonal of A.
+    */
+   static void precondition(SparseMatrix Qt, double[] x, double[] y) {
+      int last = x.length - 1;
+      for (int i = 0; i < last; i++) {
+         double d = Qt.diagonal[i];
+         y[i] = (d != 0.0) ? x[i] / d : x[i];
+      }
+      y[last] = x[last];
+   }
+
+
+   /**
+    * initialGuess()
+    * @return   The uniform distribution
+    */
+   static double[] initialGuess(SparseMatrix Qt) {
+      double[] x = new double[Qt.getNumRows()];
+      for (int i = 0; i < x.length; i++) {
+         x[i] = 1.0 / x.length;
+      }
+      return x;
+   }
+
+
+   static double dot(double[] x, double[] y) {
+      double sum = 0.0;
+      for (int i = 0; i < x.length; i++) {
+         sum += x[i] * y[i];
+      }
+      return sum;
+   }
+
+
+   static double norm(double[] x) {
+      return Math.sqrt(dot(x, x));
+   }
+
+}
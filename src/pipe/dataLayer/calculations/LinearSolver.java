@@ -0,0 +1,280 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * A method of solving for the steady state distribution pi of a continuous
+ * time Markov chain, that is pi Q = 0 with the elements of pi summing to 1.
+ * The solvers are given the transpose of the generator matrix Q, which is what
+ * SparseMatrix.createGenerator(rgfile, true) returns, so that each row of the
+ * matrix they work on holds one equation.
+ *
+ * Every solver stops once the largest element of pi Q, with pi normalised, is
+ * no more than the tolerance times the largest exit rate of any state, and
+ * gives up with a NotConvergingException after the iteration limit. The
+ * residual is recorded each time it is checked, so that how the method
+ * converged can be looked at afterwards.
+ */
+public abstract class LinearSolver {
+
+   protected double tolerance = 1e-8;
+   protected int maxIterations = 10000;
+   // How many iterations go by between checks of the residual
+   protected int checkInterval = 1;
+
+   private double[] history = new double[16];
+   private int numChecks = 0;
+   private int iterations = 0;
+
+
+   /**
+    * solve()
+    * Works out the steady state distribution.
+    * @param Qt     The transpose of the generator matrix
+    * @return       The steady state distribution, normalised
+    * @throws NotConvergingException if the method has not converged within
+    *               the iteration limit
+    */
+   public final double[] solve(SparseMatrix Qt) throws NotConvergingException {
+      start();
+      return finish(run(Qt));
+   }
+
+
+   /**
+    * start()
+    * Clears the iteration count and residuals of the last solve.
+    */
+   protected final void start() {
+      numChecks = 0;
+      iterations = 0;
+   }
+
+
+   /**
+    * finish()
+    * @param x      A solution, which need not be normalised
+    * @return       x, normalised
+    */
+   protected static double[] finish(double[] x) {
+      normalise(x);
+      // Tidy up any rounding that has left a probability just below zero
+      for (int i = 0; i < x.length; i++) {
+         if (x[i] < 0.0) {
+            x[i] = 0.0;
+         }
+      }
+      normalise(x);
+      return x;
+   }
+
+
+   /**
+    * run()
+    * Does the work of solve(), calling converged() as it goes.
+    * @param Qt     The transpose of the generator matrix
+    * @return       The solution, which need not be normalised
+    * @throws NotConvergingException
+    */
+   protected abstract double[] run(SparseMatrix Qt)
+           throws NotConvergingException;
+
+
+   public abstract String getName();
+
+
+   public double getTolerance() {
+      return tolerance;
+   }
+
+
+   public void setTolerance(double tolerance) {
+      this.tolerance = tolerance;
+   }
+
+
+   public int getMaxIterations() {
+      return maxIterations;
+   }
+
+
+   public void setMaxIterations(int maxIterations) {
+      this.maxIterations = maxIterations;
+   }
+
+
+   /**
+    * getIterations()
+    * @return   The number of iterations taken by the last call to solve()
+    */
+   public int getIterations() {
+      return iterations;
+   }
+
+
+   /**
+    * getHistory()
+    * @return   The relative residual at each check made by the last call to
+    *           solve(), in order
+    */
+   public double[] getHistory() {
+      double[] result = new double[numChecks];
+      System.arraycopy(history, 0, result, 0, numChecks);
+      return result;
+   }
+
+
+   /**
+    * getResidual()
+    * @return   The last relative residual worked out, or NaN if there is none
+    */
+   public double getResidual() {
+      return (numChecks == 0) ? Double.NaN : history[numChecks - 1];
+   }
+
+
+   /**
+    * converged()
+    * Called by a solver at the end of each iteration. The residual is only
+    * worked out every checkInterval iterations.
+    * @param Qt     The transpose of the generator matrix
+    * @param x      The current solution, which need not be normalised
+    * @return       Whether x is close enough to the steady state distribution
+    * @throws NotConvergingException if the iteration limit has been reached
+    */
+   protected boolean converged(SparseMatrix Qt, double[] x)
+           throws NotConvergingException {
+      iterations++;
+      if ((iterations % checkInterval == 0) || (iterations >= maxIterations)) {
+         return check(relativeResidual(Qt, x));
+      }
+      return false;
+   }
+
+
+   /**
+    * converged()
+    * Called by a solver at the end of each iteration, when it has its own
+    * estimate of the residual. It should call verify() before stopping.
+    * @param estimate   An estimate of the relative residual
+    * @return           Whether the estimate is within the tolerance
+    * @throws NotConvergingException if the iteration limit has been reached
+    */
+   protected boolean converged(double estimate) throws NotConvergingException {
+      iterations++;
+      return check(estimate);
+   }
+
+
+   /**
+    * verify()
+    * Checks the residual of a solution without counting an iteration.
+    * @param Qt     The transpose of the generator matrix
+    * @param x      The solution, which need not be normalised
+    * @return       Whether x is close enough to the steady state distribution
+    * @throws NotConvergingException if it is not and the iteration limit has
+    *               been reached
+    */
+   protected boolean verify(SparseMatrix Qt, double[] x)
+           throws NotConvergingException {
+      return verify(relativeResidual(Qt, x));
+   }
+
+
+   /**
+    * verify()
+    * As verify() above, for a solver that works out the exact residual
+    * itself.
+    * @param residual   The relative residual of the solution
+    */
+   protected boolean verify(double residual) throws NotConvergingException {
+      return check(residual);
+   }
+
+
+   private boolean check(double residual) throws NotConvergingException {
+      record(residual);
+      if (residual <= tolerance) {
+         return true;
+      }
+      if (Double.isNaN(residual) || (iterations >= maxIterations)) {
+         throw new NotConvergingException(getName() + " has not converged" +
+                 " after " + iterations + " iterations, the residual is " +
+                 residual + ".");
+      }
+      return false;
+   }
+
+
+   /**
+    * maxRate()
+    * @param Qt     The transpose of the generator matrix
+    * @return       The largest exit rate of any state, which the residuals
+    *               are relative to
+    */
+   protected static double maxRate(SparseMatrix Qt) {
+      double maxrate = 0.0;
+      for (int row = 0; row < Qt.getNumRows(); row++) {
+         maxrate = Math.max(maxrate, -Qt.diagonal[row]);
+      }
+      return maxrate;
+   }
+
+
+   /**
+    * relativeResidual()
+    * @param Qt     The transpose of the generator matrix
+    * @param x      A solution, which need not be normalised
+    * @return       The largest element of x Q once x has been normalised,
+    *               relative to the largest exit rate, or infinity if x has
+    *               an element that is more negative than the tolerance
+    */
+   protected double relativeResidual(SparseMatrix Qt, double[] x) {
+      int n = Qt.getNumRows();
+      double sum = 0.0;
+      for (int i = 0; i < n; i++) {
+         sum += x[i];
+      }
+      if (sum == 0.0) {
+         return Double.POSITIVE_INFINITY;
+      }
+      double largest = 0.0;
+      double maxrate = 0.0;
+      for (int row = 0; row < n; row++) {
+         double r = Qt.diagonal[row] * x[row];
+         for (int i = Qt.rowstarts[row]; i < Qt.rowstarts[row + 1]; i++) {
+            r += Qt.values[i] * x[Qt.columns[i]];
+         }
+         largest = Math.max(largest, Math.abs(r));
+         maxrate = Math.max(maxrate, -Qt.diagonal[row]);
+         if (x[row] / sum < -tolerance) {
+            return Double.POSITIVE_INFINITY;
+         }
+      }
+      return (maxrate == 0.0) ? 0.0 : largest / Math.abs(sum) / maxrate;
+   }
+
+
+   protected static void normalise(double[] x) {
+      double sum = 0.0;
+      for (int i = 0; i < x.length; i++) {
+         sum += x[i];
+      }
+      for (int i = 0; i < x.length; i++) {
+         x[i] /= sum;
+      }
+   }
+
+
+   private void record(double residual) {
+      if (numChecks == history.length) {
+         double[] newhistory = new double[history.length << 1];
+         System.arraycopy(history, 0, newhistory, 0, numChecks);
+         history = newhistory;
+      }
+      history[numChecks++] = residual;
+   }
+
+}
@@ -0,0 +1,444 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * The coarsest partition of the states of a continuous time Markov chain that
+ * is both ordinarily and exactly lumpable. Within each block every state has
+ * the same total rate into each block, and the same total rate in from each
+ * block, and so the same exit rate. Nets made of identical components give
+ * chains like this, with one block for each set of states that differ only
+ * by which copy of a component is where.
+ *
+ * Being ordinarily lumpable, the blocks form a smaller chain whose steady
+ * state gives the probability of each block. Being exactly lumpable as well,
+ * the states of a block are equally likely, so the probability of each state
+ * of the original chain follows exactly, and everything worked out from it,
+ * such as the average number of tokens on each place, is unchanged.
+ *
+ * The partition is found by splitting, as in Paige and Tarjan's algorithm.
+ * Each block in turn is used as a splitter: every block is split according to
+ * the rates of its states into and out of the splitter, and the new blocks
+ * are queued as splitters. When a block that is not waiting to be a splitter
+ * is split, the largest part need not be queued, since the rates into it
+ * follow from those into the others and into the whole block. Only the
+ * states with arcs to or from the splitter are looked at, so each pass takes
+ * time in proportion to the arcs of the splitter.
+ *
+ * Rates are compared to within a ten thousand millionth of the largest exit
+ * rate, so that rates added up in different orders still match.
+ */
+public class LumpablePartition {
+
+   private static final double RESOLUTION = 1e-10;
+
+   private final int numstates;
+   // The states, each block taking up a range of the array
+   private final int[] elements;
+   // The position of each state in elements
+   private final int[] position;
+   // The block of each state
+   private final int[] block;
+   // The range of elements of each block
+   private int[] first;
+   private int[] end;
+   private int numblocks = 0;
+
+   // The rates into and out of the splitter being used
+   private final double[] out;
+   private final double[] in;
+   private final double quantum;
+
+
+   /**
+    * LumpablePartition()
+    * Works out the partition.
+    * @param Qt     The transpose of the generator matrix, as
+    *               SparseMatrix.createGenerator(rgfile, true) returns
+    */
+   public LumpablePartition(SparseMatrix Qt) {
+      numstates = Qt.getNumRows();
+      elements = new int[numstates];
+      position = new int[numstates];
+      block = new int[numstates];
+      first = new int[16];
+      end = new int[16];
+      out = new double[numstates];
+      in = new double[numstates];
+      double maxrate = LinearSolver.maxRate(Qt);
+      quantum = (maxrate > 0.0) ? maxrate * RESOLUTION : 1.0;
+      refine(Qt, Qt.transpose());
+   }
+
+
+   public int getNumBlocks() {
+      return numblocks;
+   }
+
+
+   public int getBlock(int state) {
+      return block[state];
+   }
+
+
+   public int getBlockSize(int b) {
+      return end[b] - first[b];
+   }
+
+
+   /**
+    * reduce()
+    * Works out the generator matrix of the chain of blocks. The rate from one
+    * block to another is the total rate from any one state of the first to
+    * the states of the second.
+    * @param Qt     The transpose of the generator matrix the partition was
+    *               worked out for
+    * @return       The transpose of the generator matrix of the blocks
+    */
+   public SparseMatrix reduce(SparseMatrix Qt) {
+      SparseMatrix Q = Qt.transpose();
+      double[] rate = new double[numblocks];
+      int[] targets = new int[numblocks];
+      // The arcs of the reduced chain, by the block they come from
+      int[] fromstarts = new int[numblocks + 1];
+      int[] tos = new int[16];
+      double[] rates = new double[16];
+      double[] diagonal = new double[numblocks];
+      int numarcs = 0;
+      for (int b = 0; b < numblocks; b++) {
+         int s = elements[first[b]];
+         int numtargets = 0;
+         for (int i = Q.rowstarts[s]; i < Q.rowstarts[s + 1]; i++) {
+            int c = block[Q.columns[i]];
+            if (c == b) {
+               continue;
+            }
+            if (rate[c] == 0.0) {
+               targets[numtargets++] = c;
+            }
+            rate[c] += Q.values[i];
+         }
+         if (numarcs + numtargets > tos.length) {
+            int size = Math.max(tos.length << 1, numarcs + numtargets);
+            int[] newtos = new int[size];
+            double[] newrates = new double[size];
+            System.arraycopy(tos, 0, newtos, 0, numarcs);
+            System.arraycopy(rates, 0, newrates, 0, numarcs);
+            tos = newtos;
+            rates = newrates;
+         }
+         for (int j = 0; j < numtargets; j++) {
+            int c = targets[j];
+            tos[numarcs] = c;
+            rates[numarcs++] = rate[c];
+            diagonal[b] -= rate[c];
+            rate[c] = 0.0;
+         }
+         fromstarts[b + 1] = numarcs;
+      }
+
+      // Store it by column
+      int[] rowstarts = new int[numblocks + 1];
+      for (int i = 0; i < numarcs; i++) {
+         rowstarts[tos[i] + 1]++;
+      }
+      for (int c = 0; c < numblocks; c++) {
+         rowstarts[c + 1] += rowstarts[c];
+      }
+      int[] columns = new int[numarcs];
+      double[] values = new double[numarcs];
+      int[] next = new int[numblocks];
+      System.arraycopy(rowstarts, 0, next, 0, numblocks);
+      for (int b = 0; b < numblocks; b++) {
+         for (int i = fromstarts[b]; i < fromstarts[b + 1]; i++) {
+            int element = next[tos[i]]++;
+            columns[element] = b;
+            values[element] = rates[i];
+         }
+      }
+      return new SparseMatrix(rowstarts, columns, values, diagonal);
+   }
+
+
+   /**
+    * expand()
+    * @param reduced    The steady state distribution of the blocks
+    * @return           The steady state distribution of the states, each
+    *                   state of a block having an equal share of it
+    */
+   public double[] expand(double[] reduced) {
+      double[] pi = new double[numstates];
+      for (int s = 0; s < numstates; s++) {
+         int b = block[s];
+         pi[s] = reduced[b] / (end[b] - first[b]);
+      }
+      return pi;
+   }
+
+
+   /**
+    * refine()
+    * Splits the states up until every block is stable with respect to every
+    * other.
+    */
+   private void refine(SparseMatrix Qt, SparseMatrix Q) {
+      // Start with a single block and use the whole chain as the first
+      // splitter, which separates the states by exit rate and total rate in
+      for (int s = 0; s < numstates; s++) {
+         elements[s] = s;
+         position[s] = s;
+      }
+      if (numstates == 0) {
+         return;
+      }
+      newBlock(0, numstates);
+
+      // The splitters waiting to be used, as a queue of block numbers
+      int[] queue = new int[16];
+      int head = 0;
+      int tail = 0;
+      boolean[] queued = new boolean[16];
+
+      int[] touched = new int[numstates];
+      boolean[] istouched = new boolean[numstates];
+      int[] splitter = new int[numstates];
+      int splitterblock = 0;
+      int splittersize = numstates;
+      for (int s = 0; s < numstates; s++) {
+         splitter[s] = s;
+      }
+
+      while (true) {
+         // Add up the rates into and out of the splitter
+         int numtouched = 0;
+         for (int j = 0; j < splittersize; j++) {
+            int t = splitter[j];
+            for (int i = Qt.rowstarts[t]; i < Qt.rowstarts[t + 1]; i++) {
+               int s = Qt.columns[i];
+               out[s] += Qt.values[i];
+               if (!istouched[s]) {
+                  istouched[s] = true;
+                  touched[numtouched++] = s;
+               }
+            }
+            for (int i = Q.rowstarts[t]; i < Q.rowstarts[t + 1]; i++) {
+               int s = Q.columns[i];
+               in[s] += Q.values[i];
+               if (!istouched[s]) {
+                  istouched[s] = true;
+                  touched[numtouched++] = s;
+               }
+            }
+         }
+
+         // Split every block with a touched state
+         Integer[] order = new Integer[numtouched];
+         for (int j = 0; j < numtouched; j++) {
+            order[j] = new Integer(touched[j]);
+         }
+         Arrays.sort(order, bykey);
+         int j = 0;
+         while (j < numtouched) {
+            int b = block[order[j].intValue()];
+            int k = j;
+            while ((k < numtouched) && (block[order[k].intValue()] == b)) {
+               k++;
+            }
+            int[] created = split(b, order, j, k);
+            if (created != null) {
+               // Queue the new parts, and the old one too if it was already
+               // waiting, or else all but the largest part
+               int largest = -1;
+               if ((b >= queued.length) || !queued[b]) {
+                  largest = b;
+                  for (int c = 0; c < created.length; c++) {
+                     if (getBlockSize(created[c]) > getBlockSize(largest)) {
+                        largest = created[c];
+                     }
+                  }
+                  if (largest != b) {
+                     if (tail == queue.length) {
+                        queue = grow(queue);
+                     }
+                     queue[tail++] = b;
+                     queued = ensure(queued, b);
+                     queued[b] = true;
+                  }
+               }
+               for (int c = 0; c < created.length; c++) {
+                  if (created[c] != largest) {
+                     if (tail == queue.length) {
+                        queue = grow(queue);
+                     }
+                     queue[tail++] = created[c];
+                     queued = ensure(queued, created[c]);
+                     queued[created[c]] = true;
+                  }
+               }
+            }
+            j = k;
+         }
+         for (j = 0; j < numtouched; j++) {
+            int s = touched[j];
+            out[s] = 0.0;
+            in[s] = 0.0;
+            istouched[s] = false;
+         }
+
+         if (head == tail) {
+            break;
+         }
+         splitterblock = queue[head++];
+         queued[splitterblock] = false;
+         splittersize = getBlockSize(splitterblock);
+         System.arraycopy(elements, first[splitterblock], splitter, 0,
+                          splittersize);
+      }
+   }
+
+
+   /**
+    * split()
+    * Splits a block by the rates of its states into and out of the splitter.
+    * @param b      The block
+    * @param order  The touched states, in order of block and rates
+    * @param from   The first touched state of block b in order
+    * @param to     One past the last
+    * @return       The numbers of the new blocks, or null if it was not split
+    */
+   private int[] split(int b, Integer[] order, int from, int to) {
+      int numtouched = to - from;
+      int size = getBlockSize(b);
+      int numgroups = (numtouched < size) ? 1 : 0;
+      for (int j = from; j < to; j++) {
+         if ((j == from) || (!sameRates(order[j - 1], order[j]))) {
+            numgroups++;
+         }
+      }
+      if (numgroups == 1) {
+         return null;
+      }
+
+      // Move the touched states to the end of the block, leaving the
+      // untouched ones at the start, then put them in order
+      int touchedstart = end[b] - numtouched;
+      int place = touchedstart;
+      for (int j = from; j < to; j++) {
+         int s = order[j].intValue();
+         int other = elements[place];
+         int p = position[s];
+         elements[p] = other;
+         position[other] = p;
+         elements[place] = s;
+         position[s] = place;
+         place++;
+      }
+      for (int j = from; j < to; j++) {
+         int s = order[j].intValue();
+         elements[touchedstart + (j - from)] = s;
+         position[s] = touchedstart + (j - from);
+      }
+
+      // The first group, which is the untouched states if there are any,
+      // stays in block b and the others become new blocks
+      int[] created = new int[numgroups - 1];
+      int numcreated = 0;
+      boolean kept = false;
+      if (touchedstart > first[b]) {
+         end[b] = touchedstart;
+         kept = true;
+      }
+      int start = touchedstart;
+      for (int j = from + 1; j <= to; j++) {
+         if ((j == to) || (!sameRates(order[j - 1], order[j]))) {
+            int stop = touchedstart + (j - from);
+            if (kept) {
+               created[numcreated++] = newBlock(start, stop);
+            } else {
+               end[b] = stop;
+               kept = true;
+            }
+            start = stop;
+         }
+      }
+      return created;
+   }
+
+
+   /**
+    * newBlock()
+    * Makes the states in a range of elements a block of their own.
+    * @return   The number of the new block
+    */
+   private int newBlock(int from, int to) {
+      if (numblocks == first.length) {
+         first = grow(first);
+         end = grow(end);
+      }
+      int b = numblocks++;
+      first[b] = from;
+      end[b] = to;
+      for (int i = from; i < to; i++) {
+         block[elements[i]] = b;
+      }
+      return b;
+   }
+
+
+   private long key(double rate) {
+      return Math.round(rate / quantum);
+   }
+
+
+   private boolean sameRates(Integer s1, Integer s2) {
+      return (key(out[s1.intValue()]) == key(out[s2.intValue()])) &&
+              (key(in[s1.intValue()]) == key(in[s2.intValue()]));
+   }
+
+
+   // Orders states by block, then rate out of the splitter, then rate in
+   private final Comparator bykey = new Comparator() {
+
+      public int compare(Object o1, Object o2) {
+         int s1 = ((Integer)o1).intValue();
+         int s2 = ((Integer)o2).intValue();
+         if (block[s1] != block[s2]) {
+            return (block[s1] < block[s2]) ? -1 : 1;
+         }
+         long k1 = key(out[s1]);
+         long k2 = key(out[s2]);
+         if (k1 != k2) {
+            return (k1 < k2) ? -1 : 1;
+         }
+         k1 = key(in[s1]);
+         k2 = key(in[s2]);
+         if (k1 != k2) {
+            return (k1 < k2) ? -1 : 1;
+         }
+         return 0;
+      }
+   };
+
+
+   private static int[] grow(int[] array) {
+      int[] bigger = new int[array.length << 1];
+      System.arraycopy(array, 0, bigger, 0, array.length);
+      return bigger;
+   }
+
+
+   private static boolean[] ensure(boolean[] array, int index) {
+      if (index < array.length) {
+         return array;
+      }
+      boolean[] bigger = new boolean[Math.max(array.length << 1, index + 1)];
+      System.arraycopy(array, 0, bigger, 0, array.length);
+      return bigger;
+   }
+
+}
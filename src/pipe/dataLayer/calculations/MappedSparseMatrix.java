@@ -0,0 +1,310 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.DecimalFormat;
+
+import pipe.io.RGFileReader;
+import pipe.io.TransitionRecord;
+
+
+/**
+ * A square sparse matrix held in a memory mapped file rather than on the heap,
+ * laid out in the same compressed sparse row form as SparseMatrix. It is for
+ * generator matrices too big for the heap: only whatever pages of the file
+ * the solver is using need be in memory, and since the solvers go through the
+ * rows in order the file is streamed through a block at a time.
+ *
+ * The file holds the number of rows and of off diagonal elements, then the
+ * position of the first element of each row (as longs, so there may be more
+ * than 2^31 elements), the diagonal, the column of each element and the value
+ * of each element. It is mapped in segments of 1GB, and every part of it is
+ * aligned to the size of its elements, so no value crosses from one segment
+ * to the next.
+ */
+public class MappedSparseMatrix {
+
+   private static final int HEADERSIZE = 16;
+   private static final int SEGMENTSHIFT = 30;
+   private static final long SEGMENTMASK = (1L << SEGMENTSHIFT) - 1;
+
+   private final File file;
+   private final RandomAccessFile raf;
+   private final MappedByteBuffer[] segments;
+   private final int numrows;
+   private final long numelements;
+   private final long diagonaloffset;
+   private final long columnsoffset;
+   private final long valuesoffset;
+
+
+   /**
+    * MappedSparseMatrix()
+    * Maps a matrix file of the given size, which createGenerator() is about
+    * to fill in or has filled in already.
+    */
+   private MappedSparseMatrix(File file, int numrows, long numelements)
+           throws IOException {
+      this.file = file;
+      this.numrows = numrows;
+      this.numelements = numelements;
+      diagonaloffset = HEADERSIZE + 8L * (numrows + 1);
+      columnsoffset = diagonaloffset + 8L * numrows;
+      valuesoffset = columnsoffset + ((4L * numelements + 7) & ~7L);
+      long length = valuesoffset + 8L * numelements;
+
+      raf = new RandomAccessFile(file, "rw");
+      try {
+         raf.setLength(length);
+         FileChannel channel = raf.getChannel();
+         segments = new MappedByteBuffer[(int)((length - 1) >>>
+                 SEGMENTSHIFT) + 1];
+         for (int s = 0; s < segments.length; s++) {
+            long start = (long)s << SEGMENTSHIFT;
+            segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, start,
+                    Math.min(1L << SEGMENTSHIFT, length - start));
+         }
+      } catch (IOException e) {
+         raf.close();
+         throw e;
+      }
+   }
+
+
+   /**
+    * createGenerator()
+    * Reads the arcs of a reachability graph file and writes the transpose of
+    * its generator matrix to a file, as SparseMatrix.createGenerator(rgfile,
+    * true) does on the heap. The file is read twice, once to count the
+    * elements of each row and once to put them in place. Apart from the
+    * mapped file, only a few arrays with an element per state are used.
+    * @param rgfile     The reachability graph file
+    * @param matrixfile The file to hold the matrix, which is overwritten
+    * @return           The transpose of the generator matrix
+    * @throws IOException
+    */
+   public static MappedSparseMatrix createGenerator(File rgfile,
+           File matrixfile) throws IOException {
+      TransitionRecord current = new TransitionRecord();
+      DecimalFormat f = new DecimalFormat();
+      f.setMaximumFractionDigits(1);
+
+      // Count the elements of each row
+      RGFileReader inputfile = new RGFileReader(rgfile);
+      int numstates;
+      int numtransitions;
+      long[] next;
+      try {
+         numstates = inputfile.getNumStates();
+         numtransitions = inputfile.getNumTransitions();
+         next = new long[numstates + 1];
+         for (int record = 0; record < numtransitions; record++) {
+            inputfile.readTransition(current);
+            if (current.getFromState() != current.getToState()) {
+               next[current.getToState() + 1]++;
+            }
+         }
+      } finally {
+         inputfile.close();
+      }
+      for (int row = 0; row < numstates; row++) {
+         next[row + 1] += next[row];
+      }
+
+      MappedSparseMatrix matrix =
+              new MappedSparseMatrix(matrixfile, numstates, next[numstates]);
+      try {
+         matrix.putInt(0, numstates);
+         matrix.putLong(8, next[numstates]);
+         for (int row = 0; row <= numstates; row++) {
+            matrix.putLong(HEADERSIZE + 8L * row, next[row]);
+         }
+
+         // Now put them in place, keeping those on the same row in the order
+         // they were read
+         double[] diagonal = new double[numstates];
+         inputfile = new RGFileReader(rgfile);
+         try {
+            int step = Math.max(1, numtransitions / 1000);
+            for (int record = 0; record < numtransitions; record++) {
+               inputfile.readTransition(current);
+               int from = current.getFromState();
+               int to = current.getToState();
+               if (from != to) {
+                  double rate = current.getRate();
+                  long element = next[to]++;
+                  matrix.putInt(matrix.columnsoffset + 4L * element, from);
+                  matrix.putDouble(matrix.valuesoffset + 8L * element, rate);
+                  diagonal[from] += rate;
+               }
+               if (record % step == 0) {
+                  System.out.print(
+                          f.format(((double)record/numtransitions)*100) +
+                          "% complete.  \r");
+               }
+            }
+         } finally {
+            inputfile.close();
+         }
+         System.out.println("100.0% complete.  ");
+
+         for (int row = 0; row < numstates; row++) {
+            matrix.putDouble(matrix.diagonaloffset + 8L * row,
+                    0.0 - diagonal[row]);
+         }
+      } catch (IOException e) {
+         matrix.close();
+         throw e;
+      } catch (RuntimeException e) {
+         matrix.close();
+         throw e;
+      }
+      return matrix;
+   }
+
+
+   public int getNumRows() {
+      return numrows;
+   }
+
+
+   /**
+    * getNumElements()
+    * @return   The number of elements stored, counting the whole diagonal
+    */
+   public long getNumElements() {
+      return numelements + numrows;
+   }
+
+
+   /**
+    * getRowStart()
+    * @param row    A row, or the number of rows
+    * @return       The position of the first off diagonal element of the row,
+    *               or the number of off diagonal elements
+    */
+   public long getRowStart(int row) {
+      return getLong(HEADERSIZE + 8L * row);
+   }
+
+
+   public int getColumn(long element) {
+      return getInt(columnsoffset + 4L * element);
+   }
+
+
+   public double getValue(long element) {
+      return getDouble(valuesoffset + 8L * element);
+   }
+
+
+   public double getDiagonal(int row) {
+      return getDouble(diagonaloffset + 8L * row);
+   }
+
+
+   /**
+    * getFileSize()
+    * @return   The number of bytes the matrix takes up on disk
+    */
+   public long getFileSize() {
+      return valuesoffset + 8L * numelements;
+   }
+
+
+   /**
+    * multiply()
+    * Works out y = Ax.
+    * @param x      A vector with as many elements as there are columns
+    * @param y      Filled in with the result, with an element for each row
+    */
+   public void multiply(double[] x, double[] y) {
+      long end = getRowStart(0);
+      for (int row = 0; row < numrows; row++) {
+         long start = end;
+         end = getRowStart(row + 1);
+         double sum = 0.0;
+         for (long i = start; i < end; i++) {
+            sum += getValue(i) * x[getColumn(i)];
+         }
+         y[row] = sum + getDiagonal(row) * x[row];
+      }
+   }
+
+
+   /**
+    * close()
+    * Lets go of the file, which is left on disk. The matrix must not be used
+    * afterwards.
+    * @throws IOException
+    */
+   public void close() throws IOException {
+      for (int s = 0; s < segments.length; s++) {
+         segments[s] = null;
+      }
+      raf.close();
+   }
+
+
+   /**
+    * delete()
+    * Lets go of the file and deletes it, or if it is still mapped and cannot
+    * be deleted yet, deletes it when the program exits.
+    * @throws IOException
+    */
+   public void delete() throws IOException {
+      close();
+      if (!file.delete()) {
+         file.deleteOnExit();
+      }
+   }
+
+
+   public String toString() {
+      return "MappedSparseMatrix[" + numrows + " rows, " + getNumElements() +
+              " elements, " + getFileSize() + " bytes in " + file + "]";
+   }
+
+
+   private int getInt(long position) {
+      return segments[(int)(position >>> SEGMENTSHIFT)].getInt(
+              (int)(position & SEGMENTMASK));
+   }
+
+
+   private long getLong(long position) {
+      return segments[(int)(position >>> SEGMENTSHIFT)].getLong(
+              (int)(position & SEGMENTMASK));
+   }
+
+
+   private double getDouble(long position) {
+      return segments[(int)(position >>> SEGMENTSHIFT)].getDouble(
+              (int)(position & SEGMENTMASK));
+   }
+
+
+   private void putInt(long position, int value) {
+      segments[(int)(position >>> SEGMENTSHIFT)].putInt(
+              (int)(position & SEGMENTMASK), value);
+   }
+
+
+   private void putLong(long position, long value) {
+      segments[(int)(position >>> SEGMENTSHIFT)].putLong(
+              (int)(position & SEGMENTMASK), value);
+   }
+
+
+   private void putDouble(long position, double value) {
+      segments[(int)(position >>> SEGMENTSHIFT)].putDouble(
+              (int)(position & SEGMENTMASK), value);
+   }
+
+}
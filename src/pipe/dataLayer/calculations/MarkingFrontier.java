@@ -0,0 +1,285 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+
+
+/**
+ * A first in first out queue of states waiting to be explored, used by
+ * StateSpaceGenerator.
+ *
+ * Each state is packed into a record of ints, its id number followed by its
+ * marking, and the records are held in a circular buffer of ints, so a state
+ * on the queue costs one int per place rather than an object. The buffer
+ * grows as needed until it uses half of the memory budget. After that new
+ * states are collected in a segment of up to a quarter of the budget and each
+ * full segment is written out to a memory mapped temporary file. When the
+ * buffer has been emptied the oldest segment on disk is read back into it, so
+ * states still come off the queue in the order they were put on and the
+ * queue never holds more than about three quarters of the budget in memory,
+ * or a few megabytes if the budget is smaller than that.
+ */
+public class MarkingFrontier {
+
+   private static final int INITIALCAPACITY = 64;
+   // Segments are never smaller than this, however small the budget, to keep
+   // down the number of files and mappings
+   private static final long MINSEGMENTBYTES = 1 << 20;
+
+   private final int statesize;
+   private final int recordsize;
+
+   // The most records held in the circular buffer and in the tail segment
+   private final int maxbufferrecords;
+   private final int segmentrecords;
+
+   // The circular buffer, holding the oldest states on the queue
+   private int[] buffer;
+   private int head = 0;        // The record at the front of the queue
+   private int buffered = 0;    // The number of records in the buffer
+
+   // The newest states on the queue, once the buffer has filled up or anything
+   // has been spilled to disk
+   private int[] tail;
+   private int tailrecords = 0;
+
+   // The segments written to disk, oldest first
+   private LinkedList spilled = new LinkedList();
+
+   private long size = 0;
+   private int segmentswritten = 0;
+
+
+   /**
+    * MarkingFrontier()
+    * Makes a queue with a memory budget of an eighth of the maximum heap size.
+    * @param statearraysize   The number of places in each marking
+    */
+   public MarkingFrontier(int statearraysize) {
+      this(statearraysize, Runtime.getRuntime().maxMemory() / 8);
+   }
+
+
+   /**
+    * MarkingFrontier()
+    * @param statearraysize   The number of places in each marking
+    * @param memorybudget     Roughly the most bytes the queue should hold in
+    *                         memory before writing states to disk
+    */
+   public MarkingFrontier(int statearraysize, long memorybudget) {
+      statesize = statearraysize;
+      recordsize = statearraysize + 1;
+      long recordbytes = 4L * recordsize;
+      long maxrecords = (Integer.MAX_VALUE - 8) / recordsize;
+      segmentrecords = (int)Math.min(maxrecords, Math.max(1, Math.max(
+              MINSEGMENTBYTES, memorybudget / 4) / recordbytes));
+      maxbufferrecords = (int)Math.min(maxrecords, Math.max(segmentrecords,
+              memorybudget / 2 / recordbytes));
+      buffer = new int[Math.min(INITIALCAPACITY, maxbufferrecords) * recordsize];
+   }
+
+
+   /**
+    * enqueue()
+    * Adds a state to the end of the queue.
+    * @param marking    The marking of the state, which is copied
+    * @param id         The id number of the state
+    * @throws IOException if a segment could not be written to disk
+    */
+   public void enqueue(int[] marking, int id) throws IOException {
+      if ((tailrecords == 0) && spilled.isEmpty() &&
+              ((buffered < capacity()) || growBuffer())) {
+         int offset = ((head + buffered) % capacity()) * recordsize;
+         buffer[offset] = id;
+         System.arraycopy(marking, 0, buffer, offset + 1, statesize);
+         buffered++;
+      } else {
+         if (tail == null) {
+            tail = new int[segmentrecords * recordsize];
+         }
+         int offset = tailrecords * recordsize;
+         tail[offset] = id;
+         System.arraycopy(marking, 0, tail, offset + 1, statesize);
+         tailrecords++;
+         if (tailrecords == segmentrecords) {
+            spill();
+         }
+      }
+      size++;
+   }
+
+
+   /**
+    * dequeue()
+    * Removes the state at the front of the queue.
+    * @param marking    Filled in with the marking of the state
+    * @return           The id number of the state
+    * @throws IOException if a segment could not be read back from disk
+    */
+   public int dequeue(int[] marking) throws IOException {
+      if (size == 0) {
+         throw new IndexOutOfBoundsException("The queue is empty.");
+      }
+      if (buffered == 0) {
+         refill();
+      }
+      int offset = head * recordsize;
+      int id = buffer[offset];
+      System.arraycopy(buffer, offset + 1, marking, 0, statesize);
+      head = (head + 1) % capacity();
+      buffered--;
+      size--;
+      return id;
+   }
+
+
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+
+   public long size() {
+      return size;
+   }
+
+
+   /**
+    * getSegmentsWritten()
+    * @return   The number of segments that have been written to disk
+    */
+   public int getSegmentsWritten() {
+      return segmentswritten;
+   }
+
+
+   /**
+    * close()
+    * Empties the queue and deletes any segments still on disk.
+    */
+   public void close() {
+      while (!spilled.isEmpty()) {
+         Segment segment = (Segment)spilled.removeFirst();
+         if (!segment.file.delete()) {
+            segment.file.deleteOnExit();
+         }
+      }
+      head = 0;
+      buffered = 0;
+      tailrecords = 0;
+      size = 0;
+   }
+
+
+   private int capacity() {
+      return buffer.length / recordsize;
+   }
+
+
+   /**
+    * growBuffer()
+    * Doubles the size of the full circular buffer, up to maxbufferrecords.
+    * @return   true if there is now room for another record
+    */
+   private boolean growBuffer() {
+      int capacity = capacity();
+      if (capacity >= maxbufferrecords) {
+         return false;
+      }
+      int newcapacity = (int)Math.min((long)capacity << 1, maxbufferrecords);
+      int[] newbuffer = new int[newcapacity * recordsize];
+      int first = Math.min(buffered, capacity - head);
+      System.arraycopy(buffer, head * recordsize, newbuffer, 0,
+              first * recordsize);
+      System.arraycopy(buffer, 0, newbuffer, first * recordsize,
+              (buffered - first) * recordsize);
+      buffer = newbuffer;
+      head = 0;
+      return true;
+   }
+
+
+   /**
+    * spill()
+    * Writes the tail segment to a temporary file and empties it.
+    */
+   private void spill() throws IOException {
+      File file = File.createTempFile("frontier", ".seg");
+      file.deleteOnExit();
+      RandomAccessFile segmentfile = new RandomAccessFile(file, "rw");
+      try {
+         FileChannel channel = segmentfile.getChannel();
+         IntBuffer ints = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                 4L * tailrecords * recordsize).asIntBuffer();
+         ints.put(tail, 0, tailrecords * recordsize);
+      } finally {
+         segmentfile.close();
+      }
+      spilled.addLast(new Segment(file, tailrecords));
+      segmentswritten++;
+      tailrecords = 0;
+   }
+
+
+   /**
+    * refill()
+    * Fills the empty circular buffer with the oldest states that are not in
+    * it, which are either in the oldest segment on disk or, if there are none,
+    * in the tail segment.
+    */
+   private void refill() throws IOException {
+      head = 0;
+      if (spilled.isEmpty()) {
+         if (capacity() < tailrecords) {
+            buffer = new int[tailrecords * recordsize];
+         }
+         System.arraycopy(tail, 0, buffer, 0, tailrecords * recordsize);
+         buffered = tailrecords;
+         tailrecords = 0;
+         return;
+      }
+
+      Segment segment = (Segment)spilled.removeFirst();
+      if (capacity() < segment.records) {
+         buffer = new int[segment.records * recordsize];
+      }
+      RandomAccessFile segmentfile = new RandomAccessFile(segment.file, "r");
+      try {
+         FileChannel channel = segmentfile.getChannel();
+         IntBuffer ints = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                 4L * segment.records * recordsize).asIntBuffer();
+         ints.get(buffer, 0, segment.records * recordsize);
+      } finally {
+         segmentfile.close();
+      }
+      // A mapped file cannot always be deleted straight away on Windows
+      if (!segment.file.delete()) {
+         segment.file.deleteOnExit();
+      }
+      buffered = segment.records;
+   }
+
+
+   /**
+    * A segment of the queue that has been written to disk.
+    */
+   private static class Segment {
+
+      final File file;
+      final int records;
+
+
+      Segment(File file, int records) {
+         this.file = file;
+         this.records = records;
+      }
+
+   }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * Computes 64 bit fingerprints of markings.
+ *
+ * This is a Zobrist style hash: each place is given a fixed pseudo-random key
+ * and contributes a value mixed from its key and its number of tokens, and the
+ * contributions of all the places are XORed together. Computing the hash of a
+ * marking takes time linear in the number of places, and when a transition
+ * fires the hash can be brought up to date by update() for just the places
+ * whose marking changed.
+ *
+ * The keys are generated from a fixed seed, so two MarkingHash objects for
+ * the same number of places always give the same hash for a marking.
+ * forPlaceCount() hands out a shared one for callers that hash the odd
+ * marking and should not build a key table each time.
+ */
+public class MarkingHash {
+
+   private static final long SEED = 0x2545F4914F6CDD1DL;
+   private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+   private final long[] keys;
+
+   // The MarkingHash last handed out by forPlaceCount()
+   private static volatile MarkingHash shared = new MarkingHash(0);
+
+
+   public MarkingHash(int placeCount) {
+      keys = new long[placeCount];
+      for (int p = 0; p < placeCount; p++) {
+         keys[p] = mix(SEED + (p + 1) * GOLDEN);
+      }
+   }
+
+
+   /**
+    * forPlaceCount()
+    * @param placeCount The number of places
+    * @return           A MarkingHash for that number of places, shared with
+    *                   other callers asking for the same number
+    */
+   public static MarkingHash forPlaceCount(int placeCount) {
+      MarkingHash hasher = shared;
+      if (hasher.keys.length != placeCount) {
+         hasher = new MarkingHash(placeCount);
+         shared = hasher;
+      }
+      return hasher;
+   }
+
+
+   /**
+    * hash()
+    * @param marking    A marking of placeCount places
+    * @return           The fingerprint of the marking
+    */
+   public long hash(int[] marking) {
+      long h = 0;
+      for (int p = 0; p < keys.length; p++) {
+         h ^= term(p, marking[p]);
+      }
+      return h;
+   }
+
+
+   /**
+    * update()
+    * Works out the fingerprint of a marking after the number of tokens on
+    * one place has changed.
+    * @param hash       The fingerprint before the change
+    * @param p          The place that has changed
+    * @param oldtokens  The number of tokens it used to hold
+    * @param newtokens  The number of tokens it holds now
+    * @return           The fingerprint after the change
+    */
+   public long update(long hash, int p, int oldtokens, int newtokens) {
+      return hash ^ term(p, oldtokens) ^ term(p, newtokens);
+   }
+
+
+   public int getPlaceCount() {
+      return keys.length;
+   }
+
+
+   private long term(int p, int tokens) {
+      return mix(keys[p] + tokens * GOLDEN);
+   }
+
+
+   /**
+    * mix()
+    * The finalising step of MurmurHash3, which makes every bit of the result
+    * depend on every bit of x.
+    */
+   private static long mix(long x) {
+      x ^= x >>> 33;
+      x *= 0xFF51AFD7ED558CCDL;
+      x ^= x >>> 33;
+      x *= 0xC4CEB9FE1A85EC53L;
+      x ^= x >>> 33;
+      return x;
+   }
+
+}
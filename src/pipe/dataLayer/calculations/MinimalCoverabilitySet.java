@@ -0,0 +1,562 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Stack;
+
+import pipe.dataLayer.DataLayer;
+import pipe.gui.Pipe;
+import pipe.io.RGFileWriter;
+
+
+/**
+ * Works out the minimal coverability set of a net: the smallest set of
+ * markings, some with omegas (-1) on unbounded places, such that every
+ * reachable marking is covered by one of them. It decides boundedness and
+ * safeness like myTree, but prunes the Karp-Miller tree as it is built
+ * instead of building it in full.
+ *
+ * The tree is expanded depth first, pruning it as the MP algorithm does. Each
+ * new node is accelerated against its ancestors exactly as
+ * myNode.InsertOmegas() does. A node covered by one of the active nodes is
+ * pruned straight away. A node that is not covered deactivates every active
+ * node it strictly covers together with the whole of its subtree, so nothing
+ * below a deactivated node is expanded any further. If one of the nodes it
+ * covers is its own ancestor, the new node takes the place of the highest
+ * such ancestor in the pruned tree. The active nodes left at the end are the
+ * minimal coverability set. Each node also keeps its real parent, so
+ * acceleration still sees every ancestor, including deactivated ones.
+ *
+ * Pruning by covering is only sound when firing is monotonic, i.e. when any
+ * transition enabled in a marking is also enabled in every marking that
+ * covers it. Inhibitor arcs, capacities and immediate transitions preempting
+ * others break that, so for such nets only nodes with exactly the same
+ * marking as an active node are pruned.
+ *
+ * A deadlock is only reported when one of the nodes created is deadlocked,
+ * and the path to it is exact as a deadlocked marking has no omegas.
+ * Pruning by covering can hide deadlocks, so isDeadlockKnown() says whether
+ * not finding one means there is none.
+ */
+public class MinimalCoverabilitySet {
+
+   // The index of repeated markings starts small, as the number of nodes is
+   // limited to Pipe.MAX_NODES
+   private static final int INITIALINDEXSIZE = 1024;
+
+   private final CompiledNet net;
+   private final int placeCount;
+   private final int transitionCount;
+   private final boolean monotonic;
+
+   private Node root;
+   // The nodes not covered by any other, in the order they were created
+   private ArrayList active = new ArrayList();
+   // The markings of the active nodes, in the same order, when only
+   // repeated markings are pruned and so no node is ever deactivated
+   private ExploredStateTable markings;
+
+   private boolean foundAnOmega = false;
+   private boolean moreThanOneToken = false;
+   private boolean noEnabledTransitions = false;
+   private int[] pathToDeadlock;
+
+   private int nodeCount = 0;
+   // Nodes pruned as soon as they were created, because an active node
+   // covered them
+   private int coveredCount = 0;
+   // Nodes that were active until a later node covered them or one of their
+   // ancestors in the pruned tree
+   private int deactivatedCount = 0;
+
+
+   /**
+    * MinimalCoverabilitySet()
+    * @param data       The net
+    * @param marking    The initial marking
+    * @throws TreeTooBigException if more than Pipe.MAX_NODES nodes are
+    *                   created
+    */
+   public MinimalCoverabilitySet(DataLayer data, int[] marking)
+           throws TreeTooBigException {
+      net = new CompiledNet(data);
+      placeCount = net.getPlaceCount();
+      transitionCount = net.getTransitionCount();
+      monotonic = isMonotonic(net);
+
+      if (!monotonic) {
+         markings = new ExploredStateTable(placeCount, INITIALINDEXSIZE);
+      }
+      root = new Node((int[])marking.clone(), null, -1);
+      checkSafeness(root.marking);
+      activate(root);
+      expand();
+   }
+
+
+   public boolean isBounded() {
+      return !foundAnOmega;
+   }
+
+
+   public boolean isSafe() {
+      return !moreThanOneToken;
+   }
+
+
+   public boolean hasDeadlock() {
+      return noEnabledTransitions;
+   }
+
+
+   /**
+    * isDeadlockKnown()
+    * @return   true if hasDeadlock() is exact, i.e. no node was pruned for
+    *           being covered by a different marking
+    */
+   public boolean isDeadlockKnown() {
+      return noEnabledTransitions || !monotonic ||
+              (coveredCount + deactivatedCount == 0);
+   }
+
+
+   /**
+    * getPathToDeadlock()
+    * @return   The transitions fired on the shortest path found to a
+    *           deadlock, or null if none was found
+    */
+   public int[] getPathToDeadlock() {
+      return pathToDeadlock;
+   }
+
+
+   /**
+    * isMonotonic()
+    * @return   true if nodes were pruned whenever they were covered, false if
+    *           only when they were repeated
+    */
+   public boolean isMonotonic() {
+      return monotonic;
+   }
+
+
+   /**
+    * getMarkings()
+    * @return   The markings of the minimal coverability set, with -1 for omega
+    */
+   public int[][] getMarkings() {
+      int[][] result = new int[active.size()][];
+      for (int i = 0; i < result.length; i++) {
+         result[i] = (int[])((Node)active.get(i)).marking.clone();
+      }
+      return result;
+   }
+
+
+   /**
+    * getNodeCount()
+    * @return   The number of nodes created, including the root
+    */
+   public int getNodeCount() {
+      return nodeCount;
+   }
+
+
+   /**
+    * getPrunedCount()
+    * @return   The number of nodes created that are not in the minimal
+    *           coverability set. None of them were expanded after being
+    *           pruned, so the classic coverability tree has at least this
+    *           many more nodes than were created here.
+    */
+   public int getPrunedCount() {
+      return coveredCount + deactivatedCount;
+   }
+
+
+   public String toString() {
+      return "The minimal coverability set has " + active.size() +
+              " markings. " + nodeCount + " nodes were created, " +
+              coveredCount + " of which were pruned as soon as they were " +
+              "found to be covered and " + deactivatedCount + " of which " +
+              "were deactivated when a later node covered them or one of " +
+              "their ancestors." +
+              (monotonic ? "" : " The net has inhibitor arcs, capacities or " +
+              "immediate transitions, so only repeated markings were pruned.");
+   }
+
+
+   /**
+    * writeGraph()
+    * Writes the minimal coverability set as a coverability graph file. The
+    * arc for each transition enabled in a marking of the set goes to the
+    * marking that covers the node it created. The first state in the file is
+    * the marking that covers the initial marking.
+    * @param file       The file to write
+    * @throws IOException
+    */
+   public void writeGraph(File file) throws IOException {
+      RGFileWriter rgfile = new RGFileWriter(file, placeCount, true, true);
+      try {
+         Node first = coverer(root);
+         int[] ids = new int[nodeCount];
+         int numstates = 0;
+         ids[first.id] = numstates++;
+         rgfile.writeState(first.marking, true);
+         for (int i = 0; i < active.size(); i++) {
+            Node node = (Node)active.get(i);
+            if (node != first) {
+               ids[node.id] = numstates++;
+               rgfile.writeState(node.marking, true);
+            }
+         }
+         for (int i = 0; i < active.size(); i++) {
+            Node node = (Node)active.get(i);
+            for (int k = 0; k < node.numarcs; k++) {
+               rgfile.writeTransition(ids[node.id],
+                       ids[coverer(node.targets[k]).id], 0,
+                       node.transitions[k]);
+            }
+         }
+         rgfile.close();
+      } finally {
+         // Does nothing if the file has been finished
+         rgfile.abort();
+      }
+   }
+
+
+   /**
+    * expand()
+    * Builds the pruned tree depth first from the root, keeping the nodes
+    * waiting to be expanded on a stack.
+    */
+   private void expand() throws TreeTooBigException {
+      Stack unexpanded = new Stack();
+      BitSet enabled = new BitSet(transitionCount);
+      BitSet concession = new BitSet(transitionCount);
+
+      unexpanded.push(root);
+      while (!unexpanded.isEmpty()) {
+         Node node = (Node)unexpanded.pop();
+         if (!node.active) {
+            // Deactivated while it was waiting
+            continue;
+         }
+
+         net.enabledSet(node.marking, enabled);
+         if (enabled.isEmpty()) {
+            recordDeadlock(node);
+            continue;
+         }
+
+         // Push the children in reverse so they are expanded in transition
+         // order, as in myTree
+         Node[] children = new Node[transitionCount];
+         for (int t = enabled.nextSetBit(0); t >= 0;
+                 t = enabled.nextSetBit(t + 1)) {
+            int[] newMarking = new int[placeCount];
+            net.fire(node.marking, newMarking, t);
+            checkSafeness(newMarking);
+            Node child = new Node(newMarking, node, t);
+            if (nodeCount >= Pipe.MAX_NODES) {
+               throw new TreeTooBigException();
+            }
+            child.accelerate();
+
+            if (findCoverer(child) != null) {
+               coveredCount++;
+               if (net.concessionSet(child.marking, concession) == 0) {
+                  recordDeadlock(child);
+               }
+            } else {
+               activate(child);
+               children[t] = child;
+            }
+            node.addArc(t, child);
+            if (!node.active) {
+               // The child covered an ancestor, so it has taken its place
+               // and the rest of this subtree is gone
+               break;
+            }
+         }
+         for (int t = transitionCount - 1; t >= 0; t--) {
+            if (children[t] != null) {
+               unexpanded.push(children[t]);
+            }
+         }
+      }
+   }
+
+
+   /**
+    * findCoverer()
+    * @return   An active node whose marking covers that of n, or null if
+    *           there is none
+    */
+   private Node findCoverer(Node n) {
+      if (!monotonic) {
+         int index = markings.find(n.marking);
+         return (index < 0) ? null : (Node)active.get(index);
+      }
+      for (int i = 0; i < active.size(); i++) {
+         Node other = (Node)active.get(i);
+         if (covers(other.marking, n.marking)) {
+            return other;
+         }
+      }
+      return null;
+   }
+
+
+   /**
+    * coverer()
+    * @return   The active node that covers n: n itself if it is active,
+    *           otherwise one whose marking covers it
+    */
+   private Node coverer(Node n) {
+      return n.active ? n : findCoverer(n);
+   }
+
+
+   /**
+    * activate()
+    * Adds a node that no active node covers to the active nodes, and hangs it
+    * in the pruned tree under the node it was fired from, or in place of the
+    * ancestor it has deactivated.
+    */
+   private void activate(Node n) {
+      Node treeParent = n.parent;
+      if (monotonic) {
+         treeParent = deactivateCovered(n);
+      } else {
+         markings.findOrAdd(n.marking);
+      }
+      n.active = true;
+      n.treeParent = treeParent;
+      if (treeParent != null) {
+         treeParent.addChild(n);
+      }
+      active.add(n);
+   }
+
+
+   /**
+    * deactivateCovered()
+    * Deactivates every active node whose marking is strictly covered by that
+    * of a new node, along with its whole subtree in the pruned tree. The
+    * nodes of the subtree are left out whether or not the new node covers
+    * them: the MP algorithm is complete because whatever they would have led
+    * to is found again below the new node, which reaches at least as much.
+    * Those still waiting to be expanded are skipped when they are taken off
+    * the stack.
+    * @return   The node the new node is to hang under: the parent of the
+    *           highest ancestor it covers, or the node it was fired from if
+    *           it covers none. null if it covers the root.
+    */
+   private Node deactivateCovered(Node n) {
+      // The ancestors in the pruned tree of an active node are all active
+      Node treeParent = n.parent;
+      for (Node ancestor = n.parent; ancestor != null;
+              ancestor = ancestor.treeParent) {
+         if (covers(n.marking, ancestor.marking)) {
+            treeParent = ancestor.treeParent;
+         }
+      }
+
+      Stack subtree = new Stack();
+      for (int i = 0; i < active.size(); i++) {
+         Node other = (Node)active.get(i);
+         if (other.active && covers(n.marking, other.marking)) {
+            subtree.push(other);
+         }
+         while (!subtree.isEmpty()) {
+            Node node = (Node)subtree.pop();
+            if (!node.active) {
+               continue;
+            }
+            node.active = false;
+            deactivatedCount++;
+            for (int k = 0; k < node.numchildren; k++) {
+               subtree.push(node.children[k]);
+            }
+         }
+      }
+
+      int kept = 0;
+      for (int i = 0; i < active.size(); i++) {
+         Node other = (Node)active.get(i);
+         if (other.active) {
+            active.set(kept++, other);
+         }
+      }
+      while (active.size() > kept) {
+         active.remove(active.size() - 1);
+      }
+      return treeParent;
+   }
+
+
+   /**
+    * recordDeadlock()
+    * Records the path to a deadlocked node if it is shorter than the one
+    * already found.
+    */
+   private void recordDeadlock(Node n) {
+      if (noEnabledTransitions && pathToDeadlock.length <= n.depth) {
+         return;
+      }
+      noEnabledTransitions = true;
+      pathToDeadlock = new int[n.depth];
+      for (Node node = n; node.parent != null; node = node.parent) {
+         pathToDeadlock[node.depth - 1] = node.transition;
+      }
+   }
+
+
+   private void checkSafeness(int[] marking) {
+      for (int p = 0; p < placeCount; p++) {
+         if (marking[p] > 1 || marking[p] == -1) {
+            moreThanOneToken = true;
+            return;
+         }
+      }
+   }
+
+
+   /**
+    * covers()
+    * @return   true if every place of a has at least as many tokens as the
+    *           same place of b, an omega being more than any number
+    */
+   private boolean covers(int[] a, int[] b) {
+      for (int p = 0; p < placeCount; p++) {
+         if (a[p] != -1 && (b[p] == -1 || b[p] > a[p])) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+
+   /**
+    * isMonotonic()
+    * @return   true if a marking that covers another has every transition
+    *           enabled that the other has: the net has no inhibitor arcs or
+    *           capacities, and either no immediate transitions or only
+    *           immediate ones, all of the same priority
+    */
+   private static boolean isMonotonic(CompiledNet net) {
+      for (int p = 0; p < net.getPlaceCount(); p++) {
+         if (net.getMaxInhibitorWeight(p) > 0 || net.getCapacity(p) > 0) {
+            return false;
+         }
+      }
+      for (int t = 1; t < net.getTransitionCount(); t++) {
+         if (net.isTimed(t) != net.isTimed(0) ||
+                 (!net.isTimed(t) && net.getPriority(t) != net.getPriority(0))) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+
+   /**
+    * A node of the pruned tree.
+    */
+   private class Node {
+
+      final int[] marking;
+      final Node parent;
+      final int transition;      // The transition fired to reach it
+      final int depth;
+      final int id;              // The order it was created in
+      boolean active = false;    // Whether it is in the active nodes
+      // The arcs out of it: the transition fired and the node created
+      int[] transitions;
+      Node[] targets;
+      int numarcs = 0;
+      // Its place in the pruned tree, which is not where parent puts it once
+      // it has taken the place of an ancestor it covers, and the nodes that
+      // were activated under it
+      Node treeParent;
+      Node[] children;
+      int numchildren = 0;
+
+
+      Node(int[] marking, Node parent, int transition) {
+         this.marking = marking;
+         this.parent = parent;
+         this.transition = transition;
+         this.depth = (parent == null) ? 0 : parent.depth + 1;
+         this.id = nodeCount++;
+      }
+
+
+      void addArc(int t, Node target) {
+         if (transitions == null) {
+            transitions = new int[4];
+            targets = new Node[4];
+         } else if (numarcs == transitions.length) {
+            int[] moretransitions = new int[numarcs << 1];
+            Node[] moretargets = new Node[numarcs << 1];
+            System.arraycopy(transitions, 0, moretransitions, 0, numarcs);
+            System.arraycopy(targets, 0, moretargets, 0, numarcs);
+            transitions = moretransitions;
+            targets = moretargets;
+         }
+         transitions[numarcs] = t;
+         targets[numarcs++] = target;
+      }
+
+
+      void addChild(Node child) {
+         if (children == null) {
+            children = new Node[4];
+         } else if (numchildren == children.length) {
+            Node[] morechildren = new Node[numchildren << 1];
+            System.arraycopy(children, 0, morechildren, 0, numchildren);
+            children = morechildren;
+         }
+         children[numchildren++] = child;
+      }
+
+
+      /**
+       * accelerate()
+       * Inserts omegas in the marking by the same rules as
+       * myNode.InsertOmegas(), walking up the parent pointers until an
+       * ancestor it covers gives it an omega.
+       */
+      void accelerate() {
+         boolean insertedOmega = false;
+
+         for (Node ancestor = parent; ancestor != null && !insertedOmega;
+                 ancestor = ancestor.parent) {
+            if (!covers(marking, ancestor.marking)) {
+               continue;
+            }
+            for (int p = 0; p < placeCount; p++) {
+               int maxInhibitor = net.getMaxInhibitorWeight(p);
+               boolean inhibition =
+                       (maxInhibitor > 0) && (marking[p] <= maxInhibitor);
+               if (!inhibition && marking[p] != -1 &&
+                       marking[p] != ancestor.marking[p] &&
+                       net.getCapacity(p) == 0) {
+                  marking[p] = -1;
+                  insertedOmega = true;
+                  foundAnOmega = true;
+               }
+            }
+         }
+      }
+
+   }
+
+}
@@ -14,4 +14,9 @@ public class NotConvergingException
       super("The Gauss-Seidel method is not converging");
    }
    
+   
+   public NotConvergingException(String message) {
+      super(message);
+   }
+   
 }
@@ -0,0 +1,133 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * Solves for the steady state distribution with the Gauss-Seidel method on a
+ * generator matrix held in a MappedSparseMatrix, so only pi is on the heap.
+ * Each sweep reads the matrix once, in order, and works out an estimate of the
+ * residual as it goes from the equation of each row just before that row is
+ * updated. Only once the estimate is within the tolerance is the matrix read
+ * again to work out the true residual.
+ *
+ * Given a SparseMatrix on the heap, it is the same as GaussSeidelSolver.
+ */
+public class OutOfCoreSolver
+        extends LinearSolver {
+
+
+   public OutOfCoreSolver() {
+      checkInterval = 10;
+   }
+
+
+   public String getName() {
+      return "Out of core Gauss-Seidel";
+   }
+
+
+   protected double[] run(SparseMatrix Qt) throws NotConvergingException {
+      double[] x = GaussSeidelSolver.initialGuess(Qt);
+      do {
+         GaussSeidelSolver.sweep(Qt, x, 1.0);
+      } while (!converged(Qt, x));
+      return x;
+   }
+
+
+   /**
+    * solve()
+    * Works out the steady state distribution.
+    * @param Qt     The transpose of the generator matrix
+    * @return       The steady state distribution, normalised
+    * @throws NotConvergingException if the method has not converged within
+    *               the iteration limit
+    */
+   public double[] solve(MappedSparseMatrix Qt)
+           throws NotConvergingException {
+      start();
+      int numrows = Qt.getNumRows();
+      double[] x = new double[numrows];
+      double maxrate = 0.0;
+      for (int row = 0; row < numrows; row++) {
+         x[row] = 1.0;
+         maxrate = Math.max(maxrate, -Qt.getDiagonal(row));
+      }
+      while (true) {
+         double estimate = sweep(Qt, x, maxrate);
+         if (converged(estimate) && verify(relativeResidual(Qt, x, maxrate))) {
+            return finish(x);
+         }
+      }
+   }
+
+
+   /**
+    * sweep()
+    * Does one Gauss-Seidel iteration.
+    * @return   An estimate of the relative residual, from the equation of
+    *           each row before it was updated
+    */
+   private static double sweep(MappedSparseMatrix Qt, double[] x,
+           double maxrate) {
+      int numrows = Qt.getNumRows();
+      double largest = 0.0;
+      long end = Qt.getRowStart(0);
+      for (int row = 0; row < numrows; row++) {
+         long start = end;
+         end = Qt.getRowStart(row + 1);
+         double sum = 0.0;
+         for (long i = start; i < end; i++) {
+            sum += Qt.getValue(i) * x[Qt.getColumn(i)];
+         }
+         double aii = Qt.getDiagonal(row);
+         largest = Math.max(largest, Math.abs(sum + aii * x[row]));
+         if (aii != 0.0) {
+            x[row] = (0.0 - sum) / aii;
+         }
+      }
+      double total = 0.0;
+      for (int row = 0; row < numrows; row++) {
+         total += x[row];
+      }
+      if (total == 0.0) {
+         return Double.POSITIVE_INFINITY;
+      }
+      return (maxrate == 0.0) ? 0.0 : largest / Math.abs(total) / maxrate;
+   }
+
+
+   /**
+    * relativeResidual()
+    * As LinearSolver.relativeResidual(), reading the matrix from the file.
+    */
+   private double relativeResidual(MappedSparseMatrix Qt, double[] x,
+           double maxrate) {
+      int numrows = Qt.getNumRows();
+      double total = 0.0;
+      for (int row = 0; row < numrows; row++) {
+         total += x[row];
+      }
+      if (total == 0.0) {
+         return Double.POSITIVE_INFINITY;
+      }
+      double largest = 0.0;
+      long end = Qt.getRowStart(0);
+      for (int row = 0; row < numrows; row++) {
+         long start = end;
+         end = Qt.getRowStart(row + 1);
+         double r = Qt.getDiagonal(row) * x[row];
+         for (long i = start; i < end; i++) {
+            r += Qt.getValue(i) * x[Qt.getColumn(i)];
+         }
+         largest = Math.max(largest, Math.abs(r));
+         if (x[row] / total < -tolerance) {
+            return Double.POSITIVE_INFINITY;
+         }
+      }
+      return (maxrate == 0.0) ? 0.0 : largest / Math.abs(total) / maxrate;
+   }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Solves for the steady state distribution on several threads. The rows of the
+ * matrix are split into one block per thread, each with about the same number
+ * of elements, and every iteration each thread updates the elements of pi in
+ * its own block from the values the others had at the end of the last
+ * iteration. Within a block the update is either a Jacobi step or, by
+ * default, a Gauss-Seidel sweep, which uses the newest values of its own
+ * block and converges nearly as quickly as the sequential Gauss-Seidel
+ * method.
+ *
+ * The threads never read what another thread is writing, so the answer only
+ * depends on the number of threads, not on how they are scheduled. The
+ * residual is also worked out a block per thread and the parts combined.
+ */
+public class ParallelSolver
+        extends LinearSolver {
+
+   // The smallest chain worth splitting between threads
+   public static final int MINSTATES = 50000;
+
+   private final int numthreads;
+   private final boolean gaussSeidel;
+
+   // Only set while run() is going
+   private ExecutorService workers = null;
+   private int[] blocks;
+
+
+   /**
+    * ParallelSolver()
+    * @param numthreads    The number of threads to use
+    * @param gaussSeidel   Whether to do a Gauss-Seidel sweep within each
+    *                      block rather than a Jacobi step
+    */
+   public ParallelSolver(int numthreads, boolean gaussSeidel) {
+      this.numthreads = Math.max(1, numthreads);
+      this.gaussSeidel = gaussSeidel;
+      checkInterval = 10;
+   }
+
+
+   public ParallelSolver(int numthreads) {
+      this(numthreads, true);
+   }
+
+
+   public String getName() {
+      return (gaussSeidel ? "Block Gauss-Seidel" : "Jacobi") + " on " +
+              numthreads + " threads";
+   }
+
+
+   protected double[] run(final SparseMatrix Qt)
+           throws NotConvergingException {
+      final double[][] x = {GaussSeidelSolver.initialGuess(Qt),
+                            new double[Qt.getNumRows()]};
+      blocks = partition(Qt, numthreads);
+      workers = Executors.newFixedThreadPool(numthreads);
+      try {
+         ArrayList tasks = new ArrayList(numthreads);
+         for (int thread = 0; thread < numthreads; thread++) {
+            final int from = blocks[thread];
+            final int to = blocks[thread + 1];
+            tasks.add(new Callable() {
+               public Object call() {
+                  if (gaussSeidel) {
+                     sweepBlock(Qt, x[0], x[1], from, to);
+                  } else {
+                     jacobiBlock(Qt, x[0], x[1], from, to);
+                  }
+                  return null;
+               }
+            });
+         }
+         do {
+            invokeAll(tasks);
+            double[] swap = x[0];
+            x[0] = x[1];
+            x[1] = swap;
+         } while (!converged(Qt, x[0]));
+         return x[0];
+      } finally {
+         workers.shutdown();
+         workers = null;
+      }
+   }
+
+
+   /**
+    * relativeResidual()
+    * As LinearSolver.relativeResidual(), but worked out on the worker
+    * threads while they are there.
+    */
+   protected double relativeResidual(final SparseMatrix Qt, final double[] x) {
+      if (workers == null) {
+         return super.relativeResidual(Qt, x);
+      }
+      ArrayList tasks = new ArrayList(numthreads);
+      for (int thread = 0; thread < numthreads; thread++) {
+         final int from = blocks[thread];
+         final int to = blocks[thread + 1];
+         tasks.add(new Callable() {
+            public Object call() {
+               return residualBlock(Qt, x, from, to);
+            }
+         });
+      }
+
+      // Combine the largest residual, largest rate, sum, smallest and
+      // largest element of each block
+      double[] total = {0.0, 0.0, 0.0, Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY};
+      try {
+         List results = invokeAll(tasks);
+         for (int thread = 0; thread < numthreads; thread++) {
+            double[] part = (double[])((Future)results.get(thread)).get();
+            total[0] = Math.max(total[0], part[0]);
+            total[1] = Math.max(total[1], part[1]);
+            total[2] += part[2];
+            total[3] = Math.min(total[3], part[3]);
+            total[4] = Math.max(total[4], part[4]);
+         }
+      } catch (Exception e) {
+         return Double.NaN;
+      }
+      double sum = total[2];
+      if (sum == 0.0) {
+         return Double.POSITIVE_INFINITY;
+      }
+      double mostnegative = (sum > 0.0) ? total[3] / sum : total[4] / sum;
+      if (mostnegative < -tolerance) {
+         return Double.POSITIVE_INFINITY;
+      }
+      return (total[1] == 0.0) ? 0.0 : total[0] / Math.abs(sum) / total[1];
+   }
+
+
+   private List invokeAll(List tasks) throws NotConvergingException {
+      try {
+         List results = workers.invokeAll(tasks);
+         for (int i = 0; i < results.size(); i++) {
+            ((Future)results.get(i)).get();
+         }
+         return results;
+      } catch (InterruptedException e) {
+         throw new NotConvergingException(getName() + " was interrupted.");
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof Error) {
+            throw (Error)e.getCause();
+         }
+         throw new NotConvergingException(getName() + " failed: " +
+                 e.getCause());
+      }
+   }
+
+
+   /**
+    * partition()
+    * Splits the rows into blocks with about the same number of elements.
+    * @return   The first row of each block, followed by the number of rows
+    */
+   static int[] partition(SparseMatrix Qt, int numblocks) {
+      int numrows = Qt.getNumRows();
+      long numelements = Qt.getNumElements();
+      int[] blocks = new int[numblocks + 1];
+      int row = 0;
+      for (int block = 1; block < numblocks; block++) {
+         long target = numelements * block / numblocks;
+         while ((row < numrows) && ((long)Qt.rowstarts[row] + row < target)) {
+            row++;
+         }
+         blocks[block] = row;
+      }
+      blocks[numblocks] = numrows;
+      return blocks;
+   }
+
+
+   /**
+    * sweepBlock()
+    * Does a Gauss-Seidel sweep over rows from to to - 1, reading the other
+    * blocks from x and writing the new values to next.
+    */
+   private static void sweepBlock(SparseMatrix Qt, double[] x, double[] next,
+           int from, int to) {
+      int[] rowstarts = Qt.rowstarts;
+      int[] columns = Qt.columns;
+      double[] values = Qt.values;
+      double[] diagonal = Qt.diagonal;
+      System.arraycopy(x, from, next, from, to - from);
+      for (int row = from; row < to; row++) {
+         double sum = 0.0;
+         for (int i = rowstarts[row]; i < rowstarts[row + 1]; i++) {
+            int column = columns[i];
+            double value = ((column >= from) && (column < to)) ? next[column]
+                                                               : x[column];
+            sum += values[i] * value;
+         }
+         if (diagonal[row] != 0.0) {
+            next[row] = (0.0 - sum) / diagonal[row];
+         }
+      }
+   }
+
+
+   /**
+    * jacobiBlock()
+    * Does a Jacobi step for rows from to to - 1, writing the new values to
+    * next.
+    */
+   private static void jacobiBlock(SparseMatrix Qt, double[] x, double[] next,
+           int from, int to) {
+      int[] rowstarts = Qt.rowstarts;
+      int[] columns = Qt.columns;
+      double[] values = Qt.values;
+      double[] diagonal = Qt.diagonal;
+      for (int row = from; row < to; row++) {
+         double sum = 0.0;
+         for (int i = rowstarts[row]; i < rowstarts[row + 1]; i++) {
+            sum += values[i] * x[columns[i]];
+         }
+         next[row] = (diagonal[row] != 0.0) ? (0.0 - sum) / diagonal[row]
+                                            : x[row];
+      }
+   }
+
+
+   private static double[] residualBlock(SparseMatrix Qt, double[] x,
+           int from, int to) {
+      double largest = 0.0;
+      double maxrate = 0.0;
+      double sum = 0.0;
+      double smallest = Double.POSITIVE_INFINITY;
+      double biggest = Double.NEGATIVE_INFINITY;
+      for (int row = from; row < to; row++) {
+         double r = Qt.diagonal[row] * x[row];
+         for (int i = Qt.rowstarts[row]; i < Qt.rowstarts[row + 1]; i++) {
+            r += Qt.values[i] * x[Qt.columns[i]];
+         }
+         largest = Math.max(largest, Math.abs(r));
+         maxrate = Math.max(maxrate, -Qt.diagonal[row]);
+         sum += x[row];
+         smallest = Math.min(smallest, x[row]);
+         biggest = Math.max(biggest, x[row]);
+      }
+      return new double[] {largest, maxrate, sum, smallest, biggest};
+   }
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import pipe.dataLayer.StateGroupMarking;
+import pipe.io.ImmediateAbortException;
+import pipe.io.RGFileReader;
+import pipe.io.StateRecord;
+
+
+/**
+ * Works out the distribution of the time a continuous time Markov chain takes
+ * to first reach a set of target states, starting from a distribution over a
+ * set of start states. The target states are made absorbing and the chain is
+ * uniformised as in TransientSolver, so the probability F(t) of having
+ * reached a target by time t, and its density f(t), are
+ *
+ *    F(t) = sum over k of poisson(k; qt) F_k
+ *    f(t) = q sum over k of poisson(k; qt) (F_(k+1) - F_k)
+ *
+ * where F_k is the probability of being in a target state after k steps of
+ * the uniformised chain. The F_k are worked out in a single pass, up to the
+ * largest right truncation point of any of the times, so only one number a
+ * step is kept. The Poisson weights and the sums for each time are then
+ * worked out on several threads.
+ *
+ * A start state that is also a target state is reached at time 0, so it adds
+ * to F but not to f.
+ */
+public class PassageTimeSolver {
+
+   private final SparseMatrix Qt;
+   private final double[] initial;
+   private final BitSet targets;
+   private final double q;
+
+   private double[] times = new double[0];
+   private double[] densities;
+   private double[] distribution;
+   private int iterations = 0;
+
+
+   /**
+    * PassageTimeSolver()
+    * @param Qt         The transpose of the generator matrix, as
+    *                   SparseMatrix.createGenerator(rgfile, true) returns
+    * @param initial    The distribution over the start states, which should
+    *                   add up to 1
+    * @param targets    The target states
+    */
+   public PassageTimeSolver(SparseMatrix Qt, double[] initial,
+           BitSet targets) {
+      this.Qt = Qt;
+      this.initial = new double[Qt.getNumRows()];
+      System.arraycopy(initial, 0, this.initial, 0,
+                       Math.min(initial.length, this.initial.length));
+      this.targets = targets;
+
+      // The target states never leave, so only the others set the rate
+      double maxrate = 0.0;
+      for (int state = 0; state < Qt.getNumRows(); state++) {
+         if (!targets.get(state)) {
+            maxrate = Math.max(maxrate, 0.0 - Qt.getDiagonal(state));
+         }
+      }
+      this.q = TransientSolver.UNIFORMISATIONFACTOR * maxrate;
+   }
+
+
+   /**
+    * create()
+    * Sets up a solver for the passage between two sets of tangible states of
+    * a net. The chain starts in each start state with its steady state
+    * probability, normalised over the start states.
+    * @param rgfile     The reachability graph file
+    * @param markings   Which markings are start and target states
+    * @return           The solver
+    * @throws IOException
+    * @throws ImmediateAbortException if there are no start or no target
+    *         states, or the steady state could not be found
+    */
+   public static PassageTimeSolver create(File rgfile,
+           StateGroupMarking markings)
+           throws IOException, ImmediateAbortException {
+      SparseMatrix Qt = SparseMatrix.createGenerator(rgfile, true);
+      int numstates = Qt.getNumRows();
+      BitSet starts = new BitSet(numstates);
+      BitSet targets = new BitSet(numstates);
+
+      RGFileReader input = new RGFileReader(rgfile);
+      try {
+         StateRecord record = new StateRecord();
+         for (int state = 0; state < numstates; state++) {
+            input.readState(record);
+            if (markings.isStartMarking(record.getState())) {
+               starts.set(state);
+            }
+            if (markings.isTargetMarking(record.getState())) {
+               targets.set(state);
+            }
+         }
+      } finally {
+         input.close();
+      }
+      if (starts.isEmpty()) {
+         throw new ImmediateAbortException("No tangible state meets the " +
+                 "start conditions.");
+      }
+      if (targets.isEmpty()) {
+         throw new ImmediateAbortException("No tangible state meets the " +
+                 "target conditions.");
+      }
+
+      double[] pi = SteadyStateSolver.solve(Qt, null);
+      double[] initial = new double[numstates];
+      double total = 0.0;
+      for (int state = starts.nextSetBit(0); state >= 0;
+              state = starts.nextSetBit(state + 1)) {
+         total += pi[state];
+      }
+      for (int state = starts.nextSetBit(0); state >= 0;
+              state = starts.nextSetBit(state + 1)) {
+         // Start states the chain never visits in the long run are only
+         // used if there are no others
+         initial[state] = (total > 0.0) ? pi[state] / total
+                                        : 1.0 / starts.cardinality();
+      }
+      return new PassageTimeSolver(Qt, initial, targets);
+   }
+
+
+   /**
+    * solve()
+    * Works out the passage time density and distribution function at each
+    * of the times.
+    * @param times      The times, which need not be in order
+    * @param epsilon    The most probability that the truncation of the sum at
+    *                   each time may leave out
+    * @param numthreads The number of threads to work out the times on
+    * @throws ImmediateAbortException if interrupted
+    */
+   public void solve(final double[] times, final double epsilon,
+           int numthreads) throws ImmediateAbortException {
+      final int numtimes = times.length;
+      this.times = (double[])times.clone();
+      densities = new double[numtimes];
+      distribution = new double[numtimes];
+      numthreads = Math.max(1, Math.min(numthreads, numtimes));
+
+      // The truncation points and weights for each time, dealt out to the
+      // threads in turn since larger times take longer
+      final int[] left = new int[numtimes];
+      final double[][] weights = new double[numtimes][];
+      List tasks = new ArrayList(numthreads);
+      for (int thread = 0; thread < numthreads; thread++) {
+         final int first = thread;
+         final int stride = numthreads;
+         tasks.add(new Callable() {
+            public Object call() {
+               for (int t = first; t < numtimes; t += stride) {
+                  if ((times[t] <= 0.0) || (q == 0.0)) {
+                     weights[t] = new double[] {1.0};
+                  } else {
+                     weights[t] = TransientSolver.foxGlynn(q * times[t],
+                             epsilon, left, t);
+                  }
+               }
+               return null;
+            }
+         });
+      }
+      ExecutorService workers = Executors.newFixedThreadPool(numthreads);
+      try {
+         invokeAll(workers, tasks);
+         int last = 0;
+         for (int t = 0; t < numtimes; t++) {
+            last = Math.max(last, left[t] + weights[t].length);
+         }
+
+         final double[] absorbed = absorption(last, epsilon);
+
+         tasks.clear();
+         for (int thread = 0; thread < numthreads; thread++) {
+            final int first = thread;
+            final int stride = numthreads;
+            tasks.add(new Callable() {
+               public Object call() {
+                  for (int t = first; t < numtimes; t += stride) {
+                     sum(t, left[t], weights[t], absorbed);
+                  }
+                  return null;
+               }
+            });
+         }
+         invokeAll(workers, tasks);
+      } finally {
+         workers.shutdown();
+      }
+   }
+
+
+   /**
+    * getTimes()
+    * @return   The times given to the last call to solve()
+    */
+   public double[] getTimes() {
+      return times;
+   }
+
+
+   /**
+    * getDensity()
+    * @param t  The index of the time in the array given to solve()
+    * @return   The passage time density at that time
+    */
+   public double getDensity(int t) {
+      return densities[t];
+   }
+
+
+   /**
+    * getDistribution()
+    * @param t  The index of the time in the array given to solve()
+    * @return   The probability of having reached a target state by that time
+    */
+   public double getDistribution(int t) {
+      return distribution[t];
+   }
+
+
+   /**
+    * getIterations()
+    * @return   The number of products with the matrix the last call to solve()
+    *           took
+    */
+   public int getIterations() {
+      return iterations;
+   }
+
+
+   /**
+    * absorption()
+    * Works out the probability of being in a target state after each number
+    * of steps of the uniformised chain, up to last. If all but tolerance of
+    * the probability has reached the targets before then, the rest of the
+    * array is left holding the last value.
+    */
+   private double[] absorption(int last, double epsilon) {
+      int numstates = Qt.getNumRows();
+      double[] absorbed = new double[last + 1];
+      double[] v = (double[])initial.clone();
+      double[] w = new double[numstates];
+      double[] next = new double[numstates];
+      double tolerance = epsilon / 4.0;
+
+      DecimalFormat f = new DecimalFormat();
+      f.setMaximumFractionDigits(1);
+      System.out.println("Solving passage time distribution...");
+
+      for (int state = targets.nextSetBit(0); state >= 0;
+              state = targets.nextSetBit(state + 1)) {
+         absorbed[0] += v[state];
+      }
+      int step = Math.max(1, last / 1000);
+      iterations = 0;
+      int k = 0;
+      // With q = 0 nothing ever leaves the start states
+      while ((k < last) && (q > 0.0)) {
+         // v = v P, with nothing leaving the target states
+         for (int i = 0; i < numstates; i++) {
+            w[i] = targets.get(i) ? 0.0 : v[i];
+         }
+         Qt.multiply(w, next);
+         double reached = 0.0;
+         for (int i = 0; i < numstates; i++) {
+            double d = next[i] / q;
+            v[i] += d;
+            if (targets.get(i)) {
+               reached += d;
+            }
+         }
+         iterations++;
+         k++;
+         absorbed[k] = absorbed[k - 1] + reached;
+         if (1.0 - absorbed[k] < tolerance) {
+            // So little is left outside the targets that no later step can
+            // move the distribution by more than the tolerance
+            break;
+         }
+         if (k % step == 0) {
+            System.out.print(f.format(((double)k/last)*100) +
+                    "% complete.  \r");
+         }
+      }
+      for (int j = k + 1; j <= last; j++) {
+         absorbed[j] = absorbed[k];
+      }
+      System.out.println("100.0% complete.  ");
+      return absorbed;
+   }
+
+
+   private void sum(int t, int left, double[] weights, double[] absorbed) {
+      double density = 0.0;
+      double probability = 0.0;
+      for (int i = 0; i < weights.length; i++) {
+         int k = left + i;
+         probability += weights[i] * absorbed[k];
+         density += weights[i] * (absorbed[k + 1] - absorbed[k]);
+      }
+      distribution[t] = probability;
+      densities[t] = q * density;
+   }
+
+
+   private static void invokeAll(ExecutorService workers, List tasks)
+           throws ImmediateAbortException {
+      try {
+         List results = workers.invokeAll(tasks);
+         for (int i = 0; i < results.size(); i++) {
+            ((Future)results.get(i)).get();
+         }
+      } catch (InterruptedException e) {
+         throw new ImmediateAbortException("The passage time analysis was " +
+                 "interrupted.");
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof Error) {
+            throw (Error)e.getCause();
+         }
+         throw (RuntimeException)e.getCause();
+      }
+   }
+
+}
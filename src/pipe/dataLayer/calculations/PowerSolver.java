@@ -0,0 +1,47 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * Solves for the steady state distribution with the power method on the
+ * uniformised chain P = I + Q/q, where q is a little more than the largest
+ * exit rate so that P is aperiodic. It starts from the initial state, state 0,
+ * so where the chain has absorbing states the answer is the distribution it
+ * settles into from there. It is slow but always converges.
+ */
+public class PowerSolver
+        extends LinearSolver {
+
+
+   public PowerSolver() {
+      checkInterval = 10;
+      maxIterations = 1000000;
+   }
+
+
+   public String getName() {
+      return "Power method";
+   }
+
+
+   protected double[] run(SparseMatrix Qt) throws NotConvergingException {
+      int numrows = Qt.getNumRows();
+      double q = 1.02 * maxRate(Qt);
+      double[] x = new double[numrows];
+      double[] product = new double[numrows];
+      x[0] = 1.0;
+      if (q == 0.0) {
+         return x;
+      }
+      do {
+         Qt.multiply(x, product);
+         for (int i = 0; i < numrows; i++) {
+            x[i] += product[i] / q;
+         }
+      } while (!converged(Qt, x));
+      return x;
+   }
+
+}
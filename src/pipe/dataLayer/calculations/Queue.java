@@ -3,20 +3,25 @@
  */
 package pipe.dataLayer.calculations;
 
-import java.util.ArrayList;
-
 
 /**
  * @author Nadeem
  * Implements a Queue data structure.
+ *
+ * The objects are held in a circular buffer which doubles in size when it 
+ * fills up, so enqueue() and dequeue() take constant time however long the
+ * queue gets.
  */
 public class Queue {
    
-   private ArrayList queueList;
+   private Object[] queueList;
+   // Index of the object at the front of the queue
+   private int head = 0;
+   private int size = 0;
    
    
    public Queue(){
-      queueList = new ArrayList();
+      queueList = new Object[16];
    }
    
    
@@ -26,7 +31,16 @@ public class Queue {
     * @param object		The object to be queued
     */
    public void enqueue(Object object){
-      queueList.add(object);
+      if (size == queueList.length) {
+         Object[] newList = new Object[size << 1];
+         int first = size - head;
+         System.arraycopy(queueList, head, newList, 0, first);
+         System.arraycopy(queueList, 0, newList, first, head);
+         queueList = newList;
+         head = 0;
+      }
+      queueList[(head + size) % queueList.length] = object;
+      size++;
    }
    
    
@@ -36,14 +50,24 @@ public class Queue {
     * @return		The object removed from the queue
     */
    public Object dequeue(){
-      Object temp = queueList.get(0);
-      queueList.remove(0);
+      if (size == 0) {
+         throw new IndexOutOfBoundsException("The queue is empty.");
+      }
+      Object temp = queueList[head];
+      queueList[head] = null;
+      head = (head + 1) % queueList.length;
+      size--;
       return temp;
    }
    
    
    public boolean isEmpty(){
-      return queueList.isEmpty();
+      return size == 0;
+   }
+   
+   
+   public int size(){
+      return size;
    }
    
 }
@@ -0,0 +1,176 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+
+import pipe.dataLayer.DataLayer;
+import pipe.io.RGFileReader;
+
+
+/**
+ * Works out the measures of a GSPN that are rewards summed over its tangible
+ * states, weighted by a distribution over them: the average number of tokens
+ * on each place, the token distribution of each place, the throughput of each
+ * transition and the sojourn time of each state. Whichever of them are asked
+ * for are filled in together, in one pass through the states of the
+ * reachability graph file, into arrays of primitives, so the states are never
+ * all held in memory.
+ *
+ * The throughputs and sojourn times come from the enabled transitions and exit
+ * rate StateSpaceGenerator records with each state. For a file without them,
+ * the enabled transitions are worked out from the net instead.
+ */
+public class RewardCalculator {
+
+   public static final int AVERAGETOKENS = 1;
+   public static final int TOKENDISTRIBUTION = 2;
+   public static final int THROUGHPUT = 4;
+   public static final int SOJOURNTIMES = 8;
+   public static final int ALL = AVERAGETOKENS | TOKENDISTRIBUTION |
+           THROUGHPUT | SOJOURNTIMES;
+
+   private final CompiledNet net;
+   private final int measures;
+
+   private double[] averages;
+   // The probability of each number of tokens on each place, up to the most
+   // found on any place
+   private double[][] tokendistribution;
+   private double[] throughput;
+   private double[] sojourntimes;
+
+
+   /**
+    * RewardCalculator()
+    * @param pnmlData   The net
+    * @param measures   The measures to work out, any of AVERAGETOKENS,
+    *                   TOKENDISTRIBUTION, THROUGHPUT and SOJOURNTIMES or'd
+    *                   together
+    */
+   public RewardCalculator(DataLayer pnmlData, int measures) {
+      this.net = new CompiledNet(pnmlData);
+      this.measures = measures;
+   }
+
+
+   /**
+    * calculate()
+    * Works out the measures for a distribution over the tangible states.
+    * @param rgfile     The reachability graph file
+    * @param pi         The probability of each state, in the order they are
+    *                   in the file
+    * @throws IOException
+    */
+   public void calculate(File rgfile, double[] pi) throws IOException {
+      int numplaces = net.getPlaceCount();
+      int numtransitions = net.getTransitionCount();
+      boolean wantaverages = (measures & AVERAGETOKENS) != 0;
+      boolean wantdistribution = (measures & TOKENDISTRIBUTION) != 0;
+      boolean wantthroughput = (measures & THROUGHPUT) != 0;
+      boolean wantsojourn = (measures & SOJOURNTIMES) != 0;
+
+      RGFileReader input = new RGFileReader(rgfile);
+      try {
+         int numstates = input.getNumStates();
+         boolean recorded = input.hasEnabledSets();
+         averages = wantaverages ? new double[numplaces] : null;
+         throughput = wantthroughput ? new double[numtransitions] : null;
+         sojourntimes = wantsojourn ? new double[numstates] : null;
+         // Each place has room for at least 0 and 1 tokens
+         double[][] counts = null;
+         int mosttokens = 1;
+         if (wantdistribution) {
+            counts = new double[numplaces][2];
+         }
+
+         int[] marking = new int[numplaces];
+         BitSet enabled = new BitSet(numtransitions);
+         for (int s = 0; s < numstates; s++) {
+            input.readState(marking);
+            double p = pi[s];
+            for (int place = 0; place < numplaces; place++) {
+               int tokens = marking[place];
+               if (wantaverages) {
+                  averages[place] += tokens * p;
+               }
+               if (wantdistribution) {
+                  if (tokens >= counts[place].length) {
+                     double[] grown = new double[Math.max(tokens + 1,
+                             counts[place].length << 1)];
+                     System.arraycopy(counts[place], 0, grown, 0,
+                             counts[place].length);
+                     counts[place] = grown;
+                  }
+                  counts[place][tokens] += p;
+                  mosttokens = Math.max(mosttokens, tokens);
+               }
+            }
+
+            if (wantthroughput || wantsojourn) {
+               double exitrate = 0.0;
+               if (recorded) {
+                  exitrate = input.getExitRate();
+                  if (wantthroughput) {
+                     for (int i = 0; i < input.getNumEnabled(); i++) {
+                        int t = input.getEnabled(i);
+                        throughput[t] += net.getRate(t) * p;
+                     }
+                  }
+               } else {
+                  net.enabledSet(marking, enabled);
+                  for (int t = enabled.nextSetBit(0); t >= 0;
+                          t = enabled.nextSetBit(t + 1)) {
+                     exitrate += net.getRate(t);
+                     if (wantthroughput) {
+                        throughput[t] += net.getRate(t) * p;
+                     }
+                  }
+               }
+               if (wantsojourn) {
+                  sojourntimes[s] = 1 / exitrate;
+               }
+            }
+         }
+
+         if (wantdistribution) {
+            tokendistribution = new double[numplaces][mosttokens + 1];
+            for (int place = 0; place < numplaces; place++) {
+               System.arraycopy(counts[place], 0, tokendistribution[place], 0,
+                       Math.min(counts[place].length, mosttokens + 1));
+            }
+         }
+      } finally {
+         input.close();
+      }
+   }
+
+
+   public double[] getAverageTokens() {
+      return averages;
+   }
+
+
+   /**
+    * getTokenDistribution()
+    * @return   The probability of there being each number of tokens on each
+    *           place, indexed by place then number of tokens
+    */
+   public double[][] getTokenDistribution() {
+      return tokendistribution;
+   }
+
+
+   public double[] getThroughput() {
+      return throughput;
+   }
+
+
+   public double[] getSojournTimes() {
+      return sojourntimes;
+   }
+
+}
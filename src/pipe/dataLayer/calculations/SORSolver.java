@@ -0,0 +1,98 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * Solves for the steady state distribution by successive over relaxation,
+ * with the relaxation factor chosen as it goes. It starts out as Gauss-Seidel
+ * and, once it has seen how quickly the changes between iterations shrink,
+ * estimates the spectral radius of the Gauss-Seidel iteration from that and
+ * takes the relaxation factor that would be best for it. If the changes then
+ * stop shrinking the factor is brought back towards 1.
+ */
+public class SORSolver
+        extends LinearSolver {
+
+   // How many iterations go by between adjustments of the relaxation factor
+   private static final int ADAPTINTERVAL = 10;
+   private static final double MAXOMEGA = 1.95;
+
+   private double omega = 1.0;
+
+
+   public SORSolver() {
+      checkInterval = ADAPTINTERVAL;
+   }
+
+
+   public String getName() {
+      return "SOR";
+   }
+
+
+   /**
+    * getOmega()
+    * @return   The relaxation factor used at the end of the last call to
+    *           solve()
+    */
+   public double getOmega() {
+      return omega;
+   }
+
+
+   protected double[] run(SparseMatrix Qt) throws NotConvergingException {
+      int numrows = Qt.getNumRows();
+      double[] x = GaussSeidelSolver.initialGuess(Qt);
+      double[] previous = new double[numrows];
+      double lastchange = 0.0;
+      boolean estimated = false;
+      int iteration = 0;
+      omega = 1.0;
+      while (true) {
+         boolean adapt = (++iteration % ADAPTINTERVAL == 0);
+         if (adapt || (iteration % ADAPTINTERVAL == 1)) {
+            System.arraycopy(x, 0, previous, 0, numrows);
+         }
+         GaussSeidelSolver.sweep(Qt, x, omega);
+         if (iteration % ADAPTINTERVAL == 1) {
+            lastchange = change(x, previous);
+         } else if (adapt) {
+            double change = change(x, previous);
+            if ((lastchange > 0.0) && (change > 0.0)) {
+               // The average factor the changes shrank by over the interval
+               double rate = Math.pow(change / lastchange,
+                       1.0 / (ADAPTINTERVAL - 1));
+               if (!estimated && (rate < 1.0)) {
+                  omega = Math.min(MAXOMEGA,
+                          2.0 / (1.0 + Math.sqrt(1.0 - rate)));
+                  estimated = true;
+               } else if (estimated && (rate >= 1.0)) {
+                  omega = 1.0 + (omega - 1.0) / 2.0;
+               }
+            }
+         }
+         if (converged(Qt, x)) {
+            return x;
+         }
+      }
+   }
+
+
+   /**
+    * change()
+    * @return   The largest change in any element between two iterations,
+    *           relative to the largest element
+    */
+   private static double change(double[] x, double[] previous) {
+      double largest = 0.0;
+      double largestchange = 0.0;
+      for (int i = 0; i < x.length; i++) {
+         largest = Math.max(largest, Math.abs(x[i]));
+         largestchange = Math.max(largestchange, Math.abs(x[i] - previous[i]));
+      }
+      return (largest == 0.0) ? 0.0 : largestchange / largest;
+   }
+
+}
@@ -0,0 +1,434 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import pipe.dataLayer.DataLayer;
+import pipe.dataLayer.RateParameter;
+import pipe.dataLayer.Transition;
+import pipe.io.ImmediateAbortException;
+
+
+/**
+ * Works out how the steady state measures of a GSPN, the average number of
+ * tokens on each place and the throughput of each timed transition, change
+ * with the rate of each timed transition, from a single steady state solution
+ * rather than by solving the chain again for every rate.
+ *
+ * For a measure R = pi.r, with g = r - R, the derivative with respect to a
+ * rate is dR = pi.dr - pi dQ x, where x is any solution of the adjoint
+ * equations Q x = g. There is one adjoint solve, by Gauss-Seidel, for each
+ * measure, and the solves are shared out between the processors. The
+ * derivative of Q with respect to the rate of a transition is built from the
+ * net: in each tangible state, the transition leads to each tangible state it
+ * can reach, through any vanishing states, with a probability that depends
+ * only on the weights of the immediate transitions. Each solve builds the
+ * reward vector of its measure itself and drops it when it is done, so only
+ * as many are held at once as there are threads.
+ *
+ * The chain must be ergodic. The weights of immediate transitions are not
+ * treated as rates.
+ */
+public class SensitivitySolver {
+
+   private static final double TOLERANCE = 1e-10;
+   private static final int MAXSWEEPS = 100000;
+   private static final int CHECKINTERVAL = 10;
+
+   private final CompiledNet net;
+   private final Transition[] transitions;
+   private final StateList states;
+   private final SparseMatrix Qt;
+
+   // The tangible states each state goes to when each of its enabled
+   // transitions fires, and with what probability. Those of state s are
+   // firings[arcstarts[s]] .. firings[arcstarts[s+1]-1].
+   private int[] arcstarts;
+   private int[] firings;
+   private int[] targets;
+   private double[] probabilities;
+
+   private double[] pi;
+   private double[] averages;
+   private double[] throughputs;
+   private double[][] tokensensitivities;
+   private double[][] throughputsensitivities;
+
+
+   /**
+    * SensitivitySolver()
+    * @param rgfile     The reachability graph file written by
+    *                   StateSpaceGenerator.generate() for pnmlData
+    * @param pnmlData   The net
+    * @throws IOException
+    * @throws StateSpaceTooBigException
+    * @throws TimelessTrapException
+    */
+   public SensitivitySolver(File rgfile, DataLayer pnmlData)
+           throws IOException, StateSpaceTooBigException,
+           TimelessTrapException {
+      net = new CompiledNet(pnmlData);
+      transitions = pnmlData.getTransitions();
+      states = new StateList(rgfile, false);
+      Qt = SparseMatrix.createGenerator(rgfile, true);
+      findFirings();
+   }
+
+
+   /**
+    * solve()
+    * Works out the steady state distribution, the measures and their
+    * derivatives.
+    * @throws ImmediateAbortException if the chain is not ergodic or a solve
+    *         does not converge
+    */
+   public void solve() throws ImmediateAbortException {
+      SparseMatrix Q = Qt.transpose();
+      StronglyConnectedComponents components =
+              new StronglyConnectedComponents(Q);
+      if (!components.isErgodic()) {
+         throw new ImmediateAbortException(components.toString() +
+                 " Sensitivities can only be worked out for ergodic chains.");
+      }
+      pi = SteadyStateSolver.solveLumped(Qt, null);
+
+      int numplaces = net.getPlaceCount();
+      int numtransitions = net.getTransitionCount();
+      averages = new double[numplaces];
+      throughputs = new double[numtransitions];
+      tokensensitivities = new double[numplaces][];
+      throughputsensitivities = new double[numtransitions][];
+      List tasks = new ArrayList();
+      for (int p = 0; p < numplaces; p++) {
+         tasks.add(new AdjointTask(Q, true, p));
+      }
+      for (int t = 0; t < numtransitions; t++) {
+         tasks.add(new AdjointTask(Q, false, t));
+      }
+
+      System.out.println("Solving " + tasks.size() + " adjoint systems...");
+      int numthreads = Math.min(Runtime.getRuntime().availableProcessors(),
+              tasks.size());
+      ExecutorService threads = Executors.newFixedThreadPool(numthreads);
+      try {
+         List results = threads.invokeAll(tasks);
+         for (int i = 0; i < results.size(); i++) {
+            ((Future)results.get(i)).get();
+         }
+      } catch (InterruptedException e) {
+         throw new ImmediateAbortException("Interrupted");
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof NotConvergingException) {
+            throw new ImmediateAbortException(e.getCause().getMessage());
+         } else if (e.getCause() instanceof OutOfMemoryError) {
+            throw (OutOfMemoryError)e.getCause();
+         }
+         throw new RuntimeException(e.getCause());
+      } finally {
+         threads.shutdown();
+      }
+
+      // The throughput of a transition is also its rate times the
+      // probability that it is enabled
+      for (int t = 0; t < numtransitions; t++) {
+         if (net.isTimed(t) && (net.getRate(t) != 0.0)) {
+            throughputsensitivities[t][t] += throughputs[t] / net.getRate(t);
+         }
+      }
+   }
+
+
+   public double[] getSteadyState() {
+      return pi;
+   }
+
+
+   public double[] getAverageTokens() {
+      return averages;
+   }
+
+
+   public double[] getThroughputs() {
+      return throughputs;
+   }
+
+
+   /**
+    * getTokenSensitivities()
+    * @return   The derivative of the average number of tokens on each place
+    *           with respect to the rate of each transition, indexed by place
+    *           then transition, and zero for immediate transitions
+    */
+   public double[][] getTokenSensitivities() {
+      return tokensensitivities;
+   }
+
+
+   /**
+    * getThroughputSensitivities()
+    * @return   The derivative of the throughput of each transition with
+    *           respect to the rate of each transition, indexed by the
+    *           transition whose throughput it is and then the one whose rate
+    *           changes
+    */
+   public double[][] getThroughputSensitivities() {
+      return throughputsensitivities;
+   }
+
+
+   /**
+    * getParameterSensitivities()
+    * Works out the derivatives of the measures with respect to rate
+    * parameters rather than transition rates. A parameter sets the rate of
+    * every timed transition that uses it, so its derivative is the sum of
+    * theirs.
+    * @param sensitivities  The derivatives with respect to each transition
+    *                       rate, as getTokenSensitivities() or
+    *                       getThroughputSensitivities() returns them
+    * @param parameters     The rate parameters
+    * @return               The derivatives with respect to each parameter
+    */
+   public double[][] getParameterSensitivities(double[][] sensitivities,
+           RateParameter[] parameters) {
+      double[][] result = new double[sensitivities.length][parameters.length];
+      for (int t = 0; t < transitions.length; t++) {
+         if (!net.isTimed(t)) {
+            continue;
+         }
+         for (int k = 0; k < parameters.length; k++) {
+            if (transitions[t].getRateParameter() == parameters[k]) {
+               for (int m = 0; m < sensitivities.length; m++) {
+                  result[m][k] += sensitivities[m][t];
+               }
+            }
+         }
+      }
+      return result;
+   }
+
+
+   /**
+    * findFirings()
+    * Fires each transition enabled in each tangible state and follows any
+    * vanishing states to the tangible states beyond, recording the
+    * probability of ending up in each of them.
+    */
+   private void findFirings() throws TimelessTrapException {
+      int numstates = states.size();
+      MarkingHash hasher = new MarkingHash(net.getPlaceCount());
+      ExploredStateTable ids = new ExploredStateTable(hasher);
+      for (int s = 0; s < numstates; s++) {
+         ids.findOrAdd(states.get(s));
+      }
+      SuccessorGenerator successors = new SuccessorGenerator(net, hasher);
+      SuccessorList reached = new SuccessorList();
+      BitSet enabled = new BitSet(net.getTransitionCount());
+
+      arcstarts = new int[numstates + 1];
+      int size = 0;
+      int capacity = Math.max(16, Qt.rowstarts[numstates]);
+      firings = new int[capacity];
+      targets = new int[capacity];
+      probabilities = new double[capacity];
+      for (int s = 0; s < numstates; s++) {
+         int[] marking = states.get(s);
+         net.enabledSet(marking, enabled);
+         reached.clear();
+         for (int t = enabled.nextSetBit(0); t >= 0;
+                 t = enabled.nextSetBit(t + 1)) {
+            int[] sprime = new int[marking.length];
+            net.fire(marking, sprime, t);
+            if (successors.isTangible(sprime)) {
+               reached.add(sprime, hasher.hash(sprime), 1.0, t);
+            } else {
+               successors.eliminateVanishing(sprime, 1.0, t, reached);
+            }
+         }
+         if (size + reached.size() > capacity) {
+            capacity = Math.max(capacity << 1, size + reached.size());
+            firings = grow(firings, capacity);
+            targets = grow(targets, capacity);
+            double[] newprobabilities = new double[capacity];
+            System.arraycopy(probabilities, 0, newprobabilities, 0, size);
+            probabilities = newprobabilities;
+         }
+         for (int i = 0; i < reached.size(); i++) {
+            firings[size] = reached.getTransition(i);
+            targets[size] = ids.find(reached.getMarking(i),
+                    reached.getHash(i));
+            probabilities[size] = reached.getRate(i);
+            size++;
+         }
+         arcstarts[s + 1] = size;
+      }
+   }
+
+
+   /**
+    * adjointSolve()
+    * Solves Q x = g by Gauss-Seidel. Q is singular, but as pi.g = 0 there
+    * is a solution, unique up to a constant, which is all that is needed. It
+    * is pinned down by keeping x[0] at zero and leaving out the first
+    * equation, which the others imply, so a pi that is only accurate to the
+    * tolerance of the steady state solver cannot stop the sweeps converging.
+    * @param Q      The generator matrix
+    * @param g      The right hand side
+    * @return       x
+    * @throws NotConvergingException
+    */
+   private static double[] adjointSolve(SparseMatrix Q, double[] g)
+           throws NotConvergingException {
+      int numstates = Q.getNumRows();
+      double[] x = new double[numstates];
+      double scale = 0.0;
+      for (int s = 0; s < numstates; s++) {
+         scale = Math.max(scale, Math.abs(g[s]));
+      }
+      if (scale == 0.0) {
+         return x;
+      }
+      for (int sweep = 1; sweep <= MAXSWEEPS; sweep++) {
+         for (int s = 1; s < numstates; s++) {
+            double sum = g[s];
+            for (int i = Q.rowstarts[s]; i < Q.rowstarts[s + 1]; i++) {
+               sum -= Q.values[i] * x[Q.columns[i]];
+            }
+            x[s] = sum / Q.diagonal[s];
+         }
+         if (sweep % CHECKINTERVAL == 0) {
+            double largest = 0.0;
+            for (int s = 1; s < numstates; s++) {
+               double r = Q.diagonal[s] * x[s] - g[s];
+               for (int i = Q.rowstarts[s]; i < Q.rowstarts[s + 1]; i++) {
+                  r += Q.values[i] * x[Q.columns[i]];
+               }
+               largest = Math.max(largest, Math.abs(r));
+            }
+            if (largest <= TOLERANCE * scale) {
+               return x;
+            }
+         }
+      }
+      throw new NotConvergingException("The adjoint equations did not " +
+              "converge within " + MAXSWEEPS + " Gauss-Seidel sweeps.");
+   }
+
+
+   /**
+    * sensitivities()
+    * @param x      The solution of the adjoint equations for a measure
+    * @return       -pi dQ x for the rate of each transition
+    */
+   private double[] sensitivities(double[] x) {
+      double[] result = new double[net.getTransitionCount()];
+      for (int s = 0; s < pi.length; s++) {
+         for (int i = arcstarts[s]; i < arcstarts[s + 1]; i++) {
+            result[firings[i]] -= pi[s] * probabilities[i] *
+                    (x[targets[i]] - x[s]);
+         }
+      }
+      return result;
+   }
+
+
+   /**
+    * placeReward()
+    * @return   The number of tokens on a place in each state
+    */
+   private double[] placeReward(int p) {
+      double[] reward = new double[pi.length];
+      for (int s = 0; s < reward.length; s++) {
+         reward[s] = states.get(s)[p];
+      }
+      return reward;
+   }
+
+
+   /**
+    * transitionReward()
+    * @return   The rate of a transition in each state it is enabled in,
+    *           which are the states the firings found by findFirings() say
+    *           it fires from
+    */
+   private double[] transitionReward(int t) {
+      double[] reward = new double[pi.length];
+      for (int s = 0; s < reward.length; s++) {
+         for (int i = arcstarts[s]; i < arcstarts[s + 1]; i++) {
+            if (firings[i] == t) {
+               reward[s] = net.getRate(t);
+               break;
+            }
+         }
+      }
+      return reward;
+   }
+
+
+   private static double dot(double[] a, double[] b) {
+      double sum = 0.0;
+      for (int i = 0; i < a.length; i++) {
+         sum += a[i] * b[i];
+      }
+      return sum;
+   }
+
+
+   private static int[] grow(int[] array, int capacity) {
+      int[] result = new int[capacity];
+      System.arraycopy(array, 0, result, 0, array.length);
+      return result;
+   }
+
+
+   /**
+    * Works out one measure, the average tokens on a place or the throughput
+    * of a transition, solves its adjoint equations and puts its derivatives
+    * in their row of the results.
+    */
+   private class AdjointTask
+           implements Callable {
+
+      private final SparseMatrix Q;
+      private final boolean place;
+      private final int index;
+
+
+      AdjointTask(SparseMatrix Q, boolean place, int index) {
+         this.Q = Q;
+         this.place = place;
+         this.index = index;
+      }
+
+
+      public Object call() throws NotConvergingException {
+         // g starts out as the reward and has the measure taken off it
+         double[] g = place ? placeReward(index) : transitionReward(index);
+         double measure = dot(pi, g);
+         for (int s = 0; s < g.length; s++) {
+            g[s] -= measure;
+         }
+         double[] result = sensitivities(adjointSolve(Q, g));
+         if (place) {
+            averages[index] = measure;
+            tokensensitivities[index] = result;
+         } else {
+            throughputs[index] = measure;
+            throughputsensitivities[index] = result;
+         }
+         return null;
+      }
+
+   }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+
+import pipe.io.RGFileReader;
+import pipe.io.TransitionRecord;
+
+
+/**
+ * A sparse matrix held in compressed sparse row form, shared by the solvers in
+ * this package. The off diagonal elements of each row are kept together in
+ * primitive arrays, in the order they were added, and the diagonal is kept in
+ * an array of its own, since the solvers treat it separately.
+ *
+ * The elements of row i are columns[rowstarts[i]] .. columns[rowstarts[i+1]-1]
+ * with the values at the same positions in values. A matrix stored by column
+ * is simply the transpose stored by row.
+ */
+public class SparseMatrix {
+
+   private final int numrows;
+   final int[] rowstarts;
+   final int[] columns;
+   final double[] values;
+   final double[] diagonal;
+
+
+   /**
+    * SparseMatrix()
+    * @param rowstarts  The position of the first element of each row, with
+    *                   the number of off diagonal elements at the end
+    * @param columns    The column of each off diagonal element
+    * @param values     The value of each off diagonal element
+    * @param diagonal   The diagonal elements
+    */
+   SparseMatrix(int[] rowstarts, int[] columns, double[] values,
+           double[] diagonal) {
+      this.numrows = diagonal.length;
+      this.rowstarts = rowstarts;
+      this.columns = columns;
+      this.values = values;
+      this.diagonal = diagonal;
+   }
+
+
+   /**
+    * createGenerator()
+    * Reads the state to state transitions of a reachability graph file and
+    * builds the infinitesimal generator matrix Q from their rates. Each
+    * diagonal element is the negative sum of the off diagonals on its row, and
+    * arcs from a state to itself are left out as they cancel out of it.
+    *
+    * The file is read twice, once to count the elements in each row and once
+    * to put them in place, so no more than the finished arrays is ever held.
+    *
+    * @param rgfile     The reachability graph file, in either version of the
+    *                   format
+    * @param transposed Whether to store the matrix by column, that is return
+    *                   the transpose of Q, which is what the steady state
+    *                   solvers work on
+    * @return           The generator matrix
+    * @throws IOException
+    */
+   public static SparseMatrix createGenerator(File rgfile, boolean transposed)
+           throws IOException {
+      TransitionRecord current = new TransitionRecord();
+      DecimalFormat f = new DecimalFormat();
+      f.setMaximumFractionDigits(1);
+
+      // Count the elements of each row
+      RGFileReader inputfile = new RGFileReader(rgfile);
+      int numstates;
+      int numtransitions;
+      int[] rowstarts;
+      try {
+         numstates = inputfile.getNumStates();
+         numtransitions = inputfile.getNumTransitions();
+         rowstarts = new int[numstates + 1];
+         for (int record = 0; record < numtransitions; record++) {
+            inputfile.readTransition(current);
+            if (current.getFromState() != current.getToState()) {
+               int row = transposed ? current.getToState()
+                                    : current.getFromState();
+               rowstarts[row + 1]++;
+            }
+         }
+      } finally {
+         inputfile.close();
+      }
+      for (int row = 0; row < numstates; row++) {
+         rowstarts[row + 1] += rowstarts[row];
+      }
+
+      // Now put them in place, keeping those on the same row in the order
+      // they were read
+      int numelements = rowstarts[numstates];
+      int[] columns = new int[numelements];
+      double[] values = new double[numelements];
+      double[] diagonal = new double[numstates];
+      int[] next = new int[numstates];
+      System.arraycopy(rowstarts, 0, next, 0, numstates);
+      inputfile = new RGFileReader(rgfile);
+      try {
+         int step = Math.max(1, numtransitions / 1000);
+         for (int record = 0; record < numtransitions; record++) {
+            inputfile.readTransition(current);
+            int from = current.getFromState();
+            int to = current.getToState();
+            if (from != to) {
+               double rate = current.getRate();
+               int row = transposed ? to : from;
+               int element = next[row]++;
+               columns[element] = transposed ? from : to;
+               values[element] = rate;
+               diagonal[from] += rate;
+            }
+            if (record % step == 0) {
+               System.out.print(f.format(((double)record/numtransitions)*100) +
+                       "% complete.  \r");
+            }
+         }
+      } finally {
+         inputfile.close();
+      }
+      System.out.println("100.0% complete.  ");
+      
+      // Each diagonal element is the negative sum of the off diagonals on
+      // that row of Q
+      for (int state = 0; state < numstates; state++) {
+         diagonal[state] = 0.0 - diagonal[state];
+      }
+      return new SparseMatrix(rowstarts, columns, values, diagonal);
+   }
+
+
+   public int getNumRows() {
+      return numrows;
+   }
+
+
+   /**
+    * getNumElements()
+    * @return   The number of elements stored, counting the whole diagonal
+    */
+   public long getNumElements() {
+      return (long)rowstarts[numrows] + numrows;
+   }
+
+
+   public double getDiagonal(int row) {
+      return diagonal[row];
+   }
+
+
+   /**
+    * getMemoryFootprint()
+    * @return   The number of bytes taken up by the arrays of the matrix
+    */
+   public long getMemoryFootprint() {
+      return 4L * rowstarts.length + 4L * columns.length +
+              8L * values.length + 8L * diagonal.length;
+   }
+
+
+   /**
+    * multiply()
+    * Works out y = Ax.
+    * @param x      A vector with as many elements as there are columns
+    * @param y      Filled in with the result, with an element for each row
+    */
+   public void multiply(double[] x, double[] y) {
+      for (int row = 0; row < numrows; row++) {
+         double sum = 0.0;
+         for (int i = rowstarts[row]; i < rowstarts[row + 1]; i++) {
+            sum += values[i] * x[columns[i]];
+         }
+         y[row] = sum + diagonal[row] * x[row];
+      }
+   }
+
+
+   /**
+    * transpose()
+    * @return   The transpose of the matrix, with the elements of each row in
+    *           order of column
+    */
+   public SparseMatrix transpose() {
+      int numelements = rowstarts[numrows];
+      int[] trowstarts = new int[numrows + 1];
+      for (int i = 0; i < numelements; i++) {
+         trowstarts[columns[i] + 1]++;
+      }
+      for (int row = 0; row < numrows; row++) {
+         trowstarts[row + 1] += trowstarts[row];
+      }
+      int[] tcolumns = new int[numelements];
+      double[] tvalues = new double[numelements];
+      int[] next = new int[numrows];
+      System.arraycopy(trowstarts, 0, next, 0, numrows);
+      for (int row = 0; row < numrows; row++) {
+         for (int i = rowstarts[row]; i < rowstarts[row + 1]; i++) {
+            int element = next[columns[i]]++;
+            tcolumns[element] = row;
+            tvalues[element] = values[i];
+         }
+      }
+      return new SparseMatrix(trowstarts, tcolumns, tvalues,
+                              (double[])diagonal.clone());
+   }
+
+
+   public String toString() {
+      return "SparseMatrix[" + numrows + " rows, " + getNumElements() +
+              " elements, " + getMemoryFootprint() + " bytes]";
+   }
+
+}
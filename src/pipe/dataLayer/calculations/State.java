@@ -13,6 +13,11 @@ public class State {
    
    int[] state;
    
+   // The 64 bit hash of the state, worked out the first time it is needed.
+   // setState() clears it; the array getState() returns must not be changed.
+   private long hash;
+   private boolean hashed = false;
+   
    
    public State(int[] newState){
       setState(newState);
@@ -27,6 +32,7 @@ public class State {
    public void setState(int[] newState){
       state = new int[newState.length];
       System.arraycopy(newState, 0, state, 0, newState.length);
+      hashed = false;
    }
    
    
@@ -62,24 +68,12 @@ public class State {
    
    /**
     * hashCode()
-    * This overrides the Object.hashCode() method.
+    * This overrides the Object.hashCode() method. It is the low 31 bits of 
+    * the 64 bit hash of the state given by MarkingHash, so it is never 
+    * negative.
     */
    public int hashCode(){
-      int total = 0;
-      
-      for (int offset = 0; offset < state.length; offset++) {
-         total = (2 * total);
-         for (int index = 0; index < (state.length - offset); index++) {
-            total += state[index];
-         }
-      }
-      // As the above for loop results in massive integers check we haven't
-      // overflowed and gone negative.
-      // If we have then wrap round to zero.
-      if (total < 0) {
-         total = Integer.MAX_VALUE + total;
-      }      
-      return total;
+      return (int)hash() & Integer.MAX_VALUE;
    }
    
    
@@ -87,19 +81,21 @@ public class State {
     * hashCode2()
     * This is an extra hashing function used for collision resolution. If both 
     * the original hashcode and this hashcode match that of another state 
-    * object, then they are very probably the same state.
+    * object, then they are very probably the same state. It is the high 32 
+    * bits of the hash hashCode() is taken from.
     * @return
     */
    public int hashCode2(){
-      int total = 0;
-      
-      for (int offset = 0; offset < state.length; offset++) {
-         total = 2 * total;
-         for (int index = offset; index < state.length; index++) {
-            total += state[index];
-         }
+      return (int)(hash() >>> 32);
+   }
+   
+   
+   private long hash(){
+      if (!hashed) {
+         hash = MarkingHash.forPlaceCount(state.length).hash(state);
+         hashed = true;
       }
-      return total;
+      return hash;
    }
    
    
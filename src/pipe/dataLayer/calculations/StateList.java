@@ -5,10 +5,9 @@ package pipe.dataLayer.calculations;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
 
-import pipe.io.RGFileHeader;
+import pipe.io.RGFileReader;
 import pipe.io.StateRecord;
 
 
@@ -18,6 +17,9 @@ import pipe.io.StateRecord;
 public class StateList {
    
    private ArrayList list;
+   // The markings in the list, used by add(int[]) to find duplicates. Only 
+   // built the first time add(int[]) is called.
+   private ExploredStateTable index;
    
    
    public StateList() {
@@ -28,7 +30,9 @@ public class StateList {
    /**
     * StateList()
     * @param rgfile - A reachability graph file containing a list of tangible 
-    *                 states.
+    *                 states, in either version of the format.
+    * @param readTangible - Whether the states say if they are tangible. This 
+    *                 is now worked out from the file itself.
     * @throws IOException
     * @throws StateSpaceTooBigException
     *
@@ -38,19 +42,14 @@ public class StateList {
    public StateList(File rgfile, boolean readTangible) throws 
            IOException, StateSpaceTooBigException {
       list = new ArrayList();
-      RandomAccessFile input = new RandomAccessFile(rgfile, "r");
-      RGFileHeader rgheader = new RGFileHeader(input);
+      RGFileReader input = new RGFileReader(rgfile);
       StateRecord currentrecord = new StateRecord();
       
-      int numtangiblestates = rgheader.getNumStates();
+      int numtangiblestates = input.getNumStates();
       int state = 0;
       try{
          for (state = 0; state < numtangiblestates; state++){
-            if (readTangible) {
-               currentrecord.read1(rgheader.getStateArraySize(), input);
-            } else {
-               currentrecord.read(rgheader.getStateArraySize(), input);
-            }
+            input.readState(currentrecord);
             fastadd(currentrecord.getState(), currentrecord.getID());
          }
          input.close();
@@ -75,30 +74,35 @@ public class StateList {
    private void fastadd(int[] m, int id) throws OutOfMemoryError{
       Marking marking = new Marking(m, id);
       list.add(marking);
+      if (index != null) {
+         index.findOrAdd(m);
+      }
    }
 
    
+   /**
+    * add()
+    * Adds a marking to the end of the list unless it is already there. The 
+    * markings are looked up by hash rather than compared with every marking 
+    * in the list in turn.
+    * @param m   The marking to be added
+    */
    public void add(int[] m) {
-      list.trimToSize();
       int size = list.size();
-      //int[] candidate = m.getMarking();
       
-      if (size == 0) {
-         Marking marking = new Marking(m, 0);
-         list.add(marking);
-         //id = "M0";
-         //print(m);
-         return;
-      } else if (size > 0 ) {
+      if (index == null) {
+         index = new ExploredStateTable(m.length, 2 * size);
          for (int i = 0; i < size; i++) {
-            Marking comparator = (Marking)list.get(i);
-            int[] compareInts = comparator.getMarking();
-            if (compareMarking(m, compareInts) == true) {
-               return;
-            }
+            index.findOrAdd(get(i));
          }
       }
       
+      int known = index.size();
+      index.findOrAdd(m);
+      if (index.size() == known) {
+         return;
+      }
+      
       Marking marking = new Marking(m, size);
       list.add(marking);
       return;   
@@ -109,6 +113,9 @@ public class StateList {
    public void add(int[] marking, int idInput) {
       Marking m = new Marking(marking, idInput);
       list.add(m);
+      if (index != null) {
+         index.findOrAdd(marking);
+      }
    }
    
    
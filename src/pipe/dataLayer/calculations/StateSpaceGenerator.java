@@ -3,22 +3,23 @@
  */
 package pipe.dataLayer.calculations;
 
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import pipe.dataLayer.DataLayer;
-import pipe.dataLayer.Transition;
 import pipe.gui.widgets.ResultsHTMLPane;
 import pipe.io.ImmediateAbortException;
-import pipe.io.RGFileHeader;
-import pipe.io.StateRecord;
-import pipe.io.TransitionRecord;
+import pipe.io.RGFileWriter;
 
 
 /**
@@ -43,132 +44,149 @@ import pipe.io.TransitionRecord;
  */
 public class StateSpaceGenerator {
    
-   private static final boolean DEBUG = false;
-   private static final int NUMHASHROWS = 46567;
 
-   //  Array storing the transitions fired
-   private static Stack transitions = new Stack();
+   // The number of tangible states each exploration thread is given at a 
+   // time when generating the state space in parallel
+   private static final int CHUNKSIZE = 256;
 
    
+   /**
+    * generate()
+    * Generates the full reachability graph of a net, vanishing states 
+    * included, recording whether each state is tangible and the transition 
+    * fired for each arc.
+    * @throws TimelessTrapException
+    * @throws ImmediateAbortException
+    * @throws IOException
+    */
    public static void generate(DataLayer pnmlData, File reachGraph) throws 
            OutOfMemoryError, TimelessTrapException, ImmediateAbortException, 
            IOException {
+      try {
+         generateAll(pnmlData, reachGraph, 0);
+      } catch (StateSpaceTooBigException e) {
+         // Only thrown when there is a limit
+         throw new IllegalStateException(e.getMessage());
+      }
+   }
+   
+   
+   /**
+    * generate()
+    * As above, but gives up once more than maxarcs arcs have been found, for
+    * callers that can only make use of a small graph.
+    * @param maxarcs  The most arcs to find
+    * @throws StateSpaceTooBigException if the graph has more than maxarcs 
+    *                 arcs
+    * @throws TimelessTrapException
+    * @throws ImmediateAbortException
+    * @throws IOException
+    */
+   public static void generate(DataLayer pnmlData, File reachGraph, 
+           int maxarcs) throws OutOfMemoryError, StateSpaceTooBigException, 
+           TimelessTrapException, ImmediateAbortException, IOException {
+      generateAll(pnmlData, reachGraph, maxarcs);
+   }
+   
+   
+   /**
+    * generateAll()
+    * @param maxarcs  The most arcs to find, or 0 for no limit
+    */
+   private static void generateAll(DataLayer pnmlData, File reachGraph, 
+           int maxarcs) throws OutOfMemoryError, StateSpaceTooBigException, 
+           TimelessTrapException, ImmediateAbortException, IOException {
       
       State currentMarking = new State(pnmlData.getCurrentMarkingVector());
       int statearraysize = currentMarking.getState().length;
+      CompiledNet net = new CompiledNet(pnmlData);
       
       Queue statesQueue = new Queue();// States waiting to be explored
       Stack tansuccessor = new Stack();
+      // The transitions with concession in each state on tansuccessor
+      Stack successorconcession = new Stack();
+      // The transition fired to reach each state on tansuccessor
+      Stack successortransition = new Stack();
+      // The transitions with concession and enabled in the state s
+      BitSet concession = new BitSet(net.getTransitionCount());
+      BitSet enabled = new BitSet(net.getTransitionCount());
       // Objects for temporarily storing states that haven't been identified as
       // tangible or vanishing
       State sprime = null;
       Marking currentState = null; // Used in some loops
       Marking s = null; // Used in some loops
       
-      // A record of all explored states. The actual states themselves are not 
-      // stored here. Instead, just their two hashcodes are used to represent 
-      // them, one as a key to the hashtable row, the other as the entry in a 
-      // list at each hashtable row.
-      LinkedList[] exploredStates = new LinkedList[NUMHASHROWS];
+      // A record of all explored states and the id number each was given.
+      ExploredStateTable exploredStates = new ExploredStateTable(statearraysize);
       
-      // This list is used to temporarily store details of the arcs between 
-      // states on the reachability graph.
-      LinkedList localarcs = new LinkedList();
+      // The arcs out of the state being explored, to be written to file once
+      // all its successors have been found
+      ArcAccumulator localarcs = new ArcAccumulator();
 
       // Counters used for creating the reachability graph file
       int numStates = 0;
       int numTransitions = 0;
-      // Temporary files for storing tangible states and the transitions between
-      // them. They are later combined into one file by the createRGFile method.
-      RandomAccessFile outputFile;
-      RandomAccessFile esoFile;
-      File intermediate = new File("graph.irg");
+      // The reachability graph file, which records whether each state is 
+      // tangible and the transition fired for each arc
+      RGFileWriter rgfile;
       
-      if (intermediate.exists()) {
-         if (!intermediate.delete()) {
-            System.err.println("Could not delete intermediate file.");
-         }
-      }
-
       try {
-         outputFile = new RandomAccessFile(intermediate, "rw");
-         esoFile = new RandomAccessFile(reachGraph, "rw");
-         // Write a blank file header as a place holder for later
-         RGFileHeader header = new RGFileHeader();
-         header.write(esoFile);
+         rgfile = new RGFileWriter(reachGraph, statearraysize, true, true);
       } catch (IOException e) {
-         System.out.println("Could not create intermediate files.");
+         System.out.println("Could not create reachability graph file.");
          return;
       }
       
-      currentState = new Marking(currentMarking, numStates, 
-              isTangible(pnmlData, currentMarking));
-      numStates++;
-      statesQueue.enqueue(currentState);
-      addExplored(currentState, exploredStates, esoFile, true);
-      
-      while(!statesQueue.isEmpty()){
-         
-         s = (Marking)statesQueue.dequeue();
+      try {
+         currentState = new Marking(currentMarking, numStates, 
+                 isTangible(net, currentMarking));
+         exploredStates.findOrAdd(currentMarking.getState());
+         numStates++;
+         statesQueue.enqueue(currentState);
+         addExplored(currentState, rgfile);
          
-         fire(pnmlData, s, tansuccessor);
-         while (!tansuccessor.isEmpty()) {
-            sprime = (State)tansuccessor.pop();
-            if (!explored(sprime, exploredStates)) {
-               currentState = new Marking(sprime, numStates, 
-                       isTangible(pnmlData, sprime));
-               numStates++;
-               statesQueue.enqueue(currentState);
-               addExplored(currentState, exploredStates, esoFile, true);
-            } else {
-               int id = identifyState(sprime, exploredStates);
-               if (id == -1) {
-                  throw new ImmediateAbortException(
-                          "Could not identify previously explored tangible state.");
+         while(!statesQueue.isEmpty()){
+            
+            s = (Marking)statesQueue.dequeue();
+            
+            net.concessionSet(s.getState(), concession);
+            net.enabledSet(concession, enabled);
+            fire(net, s, concession, enabled, tansuccessor, successorconcession,
+                 successortransition);
+            while (!tansuccessor.isEmpty()) {
+               sprime = (State)tansuccessor.pop();
+               BitSet sprimeconcession = (BitSet)successorconcession.pop();
+               int transitionNo = 
+                       ((Integer)successortransition.pop()).intValue();
+               int id = exploredStates.findOrAdd(sprime.getState());
+               if (id == numStates) {
+                  // Not explored before, so it has just been given the next id
+                  currentState = new Marking(sprime, numStates, 
+                          net.isTangible(sprimeconcession));
+                  numStates++;
+                  statesQueue.enqueue(currentState);
+                  addExplored(currentState, rgfile);
+               } else {
+                  currentState = new Marking(sprime, id);
                }
-               currentState = new Marking(sprime, id);
+               numTransitions += localarcs.add(currentState.getIDNum(), 
+                       rate(net, s, enabled, sprime), transitionNo);
             }
-            numTransitions += transition(currentState, rate(pnmlData, s, sprime),
-                    localarcs);
-         }
-         // Write all the arcs for the reachability graph to file
-         writeTransitions(s, localarcs, outputFile,true);
-         // Clear the list so can start again with the next set of arcs
-         localarcs.clear();
-         
-         if (numTransitions > 400) {
-            throw new OutOfMemoryError("The net generates in excess of 20000 states");
-         }
-      }
-      try {
-         outputFile.close();
-      } catch (IOException e1) {
-         System.err.println("\nCould not close intermediate file.");
-      }
-      System.out.println("\nGenerate Ends, " + numStates +
-              " states found with " + numTransitions + " arcs.");
-      createRGFile(intermediate, esoFile, statearraysize, numStates, 
-              numTransitions, true);
-      
-      if (DEBUG) {
-         /* Write a csv file indicating the Hashtable distribution */
-         FileWriter htdist = new FileWriter("HashTableDist.csv");
-         for(int row = 0; row < NUMHASHROWS; row++){
-            htdist.write(Integer.toString(row) + ",");
-            if(exploredStates[row] == null) {
-               htdist.write("0\n");
-            } else {
-               htdist.write(Integer.toString(exploredStates[row].size()) + "\n");
+            // Write all the arcs for the reachability graph to file
+            writeTransitions(s, localarcs, rgfile);
+            
+            if ((maxarcs > 0) && (numTransitions > maxarcs)) {
+               throw new StateSpaceTooBigException("The reachability graph " +
+                       "has more than " + maxarcs + " arcs.");
             }
          }
-         htdist.close();
-         System.out.println("Finished writing hashtable distribution to file.");
-      }
-
-      if (intermediate.exists()) {
-         if (!intermediate.delete()) {
-            System.err.println("\nCould not delete intermediate file.");
-         }
+         System.out.println("\nGenerate Ends, " + numStates +
+                 " states found with " + numTransitions + " arcs.");
+         System.out.println(exploredStates.getStatistics());
+         createRGFile(rgfile);
+      } finally {
+         // Does nothing if the file has been finished
+         rgfile.abort();
       }
    }
    
@@ -188,44 +206,62 @@ public class StateSpaceGenerator {
             ResultsHTMLPane resultspane) 
             throws OutOfMemoryError, TimelessTrapException, 
             ImmediateAbortException, IOException{
-      
-      // This is used to catch timeless traps. It's the maximum number
-      // of attempts to try and get successors to vanishing states.
-      final int MAX_TRIES = 100000;
+      generate(pnmlData, reachGraph, resultspane, 1);
+   }
+   
+   
+   /**
+    * generate()
+    * Generates the statespace from a GSPN using several threads.
+    * Tangible states are taken off the front of the queue in chunks. The 
+    * successors of every state in a chunk are worked out in parallel, each 
+    * thread taking a slice of the chunk and looking up the successors that 
+    * have already been explored in the shared explored states table. The 
+    * results are then merged on this thread in queue order, which is when new
+    * states are added to the table and given their id numbers, so the 
+    * reachability graph file is identical whatever the number of threads.
+    * @param numthreads  The number of exploration threads to use. With one 
+    *                    thread all the work is done on the calling thread.
+    * @throws TimelessTrapException
+    * @throws ImmediateAbortException
+    * @throws IOException
+    */
+   public static void generate(DataLayer pnmlData, File reachGraph, 
+            ResultsHTMLPane resultspane, int numthreads) 
+            throws OutOfMemoryError, TimelessTrapException, 
+            ImmediateAbortException, IOException{
       
       State currentMarking = new State(pnmlData.getCurrentMarkingVector());
       int statearraysize = currentMarking.getState().length;
       
-      // Tangible states waiting to be explored
-      Queue tangibleStates = new Queue();
-      // Vanishing states waiting to be explored and then eliminated
-      Stack vanishingStates = new Stack();
-      // Temporary stacks for storing states resulting from a transition firing
-      Stack vansuccessor = new Stack();	
-      Stack tansuccessor = new Stack();
-      // Objects for temporarily storing states that haven't been identified as 
-      // tangible or vanishing
-      State vprime = null;
-      State sprime = null;
+      // Hashes markings for the explored states table. The successor 
+      // generator uses the same one so that it can hand the table the hashes
+      // of the successors it finds.
+      MarkingHash hasher = new MarkingHash(statearraysize);
+      
+      // Works out the tangible successors of tangible states
+      CompiledNet net = new CompiledNet(pnmlData);
+      SuccessorGenerator successors = new SuccessorGenerator(net, hasher);
+      
+      // The transitions enabled in each tangible state, which are written 
+      // to the file with it
+      BitSet enabled = new BitSet(net.getTransitionCount());
+      int[] enabledlist = new int[net.getTransitionCount()];
+      
+      // Tangible states waiting to be explored, packed into int arrays and
+      // written to disk if there are too many to keep in memory
+      MarkingFrontier tangibleStates = new MarkingFrontier(statearraysize);
+      int[] dequeued = new int[statearraysize];
       Marking tangible = null; // Used in some loops
       Marking s = null;        // Used in some loops
-      VanishingState v = null; // Used in some loops
-      
-      // A record of all explored states. The actual states themselves are not 
-      // stored here. Instead, just their two hashcodes are used to represent 
-      // them, one as a key to the hashtable row, the other as the entry in a 
-      // list at each hashtable row.
-      LinkedList[] exploredStates = new LinkedList[NUMHASHROWS];
       
-      // This list is used to temporarily store details of the arcs between 
-      // states on the reachability graph.
-      LinkedList localarcs = new LinkedList();
+      // A record of all explored tangible states and the id number each was 
+      // given.
+      ExploredStateTable exploredStates = new ExploredStateTable(hasher);
       
-      // These are used when calculating effective transition rates from 
-      // vanishing states to tangible states
-      double p;
-      double pprime;
-      double epsilon = 0.0000001;
+      // The arcs out of the state being explored, to be written to file once
+      // all its successors have been found
+      ArcAccumulator localarcs = new ArcAccumulator();
       
       // Counters used for creating the reachability graph file
       int numtangiblestates = 0;
@@ -236,254 +272,311 @@ public class StateSpaceGenerator {
       final int UPDATEAFTER = 10;
       int progress = UPDATEAFTER;
       
-      // Temporary files for storing tangible states and the transitions between
-      // them. They are later combined into one file by the createRGFile method
-      RandomAccessFile outputFile;
-      RandomAccessFile esoFile;
-      File intermediate = new File("graph.irg");
-      
-      if (intermediate.exists()) {
-         if (!intermediate.delete()) {
-            System.err.println("Could not delete intermediate file.");
-         }
+      if (numthreads < 1) {
+         numthreads = 1;
       }
       
+      // The reachability graph file, to which the tangible states are 
+      // written as they are found and the arcs out of each as it is explored
+      RGFileWriter rgfile;
+      
       try {
-         outputFile = new RandomAccessFile(intermediate, "rw");
-         esoFile = new RandomAccessFile(reachGraph, "rw");
-         // Write a blank file header as a place holder for later
-         RGFileHeader header = new RGFileHeader();
-         header.write(esoFile);
+         rgfile = new RGFileWriter(reachGraph, statearraysize, false, false,
+                                   true);
       } catch (IOException e) {
-         System.out.println("Could not create intermediate files.");
+         System.out.println("Could not create reachability graph file.");
          return;
       }
       
-      /*
-       * Phase I
-       * Initialise the tangibleStates stack with initial tangible states.
-       */
-      System.out.println("Beginning Phase I: " +
-                         "Determining initial tangible states...");
-      
-      // Start state space exploration
-      if (isTangible(pnmlData, currentMarking)) {
-         tangible = new Marking(currentMarking, numtangiblestates);
-         tangibleStates.enqueue(tangible);
-         addExplored(tangible, exploredStates, esoFile, false);
-         numtangiblestates++;
-      } else {
-         int attempts = 0; // This is a counter used to detect timeless traps
-         vanishingStates.push(new VanishingState(currentMarking, (double)1.0));
-         while ((!vanishingStates.isEmpty()) && (attempts != MAX_TRIES)) {
-            attempts++;
-            v = (VanishingState)vanishingStates.pop();
-            p = v.getRate();
-            //System.out.println("p: " + p);//debug
-            //numtransitionsfired += fire(pnmlData, v, vansuccessor);
-            
-            boolean[] enabledTransitions = 
-                    pnmlData.getTransitionEnabledStatusArray(v.getState());            
-            
-            int transition = 
-                          fireFirstEnabledTransition(pnmlData, enabledTransitions,
-                                                     v, vansuccessor);
-
-            while (transition != -1) {            
-            //while (!vansuccessor.isEmpty()) {
-               vprime = (State)vansuccessor.pop();
-               if (isTangible(pnmlData, vprime)) {
-                  if (!explored(vprime, exploredStates)) {
-                     tangible = new Marking(vprime, numtangiblestates);
-                     tangibleStates.enqueue(tangible);
-                     addExplored(tangible, exploredStates, esoFile, false);
-                     numtangiblestates++;
-                  }
-               } else {
-                  pprime = p * prob(pnmlData, v, vprime, transition);
-                  if (pprime > epsilon) {
-                     vanishingStates.push(
-                              new VanishingState(vprime,(double)pprime));
-                  }
+      try {
+         /*
+          * Phase I
+          * Initialise the tangibleStates stack with initial tangible states.
+          */
+         System.out.println("Beginning Phase I: " +
+                            "Determining initial tangible states...");
+         
+         // Start state space exploration
+         if (successors.isTangible(currentMarking.getState())) {
+            tangible = new Marking(currentMarking, numtangiblestates);
+            exploredStates.findOrAdd(currentMarking.getState());
+            tangibleStates.enqueue(tangible.getState(), numtangiblestates);
+            addExplored(tangible, net, enabled, enabledlist, rgfile);
+            numtangiblestates++;
+         } else {
+            SuccessorList initial = new SuccessorList();
+            successors.eliminateVanishing(currentMarking.getState(), 1.0, -1,
+                                          initial);
+            for (int i = 0; i < initial.size(); i++) {
+               if (exploredStates.findOrAdd(initial.getMarking(i), 
+                                            initial.getHash(i)) == 
+                       numtangiblestates) {
+                  tangible = new Marking(initial.getMarking(i), 
+                                         numtangiblestates);
+                  tangibleStates.enqueue(tangible.getState(), 
+                                         numtangiblestates);
+                  addExplored(tangible, net, enabled, enabledlist, rgfile);
+                  numtangiblestates++;
                }
-               transition = 
-                       fireFirstEnabledTransition(pnmlData, enabledTransitions,
-                                                     v, vansuccessor);
-            }
-         }
-         if (attempts == MAX_TRIES) {
-            try {
-               outputFile.close();
-            } catch (IOException e1) {
-               System.err.println("Could not close intermediate file.");
             }
-            throw new TimelessTrapException();
-         }
-      }
-      /* Phase I ends */
-      
-      /*
-       * Phase II
-       * Perform state space exploration, eliminating vanishing states
-       */
-      System.out.println("Beginning Phase II: Exploring state space...");
-      
-      // Continue state space exploration
-      while (!tangibleStates.isEmpty()) {
-         if (progress == UPDATEAFTER) {
-            progress = 0;	// Reset the counter
-            System.out.print(numtangiblestates + " tangible states generated and " + numtransitionsfired + " transitions fired.\r");
-         } else{
-            progress++;
          }
+         /* Phase I ends */
          
-         s = (Marking)tangibleStates.dequeue();
+         /*
+          * Phase II
+          * Perform state space exploration, eliminating vanishing states
+          */
+         System.out.println("Beginning Phase II: Exploring state space...");
          
-         //System.out.println("numtransitionsfired abans de fire: " + numtransitionsfired);//debug
-         numtransitionsfired += fire(pnmlData, s, tansuccessor);
-         //System.out.println("numtransitionsfired despres de fire: " + numtransitionsfired);//debug
+         // The states currently being explored and their tangible successors
+         Marking[] chunk = new Marking[CHUNKSIZE * numthreads];
+         SuccessorList[] chunksuccessors = new SuccessorList[chunk.length];
+         for (int i = 0; i < chunk.length; i++) {
+            chunksuccessors[i] = new SuccessorList();
+         }
          
-         while (!tansuccessor.isEmpty()) {
-            sprime = (State)tansuccessor.pop();
-            if (isTangible(pnmlData, sprime)) {
-               if (!explored(sprime, exploredStates)) {
-                  tangible = new Marking(sprime, numtangiblestates);
-                  tangibleStates.enqueue(tangible);
-                  addExplored(tangible, exploredStates, esoFile, false);
-                  numtangiblestates++;
+         ExecutorService workers = null;
+         long[] statesexplored = new long[numthreads];
+         long[] busytime = new long[numthreads];
+         if (numthreads > 1) {
+            workers = Executors.newFixedThreadPool(numthreads);
+         }
+         long start = System.currentTimeMillis();
+         
+         try {
+            // Continue state space exploration
+            while (!tangibleStates.isEmpty()) {
+               int chunksize = 0;
+               while ((chunksize < chunk.length) && !tangibleStates.isEmpty()) {
+                  int id = tangibleStates.dequeue(dequeued);
+                  chunk[chunksize++] = new Marking(dequeued, id);
+               }
+               
+               if (workers == null) {
+                  long sliceStart = System.nanoTime();
+                  numtransitionsfired += expandSlice(successors, null, chunk, 
+                           chunksuccessors, 0, chunksize);
+                  statesexplored[0] += chunksize;
+                  busytime[0] += System.nanoTime() - sliceStart;
                } else {
-                  int id = identifyState(sprime, exploredStates);
-                  if (id == -1) {
-                     throw new ImmediateAbortException("Could not identify " +
-                              "previously explored tangible state.");
-                  }
-                  tangible = new Marking(sprime, id);
+                  numtransitionsfired += expandChunk(workers, numthreads, 
+                           successors, exploredStates, chunk, chunksuccessors,
+                           chunksize, statesexplored, busytime);
                }
-               numtransitions += transition(tangible, 
-                                            rate(pnmlData, s, sprime),
-                                            localarcs);
-            } else {
-               int attempts = 0;
-               vanishingStates.push(
-                        new VanishingState(sprime, rate(pnmlData, s, sprime)));
-               while ((!vanishingStates.isEmpty()) && (attempts != MAX_TRIES)) {
-                  attempts++;
-                  v = (VanishingState)vanishingStates.pop();
-                  p = v.getRate();
-                  
-                  boolean[] enabledTransitions = 
-                          pnmlData.getTransitionEnabledStatusArray(v.getState());
+               
+               // Merge the results in queue order
+               for (int c = 0; c < chunksize; c++) {
+                  if (progress == UPDATEAFTER) {
+                     progress = 0;	// Reset the counter
+                     System.out.print(numtangiblestates + " tangible states generated and " + numtransitionsfired + " transitions fired.\r");
+                  } else{
+                     progress++;
+                  }
                   
-                  int transition = 
-                          fireFirstEnabledTransition(pnmlData, enabledTransitions,
-                                                     v, vansuccessor);
-
-                  while (transition != -1) {
-                     vprime = (State)vansuccessor.pop();
-                     pprime = p * prob(pnmlData, v, vprime, transition);
-                     if (isTangible(pnmlData, vprime)) {
-                        if (!explored(vprime, exploredStates)) {
-                           tangible = new Marking(vprime, numtangiblestates);
-                           tangibleStates.enqueue(tangible);
-                           addExplored(tangible, exploredStates, esoFile, false);
+                  s = chunk[c];
+                  chunk[c] = null;
+                  SuccessorList succ = chunksuccessors[c];
+                  for (int i = 0; i < succ.size(); i++) {
+                     int id = succ.getID(i);
+                     if (id == -1) {
+                        id = exploredStates.findOrAdd(succ.getMarking(i), 
+                                                      succ.getHash(i));
+                        if (id == numtangiblestates) {
+                           tangible = new Marking(succ.getMarking(i), 
+                                                  numtangiblestates);
+                           tangibleStates.enqueue(tangible.getState(), 
+                                                  numtangiblestates);
+                           addExplored(tangible, net, enabled, 
+                                       enabledlist, rgfile);
                            numtangiblestates++;
-                        } else {
-                           int id = identifyState(vprime, exploredStates);
-                           if (id == -1) {
-                              throw new ImmediateAbortException("Could not " +
-                                       "identify previously explored tangible " +
-                                       "state.");
-                           }
-                           tangible = new Marking(vprime, id);
-                        }
-                        numtransitions += transition(tangible, pprime, localarcs);
-                     } else {
-                        if (pprime > epsilon) {
-                           vanishingStates.push(
-                                    new VanishingState(vprime,(double)pprime));
                         }
                      }
-                     
-                     transition = fireFirstEnabledTransition(pnmlData, enabledTransitions, v, vansuccessor);
-                  }
-               }
-               if (attempts == MAX_TRIES) {
-                  try {
-                     outputFile.close();
-                  } catch (IOException e1) {
-                     System.err.println("Could not close intermediate file.");
+                     numtransitions += localarcs.add(id, succ.getRate(i), 
+                                                     succ.getTransition(i));
                   }
-                  throw new TimelessTrapException();
+                  succ.clear();
+                  // Write all the arcs for the reachability graph to file
+                  writeTransitions(s, localarcs, rgfile);
                }
             }
+         } finally {
+            if (workers != null) {
+               workers.shutdown();
+            }
+            tangibleStates.close();
          }
-         // Write all the arcs for the reachability graph to file
-         writeTransitions(s, localarcs, outputFile, false);
-         // Clear the list so can start again with the next set of arcs
-         localarcs = new LinkedList();
+         long finish = System.currentTimeMillis();
+         
+         System.out.println("\nGenerate Ends, " + numtangiblestates + 
+                            " tangible states found with " + numtransitions + 
+                            " arcs.");
+         System.out.println(exploredStates.getStatistics());
+         if (tangibleStates.getSegmentsWritten() > 0) {
+            System.out.println(tangibleStates.getSegmentsWritten() + 
+                    " segments of the state queue were written to disk.");
+         }
+         printThroughput(statesexplored, busytime, finish - start);
+         createRGFile(rgfile);
+      } finally {
+         // Does nothing if the file has been finished
+         rgfile.abort();
       }
-      try {
-         outputFile.close();
-      } catch (IOException e1) {
-         System.err.println("\nCould not close intermediate file.");
+   }
+   
+   
+   /**
+    * initialDistribution()
+    * Works out the probability of the net starting out in each of its initial
+    * tangible states. If the initial marking is vanishing these are the 
+    * tangible states reached from it, which generate() gives the first id 
+    * numbers in the same order.
+    * @param pnmlData   The net
+    * @return           The probability of starting in the state with each id 
+    *                   number, up to the last initial tangible state
+    * @throws TimelessTrapException
+    */
+   public static double[] initialDistribution(DataLayer pnmlData) 
+            throws TimelessTrapException {
+      int[] initial = new State(pnmlData.getCurrentMarkingVector()).getState();
+      MarkingHash hasher = new MarkingHash(initial.length);
+      SuccessorGenerator successors = 
+              new SuccessorGenerator(new CompiledNet(pnmlData), hasher);
+      if (successors.isTangible(initial)) {
+         return new double[] {1.0};
+      }
+      
+      SuccessorList reached = new SuccessorList();
+      successors.eliminateVanishing(initial, 1.0, -1, reached);
+      ExploredStateTable ids = new ExploredStateTable(hasher);
+      double[] probabilities = new double[reached.size()];
+      int numstates = 0;
+      for (int i = 0; i < reached.size(); i++) {
+         int id = ids.findOrAdd(reached.getMarking(i), reached.getHash(i));
+         if (id == numstates) {
+            numstates++;
+         }
+         probabilities[id] += reached.getRate(i);
       }
-      System.out.println("\nGenerate Ends, " + numtangiblestates + 
-                         " tangible states found with " + numtransitions + 
-                         " arcs.");
-      createRGFile(intermediate, esoFile, statearraysize, 
-                   numtangiblestates, numtransitions, false);
-      
-      if (DEBUG) {
-         /* Write a csv file indicating the Hashtable distribution */
-         FileWriter htdist = new FileWriter("HashTableDist.csv");
-         for (int row = 0; row < NUMHASHROWS; row++) {
-            htdist.write(Integer.toString(row) + ",");
-            if (exploredStates[row] == null) {
-               htdist.write("0\n");
-            } else {
-               htdist.write(Integer.toString(exploredStates[row].size()) + "\n");
+      double[] result = new double[numstates];
+      System.arraycopy(probabilities, 0, result, 0, numstates);
+      return result;
+   }
+   
+   
+   /**
+    * expandChunk()
+    * Splits a chunk of tangible states into one slice per thread and works 
+    * out the successors of each slice on the worker threads. Returns once all
+    * the slices are done.
+    * @return           The number of transitions fired
+    */
+   private static int expandChunk(ExecutorService workers, int numthreads, 
+            final SuccessorGenerator successors, 
+            final ExploredStateTable exploredStates, final Marking[] chunk, 
+            final SuccessorList[] chunksuccessors, int chunksize,
+            long[] statesexplored, long[] busytime) 
+            throws TimelessTrapException, ImmediateAbortException {
+      ArrayList tasks = new ArrayList(numthreads);
+      final long[][] slicetimes = new long[numthreads][1];
+      int slicesize = (chunksize + numthreads - 1) / numthreads;
+      
+      for (int thread = 0; thread < numthreads; thread++) {
+         final int from = Math.min(chunksize, thread * slicesize);
+         final int to = Math.min(chunksize, from + slicesize);
+         final long[] slicetime = slicetimes[thread];
+         statesexplored[thread] += (to - from);
+         tasks.add(new Callable() {
+            public Object call() throws TimelessTrapException {
+               long sliceStart = System.nanoTime();
+               int fired = expandSlice(successors, exploredStates, chunk, 
+                                       chunksuccessors, from, to);
+               slicetime[0] = System.nanoTime() - sliceStart;
+               return new Integer(fired);
             }
+         });
+      }
+      
+      int transitionsfired = 0;
+      try {
+         List results = workers.invokeAll(tasks);
+         for (int thread = 0; thread < numthreads; thread++) {
+            transitionsfired += 
+                     ((Integer)((Future)results.get(thread)).get()).intValue();
+            busytime[thread] += slicetimes[thread][0];
+         }
+      } catch (InterruptedException e) {
+         throw new ImmediateAbortException("State space exploration was " +
+                  "interrupted.");
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof TimelessTrapException) {
+            throw (TimelessTrapException)e.getCause();
+         } else if (e.getCause() instanceof Error) {
+            throw (Error)e.getCause();
          }
-         htdist.close();
-         System.out.println("Finished writing hashtable distribution to file.");
+         throw new ImmediateAbortException("State space exploration failed: " 
+                  + e.getCause());
       }
+      return transitionsfired;
+   }
+   
+   
+   /**
+    * expandSlice()
+    * Works out the tangible successors of chunk[from] to chunk[to - 1]. If an
+    * explored states table is given, any successor that is already in it is 
+    * given its id number. Nothing is added to the table.
+    * @return           The number of transitions fired
+    */
+   private static int expandSlice(SuccessorGenerator successors, 
+            ExploredStateTable exploredStates, Marking[] chunk, 
+            SuccessorList[] chunksuccessors, int from, int to) 
+            throws TimelessTrapException {
+      int transitionsfired = 0;
       
-      if (intermediate.exists()) {
-         if (!intermediate.delete()) {
-            System.err.println("\nCould not delete intermediate file.");
+      for (int c = from; c < to; c++) {
+         SuccessorList succ = chunksuccessors[c];
+         transitionsfired += successors.expand(chunk[c].getState(), succ);
+         if (exploredStates != null) {
+            for (int i = 0; i < succ.size(); i++) {
+               succ.setID(i, exploredStates.find(succ.getMarking(i), 
+                                                 succ.getHash(i)));
+            }
          }
       }
+      return transitionsfired;
+   }
+   
+   
+   /**
+    * printThroughput()
+    * Reports how many states each exploration thread expanded and how fast.
+    */
+   private static void printThroughput(long[] statesexplored, long[] busytime,
+            long elapsed) {
+      DecimalFormat f = new DecimalFormat();
+      f.setMaximumFractionDigits(3);
+      
+      for (int thread = 0; thread < statesexplored.length; thread++) {
+         double seconds = busytime[thread] / 1.0e9;
+         System.out.println("Exploration thread " + thread + ": " + 
+                  statesexplored[thread] + " states expanded in " + 
+                  f.format(seconds) + "s (" + 
+                  (seconds > 0 ? f.format(statesexplored[thread] / seconds) 
+                               : "-") + " states/s).");
+      }
+      System.out.println("Phase II took " + f.format(elapsed / 1000.0) + "s.");
    }
    
    
    /**
     * isTangible()
     * Tests whether the state passed as an argument is tangible or vanishing.
-    * @param pnmlData
+    * @param net
     * @param marking
     * @return
     */
-   private static boolean isTangible(DataLayer pnmlData, State marking) {
-      Transition[] trans = pnmlData.getTransitions();
-      int numTrans = trans.length;
-      boolean hasTimed = false;
-      boolean hasImmediate = false;
-      boolean[] enabledTransitions = 
-              pnmlData.getTransitionEnabledStatusArray(marking.getState());
-      
-      for (int i = 0; i < numTrans; i++) {
-         if (enabledTransitions[i]) { // If the transition is enabled
-            if (trans[i].isTimed() == true){
-               //If any immediate transtions exist, the state is vanishing 
-               //as they will fire immediately
-               hasTimed = true;
-            } else if (trans[i].isTimed() != true) {
-               hasImmediate = true;
-               //return false;
-            }
-         }
-      }
-      return (hasTimed == true && hasImmediate == false);
+   private static boolean isTangible(CompiledNet net, State marking) {
+      return net.isTangible(marking.getState());
    }
    
    
@@ -492,26 +585,35 @@ public class StateSpaceGenerator {
     * Determines all the states resulting from firing enabled transitions in 
     * the state passed as an argument
     * @param vs		The state to determine successors from
+    * @param concession	The transitions with concession in vs
+    * @param enabledTransitions	The transitions enabled in vs
     * @param succ		A stack in which to store successors
+    * @param succconcession	A stack in which to store the transitions with 
+    *                   concession in each successor
+    * @param succtransition	A stack in which to store the transition fired to
+    *                   reach each successor
     */
-   private static int fire(DataLayer pnmlData, State vs, Stack succ) {
-      int transCount = pnmlData.getTransitionsCount();
+   private static int fire(CompiledNet net, State vs, BitSet concession,
+           BitSet enabledTransitions, Stack succ, Stack succconcession,
+           Stack succtransition) {
+      int transCount = net.getTransitionCount();
 
       int transitionsfired = 0;
       int[] newstate = null;
 
-      boolean[] enabledTransitions = 
-              pnmlData.getTransitionEnabledStatusArray(vs.getState());
-      
       for (int index = 0; index < transCount; index++) {
-         if (enabledTransitions[index]) {
+         if (enabledTransitions.get(index)) {
             // If the current transition is enabled
-            newstate = fireTransition(pnmlData, vs.getState(), index);
+            newstate = new int[vs.getState().length];
+            net.fire(vs.getState(), newstate, index);
+            BitSet newconcession = (BitSet)concession.clone();
+            net.updateConcession(newstate, index, newconcession);
             //System.out.println("fired transition " + index);//debug
             succ.push(new State(newstate));
+            succconcession.push(newconcession);
             //System.out.println("generat estat: " + (new State(newstate).toString()));//debug
             transitionsfired++;
-            transitions.push(new Integer (index));
+            succtransition.push(new Integer(index));
          }
       }
       return transitionsfired;
@@ -519,143 +621,41 @@ public class StateSpaceGenerator {
    
    
    /**
-    * fireFirstEnabledTransition()
-    * Determines the state resulting from firing enabled transitions in 
-    * the state passed as an argument
-    * @param vs		The state to determine successors from
-    * @param succ		A stack in which to store successors
-    */
-   private static int fireFirstEnabledTransition(DataLayer pnmlData, 
-           boolean[] enabledTransitions, State vs, Stack succ) {
-
-      for (int index = 0; index < enabledTransitions.length; index++) {
-         if (enabledTransitions[index]) {
-            // If the current transition is enabled
-            int[] newstate = fireTransition(pnmlData, vs.getState(), index);
-            //System.out.println("fired transition " + index);//debug
-            succ.push(new State(newstate));
-            //System.out.println("generat estat: " + (new State(newstate).toString()));//debug
-            transitions.push(new Integer (index));
-            enabledTransitions[index] = false;
-            return index;
-         }
-      }
-      return -1;
-   }   
-   
-   
-   /**
-    * fireTransition()
-    * Produces a new markup vector to simulate the firing of a transition.
-    * Destroys the number of tokens shown in CMinus for a given place and
-    * transition, and creates the number of tokens shown in CPlus.
-    * @author Matthew Cook, James Bloom and Clare Clark (original code)
-    * 			Nadeem Akharware (optimisation)
-    * @param pnmlData	The petri net data model
-    * @param marking	The state/marking to fire from
-    * @param transIndex Which transition to fire
-    * @return		The new marking/state vector resulting from the fired 
-    *                   transition
-    */
-   private static int[] fireTransition(DataLayer pnmlData, int[] marking, 
-                                       int transIndex) {
-      int CMinusValue;         //Value from C- matrix
-      int CPlusValue;          //Value from C+ matrix
-      
-      int[][] CMinus = pnmlData.getBackwardsIncidenceMatrix();
-      int[][] CPlus = pnmlData.getForwardsIncidenceMatrix();
-      
-      //Create marking array to return
-      int[] newmarking = new int[marking.length];
-      
-      for(int count = 0; count < marking.length; count++) {
-         CMinusValue = CMinus[count][transIndex];
-         CPlusValue = CPlus[count][transIndex];
-         newmarking[count] = marking[count] - CMinusValue + CPlusValue;
-      }
-      return newmarking;
-   }
-   
-   
-   /**
-    * explored()
-    * Tests whether the state passed as an argument has already
-    * been explored.
-    * @param test               The state to look for
-    * @param exploredStates     The hashtable to check for the state
-    * @return
-    */
-   private static boolean explored(State test, LinkedList[] es){
-      LinkedList hashrow = es[test.hashCode()%NUMHASHROWS];
-      
-      if (hashrow == null) { 
-         // This row has nothing in it yet so must be an unexplored state
-         return false;
-      }
-      Iterator iterator = hashrow.iterator();
-      CompressedState current;
-      for (int index = 0; index < hashrow.size(); index++) {
-         current = (CompressedState)iterator.next();
-         if (test.hashCode2() == current.getHashCode2()) {
-            return true;
-         }
-      }
-      return false;
-   }
-   
-   
-   /**
-    * identifyState()
-    * Takes a state that we know has been explored before and works out what id 
-    * number that state has been given using the explored states hashtable.
-    * @param test       The state to be identified
-    * @param es         The hashtable to look it up in
-    * @return           The id number of that state (-1 indicates an error)
+    * addExplored()
+    * Writes a newly explored state to file for later use. The state must 
+    * already have been added to the explored states table.
+    * @param newstate   The explored state to be written
+    * @param rgfile     The reachability graph file to write the state to
     */
-   private static int identifyState(State test, LinkedList[] es){
-      LinkedList hashrow = es[test.hashCode()%NUMHASHROWS];
-      Iterator iterator = hashrow.iterator();
-      CompressedState current;
-      
-      for (int index = 0; index < hashrow.size(); index++) {
-         current = (CompressedState)iterator.next();
-         if (test.hashCode2() == current.getHashCode2()) {
-            return current.getID();
-         }
+   private static void addExplored(Marking newstate, RGFileWriter rgfile) {
+      try {
+         rgfile.writeState(newstate.getState(), newstate.getIsTangible());
+      } catch (IOException e) {
+         System.err.println("IO problem while writing explored states to file.");
       }
-      return -1;
    }
    
    
    /**
     * addExplored()
-    * Adds a compressed version of a tangible state to the explored states 
-    * hashtable and also writes the full state to a file for later use.
-    * @param newstate   The explored state to be added
-    * @param es         A reference to the hashtable
-    * @param opfile     The file to write the state to
+    * As above, for a tangible state, recording the transitions enabled in it
+    * and its exit rate as well.
+    * @param enabled      Used to work out the enabled transitions
+    * @param enabledlist  Used to list them
     */
-   private static void addExplored(Marking newstate, LinkedList[] es, 
-            RandomAccessFile opfile, boolean vanishingStates){
-      LinkedList hashrow = es[newstate.hashCode()%NUMHASHROWS];
-      
-      if (hashrow == null) {
-         // This hashcode hasn't come up before so we need  to set up the 
-         // linked list first
-         es[newstate.hashCode()%NUMHASHROWS] = new LinkedList();
-         hashrow = es[newstate.hashCode()%NUMHASHROWS];
+   private static void addExplored(Marking newstate, CompiledNet net, 
+            BitSet enabled, int[] enabledlist, RGFileWriter rgfile) {
+      net.enabledSet(newstate.getState(), enabled);
+      int numenabled = 0;
+      double exitrate = 0.0;
+      for (int t = enabled.nextSetBit(0); t >= 0; 
+              t = enabled.nextSetBit(t + 1)) {
+         enabledlist[numenabled++] = t;
+         exitrate += net.getRate(t);
       }
-      hashrow.add(new CompressedState(newstate.hashCode2(),
-                                      newstate.getIDNum()));
-      // Now also write this state to disk for later use
-      StateRecord sr = new StateRecord(newstate);
-      //System.out.println("afegit: " + sr.toString());//debug
       try {
-         if (vanishingStates) {
-            sr.write(opfile, newstate.getIsTangible());
-         } else {
-            sr.write(opfile);
-         }
+         rgfile.writeState(newstate.getState(), true, enabledlist, numenabled,
+                           exitrate);
       } catch (IOException e) {
          System.err.println("IO problem while writing explored states to file.");
       }
@@ -671,331 +671,68 @@ public class StateSpaceGenerator {
     * and divides it by the sum of the firing rates of the enabled transitions.
     * @author Matthew Cook (original code), Nadeem Akharware (adaption and
     * optimisation), Pere Bonet (minor changes)
-    * @param pnmlData
-    * @param v
-    * @param vprime
+    * @param net
+    * @param s
+    * @param marking1EnabledTransitions  The transitions enabled in s
+    * @param sprime
     * @return double - the probability
     */ 
-   private static double rate(DataLayer pnmlData, State s, State sprime) {
+   private static double rate(CompiledNet net, State s, 
+            BitSet marking1EnabledTransitions, State sprime) {
       int[] marking1 = s.getState();
       int[] marking2 = sprime.getState();
-      int markSize = marking1.length;
-      int[][] incidenceMatrix = pnmlData.getIncidenceMatrix();
-      int transCount = pnmlData.getTransitionsCount();
-      //get list of transitions enabled at marking1
-      boolean[] marking1EnabledTransitions = 
-               pnmlData.getTransitionEnabledStatusArray(marking1); 
-      boolean[] matchingTransition = new boolean[transCount];
+      int transCount = net.getTransitionCount();
       
-      //initialise matrix of potential transition values to true            
-      for (int j = 0; j < transCount; j ++) {
-         matchingTransition[j] = true;  
-      }
-      
-      //get transition needed to fire to get from marking1 to marking2
-      for (int i = 0; i < transCount; i++) {
-         //initialise value of potential transition to true            
-         matchingTransition[i] = true;
-         for (int k = 0; k < markSize; k++) {
-            // if the sum of the incidence matrix and marking 1 doesn't equal
-            // marking 2, set that candidate transition possibility to be false
-            if (((int)marking1[k] + (int)incidenceMatrix[k][i]) !=
-                     (int)marking2[k]) {
-               matchingTransition[i] = false;
-               break; 
-            }
-         }
-      }      
-      
-      // check if there are any potential transitions from marking 1 to marking 
-      // 2 and whether they are enabled or not.
-      boolean enabledAndMatching = false;
-      for (int i = 0; i < transCount; i++) {
-         if (matchingTransition[i] == true){
-            if(marking1EnabledTransitions[i] == true){
-               enabledAndMatching = true;
-               break;  //we have found an enabled and matching transition
-            }
-         }
-      }
-      if (enabledAndMatching == false) {
-         return 0.0;
-      }
-      
-      //work out the sum of firing weights of input transitions
+      //work out the sum of firing weights of the enabled transitions that 
+      //lead from marking1 to marking2
       double candidateTransitionWeighting = 0.0;
       for (int i = 0; i < transCount; i++) {
-         if ((matchingTransition[i] == true) && 
-                  (marking1EnabledTransitions[i] == true)) {
-            candidateTransitionWeighting += 
-                     pnmlData.getTransitions()[i].getRate();
+         if (marking1EnabledTransitions.get(i) && 
+                  net.leadsTo(marking1, marking2, i)) {
+            candidateTransitionWeighting += net.getRate(i);
          }
       }
       return candidateTransitionWeighting;
    }
    
    
-   /**
-    * prob()
-    * Calculate the PROBABILITY of a transition from a VANISHING state to 
-    * another state.
-    * Works out the transitions enabled to fire at a particular marking, 
-    * transitions that can be reached from a particular marking and the
-    * intersection of the two. Then sums the firing rates of the intersection
-    * and divides it by the sum of the firing rates of the enabled transitions.
-    * @author Matthew Cook (original code), Nadeem Akharware (adaption and
-    * optimisation), Pere Bonet (minor changes)
-    * @param pnmlData
-    * @param v
-    * @param vprime
-    * @return double - the probability
-    */
-   private static double prob(DataLayer pnmlData, State s,
-           State sprime, int firedTransition) {
-      
-      int[] marking1 = s.getState();
-      int[] marking2 = sprime.getState();
-      int markSize = marking1.length;
-      int[][] incidenceMatrix = pnmlData.getIncidenceMatrix();
-      int transCount = pnmlData.getTransitionsCount();
-      //get list of transitions enabled at marking1
-      boolean[] marking1EnabledTransitions = 
-               pnmlData.getTransitionEnabledStatusArray(marking1); 
-      boolean[] matchingTransition = new boolean[transCount];
-      
-      //initialise matrix of potential transition values to true            
-      for (int j = 0; j < transCount; j ++) {
-         matchingTransition[j] = true;  
-      }
-      
-      //get transition needed to fire to get from marking1 to marking2
-      for (int i = 0; i < transCount; i++) {
-         //initialise value of potential transition to true            
-         matchingTransition[i] = true;
-         for (int k = 0; k < markSize; k++) {
-            // if the sum of the incidence matrix and marking 1 doesn't equal
-            // marking 2, set that candidate transition possibility to be false
-            if (((int)marking1[k] + (int)incidenceMatrix[k][i]) !=
-                     (int)marking2[k]) {
-               matchingTransition[i] = false;
-               break; 
-            }
-         }
-      }
-            
-      // check if there are any potential transitions from marking 1 to marking 
-      // 2 and whether they are enabled or not.
-      boolean enabledAndMatching = false;
-      for (int i = 0; i < transCount; i++) {
-         if (matchingTransition[i] == true){
-            if(marking1EnabledTransitions[i] == true){
-               enabledAndMatching = true;
-               break;  //we have found an enabled and matching transition
-            }
-         }
-      }
-      if (enabledAndMatching == false) {
-         return 0.0;
-      }
-      
-      //work out the sum of firing weights of enabled transitions
-      double enabledTransitionWeighting = 0.0;
-      for (int i = 0; i < transCount; i++) {
-         if (marking1EnabledTransitions[i] == true) {
-            enabledTransitionWeighting += 
-                     pnmlData.getTransitions()[i].getRate();
-         }
-      }
-      double candidateTransitionWeighting = 
-              pnmlData.getTransitions()[firedTransition].getRate();
-      
-      return (candidateTransitionWeighting/enabledTransitionWeighting);
-   }   
-   
-   
-   /**
-    * Records the fact that there is a transition firing sequence from whatever 
-    * the current tangible state is to the tangible state sprime with an 
-    * effective transition firing rate r.
-    * Note it does not need to know what the current tangible state actually is,
-    * it just needs a reference to the list of arcs from that state.
-    * @param sprime
-    * @param r
-    * @param arclist    A linked list of arcs from the current tangible state.
-    */
-   private static int transition(Marking sprime, double r, LinkedList arclist) {
-      ArcListElement current;
-      if (arclist.size() > 0) {
-         Iterator iterator = arclist.iterator();
-         current = (ArcListElement)iterator.next();
-         while ((current.getTo() != sprime.getIDNum()) && iterator.hasNext()) {
-            current = (ArcListElement)iterator.next();
-         }
-         if (current.getTo() == sprime.getIDNum()) {
-            double rate = current.getRate();
-            current.setRate(r + rate);
-            return 0;
-         } else {
-            current = new ArcListElement(sprime.getIDNum(), r, (Integer)transitions.pop());
-            arclist.add(current);
-            return 1;
-         }
-      } else {
-         // This must be a new arc
-         current = new ArcListElement(sprime.getIDNum(), r, (Integer)transitions.pop());
-         arclist.add(current);
-         return 1;
-      }
-   }
-   
-   
    /**
     * writeTransitions()
-    * Records all the arcs in the reachability graph from state 'from'.
-    * @param from       The tangible state which all the arcs in the linked 
-    *                   list are from.
-    * @param arclist    The list of arcs.
-    * @param dataFile   The file that reachability graph data needs to be 
-    *                   written to.
-    * @param writeTransitionsNo
+    * Records all the arcs in the reachability graph from state 'from', and 
+    * clears them ready for the next state.
+    * @param from       The tangible state which all the arcs are from.
+    * @param arcs       The arcs.
+    * @param rgfile     The reachability graph file.
     * @throws ImmediateAbortException
     */
-   private static void writeTransitions(Marking from, LinkedList arclist, 
-            RandomAccessFile dataFile, boolean writeTransitionsNo)
-            throws ImmediateAbortException {
-      TransitionRecord newTransition;
-      Iterator iterator = arclist.iterator();
-      ArcListElement current;
-      
-      while (iterator.hasNext()) {
-         current = (ArcListElement)iterator.next();
-         if (writeTransitionsNo) {
-            newTransition = new TransitionRecord(from.getIDNum(), 
-                                                 current.getTo(), 
-                                                 current.getRate(), 
-                                                 current.transitionNo);
-            try{
-               newTransition.write1(dataFile);
-               //	System.out.println("From: " + from.getIDNum() + ":(" + from + ")" + " To: " + current.getTo() + " via " + current.transitionNo+ " Rate: " + current.getRate());
-            } catch (IOException e){
-               System.err.println("IO error when writing transitions to file.");
-               throw new ImmediateAbortException();
-            }
-         } else {
-            newTransition = new TransitionRecord(from.getIDNum(), 
-                                                 current.getTo(),
-                                                current.getRate());
-            try {
-               newTransition.write(dataFile);
-               //System.out.println("From: " + from.getIDNum() + ":(" + from + ")" + " To: " + current.getTo() + " Rate: " + current.getRate());
-            } catch (IOException e) {
-               System.err.println("IO error when writing transitions to file.");
-               throw new ImmediateAbortException();
-            }
-         }
+   private static void writeTransitions(Marking from, ArcAccumulator arcs, 
+            RGFileWriter rgfile) throws ImmediateAbortException {
+      try {
+         arcs.write(from.getIDNum(), rgfile);
+      } catch (IOException e) {
+         System.err.println("IO error when writing transitions to file.");
+         throw new ImmediateAbortException();
       }
+      arcs.clear();
    }
 
    
    /**
     * createRGFile()
-    * Creates a reachability graph file containing all the tangible states that 
-    * were found during state space exploration and also all the transitions 
-    * between them.
-    * @param transource    A file containing all the transitions (arcs) between
-    *                      tangible states.
-    * @param destination   The file to create as a reachability graph file. The
-    *                      file should already contain a list of all the 
-    *                      tangible states and be in the correct position for 
-    *                      writing the record of all the transitions between them.
-    * @param statesize     The size of each state array
-    * @param states        The number of tangible states found
-    * @param transitions   The number of transitions recorded
+    * Finishes the reachability graph file, once all the tangible states that
+    * were found during state space exploration and all the transitions 
+    * between them have been written to it.
+    * @param rgfile     The reachability graph file
     */
-   private static void createRGFile(File transource, 
-            RandomAccessFile destination, int statesize, int states, 
-            int transitions, boolean withTransitions) {
-      RandomAccessFile transinputFile;
-      new StateRecord();
-      TransitionRecord currenttran = new TransitionRecord();
-      RGFileHeader header;
+   private static void createRGFile(RGFileWriter rgfile) {
       try {
-         transinputFile = new RandomAccessFile(transource, "r");
-         
-         // The destination file actually already exists with a blank file 
-         // header as a placeholder and all the tangible states written in 
-         // order. The file pointer should already be at the end of the file 
-         // (i.e. after the last tangible state that's been written to the file.
-         // Make a note of the file pointer as this is where the transition 
-         // records begin.
-         long offset = destination.getFilePointer();
-         // Now copy over all the transitions
          System.out.println("Creating reachability graph, please wait...");
-         for (int count = 0; count < transitions; count++) {
-            //System.out.print("Recording arc " + (count+1) + " of " + transitions +".\r");
-            if (withTransitions) {
-               currenttran.read1(transinputFile);
-               currenttran.write1(destination);	
-            } else {
-               currenttran.read(transinputFile);
-               currenttran.write(destination);
-            }
-         }
-
-         // Make a note of the transition record size and fill in all the 
-         // details in the file header.
-         int recordsize = currenttran.getRecordSize();
-         destination.seek(0); // Go back to the start of the file
-         header = new RGFileHeader(states, statesize, transitions, 
-                                   recordsize, offset);
-         header.write(destination);
-         
-         // Done so close all the files.
-         transinputFile.close();
-         destination.close();         
-      } catch (EOFException e) {
-         System.err.println("EOFException");
+         rgfile.close();
       } catch (IOException e) {
          System.out.println("Could not create output file.");
-         e.getMessage();
-         return;
       }
    }
    
-}
-
 
-/**
- * @author Nadeem
- * A simple class used to store arcs between states in the reachability graph.
- * Used as elements in the linked list storing the arcs.
- */
-class ArcListElement{
-   
-   int tostate;
-   double rate;
-   int transitionNo;
-   
-   
-   public ArcListElement(int to, double r,  Integer t){
-      tostate = to;
-      rate = r;
-      transitionNo = t.intValue();
-   }
-   
-   
-   public int getTo(){
-      return tostate;
-   }
-   
-   
-   public double getRate(){
-      return rate;
-   }
-   
-   
-   public void setRate(double r){
-      rate = r;
-   }
-   
 }
+
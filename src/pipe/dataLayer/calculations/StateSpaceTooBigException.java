@@ -21,4 +21,9 @@ public class StateSpaceTooBigException
                "tangible states. There is insufficient memory to hold them all.");
    }
    
+   
+   public StateSpaceTooBigException(String message) {
+      super(message);
+   }
+   
 }
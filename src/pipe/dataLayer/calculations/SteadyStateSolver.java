@@ -5,287 +5,663 @@ package pipe.dataLayer.calculations;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.text.DecimalFormat;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import pipe.io.ImmediateAbortException;
-import pipe.io.RGFileHeader;
-import pipe.io.TransitionRecord;
+import pipe.io.RGFileReader;
 
 
 /**
  * @author Nadeem
  *
  * This class is always used as a static class. It is used to determine the 
- * steady state of a general stochastic petri net. The only public method is 
- * solve() which calculates the steady state.
+ * steady state of a general stochastic petri net. The public methods are the 
+ * forms of solve() which calculate the steady state, and chooseMethods(), 
+ * which picks the LinearSolvers that solve() tries when it is not given one.
  */
 public class SteadyStateSolver {
+   
+   // The number of vectors as long as pi that the solvers tried first need.
+   // Those that need more, such as GMRES, are passed over if they run out of
+   // memory.
+   private static final int VECTORSNEEDED = 4;
+   
+   // The most Gauss-Seidel sweeps spent on the time spent in each transient
+   // component, and the relative change at which they stop.
+   private static final int MAXSWEEPS = 100000;
+   private static final double SWEEPTOLERANCE = 1e-13;
 
    
    public static double[] solve(File rgfile) throws ImmediateAbortException {
+      return solve(rgfile, null);
+   }
+   
+   
+   public static double[] solve(File rgfile, LinearSolver method) 
+           throws ImmediateAbortException {
+      return solve(rgfile, new double[] {1.0}, method);
+   }
+   
+   
+   /**
+    * solve()
+    * Calculates the steady state distribution of the tangible states in a 
+    * reachability graph file, as solveDecomposed() does, lumping 
+    * interchangeable states together first as solveLumped() does. If the
+    * generator matrix is too big to hold in memory it is solved on disk by
+    * solveOutOfCore() instead, which only takes ergodic chains and always
+    * uses its own solver.
+    * @param rgfile   The reachability graph file
+    * @param initial  The probability of starting in each of the first 
+    *                 states, which only matters if the chain is not ergodic
+    * @param method   The solver to use, or null to choose one from the size 
+    *                 and structure of the chain
+    * @return         The steady state distribution
+    * @throws         ImmediateAbortException
+    */
+   public static double[] solve(File rgfile, double[] initial, 
+           LinearSolver method) throws ImmediateAbortException {
+      if (!fitsInMemory(rgfile)) {
+         System.out.println("The infinitesimal generator matrix is too big " +
+                 "to hold in memory, so it will be kept on disk.");
+         return solveOnDisk(rgfile, initial, method);
+      }
+      
       // A sparse matrix containing the transition probabilities between
       // tangible states.
-      LinkedList[] Qprime = createSparseMatrix(rgfile);
-      
-      // This array will contain the steady state solution
-      double[] pi = gaussSiedel(Qprime);
+      SparseMatrix Qprime;
+      try {
+         Qprime = createSparseMatrix(rgfile);
+      } catch (OutOfMemoryError e) {
+         System.gc();
+         System.out.println("There was insufficient memory to hold the " +
+                 "infinitesimal generator matrix, so it will be kept on " +
+                 "disk.");
+         return solveOnDisk(rgfile, initial, method);
+      }
       
       /*
       // debug
-      System.out.println("gaussSiedel(Qprime): ");
-      for (int i = 0; i < Qprime.length; i++) {
-         System.out.println(Qprime[i] + " ");
-      }*/
+      System.out.println("solve(Qprime): " + Qprime);*/
       
-      return pi;
+      return solveDecomposed(Qprime, initial, method);
    }
-
+   
    
    /**
-    * createSparseMatrix()
-    * Read's the state to state transitions from a reachability graph file and 
-    * the associated rates and creates the matrix Q. However, as it is a sparse
-    * matrix (lots of zeroes) it creates it in a more efficient form than an 
-    * n by n array. Instead it returns an array of LinkedLists. Each ROW of the
-    * array represents a COLUMN of the matrix. Each object in the linked list 
-    * represents an element of the matrix as a record <row, rate>. This way, 
-    * only non-zero elements are stored. It is stored column wise as later 
-    * calculations use the transpose of this matrix.
-    *
-    * @param rgfile   The reachability graph file
-    * @return         The sparse matrix Q
-    * @throws         ImmediateAbortException
+    * solveDecomposed()
+    * Calculates the long run distribution of a chain from its initial 
+    * distribution by splitting it into strongly connected components. An 
+    * ergodic chain is solved as solveLumped() does. Otherwise each component
+    * that cannot be left is solved on its own, on as many threads as there 
+    * are processors unless a solver is given, and the distributions are 
+    * weighted by the probability of ending up in each component. Transient
+    * states have probability zero.
+    * @param Qprime   The transpose of the generator matrix of the chain
+    * @param initial  The probability of starting in each of the first states
+    * @param method   The solver to use on each component, or null to choose
+    *                 one
+    * @return         The long run distribution
+    * @throws         ImmediateAbortException if no solver converged
     */
-   private static LinkedList[] createSparseMatrix(File rgfile) throws 
-           ImmediateAbortException {
-      RGFileHeader rgheader = new RGFileHeader();
-      RandomAccessFile inputfile = null;
-      
-      // A sparse matrix containing the transition probabilities between 
-      // tangible states.
-      LinkedList[] Qprime = null;
-      double[] rowsum = null;
-      
-      TransitionRecord current = new TransitionRecord();
+   public static double[] solveDecomposed(SparseMatrix Qprime, 
+           double[] initial, LinearSolver method) 
+           throws ImmediateAbortException {
+      System.out.println("Finding strongly connected components...");
+      SparseMatrix Q;
+      StronglyConnectedComponents components;
+      try {
+         Q = Qprime.transpose();
+         components = new StronglyConnectedComponents(Q);
+      } catch (OutOfMemoryError e) {
+         System.gc();
+         System.out.println("There was insufficient memory to find the " +
+                 "strongly connected components.");
+         return solveLumped(Qprime, method);
+      }
+      System.out.println(components);
+      if (components.isErgodic()) {
+         return solveLumped(Qprime, method);
+      }
       
-      DecimalFormat f = new DecimalFormat();
-      f.setMaximumFractionDigits(1);
+      double[] absorption = absorptionProbabilities(Qprime, Q, components, 
+              initial);
+      Q = null;
       
-      // Open the reachability graph file for reading
-      try {
-         inputfile = new RandomAccessFile(rgfile, "r");
-         rgheader.read(inputfile);
-      } catch (IOException e) {
-         System.out.println("IO error!");
-         throw new ImmediateAbortException("IO error");
+      int numstates = Qprime.getNumRows();
+      double[] pi = new double[numstates];
+      // Where each state is in its component
+      int[] local = new int[numstates];
+      List tasks = new ArrayList();
+      for (int c = 0; c < components.getNumComponents(); c++) {
+         if (!components.isBottom(c) || (absorption[c] == 0.0)) {
+            continue;
+         }
+         int[] states = components.getStates(c);
+         if (states.length == 1) {
+            pi[states[0]] = absorption[c];
+            continue;
+         }
+         System.out.println("The chain ends up in a component of " + 
+                 states.length + " states with probability " + 
+                 absorption[c] + ".");
+         for (int i = 0; i < states.length; i++) {
+            local[states[i]] = i;
+         }
+         tasks.add(new ComponentTask(restrict(Qprime, states, local, 
+                 components), states, absorption[c], pi, method));
       }
       
-      // Populate the sparse matrix
-      int numcolumns = rgheader.getNumStates();
-      int numtransitions = rgheader.getNumTransitions();
-      Qprime = new LinkedList[numcolumns];
-      rowsum = new double[numcolumns];
-      for (int row = 0; row < numcolumns; row++) {
-         rowsum[row] = 0.0;
+      // A solver keeps the state of its last solution, so one that was 
+      // given is used for a component at a time
+      int numthreads = (method == null) ? 
+              Runtime.getRuntime().availableProcessors() : 1;
+      numthreads = Math.min(numthreads, tasks.size());
+      if (numthreads <= 1) {
+         for (int i = 0; i < tasks.size(); i++) {
+            ((ComponentTask)tasks.get(i)).call();
+         }
+         return pi;
       }
-      for (int index=0; index < numcolumns; index++) {
-         Qprime[index] = new LinkedList();
+      ExecutorService threads = Executors.newFixedThreadPool(numthreads);
+      try {
+         List results = threads.invokeAll(tasks);
+         for (int i = 0; i < results.size(); i++) {
+            ((Future)results.get(i)).get();
+         }
+      } catch (InterruptedException e) {
+         throw new ImmediateAbortException("Interrupted");
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof ImmediateAbortException) {
+            throw (ImmediateAbortException)e.getCause();
+         } else if (e.getCause() instanceof OutOfMemoryError) {
+            throw (OutOfMemoryError)e.getCause();
+         }
+         throw new RuntimeException(e.getCause());
+      } finally {
+         threads.shutdown();
       }
-      System.out.println("Creating sparse matrix...");
-      try{
-         // Populate the sparse matrix
-         // We don't need to insert elements in a column in row order as each 
-         // element tells you which row it's in. We just need to get the column 
-         // right.
-         inputfile.seek(rgheader.getOffsetToTransitions());
-         for (int record = 0; record < numtransitions; record++) {
-            current.read(inputfile);
-            if (current.getFromState() != current.getToState()) {
-               int row = current.getFromState();
-               int column = current.getToState();
-               Qprime[column].add(new MatrixElement(row, current.getRate()));
-               rowsum[row] += current.getRate();
+      return pi;
+   }
+   
+   
+   /**
+    * absorptionProbabilities()
+    * Works out the probability of the chain ending up in each bottom 
+    * component. The initial probabilities are carried through the transient
+    * components in topological order: the expected time spent in each state
+    * of a component is found from the probability of entering it at each 
+    * state by Gauss-Seidel, and is multiplied by the rates out of the 
+    * component to give the probability of entering the ones after it.
+    * @param Qprime      The transpose of the generator matrix
+    * @param Q           The generator matrix
+    * @param components  The strongly connected components of the chain
+    * @param initial     The probability of starting in each of the first 
+    *                    states
+    * @return            The probability of ending up in each component,
+    *                    which is zero for transient components
+    * @throws            ImmediateAbortException if the sweeps do not 
+    *                    converge
+    */
+   private static double[] absorptionProbabilities(SparseMatrix Qprime, 
+           SparseMatrix Q, StronglyConnectedComponents components, 
+           double[] initial) throws ImmediateAbortException {
+      int numstates = Qprime.getNumRows();
+      double[] entering = new double[numstates];
+      System.arraycopy(initial, 0, entering, 0, 
+              Math.min(initial.length, numstates));
+      double[] time = new double[numstates];
+      double[] absorption = new double[components.getNumComponents()];
+      
+      for (int c = components.getNumComponents() - 1; c >= 0; c--) {
+         int[] states = components.getStates(c);
+         if (components.isBottom(c)) {
+            for (int i = 0; i < states.length; i++) {
+               absorption[c] += entering[states[i]];
             }
-            System.out.print(f.format(((double)record/numtransitions)*100) +
-                    "% complete.  \r");
+            continue;
          }
          
-         // Now add in the diagonal elements. Each diagonal element is the 
-         // negative sum of the off diagonals on that ROW.
-         for (int column = 0; column < numcolumns; column++) {
-            Qprime[column].add(new MatrixElement(column, 0.0 - rowsum[column]));
+         // Solve time_s * -Q(s,s) = entering_s + sum time_r * Q(r,s) over
+         // the states r of the component
+         int sweeps = 0;
+         double change;
+         do {
+            change = 0.0;
+            double largest = 0.0;
+            for (int i = 0; i < states.length; i++) {
+               int s = states[i];
+               double sum = entering[s];
+               for (int j = Qprime.rowstarts[s]; j < Qprime.rowstarts[s + 1]; 
+                       j++) {
+                  int r = Qprime.columns[j];
+                  if (components.getComponent(r) == c) {
+                     sum += Qprime.values[j] * time[r];
+                  }
+               }
+               double updated = sum / (0.0 - Qprime.diagonal[s]);
+               change = Math.max(change, Math.abs(updated - time[s]));
+               largest = Math.max(largest, updated);
+               time[s] = updated;
+            }
+            change = (largest == 0.0) ? 0.0 : change / largest;
+            if (++sweeps > MAXSWEEPS) {
+               throw new ImmediateAbortException("The probabilities of " +
+                       "leaving the transient states did not converge.");
+            }
+         } while ((states.length > 1) && (change > SWEEPTOLERANCE));
+         
+         for (int i = 0; i < states.length; i++) {
+            int s = states[i];
+            for (int j = Q.rowstarts[s]; j < Q.rowstarts[s + 1]; j++) {
+               int t = Q.columns[j];
+               if (components.getComponent(t) != c) {
+                  entering[t] += time[s] * Q.values[j];
+               }
+            }
          }
-         System.out.println("100.0% complete.  ");
-      } catch (IOException e) {
-         throw new ImmediateAbortException("IO Error!");
-      } catch (OutOfMemoryError e) {
-         System.out.println("There was insufficient memory to"
-                  + " hold the infinitesimal generator matrix.");
-         throw new ImmediateAbortException("There was insufficient memory to"
-                  + " hold the infinitesimal generator matrix.");
-      } catch (Exception e) {
-         System.out.println("Unknown exception!");
-         throw new ImmediateAbortException("Unknown exception!");
       }
-      
-      try {
-         inputfile.close();
-      } catch (IOException e) {
-         throw new ImmediateAbortException("Could not close rgfile.");
+      return absorption;
+   }
+   
+   
+   /**
+    * restrict()
+    * @param Qprime      The transpose of the generator matrix
+    * @param states      The states of a bottom component
+    * @param local       The position of each state in its component
+    * @param components  The strongly connected components of the chain
+    * @return            The transpose of the generator matrix of the 
+    *                    component on its own
+    */
+   private static SparseMatrix restrict(SparseMatrix Qprime, int[] states, 
+           int[] local, StronglyConnectedComponents components) {
+      int c = components.getComponent(states[0]);
+      int[] rowstarts = new int[states.length + 1];
+      for (int i = 0; i < states.length; i++) {
+         int s = states[i];
+         rowstarts[i + 1] = rowstarts[i];
+         for (int j = Qprime.rowstarts[s]; j < Qprime.rowstarts[s + 1]; j++) {
+            if (components.getComponent(Qprime.columns[j]) == c) {
+               rowstarts[i + 1]++;
+            }
+         }
       }
-      
-      /*
-      //debug
-      for(int i=0; i < numcolumns; i++){
-         System.out.println("Col: " + i + " " + Qprime[i]);
-      }*/
-      
-      return Qprime;
+      int[] columns = new int[rowstarts[states.length]];
+      double[] values = new double[columns.length];
+      double[] diagonal = new double[states.length];
+      int element = 0;
+      for (int i = 0; i < states.length; i++) {
+         int s = states[i];
+         // Nothing leaves a bottom component, so the diagonal stays the same
+         diagonal[i] = Qprime.diagonal[s];
+         for (int j = Qprime.rowstarts[s]; j < Qprime.rowstarts[s + 1]; j++) {
+            if (components.getComponent(Qprime.columns[j]) == c) {
+               columns[element] = local[Qprime.columns[j]];
+               values[element++] = Qprime.values[j];
+            }
+         }
+      }
+      return new SparseMatrix(rowstarts, columns, values, diagonal);
    }
    
    
    /**
-    * gaussSiedel()
-    * Solves matrix equations of the form Ax = b for x using the Gauss-Siedel 
-    * iterative method. In this case, A is a sparse matrix, b=0 and the sum of
-    * all xi = 1
-    * @param A   a sparse matrix
-    * @return
+    * Solves one bottom component and puts its distribution, weighted by the 
+    * probability of ending up in it, into the states of the whole chain.
     */
-   private static double[] gaussSiedel(LinkedList[] A){
-      int numrows = A.length;
-      double[] x = new double[numrows];
+   private static class ComponentTask
+           implements Callable {
       
-      // Used to decide whether a particular x value has converged or not
-      boolean[] converged = new boolean[numrows];
-      boolean plausible = false;
-      double residual;
-      double epsilon = 0.00001;
+      private final SparseMatrix Qprime;
+      private final int[] states;
+      private final double weight;
+      private final double[] pi;
+      private final LinearSolver method;
       
-      DecimalFormat f=new DecimalFormat();
-      f.setMaximumFractionDigits(1);
       
-      // Set initial guess of x values to 1, and converged
-      // array to false
-      for (int row = 0; row < numrows; row++) {
-         x[row] = 1.0;
-         converged[row] = false;
+      ComponentTask(SparseMatrix Qprime, int[] states, double weight, 
+              double[] pi, LinearSolver method) {
+         this.Qprime = Qprime;
+         this.states = states;
+         this.weight = weight;
+         this.pi = pi;
+         this.method = method;
       }
       
-      // Now solve for x using Gauss-Siedel.
-      Iterator iterator;
-      MatrixElement current;
-      double sum;
-      double aii = 1.0;
-      System.out.println("Solving steady state distribution...");
-      System.out.println("Please wait, it could take some time...");
-      while (!plausible) {
-         for (int row = 0; row < numrows; row++) {
-            iterator = A[row].iterator();
-            sum = 0;
-            while (iterator.hasNext()) {
-               current = (MatrixElement)iterator.next();
-               if (current.getRow()!= row) {
-                  sum += current.getRate() * x[current.getRow()];
-               } else {
-                  aii = current.getRate();
-               }
-            }
-            if (aii != 0.0) {
-               x[row] = (0.0 - sum) / aii;
-            }
-         }
-         // Now we've been through an iteration on all the rows, check the 
-         // residuals to see how accurate our answer is
-         for (int row = 0; row < numrows; row++) {
-            iterator = A[row].iterator();
-            residual = 0;
-            while (iterator.hasNext()) {
-               current = (MatrixElement)iterator.next();
-               residual += current.getRate()*x[current.getRow()];
-            }
-            if (residual < 0) {
-               residual = 0-residual;
-            }
-            if (residual < epsilon) {
-               converged[row] = true;
-            } else {
-               converged[row] = false;
-            }
+      
+      public Object call() throws ImmediateAbortException {
+         double[] x = solveLumped(Qprime, method);
+         for (int i = 0; i < states.length; i++) {
+            pi[states[i]] = weight * x[i];
          }
-         // If we think all the rows have converged, we should check whether 
-         // the steady state values are plausible by checking none of the values 
-         // are < 0
-         if (allConverged(converged)) {
-            plausible = true;
-            for (int i = 0; i < x.length; i++) {
-               if (x[i] < 0) {
-                  plausible = false;
-               }
-            }
+         return null;
+      }
+      
+   }
+   
+   
+   /**
+    * solveLumped()
+    * Calculates the steady state distribution of a chain by first lumping 
+    * together states that are interchangeable, as LumpablePartition finds 
+    * them, and solving the smaller chain of blocks. The distribution is the 
+    * same as solve() would give. If no states can be lumped, or there is not
+    * the memory to try, the chain is solved as it is.
+    * @param Qprime   The transpose of the generator matrix of the chain
+    * @param method   The solver to use on the chain of blocks, or null to 
+    *                 choose one
+    * @return         The steady state distribution
+    * @throws         ImmediateAbortException if no solver converged
+    */
+   public static double[] solveLumped(SparseMatrix Qprime, LinearSolver method)
+           throws ImmediateAbortException {
+      LumpablePartition partition;
+      SparseMatrix reduced;
+      System.out.println("Lumping interchangeable states...");
+      try {
+         partition = new LumpablePartition(Qprime);
+         if (partition.getNumBlocks() == Qprime.getNumRows()) {
+            System.out.println("No states could be lumped together.");
+            return solve(Qprime, method);
          }
+         reduced = partition.reduce(Qprime);
+      } catch (OutOfMemoryError e) {
+         System.gc();
+         System.out.println("There was insufficient memory to lump states " +
+                 "together.");
+         return solve(Qprime, method);
       }
-      System.out.println("The steady state solution has been calculated.");
-      // Now normalise the steady state vector
-      sum = 0;
-      for (int i = 0; i < x.length; i++) {
-         sum += x[i];
+      System.out.println("The " + Qprime.getNumRows() + " tangible states " +
+              "have been lumped into " + partition.getNumBlocks() + 
+              " blocks.");
+      return partition.expand(solve(reduced, method));
+   }
+   
+   
+   private static double[] solveOnDisk(File rgfile, double[] initial, 
+           LinearSolver method) throws ImmediateAbortException {
+      if ((method != null) && !(method instanceof OutOfCoreSolver)) {
+         System.out.println(method.getName() + " cannot work on a matrix " +
+                 "kept on disk, so Out of core Gauss-Seidel will be used " +
+                 "instead.");
       }
-      for (int i = 0; i < x.length; i++) {
-         x[i] /= sum;
+      return solveOutOfCore(rgfile, initial);
+   }
+   
+   
+   public static double[] solveOutOfCore(File rgfile) 
+           throws ImmediateAbortException {
+      return solveOutOfCore(rgfile, new double[] {1.0});
+   }
+   
+   
+   /**
+    * solveOutOfCore()
+    * Calculates the steady state distribution of the tangible states in a 
+    * reachability graph file with the generator matrix in a memory mapped 
+    * file next to it, so that only the distribution itself is held in 
+    * memory. The file is deleted afterwards. The chain must be ergodic, as
+    * there is no room to split it into its strongly connected components.
+    * @param rgfile   The reachability graph file
+    * @param initial  The probability of starting in each of the first 
+    *                 states
+    * @return         The steady state distribution
+    * @throws         ImmediateAbortException if the chain is not ergodic or
+    *                 the solver did not converge
+    */
+   public static double[] solveOutOfCore(File rgfile, double[] initial) 
+           throws ImmediateAbortException {
+      MappedSparseMatrix Qprime;
+      System.out.println("Creating sparse matrix on disk...");
+      try {
+         File matrixfile = File.createTempFile("generator", ".mat", 
+                 rgfile.getAbsoluteFile().getParentFile());
+         Qprime = MappedSparseMatrix.createGenerator(rgfile, matrixfile);
+      } catch (IOException e) {
+         System.out.println("IO error!");
+         throw new ImmediateAbortException("IO error");
+      }
+      System.out.println("The sparse matrix takes up " + 
+              Qprime.getFileSize() / 1024 + "KB on disk.");
+      
+      OutOfCoreSolver method = new OutOfCoreSolver();
+      try {
+         System.out.println("Checking the chain is ergodic...");
+         if (!isErgodic(Qprime, initial)) {
+            throw new ImmediateAbortException("The chain is not ergodic, " +
+                    "so its long run distribution depends on the states it " +
+                    "starts in, and the generator matrix is too big to hold " +
+                    "in memory to split the chain into its strongly " +
+                    "connected components.");
+         }
+         System.out.println("Solving steady state distribution using " + 
+                 method.getName() + "...");
+         System.out.println("Please wait, it could take some time...");
+         double[] pi = method.solve(Qprime);
+         System.out.println("The steady state solution has been " +
+                 "calculated after " + method.getIterations() + 
+                 " iterations, with a relative residual of " + 
+                 method.getResidual() + ".");
+         return pi;
+      } catch (NotConvergingException e) {
+         System.out.println(e.getMessage());
+         throw new ImmediateAbortException(e.getMessage());
+      } catch (OutOfMemoryError e) {
+         System.out.println("There was insufficient memory for " + 
+                 method.getName() + ".");
+         throw new ImmediateAbortException("There was insufficient memory " +
+                 "to solve the steady state distribution.");
+      } finally {
+         try {
+            Qprime.delete();
+         } catch (IOException e) {
+            System.err.println("Could not delete intermediate file.");
+         }
       }
-      return x;
    }
    
    
-   private static boolean allConverged(boolean[] c){
-      for (int i = 0; i < c.length; i++) {
-         if (c[i] == false) {
+   /**
+    * isErgodic()
+    * Checks that every state of a chain on disk can reach every other. Every
+    * state in a reachability graph file is reached from one of the initial
+    * states, so it is enough that every state can reach each of them, which
+    * is found by following the arcs backwards from it.
+    * @param Qprime   The transpose of the generator matrix
+    * @param initial  The probability of starting in each of the first states
+    * @return         true if the chain has a single strongly connected 
+    *                 component
+    */
+   private static boolean isErgodic(MappedSparseMatrix Qprime, 
+           double[] initial) {
+      int numstates = Qprime.getNumRows();
+      int[] queue = new int[numstates];
+      BitSet reaches = new BitSet(numstates);
+      for (int s = 0; s < Math.min(initial.length, numstates); s++) {
+         if (initial[s] == 0.0) {
+            continue;
+         }
+         reaches.clear();
+         reaches.set(s);
+         queue[0] = s;
+         int head = 0;
+         int tail = 1;
+         while (head < tail) {
+            int row = queue[head++];
+            long end = Qprime.getRowStart(row + 1);
+            for (long i = Qprime.getRowStart(row); i < end; i++) {
+               int from = Qprime.getColumn(i);
+               if (!reaches.get(from) && (Qprime.getValue(i) != 0.0)) {
+                  reaches.set(from);
+                  queue[tail++] = from;
+               }
+            }
+         }
+         if (tail < numstates) {
             return false;
          }
       }
       return true;
    }
    
-}
-
-
-/**
- * @author Nadeem
- * This class is used to create a sparse matrix. It represents each element in 
- * the matrix as a pair of values <row, rate>.
- */
-class MatrixElement{
-   
-   private int row;
-   private double rate;
-   
    
-   public MatrixElement(int rw, double rt){
-      row = rw;
-      if (rt == -0.0) {
-         rate = 0.0;
+   /**
+    * solve()
+    * Calculates the steady state distribution of a chain. If no solver is 
+    * given, each of those chooseMethods() picks is tried in turn until one 
+    * converges.
+    * @param Qprime   The transpose of the generator matrix of the chain
+    * @param method   The solver to use, or null to choose one
+    * @return         The steady state distribution
+    * @throws         ImmediateAbortException if no solver converged
+    */
+   public static double[] solve(SparseMatrix Qprime, LinearSolver method) 
+           throws ImmediateAbortException {
+      LinearSolver[] methods;
+      if (method != null) {
+         methods = new LinearSolver[] {method};
       } else {
-         rate = rt;
+         methods = chooseMethods(Qprime);
+      }
+      
+      String failure = "";
+      for (int i = 0; i < methods.length; i++) {
+         System.out.println("Solving steady state distribution using " + 
+                 methods[i].getName() + "...");
+         System.out.println("Please wait, it could take some time...");
+         try {
+            // This array will contain the steady state solution
+            double[] pi = methods[i].solve(Qprime);
+            System.out.println("The steady state solution has been " +
+                    "calculated after " + methods[i].getIterations() + 
+                    " iterations, with a relative residual of " + 
+                    methods[i].getResidual() + ".");
+            return pi;
+         } catch (NotConvergingException e) {
+            System.out.println(e.getMessage());
+            failure = e.getMessage();
+         } catch (OutOfMemoryError e) {
+            System.out.println("There was insufficient memory for " + 
+                    methods[i].getName() + ".");
+            failure = "There was insufficient memory to solve the steady " +
+                    "state distribution.";
+         }
       }
+      throw new ImmediateAbortException(failure);
    }
    
    
-   public int getRow(){
-      return row;
+   /**
+    * chooseMethods()
+    * Picks the solvers to try for a chain, in the order they should be 
+    * tried. Small chains are solved directly. A chain with absorbing states
+    * only has a steady state distribution starting from its initial state, 
+    * which only the power method finds. Otherwise SOR, or block Gauss-Seidel
+    * on every processor for a large chain, is tried first, then the Krylov 
+    * methods, and the power method if all else fails.
+    * @param Qprime   The transpose of the generator matrix of the chain
+    * @return         The solvers to try
+    */
+   public static LinearSolver[] chooseMethods(SparseMatrix Qprime) {
+      int numstates = Qprime.getNumRows();
+      int numthreads = Runtime.getRuntime().availableProcessors();
+      boolean absorbing = false;
+      for (int state = 0; state < numstates; state++) {
+         if (Qprime.getDiagonal(state) == 0.0) {
+            absorbing = true;
+            break;
+         }
+      }
+      
+      if (absorbing && (numstates > 1)) {
+         return new LinearSolver[] {new PowerSolver()};
+      } else if (numstates <= DirectSolver.MAXSTATES) {
+         return new LinearSolver[] {new DirectSolver(), new SORSolver(), 
+                 new PowerSolver()};
+      } else if ((numthreads > 1) && (numstates >= ParallelSolver.MINSTATES)) {
+         return new LinearSolver[] {new ParallelSolver(numthreads), 
+                 new BiCGSTABSolver(), new GMRESSolver(), new PowerSolver()};
+      } else {
+         return new LinearSolver[] {new SORSolver(), new BiCGSTABSolver(), 
+                 new GMRESSolver(), new PowerSolver()};
+      }
    }
+
    
-   
-   public double getRate(){
-      return rate;
+   /**
+    * fitsInMemory()
+    * Works out from the numbers of states and arcs in a reachability graph 
+    * file whether its generator matrix, and the few vectors the solvers 
+    * need, would fit in the memory left on the heap.
+    * @param rgfile   The reachability graph file
+    * @return         Whether the matrix should be held on the heap
+    */
+   private static boolean fitsInMemory(File rgfile) {
+      long numstates;
+      long numtransitions;
+      try {
+         RGFileReader input = new RGFileReader(rgfile);
+         numstates = input.getNumStates();
+         numtransitions = input.getNumTransitions();
+         input.close();
+      } catch (IOException e) {
+         // Leave it to createSparseMatrix() to report
+         return true;
+      }
+      Runtime runtime = Runtime.getRuntime();
+      long available = runtime.maxMemory() - 
+              (runtime.totalMemory() - runtime.freeMemory());
+      long needed = 12L * numtransitions + 12L * numstates + 
+              VECTORSNEEDED * 8L * numstates;
+      return needed < available;
    }
    
    
-   public String toString(){
-      return "Row: " + row + " Rate: " + rate;
+   /**
+    * createSparseMatrix()
+    * Read's the state to state transitions from a reachability graph file and 
+    * the associated rates and creates the matrix Q. However, as it is a sparse
+    * matrix (lots of zeroes) it creates it in a more efficient form than an 
+    * n by n array. Instead it returns a SparseMatrix, which only stores the 
+    * non-zero elements. It is stored column wise as later calculations use 
+    * the transpose of this matrix.
+    *
+    * @param rgfile   The reachability graph file, in either version of the
+    *                 format
+    * @return         The sparse matrix Q, stored by column
+    * @throws         ImmediateAbortException
+    * @throws         OutOfMemoryError if the matrix does not fit on the heap
+    */
+   private static SparseMatrix createSparseMatrix(File rgfile) throws 
+           ImmediateAbortException {
+      SparseMatrix Qprime;
+      
+      System.out.println("Creating sparse matrix...");
+      try {
+         Qprime = SparseMatrix.createGenerator(rgfile, true);
+      } catch (IOException e) {
+         System.out.println("IO error!");
+         throw new ImmediateAbortException("IO error");
+      } catch (RuntimeException e) {
+         System.out.println("Unknown exception!");
+         throw new ImmediateAbortException("Unknown exception!");
+      }
+      System.out.println("The sparse matrix takes up " + 
+              Qprime.getMemoryFootprint() / 1024 + "KB.");
+      
+      /*
+      //debug
+      System.out.println(Qprime);*/
+      
+      return Qprime;
    }
    
 }
@@ -0,0 +1,215 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * The strongly connected components of the graph of a continuous time Markov
+ * chain, found with Tarjan's algorithm. The depth first search keeps its own
+ * stack rather than recursing, so chains of any size can be decomposed.
+ *
+ * The components are numbered in the order the search finishes them, so any
+ * component that can be reached from another has a lower number than it, and
+ * going through them from the highest number down visits them in topological
+ * order. A bottom component is one that cannot be left. Every other state is
+ * transient, and a chain is ergodic when it has a single component.
+ */
+public class StronglyConnectedComponents {
+
+   private final int numstates;
+   private final int[] component;
+   private int numcomponents = 0;
+   private boolean[] bottom;
+   // The states of each component, component c taking up
+   // states[starts[c]] .. states[starts[c+1]-1]
+   private int[] starts;
+   private int[] states;
+
+
+   /**
+    * StronglyConnectedComponents()
+    * @param Q      The generator matrix, stored by row as
+    *               SparseMatrix.createGenerator(rgfile, false) returns
+    */
+   public StronglyConnectedComponents(SparseMatrix Q) {
+      numstates = Q.getNumRows();
+      component = new int[numstates];
+      search(Q);
+      classify(Q);
+   }
+
+
+   public int getNumComponents() {
+      return numcomponents;
+   }
+
+
+   public int getComponent(int state) {
+      return component[state];
+   }
+
+
+   public boolean isBottom(int c) {
+      return bottom[c];
+   }
+
+
+   public boolean isErgodic() {
+      return numcomponents == 1;
+   }
+
+
+   /**
+    * getStates()
+    * @param c  A component
+    * @return   Its states, in order
+    */
+   public int[] getStates(int c) {
+      int[] result = new int[starts[c + 1] - starts[c]];
+      System.arraycopy(states, starts[c], result, 0, result.length);
+      return result;
+   }
+
+
+   public int getNumBottomComponents() {
+      int count = 0;
+      for (int c = 0; c < numcomponents; c++) {
+         if (bottom[c]) {
+            count++;
+         }
+      }
+      return count;
+   }
+
+
+   /**
+    * getNumTransientStates()
+    * @return   The number of states not in a bottom component
+    */
+   public int getNumTransientStates() {
+      int count = 0;
+      for (int c = 0; c < numcomponents; c++) {
+         if (!bottom[c]) {
+            count += starts[c + 1] - starts[c];
+         }
+      }
+      return count;
+   }
+
+
+   public String toString() {
+      if (isErgodic()) {
+         return "The " + numstates + " tangible states form a single " +
+                 "strongly connected component, so the chain is ergodic.";
+      }
+      return "The chain is not ergodic. The " + numstates + " tangible " +
+              "states form " + numcomponents + " strongly connected " +
+              "components, " + getNumBottomComponents() + " of which cannot " +
+              "be left, and " + getNumTransientStates() + " of the states " +
+              "are transient.";
+   }
+
+
+   /**
+    * search()
+    * Tarjan's algorithm. Each state is given the order it was found in, and
+    * the lowest order of any state on the stack it can reach. A state whose
+    * two numbers are the same is the root of a component, which is made up of
+    * it and every state above it on the stack.
+    */
+   private void search(SparseMatrix Q) {
+      int[] order = new int[numstates];
+      int[] lowlink = new int[numstates];
+      boolean[] onstack = new boolean[numstates];
+      // The states found but not yet put in a component
+      int[] stack = new int[numstates];
+      int stacksize = 0;
+      // The path of the search, with the next arc to follow from each state
+      int[] path = new int[numstates];
+      int[] nextarc = new int[numstates];
+      int pathlength = 0;
+      int found = 0;
+
+      for (int s = 0; s < numstates; s++) {
+         order[s] = -1;
+      }
+      for (int root = 0; root < numstates; root++) {
+         if (order[root] >= 0) {
+            continue;
+         }
+         order[root] = lowlink[root] = found++;
+         stack[stacksize++] = root;
+         onstack[root] = true;
+         path[0] = root;
+         nextarc[0] = Q.rowstarts[root];
+         pathlength = 1;
+
+         while (pathlength > 0) {
+            int v = path[pathlength - 1];
+            if (nextarc[pathlength - 1] < Q.rowstarts[v + 1]) {
+               int w = Q.columns[nextarc[pathlength - 1]++];
+               if (order[w] < 0) {
+                  // Go on to w
+                  order[w] = lowlink[w] = found++;
+                  stack[stacksize++] = w;
+                  onstack[w] = true;
+                  path[pathlength] = w;
+                  nextarc[pathlength] = Q.rowstarts[w];
+                  pathlength++;
+               } else if (onstack[w]) {
+                  lowlink[v] = Math.min(lowlink[v], order[w]);
+               }
+            } else {
+               // Every arc from v has been followed, so go back
+               pathlength--;
+               if (lowlink[v] == order[v]) {
+                  int w;
+                  do {
+                     w = stack[--stacksize];
+                     onstack[w] = false;
+                     component[w] = numcomponents;
+                  } while (w != v);
+                  numcomponents++;
+               }
+               if (pathlength > 0) {
+                  int u = path[pathlength - 1];
+                  lowlink[u] = Math.min(lowlink[u], lowlink[v]);
+               }
+            }
+         }
+      }
+   }
+
+
+   /**
+    * classify()
+    * Lists the states of each component and works out which components have
+    * no arcs out of them.
+    */
+   private void classify(SparseMatrix Q) {
+      bottom = new boolean[numcomponents];
+      starts = new int[numcomponents + 1];
+      states = new int[numstates];
+      for (int c = 0; c < numcomponents; c++) {
+         bottom[c] = true;
+      }
+      for (int s = 0; s < numstates; s++) {
+         starts[component[s] + 1]++;
+         for (int i = Q.rowstarts[s]; i < Q.rowstarts[s + 1]; i++) {
+            if (component[Q.columns[i]] != component[s]) {
+               bottom[component[s]] = false;
+            }
+         }
+      }
+      for (int c = 0; c < numcomponents; c++) {
+         starts[c + 1] += starts[c];
+      }
+      int[] next = new int[numcomponents];
+      System.arraycopy(starts, 0, next, 0, numcomponents);
+      for (int s = 0; s < numstates; s++) {
+         states[next[component[s]]++] = s;
+      }
+   }
+
+}
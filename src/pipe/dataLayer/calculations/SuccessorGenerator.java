@@ -0,0 +1,242 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pipe.dataLayer.DataLayer;
+
+
+/**
+ * Used by StateSpaceGenerator to work out the tangible successors of a
+ * tangible state, eliminating any vanishing states on the way.
+ *
+ * Everything it needs from the net is held in a CompiledNet, which is never
+ * changed once it has been made, so one SuccessorGenerator can be used by
+ * several exploration threads at once. The DataLayer itself cannot be shared
+ * like that as its getters rebuild cached matrices and vectors.
+ *
+ * The concession set of each successor is worked out from that of the state
+ * it was reached from using the dependency graph of the net, so only the
+ * transitions that depend on the one fired are tested again. The hash of each
+ * successor is brought up to date in the same way from the places the fired
+ * transition changes.
+ *
+ * The tangible states reached through each vanishing state, and the
+ * probability of reaching each of them, are kept as a VanishingClosure, so
+ * the vanishing states reached from several tangible states, or by several
+ * timed transitions, are only explored once.
+ */
+class SuccessorGenerator {
+
+   private final CompiledNet net;
+   private final MarkingHash hasher;
+
+   // The closures of the vanishing states met so far, keyed by MarkingKey,
+   // and roughly how many ints they take up between them
+   private final ConcurrentHashMap closures = new ConcurrentHashMap();
+   private final AtomicLong cachedints = new AtomicLong();
+   private final long maxcachedints;
+
+
+   SuccessorGenerator(DataLayer pnmlData) {
+      this(new CompiledNet(pnmlData));
+   }
+
+
+   SuccessorGenerator(CompiledNet net) {
+      this(net, new MarkingHash(net.getPlaceCount()));
+   }
+
+
+   /**
+    * @param hasher     The MarkingHash used to work out the hashes stored in
+    *                   the successor lists
+    */
+   SuccessorGenerator(CompiledNet net, MarkingHash hasher) {
+      this.net = net;
+      this.hasher = hasher;
+      // Up to a sixteenth of the heap
+      maxcachedints = Runtime.getRuntime().maxMemory() / 64;
+   }
+
+
+   /**
+    * isTangible()
+    * Tests whether a marking is tangible, i.e. at least one transition is
+    * enabled and all the enabled transitions are timed.
+    */
+   boolean isTangible(int[] marking) {
+      return net.isTangible(marking);
+   }
+
+
+   /**
+    * expand()
+    * Fires every transition enabled in a tangible state and follows each
+    * resulting vanishing state until tangible states are reached.
+    * @param s          The tangible state to expand
+    * @param succ       The list to add the tangible successors to
+    * @return           The number of transitions enabled in s
+    * @throws TimelessTrapException
+    */
+   int expand(int[] s, SuccessorList succ) throws TimelessTrapException {
+      BitSet concession = new BitSet(net.getTransitionCount());
+      BitSet enabled = new BitSet(net.getTransitionCount());
+      net.concessionSet(s, concession);
+      int transitionsfired = net.enabledSet(concession, enabled);
+      long shash = hasher.hash(s);
+      int[][] sprimes = new int[net.getTransitionCount()][];
+      long[] sprimehashes = new long[net.getTransitionCount()];
+
+      for (int t = enabled.nextSetBit(0); t >= 0;
+              t = enabled.nextSetBit(t + 1)) {
+         sprimes[t] = new int[s.length];
+         sprimehashes[t] = net.fire(s, sprimes[t], t, hasher, shash);
+      }
+
+      // Successors are visited in decreasing transition order, which is the
+      // order they used to come off the successor stack
+      for (int t = net.getTransitionCount() - 1; t >= 0; t--) {
+         if (enabled.get(t)) {
+            int[] sprime = sprimes[t];
+            double r = rate(s, enabled, sprimes, sprimehashes, t);
+            BitSet sprimeconcession = (BitSet)concession.clone();
+            net.updateConcession(sprime, t, sprimeconcession);
+            if (net.isTangible(sprimeconcession)) {
+               succ.add(sprime, sprimehashes[t], r, t);
+            } else {
+               eliminateVanishing(sprime, sprimehashes[t], sprimeconcession,
+                       r, t, succ);
+            }
+         }
+      }
+      return transitionsfired;
+   }
+
+
+   /**
+    * eliminateVanishing()
+    * Finds the tangible states reached through the vanishing states
+    * reachable from a vanishing state and records the probability of reaching
+    * each of them multiplied by the rate of reaching the vanishing state.
+    * Each tangible state is recorded once.
+    * @param v          The vanishing state to start from
+    * @param r          The rate (or probability) of reaching v
+    * @param timedtransition  The timed transition that led to v, recorded
+    *                   against each tangible state found
+    * @param succ       The list to add the tangible states to
+    * @throws TimelessTrapException
+    */
+   void eliminateVanishing(int[] v, double r, int timedtransition,
+           SuccessorList succ) throws TimelessTrapException {
+      eliminateVanishing(v, hasher.hash(v), null, r, timedtransition, succ);
+   }
+
+
+   /**
+    * eliminateVanishing()
+    * As above, but starting from a vanishing state whose hash and concession
+    * set are already known.
+    * @param vhash      The hash of v
+    * @param vconcession  The transitions with concession in v, or null if
+    *                   they are not known
+    */
+   void eliminateVanishing(int[] v, long vhash, BitSet vconcession, double r,
+           int timedtransition, SuccessorList succ)
+           throws TimelessTrapException {
+      VanishingClosure closure = getClosure(v, vhash, vconcession);
+
+      for (int i = 0; i < closure.size(); i++) {
+         succ.add(closure.getMarking(i), closure.getHash(i),
+                  r * closure.getProbability(i), timedtransition);
+      }
+   }
+
+
+   /**
+    * getClosure()
+    * Looks up the closure of a vanishing state, working it out if it hasn't
+    * been met before. If the closures kept grow beyond the cache size they
+    * are all thrown away.
+    */
+   private VanishingClosure getClosure(int[] v, long vhash,
+           BitSet vconcession) throws TimelessTrapException {
+      MarkingKey key = new MarkingKey(v, vhash);
+      VanishingClosure closure = (VanishingClosure)closures.get(key);
+
+      if (closure == null) {
+         closure = VanishingClosure.compute(net, hasher, v, vhash,
+                                            vconcession);
+         long size = closure.getMemoryUsage() + v.length;
+         if (cachedints.addAndGet(size) > maxcachedints) {
+            closures.clear();
+            cachedints.set(size);
+         }
+         closures.put(key, closure);
+      }
+      return closure;
+   }
+
+
+   /**
+    * rate()
+    * Calculates the rate of going from a tangible state s to the successor
+    * reached by firing transition u, which is the sum of the rates of all the
+    * transitions enabled in s that lead to the same successor. Transitions
+    * whose successor has a different hash are ruled out without comparing
+    * the markings.
+    * @param sprimes    The successor reached by each enabled transition
+    * @param sprimehashes  The hash of each of those successors
+    */
+   private double rate(int[] s, BitSet enabled, int[][] sprimes,
+           long[] sprimehashes, int u) {
+      double total = 0.0;
+      int[] sprime = sprimes[u];
+
+      for (int t = enabled.nextSetBit(0); t >= 0;
+              t = enabled.nextSetBit(t + 1)) {
+         if ((sprimehashes[t] == sprimehashes[u]) &&
+                 net.leadsTo(s, sprime, t)) {
+            total += net.getRate(t);
+         }
+      }
+      return total;
+   }
+
+
+   /**
+    * A marking used as a hash table key, together with its MarkingHash hash.
+    */
+   private static class MarkingKey {
+
+      private final int[] marking;
+      private final long hash;
+
+
+      MarkingKey(int[] marking, long hash) {
+         this.marking = marking;
+         this.hash = hash;
+      }
+
+
+      public int hashCode() {
+         return (int)(hash ^ (hash >>> 32));
+      }
+
+
+      public boolean equals(Object o) {
+         if (!(o instanceof MarkingKey)) {
+            return false;
+         }
+         MarkingKey other = (MarkingKey)o;
+         return (hash == other.hash) && Arrays.equals(marking, other.marking);
+      }
+
+   }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+
+/**
+ * Used by StateSpaceGenerator to hold the tangible successors of a tangible
+ * state, in the order they were found, together with their hashes, the
+ * effective rate of reaching each one and the timed transition fired to leave
+ * the state.
+ * The same successor may appear more than once if it can be reached along
+ * several paths.
+ */
+class SuccessorList {
+
+   private int size = 0;
+   private int[][] markings = new int[8][];
+   private long[] hashes = new long[8];
+   private double[] rates = new double[8];
+   private int[] transitions = new int[8];
+   // The id number of each successor if it was already known when the list
+   // was filled in, -1 otherwise
+   private int[] ids = new int[8];
+
+
+   void add(int[] marking, long hash, double rate, int transition) {
+      if (size == markings.length) {
+         int newlength = size << 1;
+         int[][] newmarkings = new int[newlength][];
+         System.arraycopy(markings, 0, newmarkings, 0, size);
+         markings = newmarkings;
+         long[] newhashes = new long[newlength];
+         System.arraycopy(hashes, 0, newhashes, 0, size);
+         hashes = newhashes;
+         double[] newrates = new double[newlength];
+         System.arraycopy(rates, 0, newrates, 0, size);
+         rates = newrates;
+         int[] newtransitions = new int[newlength];
+         System.arraycopy(transitions, 0, newtransitions, 0, size);
+         transitions = newtransitions;
+         int[] newids = new int[newlength];
+         System.arraycopy(ids, 0, newids, 0, size);
+         ids = newids;
+      }
+      markings[size] = marking;
+      hashes[size] = hash;
+      rates[size] = rate;
+      transitions[size] = transition;
+      ids[size] = -1;
+      size++;
+   }
+
+
+   void clear() {
+      for (int i = 0; i < size; i++) {
+         markings[i] = null;
+      }
+      size = 0;
+   }
+
+
+   int size() {
+      return size;
+   }
+
+
+   int[] getMarking(int index) {
+      return markings[index];
+   }
+
+
+   long getHash(int index) {
+      return hashes[index];
+   }
+
+
+   double getRate(int index) {
+      return rates[index];
+   }
+
+
+   int getTransition(int index) {
+      return transitions[index];
+   }
+
+
+   int getID(int index) {
+      return ids[index];
+   }
+
+
+   void setID(int index, int id) {
+      ids[index] = id;
+   }
+
+}
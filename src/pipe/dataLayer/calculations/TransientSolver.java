@@ -0,0 +1,299 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+
+import pipe.dataLayer.DataLayer;
+
+
+/**
+ * Works out the distribution of a continuous time Markov chain over its states
+ * at given times, and its average distribution from time 0 up to each of
+ * them, by uniformisation. With P = I + Q/q, where q is at least the largest
+ * exit rate, the distribution at time t is
+ *
+ *    pi(t) = sum over k of poisson(k; qt) pi(0) P^k
+ *
+ * and the average up to time t is
+ *
+ *    1/(qt) sum over k of (1 - the poisson(qt) distribution function at k)
+ *    pi(0) P^k
+ *
+ * The Poisson weights are worked out as in Fox and Glynn's method, starting
+ * from the mode so that nothing overflows, and only those between a left and
+ * a right truncation point are kept, leaving out no more than epsilon of the
+ * probability. The vectors pi(0) P^k are worked out once, in a single pass up
+ * to the largest right truncation point, and added into the results for every
+ * time as they go by. The pass always runs to the end: a small change from one
+ * step to the next does not mean the chain is near its steady state, as in a
+ * stiff chain q is set by the fast rates and the slow ones move very little
+ * probability at each step.
+ */
+public class TransientSolver {
+
+   // q is this much more than the largest exit rate, so P is aperiodic
+   static final double UNIFORMISATIONFACTOR = 1.02;
+
+   private final SparseMatrix Qt;
+   private final double[] initial;
+   private final double q;
+
+   private double[] times = new double[0];
+   private double[][] distributions;
+   private double[][] averages;
+   private int iterations = 0;
+
+
+   /**
+    * TransientSolver()
+    * @param Qt         The transpose of the generator matrix, as
+    *                   SparseMatrix.createGenerator(rgfile, true) returns
+    * @param initial    The distribution at time 0. It may be shorter than the
+    *                   number of states, the missing states starting with
+    *                   probability 0.
+    */
+   public TransientSolver(SparseMatrix Qt, double[] initial) {
+      this.Qt = Qt;
+      this.initial = new double[Qt.getNumRows()];
+      System.arraycopy(initial, 0, this.initial, 0,
+                       Math.min(initial.length, this.initial.length));
+      this.q = UNIFORMISATIONFACTOR * LinearSolver.maxRate(Qt);
+   }
+
+
+   /**
+    * TransientSolver()
+    * Sets up a solver for the tangible reachability graph of a net, starting
+    * from its initial marking.
+    * @param rgfile     The reachability graph file written by
+    *                   StateSpaceGenerator.generate() for pnmlData
+    * @param pnmlData   The net
+    * @throws IOException
+    * @throws TimelessTrapException
+    */
+   public TransientSolver(File rgfile, DataLayer pnmlData)
+           throws IOException, TimelessTrapException {
+      this(SparseMatrix.createGenerator(rgfile, true),
+           StateSpaceGenerator.initialDistribution(pnmlData));
+   }
+
+
+   /**
+    * solve()
+    * Works out the distribution at each of the times, and the average
+    * distribution up to each of them.
+    * @param times      The times, which need not be in order
+    * @param epsilon    The most probability that the truncation of the sum at
+    *                   each time may leave out
+    */
+   public void solve(double[] times, double epsilon) {
+      int numstates = Qt.getNumRows();
+      int numtimes = times.length;
+      this.times = (double[])times.clone();
+      distributions = new double[numtimes][numstates];
+      averages = new double[numtimes][numstates];
+
+      // The truncation points and weights for each time
+      int[] left = new int[numtimes];
+      double[][] weights = new double[numtimes][];
+      int last = 0;
+      for (int t = 0; t < numtimes; t++) {
+         if ((times[t] <= 0.0) || (q == 0.0)) {
+            weights[t] = new double[] {1.0};
+         } else {
+            weights[t] = foxGlynn(q * times[t], epsilon, left, t);
+         }
+         last = Math.max(last, left[t] + weights[t].length - 1);
+      }
+      // The Poisson distribution function for each time at the current k
+      double[] cumulative = new double[numtimes];
+
+      DecimalFormat f = new DecimalFormat();
+      f.setMaximumFractionDigits(1);
+      System.out.println("Solving transient distributions...");
+
+      double[] v = (double[])initial.clone();
+      double[] next = new double[numstates];
+      int step = Math.max(1, last / 1000);
+      iterations = 0;
+      for (int k = 0; k <= last; k++) {
+         for (int t = 0; t < numtimes; t++) {
+            int i = k - left[t];
+            if (i >= weights[t].length) {
+               // Past the right truncation point
+               continue;
+            }
+            if (i >= 0) {
+               cumulative[t] += weights[t][i];
+               add(distributions[t], weights[t][i], v);
+            }
+            if ((times[t] <= 0.0) || (q == 0.0)) {
+               // The average up to time 0, or of a chain that never moves,
+               // is the initial distribution
+               add(averages[t], 1.0, v);
+            } else if (cumulative[t] < 1.0) {
+               add(averages[t], (1.0 - cumulative[t]) / (q * times[t]), v);
+            }
+         }
+         if (k == last) {
+            break;
+         }
+
+         // v = v P
+         Qt.multiply(v, next);
+         for (int i = 0; i < numstates; i++) {
+            v[i] += next[i] / q;
+         }
+         iterations++;
+         if (k % step == 0) {
+            System.out.print(f.format(((double)k/last)*100) +
+                    "% complete.  \r");
+         }
+      }
+      System.out.println("100.0% complete.  ");
+   }
+
+
+   /**
+    * getTimes()
+    * @return   The times given to the last call to solve()
+    */
+   public double[] getTimes() {
+      return times;
+   }
+
+
+   /**
+    * getDistribution()
+    * @param t  The index of the time in the array given to solve()
+    * @return   The probability of being in each state at that time
+    */
+   public double[] getDistribution(int t) {
+      return distributions[t];
+   }
+
+
+   /**
+    * getAverageDistribution()
+    * @param t  The index of the time in the array given to solve()
+    * @return   The proportion of time spent in each state up to that time
+    */
+   public double[] getAverageDistribution(int t) {
+      return averages[t];
+   }
+
+
+   /**
+    * getIterations()
+    * @return   The number of products with the matrix the last call to solve()
+    *           took
+    */
+   public int getIterations() {
+      return iterations;
+   }
+
+
+   /**
+    * getUniformisationRate()
+    * @return   The rate q of the uniformised chain
+    */
+   public double getUniformisationRate() {
+      return q;
+   }
+
+
+   private static void add(double[] sum, double w, double[] v) {
+      for (int i = 0; i < v.length; i++) {
+         sum[i] += w * v[i];
+      }
+   }
+
+
+   /**
+    * foxGlynn()
+    * Works out the Poisson probabilities with mean lambda between a left and
+    * a right truncation point, leaving out no more than epsilon of the
+    * probability altogether.
+    * @param left   left[t] is set to the left truncation point
+    * @return       The probabilities from the left truncation point to the
+    *               right one, normalised
+    */
+   static double[] foxGlynn(double lambda, double epsilon, int[] left,
+           int t) {
+      int mode = (int)Math.floor(lambda);
+
+      // Work outwards from the mode, where the weight is largest, so the
+      // weights can only underflow, never overflow
+      int leftmost = mode;
+      double w = 1.0;
+      double[] below = new double[16];
+      int numbelow = 0;
+      while ((leftmost > 0) && (w > 1e-300)) {
+         w *= leftmost / lambda;
+         if (numbelow == below.length) {
+            below = grow(below);
+         }
+         below[numbelow++] = w;
+         leftmost--;
+      }
+      w = 1.0;
+      double[] above = new double[16];
+      int numabove = 0;
+      for (int k = mode + 1; w > 1e-300; k++) {
+         w *= lambda / k;
+         if (numabove == above.length) {
+            above = grow(above);
+         }
+         above[numabove++] = w;
+      }
+
+      // Lay them out in order and normalise, adding the smallest first
+      int size = numbelow + 1 + numabove;
+      double[] all = new double[size];
+      for (int i = 0; i < numbelow; i++) {
+         all[numbelow - 1 - i] = below[i];
+      }
+      all[numbelow] = 1.0;
+      System.arraycopy(above, 0, all, numbelow + 1, numabove);
+      double total = 0.0;
+      int l = 0;
+      int r = size - 1;
+      while (l <= r) {
+         if (all[l] < all[r]) {
+            total += all[l++];
+         } else {
+            total += all[r--];
+         }
+      }
+
+      // Trim the tails, each by up to half of epsilon
+      int from = 0;
+      double cut = 0.0;
+      while ((from < numbelow) && (cut + all[from] / total <= epsilon / 2)) {
+         cut += all[from++] / total;
+      }
+      int to = size - 1;
+      cut = 0.0;
+      while ((to > numbelow) && (cut + all[to] / total <= epsilon / 2)) {
+         cut += all[to--] / total;
+      }
+      double[] weights = new double[to - from + 1];
+      for (int i = from; i <= to; i++) {
+         weights[i - from] = all[i] / total;
+      }
+      left[t] = leftmost + from;
+      return weights;
+   }
+
+
+   private static double[] grow(double[] array) {
+      double[] bigger = new double[array.length << 1];
+      System.arraycopy(array, 0, bigger, 0, array.length);
+      return bigger;
+   }
+
+}
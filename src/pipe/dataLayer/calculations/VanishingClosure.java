@@ -0,0 +1,426 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.dataLayer.calculations;
+
+import java.util.BitSet;
+import java.util.Stack;
+
+
+/**
+ * The tangible states reached from a vanishing state by firing immediate
+ * transitions, each with the probability of reaching it first. Used by
+ * SuccessorGenerator, which keeps the closures it has worked out so that a
+ * vanishing state reached from many tangible states is only explored once.
+ *
+ * compute() explores the vanishing states reachable from the starting state
+ * once each, recording the probabilistic branches between them, rather than
+ * following every path through them separately. The probabilities are then
+ * worked out by pushing the probability mass of each vanishing state on to
+ * its successors. Where the vanishing states form no cycles this is done in a
+ * single pass, in an order in which every state comes after all the states
+ * leading to it. Any mass left going round a cycle of vanishing states is
+ * pushed round it until less than CONVERGED is left. A cycle that lets its
+ * mass out so slowly that this takes more than MAXSWEEPS sweeps is treated as
+ * a timeless trap, as the original search treated a path it could not finish
+ * within its MAX_TRIES attempts.
+ *
+ * A timeless trap is found from the structure of the explored states: it is
+ * a vanishing state, reachable with non-zero probability, from which no
+ * tangible state can be reached. A vanishing state with no way out at all is
+ * a dead end rather than a trap, and the probability of reaching it is lost,
+ * as it always has been.
+ *
+ * Once made, a closure is never changed, so it may be shared between threads.
+ */
+class VanishingClosure {
+
+   // The probability left among vanishing states once a cyclic closure is
+   // taken to have converged
+   private static final double CONVERGED = 1e-12;
+
+   // The most sweeps made round the cycles of vanishing states before giving
+   // up on them
+   private static final int MAXSWEEPS = 100000;
+
+   // The tangible states in the order they are first reached by a depth first
+   // search, which is the order the original path by path search found them
+   private final int[][] markings;
+   private final long[] hashes;
+   private final double[] probabilities;
+
+
+   private VanishingClosure(int[][] markings, long[] hashes,
+           double[] probabilities) {
+      this.markings = markings;
+      this.hashes = hashes;
+      this.probabilities = probabilities;
+   }
+
+
+   int size() {
+      return markings.length;
+   }
+
+
+   int[] getMarking(int index) {
+      return markings[index];
+   }
+
+
+   long getHash(int index) {
+      return hashes[index];
+   }
+
+
+   double getProbability(int index) {
+      return probabilities[index];
+   }
+
+
+   /**
+    * getMemoryUsage()
+    * @return   Roughly the number of ints held by the closure
+    */
+   int getMemoryUsage() {
+      int total = 0;
+      for (int i = 0; i < markings.length; i++) {
+         total += markings[i].length + 4;
+      }
+      return total;
+   }
+
+
+   /**
+    * compute()
+    * Works out the closure of a vanishing state.
+    * @param net        The net
+    * @param hasher     The MarkingHash to hash the markings with
+    * @param v          The vanishing state
+    * @param vhash      The hash of v
+    * @param vconcession  The transitions with concession in v, or null if
+    *                   they are not known
+    * @return           The closure of v
+    * @throws TimelessTrapException
+    */
+   static VanishingClosure compute(CompiledNet net, MarkingHash hasher,
+           int[] v, long vhash, BitSet vconcession)
+           throws TimelessTrapException {
+      Graph graph = new Graph(hasher);
+      explore(net, hasher, graph, v, vhash, vconcession);
+      graph.checkForTimelessTrap();
+      return graph.solve();
+   }
+
+
+   /**
+    * explore()
+    * Finds the vanishing states reachable from v, and the tangible states
+    * they lead to, with a depth first search using the same stack order as
+    * the original search, but expanding each vanishing state only once.
+    */
+   private static void explore(CompiledNet net, MarkingHash hasher,
+           Graph graph, int[] v, long vhash, BitSet vconcession) {
+      Stack vanishingStates = new Stack();
+      BitSet enabled = new BitSet(net.getTransitionCount());
+
+      graph.addVanishing(v, vhash);
+      vanishingStates.push(new VanishingState(v, vhash, 1.0, vconcession));
+      while (!vanishingStates.isEmpty()) {
+         VanishingState current = (VanishingState)vanishingStates.pop();
+         int[] marking = current.getState();
+         long hash = current.getHash();
+         int id = graph.findVanishing(marking, hash);
+         if (graph.isExpanded(id)) {
+            continue;
+         }
+
+         BitSet concession = current.getConcession();
+         if (concession == null) {
+            concession = new BitSet(net.getTransitionCount());
+            net.concessionSet(marking, concession);
+         }
+         net.enabledSet(concession, enabled);
+         double enabledweight = 0.0;
+         for (int t = enabled.nextSetBit(0); t >= 0;
+                 t = enabled.nextSetBit(t + 1)) {
+            enabledweight += net.getRate(t);
+         }
+
+         graph.startExpanding(id);
+         for (int t = enabled.nextSetBit(0); t >= 0;
+                 t = enabled.nextSetBit(t + 1)) {
+            int[] vprime = new int[marking.length];
+            long vprimehash = net.fire(marking, vprime, t, hasher, hash);
+            double p = net.getRate(t) / enabledweight;
+            BitSet vprimeconcession = (BitSet)concession.clone();
+            net.updateConcession(vprime, t, vprimeconcession);
+            if (net.isTangible(vprimeconcession)) {
+               graph.addTangibleEdge(vprime, vprimehash, p);
+            } else if (p > 0.0) {
+               int child = graph.addVanishingEdge(vprime, vprimehash, p);
+               if (!graph.isExpanded(child)) {
+                  vanishingStates.push(new VanishingState(vprime, vprimehash,
+                          p, vprimeconcession));
+               }
+            }
+         }
+         graph.finishExpanding(id);
+      }
+   }
+
+
+   /**
+    * The vanishing states found by explore() and the branches out of each of
+    * them, to other vanishing states or to tangible states.
+    */
+   private static class Graph {
+
+      private final ExploredStateTable vanishing;
+      private final ExploredStateTable tangible;
+      private int[][] tangiblemarkings = new int[8][];
+      private long[] tangiblehashes = new long[8];
+
+      // The branches out of vanishing state i are edges edgeStart[i] to
+      // edgeEnd[i] - 1. A target of t >= 0 is vanishing state t, and a target
+      // of -1 - t is tangible state t.
+      private int[] edgeStart = new int[8];
+      private int[] edgeEnd = new int[8];
+      private int[] target = new int[16];
+      private double[] probability = new double[16];
+      private int edges = 0;
+
+
+      Graph(MarkingHash hasher) {
+         vanishing = new ExploredStateTable(hasher, 16);
+         tangible = new ExploredStateTable(hasher, 16);
+      }
+
+
+      int addVanishing(int[] marking, long hash) {
+         int known = vanishing.size();
+         int id = vanishing.findOrAdd(marking, hash);
+         if (id == known) {
+            if (id == edgeStart.length) {
+               edgeStart = grow(edgeStart);
+               edgeEnd = grow(edgeEnd);
+            }
+            edgeStart[id] = -1;
+            edgeEnd[id] = -1;
+         }
+         return id;
+      }
+
+
+      int findVanishing(int[] marking, long hash) {
+         return vanishing.find(marking, hash);
+      }
+
+
+      boolean isExpanded(int id) {
+         return edgeStart[id] != -1;
+      }
+
+
+      void startExpanding(int id) {
+         edgeStart[id] = edges;
+      }
+
+
+      void finishExpanding(int id) {
+         edgeEnd[id] = edges;
+      }
+
+
+      void addTangibleEdge(int[] marking, long hash, double p) {
+         int id = tangible.findOrAdd(marking, hash);
+         if (id == tangiblemarkings.length) {
+            int[][] newmarkings = new int[id << 1][];
+            System.arraycopy(tangiblemarkings, 0, newmarkings, 0, id);
+            tangiblemarkings = newmarkings;
+            long[] newhashes = new long[id << 1];
+            System.arraycopy(tangiblehashes, 0, newhashes, 0, id);
+            tangiblehashes = newhashes;
+         }
+         tangiblemarkings[id] = marking;
+         tangiblehashes[id] = hash;
+         addEdge(-1 - id, p);
+      }
+
+
+      int addVanishingEdge(int[] marking, long hash, double p) {
+         int id = addVanishing(marking, hash);
+         addEdge(id, p);
+         return id;
+      }
+
+
+      private void addEdge(int to, double p) {
+         if (edges == target.length) {
+            target = grow(target);
+            double[] newprobability = new double[edges << 1];
+            System.arraycopy(probability, 0, newprobability, 0, edges);
+            probability = newprobability;
+         }
+         target[edges] = to;
+         probability[edges] = p;
+         edges++;
+      }
+
+
+      /**
+       * checkForTimelessTrap()
+       * Throws a TimelessTrapException unless a tangible state or a dead end
+       * can be reached from every vanishing state found, by working backwards
+       * from the vanishing states with a branch to a tangible state and from
+       * the dead ends.
+       */
+      void checkForTimelessTrap() throws TimelessTrapException {
+         int states = vanishing.size();
+         int[] predecessorStart = new int[states + 1];
+         for (int e = 0; e < edges; e++) {
+            if (target[e] >= 0) {
+               predecessorStart[target[e] + 1]++;
+            }
+         }
+         for (int i = 0; i < states; i++) {
+            predecessorStart[i + 1] += predecessorStart[i];
+         }
+         int[] predecessor = new int[predecessorStart[states]];
+         int[] next = new int[states];
+         System.arraycopy(predecessorStart, 0, next, 0, states);
+         for (int i = 0; i < states; i++) {
+            for (int e = edgeStart[i]; e < edgeEnd[i]; e++) {
+               if (target[e] >= 0) {
+                  predecessor[next[target[e]]++] = i;
+               }
+            }
+         }
+
+         boolean[] escapes = new boolean[states];
+         int[] queue = new int[states];
+         int tail = 0;
+         for (int i = 0; i < states; i++) {
+            escapes[i] = isDeadEnd(i);
+            for (int e = edgeStart[i]; e < edgeEnd[i]; e++) {
+               if (target[e] < 0) {
+                  escapes[i] = true;
+               }
+            }
+            if (escapes[i]) {
+               queue[tail++] = i;
+            }
+         }
+         for (int head = 0; head < tail; head++) {
+            int i = queue[head];
+            for (int k = predecessorStart[i]; k < predecessorStart[i + 1];
+                    k++) {
+               if (!escapes[predecessor[k]]) {
+                  escapes[predecessor[k]] = true;
+                  queue[tail++] = predecessor[k];
+               }
+            }
+         }
+         if (tail < states) {
+            throw new TimelessTrapException();
+         }
+      }
+
+
+      /**
+       * solve()
+       * Pushes the probability mass of the starting state through the
+       * vanishing states on to the tangible states.
+       * @throws TimelessTrapException if the mass in the cycles of vanishing
+       *                   states has not drained away after MAXSWEEPS sweeps
+       */
+      VanishingClosure solve() throws TimelessTrapException {
+         int states = vanishing.size();
+         double[] mass = new double[states];
+         double[] reached = new double[tangible.size()];
+
+         // The number of branches into each vanishing state not yet pushed
+         int[] waiting = new int[states];
+         for (int e = 0; e < edges; e++) {
+            if (target[e] >= 0) {
+               waiting[target[e]]++;
+            }
+         }
+
+         // A single pass over the states with no cycle above them
+         int[] ready = new int[states];
+         int tail = 0;
+         boolean[] pushed = new boolean[states];
+         mass[0] = 1.0;
+         if (waiting[0] == 0) {
+            ready[tail++] = 0;
+         }
+         for (int head = 0; head < tail; head++) {
+            int i = ready[head];
+            pushed[i] = true;
+            double m = mass[i];
+            mass[i] = 0.0;
+            for (int e = edgeStart[i]; e < edgeEnd[i]; e++) {
+               int to = target[e];
+               if (to < 0) {
+                  reached[-1 - to] += m * probability[e];
+               } else {
+                  mass[to] += m * probability[e];
+                  if (--waiting[to] == 0) {
+                     ready[tail++] = to;
+                  }
+               }
+            }
+         }
+
+         // Whatever is left is in or below a cycle, and is pushed round until
+         // it has all but drained away
+         double remaining = (tail < states) ? 1.0 : 0.0;
+         int sweeps = 0;
+         while (remaining > CONVERGED) {
+            if (sweeps++ == MAXSWEEPS) {
+               throw new TimelessTrapException();
+            }
+            for (int i = 0; i < states; i++) {
+               if (pushed[i] || mass[i] == 0.0) {
+                  continue;
+               }
+               double m = mass[i];
+               mass[i] = 0.0;
+               for (int e = edgeStart[i]; e < edgeEnd[i]; e++) {
+                  int to = target[e];
+                  if (to < 0) {
+                     reached[-1 - to] += m * probability[e];
+                  } else {
+                     mass[to] += m * probability[e];
+                  }
+               }
+            }
+            remaining = 0.0;
+            for (int i = 0; i < states; i++) {
+               remaining += mass[i];
+            }
+         }
+
+         int[][] markings = new int[reached.length][];
+         long[] hashes = new long[reached.length];
+         System.arraycopy(tangiblemarkings, 0, markings, 0, reached.length);
+         System.arraycopy(tangiblehashes, 0, hashes, 0, reached.length);
+         return new VanishingClosure(markings, hashes, reached);
+      }
+
+
+      private boolean isDeadEnd(int id) {
+         return edgeStart[id] == edgeEnd[id];
+      }
+
+
+      private static int[] grow(int[] array) {
+         int[] newarray = new int[array.length << 1];
+         System.arraycopy(array, 0, newarray, 0, array.length);
+         return newarray;
+      }
+
+   }
+
+}
@@ -3,6 +3,8 @@
  */
 package pipe.dataLayer.calculations;
 
+import java.util.BitSet;
+
 
 /**
  * @author Nadeem
@@ -13,6 +15,10 @@ public class VanishingState
         extends State {
    
    double rate;
+   // The hash of the marking, if it is known
+   long hash;
+   // The transitions with concession in this state, null if not known
+   BitSet concession;
 
    
    VanishingState(int[] newState, double initialRate){
@@ -21,6 +27,14 @@ public class VanishingState
    }
    
    
+   VanishingState(int[] newState, long hash, double initialRate,
+           BitSet concession){
+      this(newState, initialRate);
+      this.hash = hash;
+      this.concession = concession;
+   }
+   
+   
    VanishingState(State newState, double initialRate){
       super(newState);
       setRate(initialRate);
@@ -36,4 +50,14 @@ public class VanishingState
       return rate;
    }
    
+   
+   long getHash(){
+      return hash;
+   }
+   
+   
+   BitSet getConcession(){
+      return concession;
+   }
+   
 }
@@ -3,6 +3,8 @@
  */
 package pipe.dataLayer.calculations;
 
+import java.util.BitSet;
+
 import pipe.dataLayer.calculations.myNode;
 
 import pipe.gui.Pipe;
@@ -23,6 +25,10 @@ public class  myNode {
    myNode previousInstance;   // same node found in tree
    int depth;                 // The depth this node is in the tree
    int id;                    // Node id
+   BitSet concession;         // transitions with concession, until expanded
+   BitSet enabled;            // enabled transitions, while being expanded
+   int nextTransition;        // next transition to fire, while being expanded
+   long hash;                 // The hash of markup, from tree.markingHash
    
 
    
@@ -32,6 +38,18 @@ public class  myNode {
     */
    public myNode(int [] markingArray, myNode parentNode, myTree atree, 
             int treeDepth) {
+      this(markingArray, parentNode, atree, treeDepth, 
+              atree.markingHash.hash(markingArray));
+   }
+   
+   
+   /**
+    * Function: void myNode(int[] markingArray, myNode parentNode, myTree atree,
+    *                       int treeDepth, long markupHash)
+    * As above, for a marking whose hash is already known
+    */
+   public myNode(int [] markingArray, myNode parentNode, myTree atree, 
+            int treeDepth, long markupHash) {
       
       //Node now knows its tree in order to use its attributes
       tree = atree;
@@ -46,6 +64,7 @@ public class  myNode {
       
       // Set up marking for this node
       markup = markingArray;  //created in myTree
+      hash = markupHash;
       
       // Assign the nodes parents
       parent = parentNode;
@@ -69,120 +88,111 @@ public class  myNode {
 
    
    /**
-    * Function: int[] fire(int trans)
-    * Produces a new markup vector to simulate the firing of a transition.
-    * Destroys the number of tokens shown in CMinus for a given place and
-    * transition, and creates the number of tokens shown in CPlus.
-    * TransIndex refers to the actual transition number ie starting at 1.
+    * Function: void startExpansion()
+    * Works out which transitions are enabled in this node, ready for its
+    * children to be created one at a time by expandNextChild().
+    */
+   void startExpansion() {
+      if (concession == null) {
+         concession = new BitSet(tree.transitionCount);
+         tree.net.concessionSet(markup, concession);
+      }
+      enabled = new BitSet(tree.transitionCount);
+      tree.net.enabledSet(concession, enabled);
+      nextTransition = 0;
+   }
+   
+   
+   /**
+    * Function: myNode expandNextChild()
+    * Fires the next enabled transition of this node to create a child. 
+    * Children whose markups have been found before, or that have an omega on 
+    * every place, are left as leaves and the next transition is tried.
+    * Returns the first child created that needs expanding itself, or null 
+    * once every enabled transition has been fired.
     */
-   private int[] fire(int transIndex) {
-      int CMinusValue;               //Value from C- matrix
-      int CPlusValue;                //Value from C+ matrix
+   myNode expandNextChild() throws TreeTooBigException {
+      int[] newMarkup;                      //markup used to create new node
+      //Attribute used for assessing whether a node has occured before
+      boolean repeatedNode = false;       
       
-      //Create marking array to return
-      int[] marking = new int[tree.placeCount];
+      boolean allOmegas = false;
       
-      //System.out.println("\nFire transition " + transIndex);
-      for (int count = 0; count < tree.placeCount; count++) {
-         CMinusValue = (tree.CMinus).get(count, (transIndex));
-         CPlusValue = (tree.CPlus).get(count, (transIndex));
+      for (int i = enabled.nextSetBit(nextTransition); i >= 0; 
+              i = enabled.nextSetBit(i + 1)) {
+         nextTransition = i + 1;
          
-         if (markup[count] != -1) {
-            marking[count] = markup[count] - CMinusValue + CPlusValue;
-         } else {
-            marking[count] = markup[count];
+         //Set transArray of to true for this index
+         transArray[i] = true;
+         
+         //Fire transition to produce new markup vector
+         newMarkup = new int[tree.placeCount];
+         long newHash = tree.net.fire(markup, newMarkup, i, 
+                 tree.markingHash, hash);
+         
+         //Check for safeness. If any of places have > 1 token set variable.
+         for (int j = 0; j < newMarkup.length; j++) {
+            if (newMarkup[j] > 1 || newMarkup[j] == -1) {
+               tree.moreThanOneToken = true;
+               break;
+            }
+         } 
+         
+         //Create a new node using the new markup vector and attach it to
+         //the current node as a child.
+         children[i] = 
+                 new myNode(newMarkup, this, tree, depth + 1, newHash);
+         
+         /* Now need to (a) check if any omegas (represented by -1) need to 
+          * be inserted in the markup vector of the new node, and (b) if the 
+          * resulting markup vector has appeared anywhere else in the tree. 
+          * We must do (a) before (b) as we need to know if the new node 
+          * contains any omegas to be able to compare it with existing nodes. 
+          */            
+         allOmegas = children[i].InsertOmegas();
+         
+         //check if the resulting markup vector has occured anywhere else in the tree
+         repeatedNode = tree.findMarkup(children[i]);
+         
+         if (tree.nodeCount >= Pipe.MAX_NODES && !tree.tooBig) {
+            tree.tooBig = true;
+            throw new TreeTooBigException();
+         }
+         
+         if (!repeatedNode && !allOmegas) {
+            children[i].concession = tree.childConcession(this, children[i], i);
+            return children[i];
          }
       }
-      
-      //print( "Markup: ", marking); //debug
-      
-      //Return this new marking to RecursiveExpansion function
-      return marking;
+      return null;
    }
    
    
    /**
-    * Function: void RecursiveExpansion()
-    * Undertakes a recursive expansion of the tree
-    * Called on root node from within the tree constructor.
+    * Function: void finishExpansion()
+    * Called once all the children of this node have been expanded. Records
+    * the path to this node if it is deadlocked.
     */
-    public void RecursiveExpansion() throws TreeTooBigException {
-       int[] newMarkup;                      //markup used to create new node
-       boolean aTransitionIsEnabled = false; //To check for deadlock
-       //Attribute used for assessing whether a node has occured before
-       boolean repeatedNode = false;       
-       
-       boolean allOmegas = false;
+   void finishExpansion() {
+      boolean aTransitionIsEnabled = !enabled.isEmpty(); //To check for deadlock
       
-       boolean[] enabledTransitions = 
-               tree.dataLayer.getTransitionEnabledStatusArray(markup);
-
-       //For each transition
-       for (int i = 0; i < enabledTransitions.length; i++) {
-          if (enabledTransitions[i] == true) {
-             //Set transArray of to true for this index
-             transArray[i] = true;
-             
-             //System.out.println("\n Transition " + i + " Enabled" );
-             aTransitionIsEnabled = true;
-             
-             //print ("\n Old Markup is :", markup);//debug
-             
-             //Fire transition to produce new markup vector
-             newMarkup = fire(i);
-            
-             //print ("\n New Markup is :", newMarkup);//debug
-             
-             //Check for safeness. If any of places have > 1 token set variable.
-             for (int j = 0; j < newMarkup.length; j++) {
-                if (newMarkup[j] > 1 || newMarkup[j] == -1) {
-                   tree.moreThanOneToken = true;
-                   break;
-                }
-             } 
-            
-             //Create a new node using the new markup vector and attach it to
-             //the current node as a child.
-             children[i] = 
-                     new myNode(newMarkup, this, tree, depth + 1);
-            
-             /* Now need to (a) check if any omegas (represented by -1) need to 
-              * be inserted in the markup vector of the new node, and (b) if the 
-              * resulting markup vector has appeared anywhere else in the tree. 
-              * We must do (a) before (b) as we need to know if the new node 
-              * contains any omegas to be able to compare it with existing nodes. 
-              */            
-             allOmegas = children[i].InsertOmegas();
-            
-             //check if the resulting markup vector has occured anywhere else in the tree
-             repeatedNode = (tree.root).FindMarkup(children[i]);
-            
-             if (tree.nodeCount >= Pipe.MAX_NODES && !tree.tooBig) {
-                tree.tooBig = true;
-                throw new TreeTooBigException();
-             }
-            
-             if (!repeatedNode && !allOmegas) {
-                children[i].RecursiveExpansion();
-             }
-          }
-       }
+      // Not needed once the node has been expanded
+      concession = null;
+      enabled = null;
       
-       if (!aTransitionIsEnabled) {
-          System.err.println("No transition enabled");
-          if (!tree.noEnabledTransitions || tree.pathToDeadlock.length < depth-1) {
-             RecordDeadlockPath();
-             tree.noEnabledTransitions = true;
-          } else {
-             System.err.println("Deadlocked node found, but path is not shorter"
-                     + " than current path.");
-          }
-       } else {
-          //System.out.println("Transitions enabled.");
-       }
-    }
- 
-          
+      if (!aTransitionIsEnabled) {
+         System.err.println("No transition enabled");
+         if (!tree.noEnabledTransitions || tree.pathToDeadlock.length < depth-1) {
+            RecordDeadlockPath();
+            tree.noEnabledTransitions = true;
+         } else {
+            System.err.println("Deadlocked node found, but path is not shorter"
+                    + " than current path.");
+         }
+      }
+   }
+   
+   
    /**
     * Function: void RecordDeadlockPath()
     * If there is a deadlock, calculates the path
@@ -270,20 +280,16 @@ public class  myNode {
             //for each place p in the markup of this node
             for (int p = 0; p < tree.placeCount; p++) {
                // Check if there is an inhibition
-               boolean inhibition = false;
-               for (int t = 0; t < tree.transitionCount; t++) {
-                  if ((tree.inhibition.get(p, t) > 0) &&
-                          (markup[p] <= tree.inhibition.get(p, t))) {
-                     inhibition = true;
-                     break;
-                  }
-               }
+               int maxInhibitor = tree.net.getMaxInhibitorWeight(p);
+               boolean inhibition = 
+                       (maxInhibitor > 0) && (markup[p] <= maxInhibitor);
                
                if (!inhibition) { 
                   if (markup[p] != -1 &&
                           elementIsStrictlyGreater[p] &&
-                          tree.capacity[p] == 0) {
+                          tree.net.getCapacity(p) == 0) {
                      //Set M(p) in this new markup to be omega
+                     hash = tree.markingHash.update(hash, p, markup[p], -1);
                      markup[p] = -1;
                      insertedOmega = true;
                      //print("\n Omega added", markup); //debug
@@ -306,41 +312,6 @@ public class  myNode {
    }
 
    
-   /**
-    * Function: boolean FindMarkup(int[] mark)
-    * Checks if the markup has occured previously in the tree. This means
-    * previously during the creation of the tree, and not just on the current
-    * branch as a direct ancestor of the node. Function updates arrays of end
-    * nodes stored in the tree class for the liveness tests. Explore the tree
-    * by starting with the root node and investigating the children.
-    */
-   public boolean FindMarkup(myNode n) {
-      if (n == this) {
-         return false;
-      }
-           
-      if (MarkupCompare(n.markup)) {         
-         //n.previousInstance = this;
-         if (this.previousInstance != null) {
-            n.previousInstance = this.previousInstance;
-         } else {
-            n.previousInstance = this;
-         }         
-         //System.out.println("\nFound duplicate markup!\n");
-         return true;
-      }
-      
-      for (int i = 0; i < tree.transitionCount; i++) {
-         if (transArray[i]) {
-            if (children[i].FindMarkup(n)) {
-               return true;
-            }
-         }
-      }
-      return false;
-   }
-   
-   
    /**
     * Function: boolean MarkupCompare(int[] check)
     * Takes two integer arrays (Markups) and compares the values.
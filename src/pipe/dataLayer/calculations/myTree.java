@@ -6,17 +6,15 @@
  */
 package pipe.dataLayer.calculations;
 
-import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Stack;
 import pipe.dataLayer.DataLayer;
-import pipe.dataLayer.PNMatrix;
 import pipe.gui.Pipe;
 import pipe.io.ImmediateAbortException;
-import pipe.io.RGFileHeader;
-import pipe.io.TransitionRecord;
+import pipe.io.RGFileWriter;
 
 
 /**
@@ -25,25 +23,29 @@ import pipe.io.TransitionRecord;
  */
 public class myTree {
    
+   // The markup index starts small, as trees are limited to Pipe.MAX_NODES
+   private static final int INITIALINDEXSIZE = 1024;
+   
    public boolean foundAnOmega = false;         // bounded
    public boolean moreThanOneToken = false;     // safe
    public boolean noEnabledTransitions = false; // deadlock
    
    public myNode root;              // root of the tree
    public int nodeCount = 0;        // Total number of nodes in tree
-   public PNMatrix CPlus;
-   public PNMatrix CMinus;          // incidence matrices of petri net
-   public PNMatrix inhibition;      // inhibition matrix of petri net
+   public CompiledNet net;          // arcs, capacities and priorities of net
+   public MarkingHash markingHash;  // hashes the markups of the nodes
    public int transitionCount;      // number of transitions in net
    public int placeCount;           // number of places in the net
-   public int[] capacity;           // vector of capacities restrictions
-   public int[] priority;           // vector of transition priorities
-   public boolean[] timed;          // true if transition is timed
    public int[] pathToDeadlock;     // Gives transitions to deadlock
    public boolean tooBig = false;   // Set if the tree gets too large
    public int edges = 0;            // Counter for edges
    public int states = 0;           // Counter for states
    
+   // Every distinct markup in the tree, and the first node found with each,
+   // indexed by the number the table gave the markup
+   private ExploredStateTable markups;
+   private ArrayList firstInstances;
+   
    public DataLayer dataLayer;
    
    
@@ -52,27 +54,28 @@ public class myTree {
       
       dataLayer = data;
       
-      CPlus = new PNMatrix(data.getForwardsIncidenceMatrix());
-      CMinus = new PNMatrix(data.getBackwardsIncidenceMatrix());
-      inhibition = new PNMatrix(data.getInhibitionMatrix());
-      capacity = data.getCapacityVector();
-      priority = data.getPriorityVector();;
-      timed = data.getTimedVector();
+      net = new CompiledNet(data);
       
-      //Find number transitions in net from incidence matrix dimensions
-      transitionCount = CMinus.getColumnDimension();
+      //Find number transitions in net
+      transitionCount = net.getTransitionCount();
       
-      //Find number of places in net from incidence matrix dimensions
-      placeCount = CMinus.getRowDimension();
+      //Find number of places in net
+      placeCount = net.getPlaceCount();
+      
+      markingHash = new MarkingHash(placeCount);
       
       //Create root of tree by calling Node constructor
       root = new myNode(treeRoot, root, this, 1);
       
+      markups = new ExploredStateTable(markingHash, INITIALINDEXSIZE);
+      firstInstances = new ArrayList();
+      findMarkup(root);
+      
       //Check for safeness. If any of places have > 1 token set variable.
       this.moreThanOneToken = isSafe(treeRoot);
       
-      //Call expansion function on root of tree
-      root.RecursiveExpansion();
+      //Expand the tree from its root
+      expandTree();
    }
    
    
@@ -81,66 +84,49 @@ public class myTree {
    throws  TreeTooBigException, ImmediateAbortException {
       
       dataLayer = data;
-      CPlus = new PNMatrix(data.getForwardsIncidenceMatrix());
-      CMinus = new PNMatrix(data.getBackwardsIncidenceMatrix());
-      inhibition = new PNMatrix(data.getInhibitionMatrix());
-      capacity = data.getCapacityVector();
-      priority = data.getPriorityVector();;
-      timed = data.getTimedVector();
+      net = new CompiledNet(data);
       
-      //Find number transitions in net from incidence matrix dimensions
-      transitionCount = CMinus.getColumnDimension();
+      //Find number transitions in net
+      transitionCount = net.getTransitionCount();
       
-      //Find number of places in net from incidence matrix dimensions
-      placeCount = CMinus.getRowDimension();
+      //Find number of places in net
+      placeCount = net.getPlaceCount();
+      
+      markingHash = new MarkingHash(placeCount);
       
       //Create root of tree by calling Node constructor
       root = new myNode(treeRoot, root, this, 1);
       
+      markups = new ExploredStateTable(markingHash, INITIALINDEXSIZE);
+      firstInstances = new ArrayList();
+      findMarkup(root);
+      
       //Check for safeness. If any of places have > 1 token set variable.
       this.moreThanOneToken = isSafe(treeRoot);
       
-      // Temporary files for storing tangible states and the transitions
-      // between them. They are later combined into one file by the createCGFile
-      // method
-      RandomAccessFile outputFile;
-      RandomAccessFile esoFile;
-      File intermediate = new File("graph.irg");
-      
-      if (intermediate.exists()) {
-         if (!intermediate.delete()) {
-            System.err.println("Could not delete intermediate file.");
-         }
-      }
+      // The coverability graph file, to which the states are written as they
+      // are found and the edges out of each as it is expanded
+      RGFileWriter rgfile;
       
       try {
-         outputFile = new RandomAccessFile(intermediate, "rw");
-         esoFile = new RandomAccessFile(reachabilityGraph, "rw");
-         // Write a blank file header as a place holder for later
-         RGFileHeader header = new RGFileHeader();
-         header.write(esoFile);
+         rgfile = new RGFileWriter(reachabilityGraph, treeRoot.length, true, 
+                                   true);
       } catch (IOException e) {
-         System.err.println("Could not create intermediate files.");
+         System.err.println("Could not create coverability graph file.");
          return;
       }
       
-      //Call expansion function on root of tree
-      createCoverabilityGraph(outputFile, esoFile);
-      //createCoverabilityTree(outputFile, esoFile);
-      
       try {
-         outputFile.close();
-      } catch (IOException e1) {
-         System.err.println("\nCould not close intermediate file.");
-      }
-      //System.out.println("\nGenerate Ends, " + numStates +
-      //        " states found with " + numTransitions + " arcs.");
-      createCGFile(intermediate, esoFile, treeRoot.length, states, edges);
-      
-      if (intermediate.exists()) {
-         if (!intermediate.delete()) {
-            System.err.println("Could not delete intermediate file.");
-         }
+         //Call expansion function on root of tree
+         createCoverabilityGraph(rgfile);
+         //createCoverabilityTree(rgfile);
+         
+         //System.out.println("\nGenerate Ends, " + numStates +
+         //        " states found with " + numTransitions + " arcs.");
+         createCGFile(rgfile);
+      } finally {
+         // Does nothing if the file has been finished
+         rgfile.abort();
       }
    }
    
@@ -156,43 +142,95 @@ public class myTree {
    
    
    /**
-    * Function: void RecursiveExpansion()
-    * Undertakes a recursive expansion of the tree
-    * Called on root node from within the tree constructor.
+    * expandTree()
+    * Expands the tree depth first from its root, creating the children of 
+    * each node in transition order. The nodes on the path from the root to 
+    * the node being expanded are kept on a stack of their own rather than on
+    * the call stack, so the depth of the tree is limited by the heap and not
+    * by the size of the thread's stack.
+    */
+   private void expandTree() throws TreeTooBigException {
+      Stack path = new Stack();
+      
+      root.startExpansion();
+      path.push(root);
+      while (!path.isEmpty()) {
+         myNode node = (myNode)path.peek();
+         myNode child = node.expandNextChild();
+         if (child != null) {
+            child.startExpansion();
+            path.push(child);
+         } else {
+            node.finishExpansion();
+            path.pop();
+         }
+      }
+   }
+   
+   
+   /**
+    * findMarkup()
+    * Checks if the markup of a node has occurred previously in the tree, by
+    * looking it up in an index of every markup found so far rather than by 
+    * searching the tree. A repeated node is given the first node found with 
+    * its markup as its previous instance; a new markup is added to the index.
+    * @param n  The node, after any omegas have been inserted in its markup
+    * @return   true if another node in the tree has the same markup
+    */
+   boolean findMarkup(myNode n) {
+      int index = markups.findOrAdd(n.markup, n.hash);
+      if (index < firstInstances.size()) {
+         n.previousInstance = (myNode)firstInstances.get(index);
+         return true;
+      }
+      firstInstances.add(n);
+      return false;
+   }
+   
+   
+   /**
+    * Function: void createCoverabilityGraph()
+    * Undertakes a breadth first expansion of the coverability graph, writing
+    * it to a file as it goes.
     */
-   public void createCoverabilityGraph(RandomAccessFile outputFile,
-           RandomAccessFile esoFile) throws TreeTooBigException,
+   public void createCoverabilityGraph(RGFileWriter rgfile) 
+           throws TreeTooBigException,
            ImmediateAbortException {
       int[] newMarkup;                      //markup used to create new node
       //Attribute used for assessing whether a node has occured before
       boolean repeatedNode = false;
       
-      boolean[] enabledTransitions =
-              dataLayer.getTransitionEnabledStatusArray(root.markup);
+      BitSet enabledTransitions = new BitSet(transitionCount);
+      
+      // Every distinct markup in the graph and the id of the state it was 
+      // written as, used instead of searching the tree for repeated nodes
+      ExploredStateTable exploredStates = new ExploredStateTable(markingHash);
+      
+      root.concession = new BitSet(transitionCount);
+      net.concessionSet(root.markup, root.concession);
       
       //emmagatzemar estat nou
       try {
-         writeNode(root.id, root.markup, esoFile, true);
+         exploredStates.findOrAdd(root.markup, root.hash);
+         writeNode(root.id, root.markup, rgfile, true);
          states++;
       } catch (IOException e) {
          System.err.println("IO problem while writing explored states to file.");
       }
       
-      ArrayList <myNode> unprocessednodes = new ArrayList();
+      Queue unprocessednodes = new Queue();
       
-      unprocessednodes.add(root);
+      unprocessednodes.enqueue(root);
       myNode currentNode = root;
       while (!unprocessednodes.isEmpty()) {
          
          
-         currentNode = unprocessednodes.get(0);
-         unprocessednodes.remove(0);
+         currentNode = (myNode)unprocessednodes.dequeue();
          
-         enabledTransitions =
-                 dataLayer.getTransitionEnabledStatusArray(currentNode.markup);
+         net.enabledSet(currentNode.concession, enabledTransitions);
          //For each transition
-         for (int i = 0; i < enabledTransitions.length; i++) {
-            if (enabledTransitions[i] == true) {
+         for (int i = 0; i < transitionCount; i++) {
+            if (enabledTransitions.get(i)) {
                //Set transArray of to true for this index
                currentNode.transArray[i] = true;
                
@@ -201,14 +239,17 @@ public class myTree {
                //currentNode.print("\n currentNode.markup is :", currentNode.markup);//debug
                
                //Fire transition to produce new markup vector
-               newMarkup = fire(i, currentNode.markup);
+               newMarkup = new int[placeCount];
+               long newHash = net.fire(currentNode.markup, newMarkup, i, 
+                       markingHash, currentNode.hash);
                
                //print("\n newMarkup: ", newMarkup);//debug
                
                //Create a new node using the new markup vector and attach it to
                //the current node as a child.
                currentNode.children[i] =
-                       new myNode(newMarkup, currentNode, this, currentNode.depth + 1);
+                       new myNode(newMarkup, currentNode, this, currentNode.depth + 1,
+                                  newHash);
                
                 currentNode.children[i].InsertOmegas();
                
@@ -216,7 +257,11 @@ public class myTree {
                //System.out.println("afegit fill a la posicio " + i +
                //        "; profunditat" + (currentNode.depth +1));
                
-               repeatedNode = (this.root).FindMarkup(currentNode.children[i]);
+               // A new markup is given the next state id, which is also the id
+               // the new node was created with
+               int id = exploredStates.findOrAdd(currentNode.children[i].markup,
+                                                 currentNode.children[i].hash);
+               repeatedNode = (id != this.states);
                
                if (this.nodeCount >= Pipe.MAX_NODES && !this.tooBig) {
                   this.tooBig = true;
@@ -225,72 +270,66 @@ public class myTree {
                
                if ((!repeatedNode) /*&& (!allOmegas)*/) {
                   try {
-                     writeNode(currentNode.children[i].id, currentNode.children[i].markup, esoFile, true);
+                     writeNode(currentNode.children[i].id, currentNode.children[i].markup, rgfile, true);
                      this.states++;
                   } catch (IOException e) {
                      System.err.println("IO problem while writing explored states to file.");
                   }
-                  unprocessednodes.add(currentNode.children[i]);
+                  currentNode.children[i].concession = 
+                          childConcession(currentNode, currentNode.children[i], i);
+                  unprocessednodes.enqueue(currentNode.children[i]);
                   this.edges++;
-                  //
-                  if (currentNode.children[i].previousInstance != null) {
-                     writeEdge(currentNode.id, currentNode.children[i].previousInstance.id, 0, i, currentNode.markup, outputFile);
-                  } else {
-                     writeEdge(currentNode.id, currentNode.children[i].id, 0, i, currentNode.markup, outputFile);
-                  }
+                  writeEdge(currentNode.id, currentNode.children[i].id, 0, i, currentNode.markup, rgfile);
                } else {
                   //emmagatzemar nova transicio
-                  // es null si hi ha omega?
-                  if (currentNode.children[i].previousInstance != null) {
-                     writeEdge(currentNode.id, currentNode.children[i].previousInstance.id, 0, i, currentNode.markup, outputFile);
-                     this.edges++;
-                  }
+                  writeEdge(currentNode.id, id, 0, i, currentNode.markup, rgfile);
+                  this.edges++;
                }
             }
          }
+         // Not needed once the node has been expanded
+         currentNode.concession = null;
       }
+      System.out.println(exploredStates.getStatistics());
    }
    
 
 
    /**
-    * Function: void RecursiveExpansion()
-    * Undertakes a recursive expansion of the tree
-    * Called on root node from within the tree constructor.
+    * Function: void createCoverabilityTree()
+    * Undertakes a breadth first expansion of the coverability tree, writing
+    * it to a file as it goes.
     */
-   public void createCoverabilityTree(RandomAccessFile outputFile,
-           RandomAccessFile esoFile) throws TreeTooBigException,
+   public void createCoverabilityTree(RGFileWriter rgfile) 
+           throws TreeTooBigException,
            ImmediateAbortException {
       int[] newMarkup;                      //markup used to create new node
       //Attribute used for assessing whether a node has occured before
       boolean repeatedNode = false;
       
-      boolean[] enabledTransitions =
-              dataLayer.getTransitionEnabledStatusArray(root.markup);
+      BitSet enabledTransitions = new BitSet(transitionCount);
       
       //emmagatzemar estat nou
       try {
-         writeNode(root.id, root.markup, esoFile, true);
+         writeNode(root.id, root.markup, rgfile, true);
          states++;
       } catch (IOException e) {
          System.err.println("IO problem while writing explored states to file.");
       }
       
-      ArrayList <myNode> unprocessednodes = new ArrayList();
+      Queue unprocessednodes = new Queue();
       
-      unprocessednodes.add(root);
+      unprocessednodes.enqueue(root);
       myNode currentNode = root;
       while (!unprocessednodes.isEmpty()) {
          
          
-         currentNode = unprocessednodes.get(0);
-         unprocessednodes.remove(0);
+         currentNode = (myNode)unprocessednodes.dequeue();
          
-         enabledTransitions =
-                 dataLayer.getTransitionEnabledStatusArray(currentNode.markup);
+         net.enabledSet(currentNode.markup, enabledTransitions);
          //For each transition
-         for (int i = 0; i < enabledTransitions.length; i++) {
-            if (enabledTransitions[i] == true) {
+         for (int i = 0; i < transitionCount; i++) {
+            if (enabledTransitions.get(i)) {
                //Set transArray of to true for this index
                currentNode.transArray[i] = true;
                
@@ -299,14 +338,17 @@ public class myTree {
                //currentNode.print("\n currentNode.markup is :", currentNode.markup);//debug
                
                //Fire transition to produce new markup vector
-               newMarkup = fire(i, currentNode.markup);
+               newMarkup = new int[placeCount];
+               long newHash = net.fire(currentNode.markup, newMarkup, i, 
+                       markingHash, currentNode.hash);
                
                //print("\n newMarkup: ", newMarkup);//debug
                
                //Create a new node using the new markup vector and attach it to
                //the current node as a child.
                currentNode.children[i] =
-                       new myNode(newMarkup, currentNode, this, currentNode.depth + 1);
+                       new myNode(newMarkup, currentNode, this, currentNode.depth + 1,
+                                  newHash);
                
                 currentNode.children[i].InsertOmegas();
                
@@ -314,7 +356,7 @@ public class myTree {
                //System.out.println("afegit fill a la posicio " + i +
                //        "; profunditat" + (currentNode.depth +1));
                
-               repeatedNode = (this.root).FindMarkup(currentNode.children[i]);
+               repeatedNode = findMarkup(currentNode.children[i]);
                
                if (this.nodeCount >= Pipe.MAX_NODES && !this.tooBig) {
                   this.tooBig = true;
@@ -323,26 +365,26 @@ public class myTree {
                
                //if ((!repeatedNode) /*&& (!allOmegas)*/) {
                   try {
-                     writeNode(currentNode.children[i].id, currentNode.children[i].markup, esoFile, true);
+                     writeNode(currentNode.children[i].id, currentNode.children[i].markup, rgfile, true);
                      this.states++;
                   } catch (IOException e) {
                      System.err.println("IO problem while writing explored states to file.");
                   }
                if ((!repeatedNode) /*&& (!allOmegas)*/) {
-                  unprocessednodes.add(currentNode.children[i]);
+                  unprocessednodes.enqueue(currentNode.children[i]);
                }
                   this.edges++;
                   //
 //                  if (currentNode.children[i].previousInstance != null) {
-//                     writeEdge(currentNode.id, currentNode.children[i].previousInstance.id, 0, i, currentNode.markup, outputFile);
+//                     writeEdge(currentNode.id, currentNode.children[i].previousInstance.id, 0, i, currentNode.markup, rgfile);
 //                  } else {
-                     writeEdge(currentNode.id, currentNode.children[i].id, 0, i, currentNode.markup, outputFile);
+                     writeEdge(currentNode.id, currentNode.children[i].id, 0, i, currentNode.markup, rgfile);
                   //}
                //} else {
                   //emmagatzemar nova transicio
                   // es null si hi ha omega?
                   //if (currentNode.children[i].previousInstance != null) {
-                  //   writeEdge(currentNode.id, currentNode.children[i].previousInstance.id, 0, i, currentNode.markup, outputFile);
+                  //   writeEdge(currentNode.id, currentNode.children[i].previousInstance.id, 0, i, currentNode.markup, rgfile);
                   //   this.edges++;
                   //}
                //}
@@ -352,52 +394,47 @@ public class myTree {
    }
       
    
-   private int[] fire(int transIndex, int[] markup) {
-      int CMinusValue;               //Value from C- matrix
-      int CPlusValue;                //Value from C+ matrix
-      
-      //Create marking array to return
-      int[] marking = new int[this.placeCount];
+   /**
+    * childConcession()
+    * Works out which transitions have concession in a new node from those
+    * that have concession in its parent, testing only the transitions that 
+    * depend on the transition fired or on a place that has just been given an
+    * omega.
+    * @param parent     The node fired from, whose concession set is known
+    * @param child      The node reached, after any omegas have been inserted
+    * @param fired      The transition fired
+    */
+   BitSet childConcession(myNode parent, myNode child, int fired) {
+      BitSet concession = (BitSet)parent.concession.clone();
       
-      //System.out.println("\nFire transition " + transIndex);
-      for (int count = 0; count < this.placeCount; count++) {
-         CMinusValue = (this.CMinus).get(count, (transIndex));
-         CPlusValue = (this.CPlus).get(count, (transIndex));
-         
-         if (markup[count] != -1) {
-            marking[count] = markup[count] - CMinusValue + CPlusValue;
-         } else {
-            marking[count] = markup[count];
+      net.updateConcession(child.markup, fired, concession);
+      for (int p = 0; p < placeCount; p++) {
+         if (child.markup[p] == -1 && parent.markup[p] != -1) {
+            net.updateConcessionForPlace(child.markup, p, concession);
          }
       }
-      
-      //print( "Markup: ", marking); //debug
-      
-      //Return this new marking to RecursiveExpansion function
-      return marking;
-   }   
-      
+      return concession;
+   }
+   
    
   
    /**
     * writeEdge()
-    * Records all the arcs in the reachability graph from state 'from'.
-    * @param from       The tangible state which all the arcs in the linked 
-    *                   list are from.
-    * @param arclist    The list of arcs.
-    * @param dataFile   The file that reachability graph data needs to be 
-    *                   written to.
-    * @param writeTransitionsNo
+    * Records an arc in the coverability graph.
+    * @param from       The state the arc is from
+    * @param to         The state the arc goes to
+    * @param rate
+    * @param transitionNo  The transition fired
+    * @param markup
+    * @param rgfile     The coverability graph file
     * @throws ImmediateAbortException
     */
    private void writeEdge(int from, int to, double rate, 
-           int transitionNo, int[] markup, RandomAccessFile dataFile) 
+           int transitionNo, int[] markup, RGFileWriter rgfile) 
            throws ImmediateAbortException {
-      TransitionRecord newTransition =
-              new TransitionRecord(from, to, rate, transitionNo);
 //      System.out.println("writeEdge: from S" + from + " to S" + to + "; t =" + transitionNo); //debug
       try{
-         newTransition.write1(dataFile);
+         rgfile.writeTransition(from, to, rate, transitionNo);
       } catch (IOException e){
          System.err.println("IO error when writing transitions to file.");
          throw new ImmediateAbortException();
@@ -405,26 +442,20 @@ public class myTree {
    }
    
    
-   /** addExplored()
-    * Adds a compressed version of a tangible state to the explored states 
-    * hashtable and also writes the full state to a file for later use.
-    * @param newstate   The explored state to be added
-    * @param es         A reference to the hashtable
-    * @param opfile     The file to write the state to
+   /** writeNode()
+    * Writes a new state to the coverability graph file. States are written 
+    * in the order of their id numbers.
+    * @param stateId    The id number of the state
+    * @param marking    The marking of the state
+    * @param rgfile     The file to write the state to
     */
-   private void writeNode(int stateId, int[] marking, RandomAccessFile opfile, 
+   private void writeNode(int stateId, int[] marking, RGFileWriter rgfile, 
            boolean vanishingStates) 
            throws IOException{
 
 //      System.out.print("writeNode: S" + stateId + " {" ); // debug
       try {
-         opfile.writeInt(stateId);
-         for (int i = 0; i < marking.length; i++) {
-            opfile.writeInt(marking[i]);
-//            System.out.print("" + marking[i]); // debug
-         }
-//         System.out.println("}"); // debug
-         opfile.writeBoolean(vanishingStates);
+         rgfile.writeState(marking, vanishingStates);
       } catch (IOException e) {
          System.err.println("IO problem while writing explored states to file.");
       }
@@ -455,48 +486,21 @@ public class myTree {
    }   
    
    
-   private static void createCGFile(File transource,
-           RandomAccessFile destination, int statesize, int states,
-           int transitions) {
-      RandomAccessFile transinputFile;
-      TransitionRecord currenttran = new TransitionRecord();
-      RGFileHeader header;
-      
+   /**
+    * createCGFile()
+    * Finishes the coverability graph file once all the states and the arcs 
+    * between them have been written to it.
+    * @param rgfile     The coverability graph file
+    */
+   private static void createCGFile(RGFileWriter rgfile) {
       try {
-         transinputFile = new RandomAccessFile(transource, "r");
-         
-         // The destination file actually already exists with a blank file
-         // header as a placeholder and all the tangible states written in
-         // order. The file pointer should already be at the end of the file
-         // (i.e. after the last tangible state that's been written to the file.
-         // Make a note of the file pointer as this is where the transition
-         // records begin.
-         long offset = destination.getFilePointer();
-         // Now copy over all the transitions
          System.out.println("Creating coverability graph, please wait...");
-         for (int count = 0; count < transitions; count++) {
-            //System.out.print("Recording arc " + (count+1) + " of " + transitions +".\r");
-            currenttran.read1(transinputFile);
-            currenttran.write1(destination);
-         }
+         rgfile.close();
          System.out.println("");
-         // Make a note of the transition record size and fill in all the
-         // details in the file header.
-         int recordsize = currenttran.getRecordSize();
-         destination.seek(0); // Go back to the start of the file
-         header = new RGFileHeader(states, statesize, transitions,
-                 recordsize, offset);
-         header.write(destination);
-         
-         // Done so close all the files.
-         transinputFile.close();
-         destination.close();
-      } catch (EOFException e) {
-         System.err.println("EOFException");
       } catch (IOException e) {
          System.err.println("Could not create output file.\n " + e.getMessage());
-         return;
       }
    }
    
+
 }
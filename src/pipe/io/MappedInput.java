@@ -0,0 +1,112 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Reads a file through a memory mapped window, used by RGFileReader and
+ * RGFileWriter. Only part of a big file is mapped at a time, and the window is
+ * moved on whenever a value would run off the end of it, so files of any size
+ * can be read.
+ */
+class MappedInput {
+
+   // The most bytes mapped at a time
+   private static final long WINDOWSIZE = 1 << 26;
+
+   private final FileChannel channel;
+   private final long size;
+
+   private MappedByteBuffer window = null;
+   private long windowstart = 0;
+
+
+   /**
+    * MappedInput()
+    * @param channel    The channel of the file to read
+    * @param size       The length of the part of the file that may be read
+    */
+   MappedInput(FileChannel channel, long size) {
+      this.channel = channel;
+      this.size = size;
+   }
+
+
+   /**
+    * seek()
+    * Moves to a position in the file, from where the next value is read.
+    * Nothing is mapped until then.
+    * @param position   The offset from the start of the file
+    */
+   void seek(long position) {
+      if ((window != null) && (position >= windowstart) &&
+              (position <= windowstart + window.limit())) {
+         window.position((int)(position - windowstart));
+      } else {
+         window = null;
+         windowstart = position;
+      }
+   }
+
+
+   long position() {
+      return (window == null) ? windowstart : windowstart + window.position();
+   }
+
+
+   byte get() throws IOException {
+      ensure(1);
+      return window.get();
+   }
+
+
+   int getInt() throws IOException {
+      ensure(4);
+      return window.getInt();
+   }
+
+
+   long getLong() throws IOException {
+      ensure(8);
+      return window.getLong();
+   }
+
+
+   double getDouble() throws IOException {
+      ensure(8);
+      return window.getDouble();
+   }
+
+
+   /**
+    * ensure()
+    * Moves the window on, if need be, so that it holds the next bytes
+    * @param bytes      The number of bytes about to be read
+    * @throws EOFException if the file is not long enough
+    */
+   private void ensure(int bytes) throws IOException {
+      if ((window == null) || (window.remaining() < bytes)) {
+         map(position());
+         if (window.remaining() < bytes) {
+            throw new EOFException();
+         }
+      }
+   }
+
+
+   private void map(long position) throws IOException {
+      if (position > size) {
+         throw new EOFException();
+      }
+      windowstart = position;
+      window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+              Math.min(WINDOWSIZE, size - position));
+   }
+
+}
@@ -0,0 +1,366 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Reads a reachability graph file, either one written by RGFileWriter in
+ * version 2 of the format or one in the original format of an RGFileHeader
+ * followed by StateRecords and TransitionRecords. The file is read through
+ * memory mapped windows rather than an int at a time.
+ *
+ * The states and the arcs are each read in order, separately from one
+ * another. The arcs of a version 2 file come in order of the state they are
+ * from, and those of an original file in the order they were written.
+ * Whether the states say if they are tangible and whether the arcs say which
+ * transition was fired is worked out from the file, so the same reader does
+ * for the files written by every generator.
+ */
+public class RGFileReader {
+
+   // The size of the header of the original format
+   private static final int V1HEADERSIZE = 5 * 4 + 8;
+
+   private final RandomAccessFile input;
+   private final int version;
+   private final int numstates;
+   private final int statesize;
+   private final int numtransitions;
+   private final boolean tangibleflags;
+   private final boolean transitionnumbers;
+   private final boolean enabledsets;
+
+   private final MappedInput states;
+   private final MappedInput transitions;
+
+   // The original format
+   private int staterecordsize;
+
+   // Version 2 of the format
+   private int indexinterval;
+   private long offsettoindex;
+   private MappedInput rowstarts;
+   private int rowend = 0;
+   private int[] previous;
+   // The exit rate and enabled transitions of the state read last
+   private double exitrate;
+   private int[] enabled = new int[16];
+   private int numenabled = 0;
+
+   private int nextstate = 0;
+   private int nexttransition = 0;
+   private int transitionfrom = -1;
+
+
+   /**
+    * RGFileReader()
+    * Opens a reachability graph file and reads its header.
+    * @param rgfile     The file to read
+    * @throws IncorrectFileFormatException if the file is not a reachability
+    *                   graph file
+    * @throws IOException
+    */
+   public RGFileReader(File rgfile) throws IOException {
+      input = new RandomAccessFile(rgfile, "r");
+      try {
+         FileChannel channel = input.getChannel();
+         long length = channel.size();
+         int signature = (length < 4) ? 0 : input.readInt();
+         if (signature == RGFileWriter.SIGNATURE) {
+            version = 2;
+            int flags = input.readInt();
+            numstates = input.readInt();
+            statesize = input.readInt();
+            numtransitions = input.readInt();
+            indexinterval = input.readInt();
+            offsettoindex = input.readLong();
+            long offsettoadjacency = input.readLong();
+            tangibleflags = (flags & RGFileWriter.TANGIBLEFLAGS) != 0;
+            transitionnumbers = (flags & RGFileWriter.TRANSITIONNUMBERS) != 0;
+            enabledsets = (flags & RGFileWriter.ENABLEDSETS) != 0;
+            states = new MappedInput(channel, offsettoindex);
+            states.seek(RGFileWriter.HEADERSIZE);
+            // The first arc from each state after the first, which always
+            // starts at arc 0
+            rowstarts = new MappedInput(channel, length);
+            rowstarts.seek(offsettoadjacency + 4);
+            transitions = new MappedInput(channel, length);
+            transitions.seek(offsettoadjacency + 4L * (numstates + 1));
+            previous = new int[statesize];
+         } else {
+            version = 1;
+            input.seek(0);
+            RGFileHeader header = new RGFileHeader(input);
+            numstates = header.getNumStates();
+            statesize = header.getStateArraySize();
+            numtransitions = header.getNumTransitions();
+            long offset = header.getOffsetToTransitions();
+            // Whether the states and arcs have the extra fields written by
+            // StateRecord.write(opfile, Tangible) and TransitionRecord.write1()
+            // is given away by how much room they take up
+            staterecordsize = 4 * (1 + statesize);
+            tangibleflags = (numstates > 0) &&
+                    ((offset - V1HEADERSIZE) / numstates > staterecordsize);
+            if (tangibleflags) {
+               staterecordsize++;
+            }
+            transitionnumbers = (numtransitions > 0) &&
+                    ((length - offset) / numtransitions >= 4 + 4 + 8 + 4);
+            enabledsets = false;
+            states = new MappedInput(channel, length);
+            states.seek(V1HEADERSIZE);
+            transitions = new MappedInput(channel, length);
+            transitions.seek(offset);
+         }
+      } catch (IOException e) {
+         input.close();
+         throw e;
+      }
+   }
+
+
+   /**
+    * getVersion()
+    * @return   1 for the original format, or 2
+    */
+   public int getVersion() {
+      return version;
+   }
+
+
+   public int getNumStates() {
+      return numstates;
+   }
+
+
+   public int getStateArraySize() {
+      return statesize;
+   }
+
+
+   public int getNumTransitions() {
+      return numtransitions;
+   }
+
+
+   public boolean hasTangibleFlags() {
+      return tangibleflags;
+   }
+
+
+   public boolean hasTransitionNumbers() {
+      return transitionnumbers;
+   }
+
+
+   /**
+    * hasEnabledSets()
+    * @return   Whether the states say which transitions are enabled in them
+    *           and their exit rates
+    */
+   public boolean hasEnabledSets() {
+      return enabledsets;
+   }
+
+
+   /**
+    * seekState()
+    * Moves to a state, so that it is the next one read by readState().
+    * @param state      The position of the state in the file, which is also
+    *                   its id number in files written by the generators
+    * @throws IOException
+    */
+   public void seekState(int state) throws IOException {
+      if ((state < 0) || (state > numstates)) {
+         throw new IndexOutOfBoundsException("No state " + state + ".");
+      }
+      if (version == 1) {
+         states.seek(V1HEADERSIZE + (long)state * staterecordsize);
+         nextstate = state;
+      } else if (state == numstates) {
+         states.seek(offsettoindex);
+         nextstate = state;
+      } else if ((state < nextstate) || (state / indexinterval !=
+              nextstate / indexinterval)) {
+         // Start from the nearest full marking before it
+         int entry = state / indexinterval;
+         MappedInput index = new MappedInput(input.getChannel(),
+                 offsettoindex + 8L * (entry + 1));
+         index.seek(offsettoindex + 8L * entry);
+         states.seek(index.getLong());
+         nextstate = entry * indexinterval;
+      }
+      while (nextstate < state) {
+         readMarking();
+      }
+   }
+
+
+   /**
+    * readState()
+    * Reads the next state.
+    * @param record     Filled in with the state
+    * @throws IOException
+    */
+   public void readState(StateRecord record) throws IOException {
+      if (nextstate >= numstates) {
+         throw new IndexOutOfBoundsException("There are no more states.");
+      }
+      if (version == 1) {
+         int id = states.getInt();
+         int[] marking = new int[statesize];
+         for (int p = 0; p < statesize; p++) {
+            marking[p] = states.getInt();
+         }
+         boolean tangible = !tangibleflags || (states.get() != 0);
+         record.set(id, marking, tangible);
+         nextstate++;
+      } else {
+         int id = nextstate;
+         boolean tangible = readMarking();
+         int[] marking = new int[statesize];
+         System.arraycopy(previous, 0, marking, 0, statesize);
+         record.set(id, marking, tangible);
+      }
+   }
+
+
+   /**
+    * readState()
+    * Reads the next state into an array, rather than a new StateRecord and
+    * marking, for going through every state of a large graph.
+    * @param marking    Filled in with the marking of the state
+    * @return           Whether the state is tangible
+    * @throws IOException
+    */
+   public boolean readState(int[] marking) throws IOException {
+      if (nextstate >= numstates) {
+         throw new IndexOutOfBoundsException("There are no more states.");
+      }
+      if (version == 1) {
+         states.getInt();
+         for (int p = 0; p < statesize; p++) {
+            marking[p] = states.getInt();
+         }
+         nextstate++;
+         return !tangibleflags || (states.get() != 0);
+      }
+      boolean tangible = readMarking();
+      System.arraycopy(previous, 0, marking, 0, statesize);
+      return tangible;
+   }
+
+
+   /**
+    * getExitRate()
+    * @return   The total rate out of the state read last, if the file has
+    *           enabled sets
+    */
+   public double getExitRate() {
+      return exitrate;
+   }
+
+
+   /**
+    * getNumEnabled()
+    * @return   The number of transitions enabled in the state read last, if
+    *           the file has enabled sets
+    */
+   public int getNumEnabled() {
+      return numenabled;
+   }
+
+
+   /**
+    * getEnabled()
+    * @param i  Which of the transitions enabled in the state read last
+    * @return   Its number
+    */
+   public int getEnabled(int i) {
+      return enabled[i];
+   }
+
+
+   /**
+    * readTransition()
+    * Reads the next arc.
+    * @param record     Filled in with the arc
+    * @throws IOException
+    */
+   public void readTransition(TransitionRecord record) throws IOException {
+      if (nexttransition >= numtransitions) {
+         throw new IndexOutOfBoundsException("There are no more arcs.");
+      }
+      int from;
+      if (version == 1) {
+         from = transitions.getInt();
+      } else {
+         while (nexttransition == rowend) {
+            transitionfrom++;
+            rowend = rowstarts.getInt();
+         }
+         from = transitionfrom;
+      }
+      int to = transitions.getInt();
+      double rate = transitions.getDouble();
+      int transitionNo = transitionnumbers ? transitions.getInt() : 0;
+      record.set(from, to, rate, transitionNo);
+      nexttransition++;
+   }
+
+
+   public void close() throws IOException {
+      input.close();
+   }
+
+
+   /**
+    * readMarking()
+    * Decodes the next marking of a version 2 file into previous.
+    * @return   Whether the state is tangible
+    */
+   private boolean readMarking() throws IOException {
+      if (nextstate % indexinterval == 0) {
+         for (int p = 0; p < statesize; p++) {
+            previous[p] = 0;
+         }
+      }
+      boolean tangible = !tangibleflags || (states.get() != 0);
+      for (int p = 0; p < statesize; p++) {
+         int zigzag = readVarint();
+         previous[p] += (zigzag >>> 1) ^ -(zigzag & 1);
+      }
+      if (enabledsets) {
+         exitrate = states.getDouble();
+         numenabled = readVarint();
+         if (numenabled > enabled.length) {
+            enabled = new int[Math.max(numenabled, enabled.length << 1)];
+         }
+         for (int i = 0; i < numenabled; i++) {
+            enabled[i] = readVarint();
+         }
+      }
+      nextstate++;
+      return tangible;
+   }
+
+
+   private int readVarint() throws IOException {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+         b = states.get();
+         value |= (b & 0x7F) << shift;
+         shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+   }
+
+}
@@ -0,0 +1,479 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Writes a reachability graph file in version 2 of the format, which
+ * RGFileReader reads along with the original format written with
+ * RGFileHeader, StateRecord and TransitionRecord.
+ *
+ * A version 2 file is made up of
+ *  - a header: the signature SIGNATURE, the flags, the number of states, the
+ *    number of places in each marking, the number of arcs and INDEXINTERVAL
+ *    as ints, then the offsets of the index and of the adjacency block as
+ *    longs;
+ *  - the states in id order, each a byte giving whether it is tangible if
+ *    TANGIBLEFLAGS is set, then its marking, each place as a variable length
+ *    zig-zag encoded int giving the difference from the same place in the
+ *    marking before. Every INDEXINTERVAL-th marking is given in full instead,
+ *    as the difference from zero, so that decoding can start there. If
+ *    ENABLEDSETS is set, the marking is followed by the total rate out of
+ *    the state as a double and the transitions enabled in it, as a variable
+ *    length count and then each transition number as a variable length int;
+ *  - the index, the offset of every INDEXINTERVAL-th state as a long;
+ *  - the adjacency block, in compressed sparse row form: for each state the
+ *    number of arcs out of the states before it as an int, followed by the
+ *    total number of arcs, then the arcs in order of the state they are from,
+ *    each the id number of the state it goes to as an int and its rate as a
+ *    double, followed by the transition fired as an int if
+ *    TRANSITIONNUMBERS is set.
+ *
+ * Everything is written through buffers onto file channels rather than an int
+ * at a time. The arcs may be given in any order. They are kept in a
+ * temporary file until all the states are known, and then copied into place
+ * in a single pass.
+ */
+public class RGFileWriter {
+
+   public static final int SIGNATURE = 0x52475632; // ASCII code for "RGV2"
+   public static final int HEADERSIZE = 6 * 4 + 2 * 8;
+
+   // Header flags
+   public static final int TANGIBLEFLAGS = 1;
+   public static final int TRANSITIONNUMBERS = 2;
+   public static final int ENABLEDSETS = 4;
+
+   // How often a full marking is written and indexed
+   public static final int INDEXINTERVAL = 64;
+
+   private static final int BUFFERSIZE = 1 << 16;
+
+   // The most bytes of the arcs in the file mapped at a time when they have
+   // to be put in order
+   private static final int WINDOWSIZE = 1 << 26;
+
+   private final File file;
+   private final int statesize;
+   private final int flags;
+   private final int arcsize;
+
+   private RandomAccessFile output;
+   private FileChannel channel;
+   // Grown in writeState() if a single state does not fit in it
+   private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERSIZE);
+
+   private int numstates = 0;
+   private final int[] previous;
+   private long[] index = new long[16];
+
+   // The arcs, each preceded by the state it is from, until close()
+   private File arcsfile;
+   private RandomAccessFile arcsoutput;
+   private FileChannel arcschannel;
+   private final ByteBuffer arcsbuffer = ByteBuffer.allocateDirect(BUFFERSIZE);
+   private int numtransitions = 0;
+   private int[] outdegree = new int[16];
+   private int lastfrom = 0;
+   private boolean sorted = true;
+
+
+   /**
+    * RGFileWriter()
+    * Starts a new reachability graph file, replacing whatever was there.
+    * @param file                The file to write
+    * @param statearraysize      The number of places in each marking
+    * @param tangibleFlags       Whether to record which states are tangible
+    * @param transitionNumbers   Whether to record the transition of each arc
+    * @throws IOException
+    */
+   public RGFileWriter(File file, int statearraysize, boolean tangibleFlags,
+           boolean transitionNumbers) throws IOException {
+      this(file, statearraysize, tangibleFlags, transitionNumbers, false);
+   }
+
+
+   /**
+    * RGFileWriter()
+    * As above, optionally recording the exit rate and enabled transitions of
+    * each state, so that measures that depend on them can be worked out 
+    * without testing which transitions are enabled again.
+    * @param enabledSets         Whether to record the exit rate and enabled
+    *                            transitions of each state
+    * @throws IOException
+    */
+   public RGFileWriter(File file, int statearraysize, boolean tangibleFlags,
+           boolean transitionNumbers, boolean enabledSets)
+           throws IOException {
+      this.file = file;
+      statesize = statearraysize;
+      flags = (tangibleFlags ? TANGIBLEFLAGS : 0) |
+              (transitionNumbers ? TRANSITIONNUMBERS : 0) |
+              (enabledSets ? ENABLEDSETS : 0);
+      arcsize = transitionNumbers ? 4 + 8 + 4 : 4 + 8;
+      previous = new int[statearraysize];
+
+      arcsfile = File.createTempFile("rgarcs", ".tmp");
+      arcsfile.deleteOnExit();
+      try {
+         arcsoutput = new RandomAccessFile(arcsfile, "rw");
+         arcschannel = arcsoutput.getChannel();
+         output = new RandomAccessFile(file, "rw");
+         output.setLength(0);
+         channel = output.getChannel();
+         // The header of an empty graph until close() fills it in, so that a
+         // file that is never finished still reads as one
+         writeHeader(HEADERSIZE, HEADERSIZE);
+         channel.position(HEADERSIZE);
+      } catch (IOException e) {
+         abort();
+         throw e;
+      }
+   }
+
+
+   /**
+    * writeState()
+    * Adds a tangible state. States must be added in id order.
+    * @param marking    The marking of the state
+    * @throws IOException
+    */
+   public void writeState(int[] marking) throws IOException {
+      writeState(marking, true);
+   }
+
+
+   /**
+    * writeState()
+    * Adds a state. States must be added in id order.
+    * @param marking    The marking of the state
+    * @param tangible   Whether the state is tangible, which is only recorded
+    *                   if the file was started with tangibleFlags
+    * @throws IOException
+    */
+   public void writeState(int[] marking, boolean tangible) throws IOException {
+      writeState(marking, tangible, null, 0, 0.0);
+   }
+
+
+   /**
+    * writeState()
+    * Adds a state together with the transitions enabled in it. States must
+    * be added in id order.
+    * @param marking    The marking of the state
+    * @param tangible   Whether the state is tangible, which is only recorded
+    *                   if the file was started with tangibleFlags
+    * @param enabled    The transitions enabled in the state, which with the
+    *                   exit rate are only recorded if the file was started
+    *                   with enabledSets
+    * @param numenabled The number of transitions enabled
+    * @param exitrate   The total rate out of the state
+    * @throws IOException
+    */
+   public void writeState(int[] marking, boolean tangible, int[] enabled,
+           int numenabled, double exitrate) throws IOException {
+      // The most bytes the state can take up, with each varint at most 5
+      int recordsize = 1 + 5 * statesize + 8 + 5 * (1 + numenabled);
+      if (buffer.remaining() < recordsize) {
+         flush();
+         if (buffer.capacity() < recordsize) {
+            buffer = ByteBuffer.allocateDirect(recordsize);
+         }
+      }
+      if (numstates % INDEXINTERVAL == 0) {
+         int entry = numstates / INDEXINTERVAL;
+         if (entry == index.length) {
+            long[] newindex = new long[entry << 1];
+            System.arraycopy(index, 0, newindex, 0, entry);
+            index = newindex;
+         }
+         index[entry] = channel.position() + buffer.position();
+         for (int p = 0; p < statesize; p++) {
+            previous[p] = 0;
+         }
+      }
+      if ((flags & TANGIBLEFLAGS) != 0) {
+         buffer.put((byte)(tangible ? 1 : 0));
+      }
+      for (int p = 0; p < statesize; p++) {
+         int difference = marking[p] - previous[p];
+         putVarint((difference << 1) ^ (difference >> 31));
+         previous[p] = marking[p];
+      }
+      if ((flags & ENABLEDSETS) != 0) {
+         buffer.putDouble(exitrate);
+         putVarint(numenabled);
+         for (int i = 0; i < numenabled; i++) {
+            putVarint(enabled[i]);
+         }
+      }
+      numstates++;
+   }
+
+
+   /**
+    * writeTransition()
+    * Adds an arc. Arcs may be added in any order, although it is quickest if
+    * those from each state are added after those from the states before it.
+    * @param from          The id number of the state the arc is from
+    * @param to            The id number of the state the arc goes to
+    * @param rate          The rate of the arc
+    * @param transitionNo  The transition fired, which is only recorded if the
+    *                      file was started with transitionNumbers
+    * @throws IOException
+    */
+   public void writeTransition(int from, int to, double rate, int transitionNo)
+           throws IOException {
+      if (arcsbuffer.remaining() < 4 + arcsize) {
+         arcsbuffer.flip();
+         while (arcsbuffer.hasRemaining()) {
+            arcschannel.write(arcsbuffer);
+         }
+         arcsbuffer.clear();
+      }
+      arcsbuffer.putInt(from);
+      arcsbuffer.putInt(to);
+      arcsbuffer.putDouble(rate);
+      if ((flags & TRANSITIONNUMBERS) != 0) {
+         arcsbuffer.putInt(transitionNo);
+      }
+
+      if (from >= outdegree.length) {
+         int[] newoutdegree = 
+                 new int[Math.max(from + 1, outdegree.length << 1)];
+         System.arraycopy(outdegree, 0, newoutdegree, 0, outdegree.length);
+         outdegree = newoutdegree;
+      }
+      outdegree[from]++;
+      if (from < lastfrom) {
+         sorted = false;
+      }
+      lastfrom = from;
+      numtransitions++;
+   }
+
+
+   /**
+    * writeTransitions()
+    * Adds all the arcs out of a state at once.
+    * @param from          The id number of the state the arcs are from
+    * @param to            The id numbers of the states the arcs go to
+    * @param rates         The rates of the arcs
+    * @param transitionNos The transitions fired
+    * @param count         The number of arcs
+    * @throws IOException
+    */
+   public void writeTransitions(int from, int[] to, double[] rates,
+           int[] transitionNos, int count) throws IOException {
+      for (int i = 0; i < count; i++) {
+         writeTransition(from, to[i], rates[i], transitionNos[i]);
+      }
+   }
+
+
+   public int getNumStates() {
+      return numstates;
+   }
+
+
+   public int getNumTransitions() {
+      return numtransitions;
+   }
+
+
+   /**
+    * close()
+    * Writes the index and the arcs after the states, fills in the header
+    * and closes the file.
+    * @throws IOException
+    */
+   public void close() throws IOException {
+      try {
+         // The index
+         long offsettoindex = channel.position() + buffer.position();
+         for (int i = 0; i * INDEXINTERVAL < numstates; i++) {
+            if (buffer.remaining() < 8) {
+               flush();
+            }
+            buffer.putLong(index[i]);
+         }
+
+         // The number of arcs out of the states before each state
+         long offsettoadjacency = channel.position() + buffer.position();
+         if (outdegree.length > numstates + 1) {
+            for (int i = numstates; i < outdegree.length; i++) {
+               if (outdegree[i] != 0) {
+                  throw new IOException("An arc is from a state that was " +
+                          "never written.");
+               }
+            }
+         } else {
+            int[] newoutdegree = new int[numstates + 1];
+            System.arraycopy(outdegree, 0, newoutdegree, 0, outdegree.length);
+            outdegree = newoutdegree;
+         }
+         // Turns outdegree into the position of the first arc from each state
+         int start = 0;
+         for (int i = 0; i <= numstates; i++) {
+            if (buffer.remaining() < 4) {
+               flush();
+            }
+            buffer.putInt(start);
+            int degree = outdegree[i];
+            outdegree[i] = start;
+            start += degree;
+         }
+
+         arcsbuffer.flip();
+         while (arcsbuffer.hasRemaining()) {
+            arcschannel.write(arcsbuffer);
+         }
+         arcsbuffer.clear();
+         MappedInput arcs = new MappedInput(arcschannel, arcschannel.size());
+         if (sorted) {
+            copyArcs(arcs);
+         } else {
+            flush();
+            scatterArcs(arcs, channel.position());
+         }
+
+         writeHeader(offsettoindex, offsettoadjacency);
+      } finally {
+         abort();
+      }
+   }
+
+
+   /**
+    * abort()
+    * Closes the file without finishing it and deletes the temporary file of
+    * arcs. Does nothing if the file has already been closed.
+    */
+   public void abort() {
+      try {
+         if (output != null) {
+            output.close();
+         }
+      } catch (IOException e) {
+         System.err.println("Could not close " + file + ".");
+      }
+      output = null;
+      try {
+         if (arcsoutput != null) {
+            arcsoutput.close();
+         }
+      } catch (IOException e) {
+         System.err.println("Could not close temporary file.");
+      }
+      arcsoutput = null;
+      if ((arcsfile != null) && arcsfile.exists() && !arcsfile.delete()) {
+         // A mapped file cannot always be deleted straight away on Windows
+         arcsfile.deleteOnExit();
+      }
+      arcsfile = null;
+   }
+
+
+   private void writeHeader(long offsettoindex, long offsettoadjacency)
+           throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(HEADERSIZE);
+      header.putInt(SIGNATURE);
+      header.putInt(flags);
+      header.putInt(numstates);
+      header.putInt(statesize);
+      header.putInt(numtransitions);
+      header.putInt(INDEXINTERVAL);
+      header.putLong(offsettoindex);
+      header.putLong(offsettoadjacency);
+      header.flip();
+      while (header.hasRemaining()) {
+         channel.write(header, header.position());
+      }
+   }
+
+
+   private void putVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+         buffer.put((byte)((value & 0x7F) | 0x80));
+         value >>>= 7;
+      }
+      buffer.put((byte)value);
+   }
+
+
+   private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+         channel.write(buffer);
+      }
+      buffer.clear();
+   }
+
+
+   /**
+    * copyArcs()
+    * Copies the arcs, which are already in order of the state they are from,
+    * to the end of the file, leaving out the state they are from.
+    */
+   private void copyArcs(MappedInput arcs) throws IOException {
+      for (int i = 0; i < numtransitions; i++) {
+         if (buffer.remaining() < arcsize) {
+            flush();
+         }
+         arcs.getInt();
+         buffer.putInt(arcs.getInt());
+         buffer.putDouble(arcs.getDouble());
+         if ((flags & TRANSITIONNUMBERS) != 0) {
+            buffer.putInt(arcs.getInt());
+         }
+      }
+      flush();
+   }
+
+
+   /**
+    * scatterArcs()
+    * Puts each arc straight into its place in the file, for arcs that were
+    * not added in order of the state they are from.
+    * @param arcs   The arcs
+    * @param start  The offset of the first arc in the file
+    */
+   private void scatterArcs(MappedInput arcs, long start) throws IOException {
+      long length = (long)numtransitions * arcsize;
+      int windowarcs = WINDOWSIZE / arcsize;
+      MappedByteBuffer[] windows =
+              new MappedByteBuffer[(int)(numtransitions / windowarcs) + 1];
+      output.setLength(start + length);
+      for (int i = 0; i < numtransitions; i++) {
+         int from = arcs.getInt();
+         int position = outdegree[from]++;
+         int w = position / windowarcs;
+         if (windows[w] == null) {
+            windows[w] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    start + (long)w * windowarcs * arcsize,
+                    Math.min((long)windowarcs * arcsize,
+                             length - (long)w * windowarcs * arcsize));
+         }
+         int offset = (position % windowarcs) * arcsize;
+         windows[w].putInt(offset, arcs.getInt());
+         windows[w].putDouble(offset + 4, arcs.getDouble());
+         if ((flags & TRANSITIONNUMBERS) != 0) {
+            windows[w].putInt(offset + 12, arcs.getInt());
+         }
+      }
+      for (int w = 0; w < windows.length; w++) {
+         if (windows[w] != null) {
+            windows[w].force();
+         }
+      }
+   }
+
+}
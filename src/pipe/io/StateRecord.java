@@ -71,6 +71,14 @@ public class StateRecord {
    }   
    
    
+   // Used by RGFileReader to fill in a record read from a file
+   void set(int id, int[] marking, boolean tangible) {
+      stateid = id;
+      state = marking;
+      isTangible = tangible;
+   }
+   
+   
    public int[] getState(){
       return state;
    }
@@ -106,6 +106,15 @@ public class TransitionRecord {
    }   
    
    
+   // Used by RGFileReader to fill in a record read from a file
+   void set(int from, int to, double r, int t) {
+      fromState = from;
+      toState = to;
+      rate = r;
+      transition = t;
+   }
+   
+   
    /**
     * updateRate()
     * When recording a transition from one state to another, it is possible that 
@@ -5,11 +5,8 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Iterator;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -18,45 +15,43 @@ import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
-import javax.swing.ProgressMonitor;
-import javax.swing.SwingUtilities;
-import javax.swing.Timer;
 import javax.swing.border.EtchedBorder;
 import javax.swing.border.TitledBorder;
 
-import pipe.dataLayer.Arc;
 import pipe.dataLayer.DataLayer;
-import pipe.dataLayer.Place;
-import pipe.dataLayer.Transition;
+import pipe.dataLayer.StateGroup;
+import pipe.dataLayer.StateGroupMarking;
+import pipe.dataLayer.calculations.PassageTimeSolver;
+import pipe.dataLayer.calculations.StateSpaceGenerator;
+import pipe.dataLayer.calculations.TimelessTrapException;
 import pipe.gui.CreateGui;
 import pipe.gui.widgets.ButtonBar;
 import pipe.gui.widgets.EscapableDialog;
 import pipe.gui.widgets.GraphPanelPane;
 import pipe.gui.widgets.ResultsHTMLPane;
+import pipe.io.ImmediateAbortException;
 import pipe.modules.Module;
 
+/**
+ * Passage time analysis. Works out the density, or distribution function, of
+ * the time taken to get from the states that meet a source condition to those
+ * that meet a target condition. This used to be done by writing the net out 
+ * for DNAmaca and running its urta and uniform programs, but is now done by 
+ * PassageTimeSolver on the net's own reachability graph.
+ */
 public class Dnamaca 
         implements Module {
    
-   private static final String MODULE_NAME = "DNAmaca";
-   private Place places[];
-   private Transition transitions[];
+   private static final String MODULE_NAME = "Passage Time Analysis";
+   // The most probability the sum at each time may leave out
+   private static final double EPSILON = 1e-8;
    private DataLayer pnmldata;
-   private String modString = "";
-   private final static String urtaStrings[] = {"Parsing input file", 
-           "Generating state-space", "Peforming functional analysis", 
-           "Computing steady-state probabilities", "Identifying target states",
-           "Compiling response-time analyser", "Initialising Uniformiser",
-           "Running uniformise", "calculating answers for each t_point", 
-           "powered down"};
-   private File modFile;
    private EscapableDialog guiDialog;
    private JButton resultsButton;
    private ArrayList resultsX = new ArrayList();
    private ArrayList resultsY = new ArrayList();
    private ResultsHTMLPane resultText;
    private GraphPanelPane resultsGraph;
-   private String urtaExecutablePath;
    
    private JTextField jtfTargetCondition;
    private JTextField jtfSourceCondition;
@@ -80,8 +75,6 @@ public class Dnamaca
          */
    public void run(DataLayer _pnmldata) {
       pnmldata = _pnmldata;
-      places = pnmldata.getPlaces();
-      transitions = pnmldata.getTransitions();
       
       // Build interface
       guiDialog = new EscapableDialog(CreateGui.getApp(), MODULE_NAME, true);
@@ -137,8 +130,8 @@ public class Dnamaca
       optionsPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE,optionsPanel.getPreferredSize().height));
       contentPane.add(optionsPanel);
       
-      String buttonLabels[] = {"Run DNAmaca", "Toggle graph"};
-      ActionListener buttonHandlers[] = {runDnamacaAction, runResultsAction};
+      String buttonLabels[] = {"Analyse", "Toggle graph"};
+      ActionListener buttonHandlers[] = {runAnalysisAction, runResultsAction};
       ButtonBar buttons;
       contentPane.add(buttons = new ButtonBar(buttonLabels, buttonHandlers));
       resultsButton = ((JButton)buttons.getComponent(1));
@@ -149,30 +142,27 @@ public class Dnamaca
       guiDialog.setVisible(true);
    }
    
-   ActionListener runDnamacaAction=new ActionListener() {
+   ActionListener runAnalysisAction=new ActionListener() {
       
       public void actionPerformed(ActionEvent arg0) {
-         if (!getUrtaPath()) {
+         if (pnmldata.getPlaces().length==0) {
             resultText.setText(
-                    "The command 'urta' was not found on your system path.");
-         } else if (pnmldata.getPlaces().length==0) {
+                    "You cannot run passage time analysis on a net without " +
+                    "places.");
+         } else if (!pnmldata.hasTimedTransitions()) {
             resultText.setText(
-                    "You cannot run DNAmaca on a net without places.");
-         } else if (!hasTimed()) {
-            resultText.setText(
-                    "You cannot run DNAmaca on a net without a timed transition.");
+                    "You cannot run passage time analysis on a net without " +
+                    "a timed transition.");
          } else {
-            try {
-               modFile = File.createTempFile("dnamaca", ".mod");
-               FileWriter out = new FileWriter(modFile);
-               generateMod();
-               out.write(modString);
-               out.close();
-               new DnamacaRun();
-            } catch (IOException e3) {
-               System.out.println("Could not write to temporary file!");
-               e3.printStackTrace();
+            String s = analyse();
+            if (s != null) {
+               resultText.setText(s);
+            } else {
+               displayResults();
+               resultsGraph.getGraph().setValues(resultsX, resultsY);
+               resultsButton.setEnabled(true);
             }
+            resultText.setEnabled(true);
          }
       }
    };
@@ -211,287 +201,85 @@ public class Dnamaca
    }
    
    
-   private void generateMod() {
-      modString = "";
-      model();
-//		performance();
-      passageTime();
-   }
-   
-   
-   private void model() {
-      modString += "\\model{\n";
-      stateVector();
-      initial();
-      transitions();
-      modString += "}\n\n";
-   }
-   
-   
-   private void stateVector() {
-      modString += "\t\\statevector{\n";
-      modString += "\t\t\\type{short}{";
-      
-      modString += places[0].getId();
-      for(int i=1; i<places.length; i++) {
-         modString += ", "+places[i].getId();
-      }
-      
-      modString += "}\n";
-      modString += "\t}\n\n";
-   }
-   
-   
-   private void initial() {
-      modString += "\t\\initial{\n";
-      
-      modString += "\t\t";
-      for(int i=0; i<places.length; i++) {
-         modString += places[i].getId() + " = " + places[i].getCurrentMarking() + 
-                 "; ";
-      }
-      modString += "\n\t}\n";
-   }
-   
-   
-   private void transitions() {
-      for(int i=0; i<transitions.length; i++) {
-         modString += "\t\\transition{"+transitions[i].getId()+"}{\n";
-         modString += "\t\t\\condition{" + getTransitionConditions(i) + "}\n";
-         modString += "\t\t\\action{\n";
-         
-         Iterator arcsTo = transitions[i]. getConnectToIterator();
-         while (arcsTo.hasNext()) {
-            String currentId = ((Arc)arcsTo.next()).getSource().getId();
-            modString += "\t\t\tnext->"+currentId;
-            modString += " = "+currentId+" - 1;\n";
-         }
-
-         Iterator arcsFrom = transitions[i]. getConnectFromIterator();
-         while (arcsFrom.hasNext()) {
-            String currentId = ((Arc)arcsFrom.next()).getTarget().getId();
-            modString += "\t\t\tnext->"+currentId;
-            modString += " = "+currentId+" + 1;\n";
-         }
-         
-         modString += "\t\t}\n";
-         
-         if (transitions[i].isTimed()) {
-            modString += "\t\t\\rate{" + transitions[i].getRate() + "}\n";
-         } else {
-            modString += "\t\t\\weight{" + transitions[i].getRate() + "}\n";
-         }
-         modString += "\t}\n";
-      }
-   }
-   
-   
-   private void passageTime() {
-      modString += "\\passage{\n";
-      modString += "\t\\targetcondition{" + jtfTargetCondition.getText() + "}\n";
-      modString += "\t\\sourcecondition{" + jtfSourceCondition.getText() + "}\n";
-      modString += "\t\\t_start{" + jtfTStart.getText() + "}\n";
-      modString += "\t\\t_stop{" + jtfTStop.getText() + "}\n";
-      modString += "\t\\t_step{" + jtfTStep.getText() + "}\n";
-      modString += "}\n";
-   }
-   
-   
-   private String getTransitionConditions(int transitionNum) {
-      String condition = new String();
-      Iterator arcsTo = transitions[transitionNum]. getConnectToIterator();
-      if (arcsTo.hasNext()){
-         condition += ((Arc)arcsTo.next()).getSource().getId()+" > 0";
-      }
-      while (arcsTo.hasNext()){
-         condition += " && "+((Arc)arcsTo.next()).getSource().getId()+" > 0";
-      }
-      return condition;
-   }
-   
-   
-   private boolean hasTimed() {
-      for(int i=0; i<transitions.length; i++) {
-         if (transitions[i].isTimed()){
-            return true;
-         }
-      }
-      return false;
-   }
-   
-   
-   private boolean getUrtaPath() {
-      Runtime r = Runtime.getRuntime();
+   /**
+    * analyse()
+    * Generates the state space and works out the passage time density, or 
+    * the distribution function if Cumulative is ticked, from the states that
+    * meet the source condition to those that meet the target condition, at 
+    * each time from T Start to T Stop, into resultsX and resultsY.
+    * @return  null, or what went wrong
+    */
+   private String analyse() {
+      File reachabilityGraph = new File("results.rg");
+      double[] times;
       try {
-         Process p = r.exec("urta");
-         p.waitFor();
-      } catch (Exception e) {
-         return false;
-      }
-      try {
-         Process p = r.exec("which urta");
-         p.waitFor();
-         InputStreamReader stdout = new InputStreamReader(p.getInputStream());
-         int ch=0;
-         String currentLine="";
-         while (((ch = stdout.read()) != -1) && (ch != 10)) {
-            currentLine += (char)ch;
+         double tstart = Double.parseDouble(jtfTStart.getText());
+         double tstop = Double.parseDouble(jtfTStop.getText());
+         double tstep = Double.parseDouble(jtfTStep.getText());
+         if (!(tstart >= 0.0) || !(tstop >= tstart) || !(tstep > 0.0)) {
+            return "Invalid parameter!";
          }
-         
-         urtaExecutablePath = currentLine.substring(0, currentLine.indexOf("urta"));
-      } catch (Exception e) {
-         // TODO Auto-generated catch block
-         e.printStackTrace();
-      }
-      return true;
-   }
-   
-   
-   class DnamacaRun {
-      private ProgressMonitor progressMonitor;
-      private Timer timer;
-      private ExternalTask task;
-      
-      public DnamacaRun() {
-         //Create a timer.
-         timer = new Timer(100, new TimerListener());
-         progressMonitor = new ProgressMonitor(guiDialog, "Running DNAmaca",
-                                               "", 0, urtaStrings.length);
-         progressMonitor.setProgress(0);
-         progressMonitor.setMillisToDecideToPopup(0);
-         progressMonitor.setMillisToPopup(0);
-         
-         task = new ExternalTask();
-         task.go();
-         timer.start();
-      }
-   
-      
-      class TimerListener implements ActionListener {
-         
-         public void actionPerformed(ActionEvent evt) {
-            if (progressMonitor.isCanceled() || task.done()) {
-               progressMonitor.close();
-               task.stop();
-               timer.stop();
-               resultsButton.setEnabled(true);
-               
-               SwingUtilities.invokeLater(new Runnable() {
-                  
-                  public void run() {
-                     displayResults();
-                     resultsGraph.getGraph().setValues(resultsX, resultsY);
-                  }
-               });
-               
-            } else {
-               progressMonitor.setNote(task.getMessage());
-               progressMonitor.setProgress(task.getCurrent());
-            }
+         times = new double[(int)Math.floor((tstop - tstart) / tstep + 1e-9)
+                            + 1];
+         for (int i = 0; i < times.length; i++) {
+            times[i] = tstart + i * tstep;
          }
+      } catch (NumberFormatException e) {
+         return "Invalid parameter!";
       }
       
-      
-      class ExternalTask {
-         private int lengthOfTask;
-         private int current = 0;
-         private String statMessage;
-         
-         ExternalTask() {
-            lengthOfTask = urtaStrings.length-1;
-         }
- 
-         
-         void go() {
-            current = 0;
-            final SwingWorker worker = new SwingWorker() {
-               public Object construct() {
-                  return new ActualTask();
-               }
-            };
-            worker.start();
-         }
-         
-         
-         int getCurrent() {
-            return current;
-         }
-         
+      try {
+         StateGroupMarking markings = new StateGroupMarking(pnmldata, 
+                 getStateGroup(jtfSourceCondition.getText()),
+                 getStateGroup(jtfTargetCondition.getText()));
+         int numthreads = Runtime.getRuntime().availableProcessors();
+         StateSpaceGenerator.generate(pnmldata, reachabilityGraph, resultText,
+                 numthreads);
+         PassageTimeSolver solver = 
+                 PassageTimeSolver.create(reachabilityGraph, markings);
+         solver.solve(times, EPSILON, numthreads);
          
-         void stop() {
-            current = lengthOfTask;
+         resultsX.clear(); resultsY.clear();
+         for (int i = 0; i < times.length; i++) {
+            resultsX.add(new Double(times[i]));
+            resultsY.add(new Double(jcbCumulative.isSelected() 
+                    ? solver.getDistribution(i) : solver.getDensity(i)));
          }
-         
-         
-         boolean done() {
-            if (current >= lengthOfTask){
-               return true;
-            } else {
-               return false;
+         return null;
+      } catch (IllegalArgumentException e) {
+         return e.getMessage();
+      } catch (OutOfMemoryError e) {
+         return "Memory error: " + e.getMessage();
+      } catch (ImmediateAbortException e) {
+         return "Error: " + e.getMessage();
+      } catch (TimelessTrapException e) {
+         return e.getMessage();
+      } catch (IOException e) {
+         return e.getMessage();
+      } finally {
+         if (reachabilityGraph.exists()) {
+            if (!reachabilityGraph.delete()) {
+               System.err.println("Could not delete intermediate file.");
             }
          }
-         
-         
-         String getMessage() {
-            return statMessage;
-         }
-         
-         
-         class ActualTask {
-            
-            ActualTask() {
-               Runtime r = Runtime.getRuntime();
-               try {
-                  Process p = r.exec(urtaExecutablePath + "urta " + 
-                          modFile.getAbsolutePath());
-                  InputStreamReader stdout = 
-                          new InputStreamReader(p.getInputStream());
-                  int ch=0;
-                  String currentLine="";
-                  while (ch != -1) {
-                     while (((ch = stdout.read()) != -1) && (ch != 10)) {
-                        currentLine += (char)ch;
-                     }
-                     for(int i=0; i<urtaStrings.length; i++) {
-                        if (currentLine.indexOf(urtaStrings[i])>=0){
-                           current = i;
-                           statMessage = currentLine;
-                        }
-                     }
-//                     System.out.println(currentLine);
-                     currentLine = "";
-                  }
-                  p = r.exec(urtaExecutablePath + "uniform" + 
-                          (jcbCumulative.isSelected()?" -cdf":""));
-                  stdout = new InputStreamReader(p.getInputStream());
-                  resultsX.clear(); resultsY.clear();
-                  ch=0;
-                  while (ch != -1) {
-                     while (((ch = stdout.read()) != -1) && (ch != 10)) {
-                        currentLine += (char)ch;
-                     }
-                     for(int i=0; i<urtaStrings.length; i++) {
-                        if (currentLine.indexOf(urtaStrings[i])>=0){
-                           current = i;
-                           statMessage = currentLine;
-                        }
-                     }
-                     if ((currentLine.indexOf("DATA0") >= 0) && 
-                             (currentLine.indexOf("elapsed") == -1)) {
-                        String results[] = currentLine.split("\\s+");
-                        resultsX.add(new Double(results[0]));
-                        resultsY.add(new Double(results[1]));
-                     }
-//                     System.out.println(currentLine);
-                     currentLine = "";
-                  }
-               } catch (IOException e) {
-                  // TODO Auto-generated catch block
-                  e.printStackTrace();
-               }
-            }
+      }
+   }
+   
+   
+   /**
+    * getStateGroup()
+    * @param condition  The name of one of the net's state groups, or 
+    *                   conditions on places joined by &&
+    * @return           The state group
+    */
+   private StateGroup getStateGroup(String condition) {
+      StateGroup[] groups = pnmldata.getStateGroups();
+      for (int i = 0; i < groups.length; i++) {
+         if (condition.trim().equals(groups[i].getName())) {
+            return groups[i];
          }
       }
+      return StateGroupMarking.parseStateGroup(condition.trim(), condition);
    }
    
 }
@@ -10,6 +10,7 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
 
 import javax.swing.BoxLayout;
@@ -17,7 +18,10 @@ import javax.swing.JOptionPane;
 
 import pipe.dataLayer.DataLayer;
 import pipe.dataLayer.Place;
-import pipe.dataLayer.Transition;
+import pipe.dataLayer.calculations.CompiledNet;
+import pipe.dataLayer.calculations.ExternalStateSpaceGenerator;
+import pipe.dataLayer.calculations.LinearSolver;
+import pipe.dataLayer.calculations.RewardCalculator;
 import pipe.dataLayer.calculations.StateList;
 import pipe.dataLayer.calculations.StateSpaceGenerator;
 import pipe.dataLayer.calculations.StateSpaceTooBigException;
@@ -112,11 +116,28 @@ public class GSPNNew
             results.setText(s);
          } else {
             try {
-               StateSpaceGenerator.generate(sourceDataLayer, reachabilityGraph,
-                       results);
+               // The two generators number the initial states differently,
+               // so each gives the initial distribution in its own numbering
+               double[] initial;
+               try {
+                  StateSpaceGenerator.generate(sourceDataLayer, 
+                          reachabilityGraph, results, 
+                          Runtime.getRuntime().availableProcessors());
+                  initial = StateSpaceGenerator.initialDistribution(
+                          sourceDataLayer);
+               } catch (OutOfMemoryError e) {
+                  // Too many states to hold on the heap, so start again 
+                  // keeping the explored states on disk
+                  System.gc();
+                  System.out.println("\nOut of memory, generating the " +
+                          "state space again on disk...");
+                  initial = ExternalStateSpaceGenerator.generate(
+                          sourceDataLayer, reachabilityGraph, 
+                          Runtime.getRuntime().maxMemory() / 4);
+               }
                efinished = new Date().getTime();
                System.gc();
-               pi = SteadyStateSolver.solve(reachabilityGraph);
+               pi = SteadyStateSolver.solve(reachabilityGraph, initial, null);
                ssdfinished = new Date().getTime();
                System.gc();
             } catch (OutOfMemoryError e) {
@@ -138,6 +159,7 @@ public class GSPNNew
             }
             // Now format and display the results nicely
              s += displayResults(sourceDataLayer, reachabilityGraph, pi);
+            s += ergodicityNote(pi);
             allfinished = new Date().getTime();
             explorationtime = (efinished - start)/1000.0;
             steadystatetime = (ssdfinished - efinished)/1000.0;
@@ -163,6 +185,30 @@ public class GSPNNew
    };
    
    
+   /**
+    * ergodicityNote()
+    * @param pi   The long run distribution
+    * @return     A note saying how many states are transient, as the states
+    *             SteadyStateSolver finds transient are given probability zero,
+    *             or nothing if the chain is ergodic
+    */
+   private String ergodicityNote(double[] pi) {
+      int unreached = 0;
+      for (int i = 0; i < pi.length; i++) {
+         if (pi[i] == 0.0) {
+            unreached++;
+         }
+      }
+      if (unreached == 0) {
+         return "";
+      }
+      return "<br>The chain is not ergodic: " + unreached + " of the " + 
+              pi.length + " tangible states are transient or never reached, " +
+              "so the distribution shown is the long run distribution " +
+              "starting from the initial marking.<br>";
+   }
+   
+   
    /**
     * displayResults()
     * Takes the reachability graph file and the steady state distribution
@@ -185,47 +231,52 @@ public class GSPNNew
       final int MAXSTATESTODISPLAY = 100;
       boolean mode = FULLMODE;
       
-      // First load all the tangible states into memory
+      // Decide whether to summarise the results
+      if (pi.length > MAXSTATESTODISPLAY) {
+         mode = SUMMARYMODE;
+      }
+      
+      // Only load the tangible states into memory if they are to be listed
+      if (mode == FULLMODE) {
+         try {
+            tangiblestates = new StateList(rgfile, false);
+         } catch (IOException e) {
+            s += e.getMessage();
+            return s;
+         } catch (StateSpaceTooBigException e) {
+            s += e.getMessage();
+            return s;
+         }
+      }
+      
+      // Work out all the measures in one pass through the states
+      RewardCalculator rewards = new RewardCalculator(sourceDataLayer, 
+              (mode == FULLMODE) ? RewardCalculator.ALL : 
+              RewardCalculator.ALL & ~RewardCalculator.SOJOURNTIMES);
+      System.out.println("Calculating measures...");
       try {
-         tangiblestates = new StateList(rgfile, false);
+         rewards.calculate(rgfile, pi);
       } catch (IOException e) {
          s += e.getMessage();
          return s;
-      } catch (StateSpaceTooBigException e) {
-         s += e.getMessage();
-         return s;
-      }
-      // Now decide whether to summarise the results
-      if (tangiblestates.size() > MAXSTATESTODISPLAY) {
-         mode = SUMMARYMODE;
       }
       
       if (mode == SUMMARYMODE) {
-         s += "<br>" + "There are " + tangiblestates.size() + " tangible states. ";
+         s += "<br>" + "There are " + pi.length + " tangible states. ";
          s += "Only a summary of the results will be displayed.";
       } else {
          s += renderTangibleStates(sourceDataLayer, tangiblestates);
          s+= "<br>" + renderPi(pi, tangiblestates);
       }
-      double[] averages = averageTokens(pi, tangiblestates);
-      if (averages != null) {
-         s += "<br>" + renderAverages(sourceDataLayer, averages);
-      }
-      
-      double[][] tokendist = tokenDistribution(pi, tangiblestates);
-      if (tokendist != null) {
-         s += "<br>" + renderTokenDistribution(sourceDataLayer, tokendist);
-      }
-      
-      double[] throughput = getFastTransitionThroughput(sourceDataLayer,
-              tangiblestates, pi);
-      if (throughput != null) {
-         s += "<br>" + renderTimedTransitionThroughput(sourceDataLayer, throughput);
-      }
-      
-      double[] sojournTimes = calcSojournTime(sourceDataLayer, tangiblestates);
-      if (sojournTimes != null) {
-         s += "<br>" + renderSojournTimes(sojournTimes, tangiblestates);
+      s += "<br>" + renderAverages(sourceDataLayer, 
+              rewards.getAverageTokens());
+      s += "<br>" + renderTokenDistribution(sourceDataLayer, 
+              rewards.getTokenDistribution());
+      s += "<br>" + renderTimedTransitionThroughput(sourceDataLayer, 
+              rewards.getThroughput());
+      if (mode == FULLMODE) {
+         s += "<br>" + renderSojournTimes(rewards.getSojournTimes(), 
+                 tangiblestates);
       }
   
       return s;
@@ -313,11 +364,26 @@ public class GSPNNew
     * @param sourceDataLayer The GSPN model data
     * @return Pi and the tangible states list*/
    public Object[] getPiAndTangibleStates(DataLayer sourceDataLayer) {
+      return getPiAndTangibleStates(sourceDataLayer, null);
+   }
+   
+   
+   /* As above, but solving for Pi with the given method. If method is null,
+    * the methods SteadyStateSolver.chooseMethods() picks for the chain are
+    * tried in turn. The method can be asked for its convergence history 
+    * afterwards.
+    * @param sourceDataLayer The GSPN model data
+    * @param method The steady state solver to use, or null
+    * @return Pi and the tangible states list*/
+   public Object[] getPiAndTangibleStates(DataLayer sourceDataLayer,
+           LinearSolver method) {
       Object result [] = new Object[2];
       File reachabilityGraph = new File("results.rg");
       try{
          StateSpaceGenerator.generate(sourceDataLayer, reachabilityGraph, null);
-         result[0] = SteadyStateSolver.solve(reachabilityGraph);
+         result[0] = SteadyStateSolver.solve(reachabilityGraph, 
+                 StateSpaceGenerator.initialDistribution(sourceDataLayer), 
+                 method);
          result[1] = new StateList(reachabilityGraph, false);
       } catch (StateSpaceTooBigException e) {
          System.out.println(e);
@@ -356,7 +422,9 @@ public class GSPNNew
             StateSpaceGenerator.generate(sourceDataLayer, reachabilityGraph,
                     null);
             if (pi==null){
-               pi = SteadyStateSolver.solve(reachabilityGraph);
+               pi = SteadyStateSolver.solve(reachabilityGraph, 
+                       StateSpaceGenerator.initialDistribution(
+                       sourceDataLayer), null);
             }
             if (tangiblestates==null){
                // First load all the tangible states into memory
@@ -399,7 +467,9 @@ public class GSPNNew
          if (pi == null || tangiblestates == null) {
             StateSpaceGenerator.generate(sourceDataLayer, reachabilityGraph, null);
             if (pi==null) {
-               pi = SteadyStateSolver.solve(reachabilityGraph);
+               pi = SteadyStateSolver.solve(reachabilityGraph, 
+                       StateSpaceGenerator.initialDistribution(
+                       sourceDataLayer), null);
             }
             if (tangiblestates==null) {
                // First load all the tangible states into memory
@@ -442,7 +512,9 @@ public class GSPNNew
          if (pi == null || tangiblestates == null){
             StateSpaceGenerator.generate(sourceDataLayer, reachabilityGraph, null);
             if (pi==null) {
-               pi = SteadyStateSolver.solve(reachabilityGraph);
+               pi = SteadyStateSolver.solve(reachabilityGraph, 
+                       StateSpaceGenerator.initialDistribution(
+                       sourceDataLayer), null);
             }
             if (tangiblestates==null) {
                // First load all the tangible states into memory
@@ -477,7 +549,7 @@ public class GSPNNew
     * @param data
     * @return
     */
-   private String renderAverages(DataLayer pnmldata, double[] data) {
+   protected String renderAverages(DataLayer pnmldata, double[] data) {
       return ResultsHTMLPane.makeTable(new String[]{
               "Average Number of Tokens on a Place",
               renderLists(data, pnmldata.getPlaces(), 
@@ -505,54 +577,36 @@ public class GSPNNew
       DecimalFormat f=new DecimalFormat();
       f.setMaximumFractionDigits(1);
       
-      // The following ArrayList tallies up the probabilities.
-      // Each element in the ArrayList is an array of doubles.
-      // Each row in the array of doubles represents a particular number of 
-      // tokens on that place and the value at that row is the probability of 
-      // having that many tokens.
-      ArrayList counter = new ArrayList(numplaces);
-      
-      double[] copy;       // A temporary array for storing intermediate results
-      double[][] result;
-      
+      // The following arrays tally up the probabilities, one for each place.
+      // Each element represents a particular number of tokens on that place 
+      // and its value is the probability of having that many tokens. They 
+      // are doubled in length whenever a place is found with more tokens 
+      // than there is room for.
       // Each place will have at least 0 or 1 tokens on it at some point so
-      // initialise each ArrayList with at a double array of at least two 
-      // elements
-      for (int p = 0; p < numplaces; p++) {
-         counter.add(p, new double[]{0, 0});
-      }
+      // each array starts with at least two elements
+      double[][] counter = new double[numplaces][2];
+      double[][] result;
       
       System.out.println("Calculating token distribution...");
       // Now go through each tangible state and each place in that state. For 
       // each place, determine the number of tokens on it and add that states 
       // steady state distribution to the appropriate tally for that place and 
-      // number of tokens in the ArrayList. Also keep track of the highest 
-      // number of tokens for any place as we will need to know it for the final
-      // results array.
+      // number of tokens. Also keep track of the highest number of tokens for
+      // any place as we will need to know it for the final results array.
       for (int marking = 0; marking < numstates; marking++) {
          int[] current = states.get(marking);
          for (int p = 0; p < numplaces; p++) {
-            if (current[p] > highestnumberoftokens) {
-               highestnumberoftokens = current[p];
+            int tokens = current[p];
+            if (tokens > highestnumberoftokens) {
+               highestnumberoftokens = tokens;
             }
-            if (current[p] > (((double[])counter.get(p)).length-1)) {
-               copy = new double[current[p]+1];
-               System.arraycopy((double[])counter.get(p), 0, copy, 0, 
-                       ((double[])counter.get(p)).length);
-               // Zero all the remainder of the array
-               for (int i = ((double[])counter.get(p)).length; i < copy.length; i++){
-                  copy[i] = 0.0;
-               }
-               // Start off the tally for this number of tokens on place p
-               copy[current[p]] = pi[marking];
-               // Get rid of the old smaller array
-               counter.remove(p);
-               // Put the new one in instead
-               counter.add(p, copy);
-            } else {
-               copy = (double[])counter.get(p);
-               copy[current[p]] += pi[marking];
+            if (tokens >= counter[p].length) {
+               double[] copy = new double[Math.max(tokens + 1, 
+                       counter[p].length << 1)];
+               System.arraycopy(counter[p], 0, copy, 0, counter[p].length);
+               counter[p] = copy;
             }
+            counter[p][tokens] += pi[marking];
          }
          System.out.print(f.format(((double)marking/numstates) * 100) +
                  "% done.  \r");
@@ -562,13 +616,8 @@ public class GSPNNew
       // Now put together our results array
       result = new double[numplaces][highestnumberoftokens+1];
       for (int p = 0; p < numplaces; p++) {
-         System.arraycopy((double[])counter.get(p), 0, (double[])result[p], 0,
-                 ((double[])counter.get(p)).length);
-         if (((double[])counter.get(p)).length < highestnumberoftokens) {
-            for (int i = ((double[])counter.get(p)).length; i < highestnumberoftokens; i++) {
-               result[p][i] = 0.0;
-            }
-         }
+         System.arraycopy(counter[p], 0, result[p], 0, 
+                 Math.min(counter[p].length, highestnumberoftokens + 1));
       }
       return result;
    }
@@ -582,7 +631,7 @@ public class GSPNNew
     * @param tokendist
     * @return
     */
-   private String renderTokenDistribution(DataLayer pnmlData,
+   protected String renderTokenDistribution(DataLayer pnmlData,
            double[][] tokendist){
       return ResultsHTMLPane.makeTable(new String[]{
               "Token Probability Density",
@@ -621,8 +670,10 @@ public class GSPNNew
            StateList list, double[] pi){
       int length = list.size();
       
-      Transition[] transitions = pnmldata.getTransitions();
-      double[] result = new double[transitions.length];
+      CompiledNet net = new CompiledNet(pnmldata);
+      int transCount = net.getTransitionCount();
+      double[] result = new double[transCount];
+      BitSet transStatus = new BitSet(transCount);
       
       DecimalFormat f = new DecimalFormat();
       f.setMaximumFractionDigits(1);
@@ -630,11 +681,10 @@ public class GSPNNew
       
       for (int marking = 0; marking < length; marking++){
          double specifiedTransitionRate = 0;
-         boolean[] transStatus = 
-                 pnmldata.getTransitionEnabledStatusArray(list.get(marking));
-         for (int tran = 0; tran < transitions.length; tran++) {
-            if (transStatus[tran] == true) {
-               specifiedTransitionRate = transitions[tran].getRate();
+         net.enabledSet(list.get(marking), transStatus);
+         for (int tran = 0; tran < transCount; tran++) {
+            if (transStatus.get(tran)) {
+               specifiedTransitionRate = net.getRate(tran);
                result[tran]+= (specifiedTransitionRate*pi[marking]);
             }
             System.out.print(f.format(((double)marking/length) * 100) + 
@@ -691,30 +741,4 @@ public class GSPNNew
       return MODULE_NAME;
    }
    
-   
-   /**This function determines the sojourn time for each state in a specified set of states.
-    * @param DataLater - the net to be analysed
-    * @param StateList - the list of tangible markings
-    * @return double[] - the array of sojourn times for each specific state
-    */
-   private double[] calcSojournTime(DataLayer pnmldata, StateList tangibleStates) {
-      int numStates = tangibleStates.size();
-      int numTrans = pnmldata.getTransitions().length;
-      Transition[] trans = pnmldata.getTransitions();
-      double[] sojournTime = new double[numStates];
-      
-      for (int i = 0; i < numStates; i++) {
-         boolean[] transStatus = 
-                 pnmldata.getTransitionEnabledStatusArray(tangibleStates.get(i));
-         double weights = 0;
-         for (int j = 0; j <numTrans; j++) {
-            if (transStatus[j] == true){
-               weights += trans[j].getRate();
-            }
-         }
-         sojournTime[i] = 1/weights;
-      }
-      return sojournTime;
-   }
-   
 }
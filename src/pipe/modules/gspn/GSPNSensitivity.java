@@ -0,0 +1,270 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.modules.gspn;
+
+import java.awt.Container;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Date;
+
+import javax.swing.BoxLayout;
+import javax.swing.JOptionPane;
+
+import pipe.dataLayer.DataLayer;
+import pipe.dataLayer.PetriNetObject;
+import pipe.dataLayer.RateParameter;
+import pipe.dataLayer.Transition;
+import pipe.dataLayer.calculations.SensitivitySolver;
+import pipe.dataLayer.calculations.StateSpaceGenerator;
+import pipe.dataLayer.calculations.StateSpaceTooBigException;
+import pipe.dataLayer.calculations.TimelessTrapException;
+import pipe.gui.CreateGui;
+import pipe.gui.widgets.ButtonBar;
+import pipe.gui.widgets.EscapableDialog;
+import pipe.gui.widgets.PetriNetChooserPanel;
+import pipe.gui.widgets.ResultsHTMLPane;
+import pipe.io.ImmediateAbortException;
+import pipe.modules.Module;
+
+
+/**
+ * Sensitivity analysis of GSPNs. Shows the derivative of the average number
+ * of tokens on each place, and of the throughput of each timed transition,
+ * with respect to the rate of each timed transition and each rate parameter,
+ * all from one steady state solution.
+ */
+public class GSPNSensitivity
+        extends GSPNNew
+        implements Module {
+
+   private static final String MODULE_NAME = "GSPN Sensitivity Analysis";
+
+
+   public void run(DataLayer pnmlData) {
+      // Build interface
+      EscapableDialog guiDialog =
+              new EscapableDialog(CreateGui.getApp(), MODULE_NAME, true);
+
+      // 1 Set layout
+      Container contentPane = guiDialog.getContentPane();
+      contentPane.setLayout(new BoxLayout(contentPane, BoxLayout.PAGE_AXIS));
+
+      // 2 Add file browser
+      sourceFilePanel = new PetriNetChooserPanel("Source net", pnmlData);
+      contentPane.add(sourceFilePanel);
+
+      // 3 Add results pane
+      results = new ResultsHTMLPane(pnmlData.getURI());
+      contentPane.add(results);
+
+      // 4 Add button's
+      contentPane.add(new ButtonBar("Analyse GSPN", runSensitivityAnalysis,
+              guiDialog.getRootPane()));
+
+      // 5 Make window fit contents' preferred size
+      guiDialog.pack();
+
+      // 6 Move window to the middle of the screen
+      guiDialog.setLocationRelativeTo(null);
+
+      guiDialog.setVisible(true);
+   }
+
+
+   /**
+    * Analyse button click handler
+    */
+   ActionListener runSensitivityAnalysis = new ActionListener() {
+
+      public void actionPerformed(ActionEvent arg0) {
+         long start = new Date().getTime();
+         long efinished;
+         long sfinished;
+
+         DataLayer sourceDataLayer = sourceFilePanel.getDataLayer();
+
+         // This will be used to store the reachability graph data
+         File reachabilityGraph = new File("results.rg");
+
+         String s = "<h2>GSPN Sensitivity Analysis Results</h2>";
+
+         if (sourceDataLayer == null) {
+            JOptionPane.showMessageDialog( null, "Please, choose a source net",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+         }
+
+         if (!sourceDataLayer.hasTimedTransitions()) {
+            s += "This Petri net has no timed transitions, "
+                    + "so GSPN analysis cannot be performed.";
+            results.setText(s);
+            return;
+         }
+
+         SensitivitySolver solver;
+         try {
+            StateSpaceGenerator.generate(sourceDataLayer, reachabilityGraph,
+                    results, Runtime.getRuntime().availableProcessors());
+            efinished = new Date().getTime();
+            System.gc();
+            solver = new SensitivitySolver(reachabilityGraph, sourceDataLayer);
+            solver.solve();
+            sfinished = new Date().getTime();
+            System.gc();
+         } catch (OutOfMemoryError e) {
+            s += "Memory error: " + e.getMessage();
+            results.setText(s);
+            return;
+         } catch (ImmediateAbortException e) {
+            s += "<br>Error: " + e.getMessage();
+            results.setText(s);
+            return;
+         } catch (StateSpaceTooBigException e) {
+            s += "<br>" + e.getMessage();
+            results.setText(s);
+            return;
+         } catch (TimelessTrapException e) {
+            s += "<br>" + e.getMessage();
+            results.setText(s);
+            return;
+         } catch (IOException e) {
+            s += "<br>" + e.getMessage();
+            results.setText(s);
+            return;
+         }
+
+         // Now format and display the results nicely
+         s += displaySensitivityResults(sourceDataLayer, solver);
+         DecimalFormat f = new DecimalFormat();
+         f.setMaximumFractionDigits(5);
+         s += "<br>State space exploration took " +
+                 f.format((efinished - start)/1000.0) + "s";
+         s += "<br>Solving the steady state and adjoint equations took " +
+                 f.format((sfinished - efinished)/1000.0) + "s";
+         s += "<br>Total time was " +
+                 f.format((new Date().getTime() - start)/1000.0) + "s";
+
+         results.setEnabled(true);
+         results.setText(s);
+
+         if (reachabilityGraph.exists()) {
+            if (!reachabilityGraph.delete()) {
+               System.err.println("Could not delete intermediate file.");
+            }
+         }
+      }
+   };
+
+
+   /**
+    * displaySensitivityResults()
+    * Produces the average numbers of tokens and the throughputs, and tables
+    * of their derivatives with respect to the rate of each timed transition
+    * and, if the net has any, each rate parameter.
+    *
+    * @param sourceDataLayer  The GSPN model data
+    * @param solver           The solver, once it has solved
+    */
+   private String displaySensitivityResults(DataLayer sourceDataLayer,
+           SensitivitySolver solver) {
+      String s = renderAverages(sourceDataLayer, solver.getAverageTokens());
+
+      Transition[] transitions = sourceDataLayer.getTransitions();
+      int numtimed = 0;
+      for (int t = 0; t < transitions.length; t++) {
+         if (transitions[t].isTimed()) {
+            numtimed++;
+         }
+      }
+      Transition[] timed = new Transition[numtimed];
+      int[] timedindices = new int[numtimed];
+      numtimed = 0;
+      for (int t = 0; t < transitions.length; t++) {
+         if (transitions[t].isTimed()) {
+            timed[numtimed] = transitions[t];
+            timedindices[numtimed++] = t;
+         }
+      }
+
+      double[][] throughputs = new double[numtimed][];
+      for (int i = 0; i < numtimed; i++) {
+         throughputs[i] = solver.getThroughputSensitivities()[timedindices[i]];
+      }
+      s += "<br>" + renderSensitivities(
+              "Derivative of the Average Number of Tokens on a Place " +
+              "with respect to the Rate of each Timed Transition",
+              sourceDataLayer.getPlaces(), timed, timedindices,
+              solver.getTokenSensitivities());
+      s += "<br>" + renderSensitivities(
+              "Derivative of the Throughput of a Timed Transition " +
+              "with respect to the Rate of each Timed Transition",
+              timed, timed, timedindices, throughputs);
+
+      RateParameter[] parameters = sourceDataLayer.getRateParameters();
+      if (parameters.length > 0) {
+         int[] columns = new int[parameters.length];
+         for (int k = 0; k < parameters.length; k++) {
+            columns[k] = k;
+         }
+         s += "<br>" + renderSensitivities(
+                 "Derivative of the Average Number of Tokens on a Place " +
+                 "with respect to each Rate Parameter",
+                 sourceDataLayer.getPlaces(), parameters, columns,
+                 solver.getParameterSensitivities(
+                 solver.getTokenSensitivities(), parameters));
+         s += "<br>" + renderSensitivities(
+                 "Derivative of the Throughput of a Timed Transition " +
+                 "with respect to each Rate Parameter",
+                 timed, parameters, columns,
+                 solver.getParameterSensitivities(throughputs, parameters));
+      }
+      return s;
+   }
+
+
+   /**
+    * renderSensitivities()
+    * Turns a table of derivatives into a long string with embedded HTML
+    * ready for display.
+    * @param title      The title of the table
+    * @param rows       The places or transitions whose measures are
+    *                   differentiated
+    * @param columns    The transitions or parameters they are differentiated
+    *                   with respect to
+    * @param indices    The position in each row of data of each column
+    * @param data       The derivatives
+    * @return
+    */
+   private String renderSensitivities(String title, PetriNetObject[] rows,
+           PetriNetObject[] columns, int[] indices, double[][] data) {
+      ArrayList result = new ArrayList();
+      DecimalFormat f = new DecimalFormat();
+      f.setMaximumFractionDigits(5);
+      result.add("");
+      for (int j = 0; j < columns.length; j++) {
+         result.add(columns[j].getName());
+      }
+      for (int i = 0; i < rows.length; i++) {
+         result.add(rows[i].getName());
+         for (int j = 0; j < columns.length; j++) {
+            result.add(f.format(data[i][indices[j]]));
+         }
+      }
+      return ResultsHTMLPane.makeTable(new String[]{
+              title,
+              ResultsHTMLPane.makeTable(result.toArray(), columns.length + 1,
+                      false, true, true, true)
+              }, 1, false, false, true, false);
+   }
+
+
+   public String getName() {
+      return MODULE_NAME;
+   }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Created on 17-Oct-2026
+ */
+package pipe.modules.gspn;
+
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Date;
+import java.util.StringTokenizer;
+
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.border.EtchedBorder;
+import javax.swing.border.TitledBorder;
+
+import pipe.dataLayer.DataLayer;
+import pipe.dataLayer.calculations.RewardCalculator;
+import pipe.dataLayer.calculations.StateSpaceGenerator;
+import pipe.dataLayer.calculations.TimelessTrapException;
+import pipe.dataLayer.calculations.TransientSolver;
+import pipe.gui.CreateGui;
+import pipe.gui.widgets.ButtonBar;
+import pipe.gui.widgets.EscapableDialog;
+import pipe.gui.widgets.PetriNetChooserPanel;
+import pipe.gui.widgets.ResultsHTMLPane;
+import pipe.io.ImmediateAbortException;
+import pipe.modules.Module;
+
+
+/**
+ * Transient analysis of GSPNs. Works out the distribution of the tangible
+ * states at each of a list of times, starting from the initial marking, and
+ * the average distribution up to each of them, and shows the same average
+ * number of tokens and token distribution on each place as the steady state
+ * analysis does.
+ */
+public class GSPNTransient
+        extends GSPNNew
+        implements Module {
+
+   private static final String MODULE_NAME = "GSPN Transient Analysis";
+
+   private JTextField jtfTimes, jtfEpsilon;
+
+
+   public void run(DataLayer pnmlData) {
+      // Build interface
+      EscapableDialog guiDialog =
+              new EscapableDialog(CreateGui.getApp(), MODULE_NAME, true);
+
+      // 1 Set layout
+      Container contentPane = guiDialog.getContentPane();
+      contentPane.setLayout(new BoxLayout(contentPane, BoxLayout.PAGE_AXIS));
+
+      // 2 Add file browser
+      sourceFilePanel = new PetriNetChooserPanel("Source net", pnmlData);
+      contentPane.add(sourceFilePanel);
+
+      // 2.5 Add edit boxes
+      JPanel settings = new JPanel();
+      settings.setLayout(new BoxLayout(settings, BoxLayout.LINE_AXIS));
+      settings.add(new JLabel("Times:"));
+      settings.add(Box.createHorizontalStrut(5));
+      settings.add(jtfTimes = new JTextField("1, 10, 100", 15));
+      settings.add(Box.createHorizontalStrut(10));
+      settings.add(new JLabel("Error:"));
+      settings.add(Box.createHorizontalStrut(5));
+      settings.add(jtfEpsilon = new JTextField("1e-8", 5));
+      settings.setBorder(new TitledBorder(new EtchedBorder(),
+                                          "Transient analysis parameters"));
+      settings.setMaximumSize(new Dimension(Integer.MAX_VALUE,
+                                            settings.getPreferredSize().height));
+      contentPane.add(settings);
+
+      // 3 Add results pane
+      results = new ResultsHTMLPane(pnmlData.getURI());
+      contentPane.add(results);
+
+      // 4 Add button's
+      contentPane.add(new ButtonBar("Analyse GSPN", runTransientAnalysis,
+              guiDialog.getRootPane()));
+
+      // 5 Make window fit contents' preferred size
+      guiDialog.pack();
+
+      // 6 Move window to the middle of the screen
+      guiDialog.setLocationRelativeTo(null);
+
+      guiDialog.setVisible(true);
+   }
+
+
+   /**
+    * Analyse button click handler
+    */
+   ActionListener runTransientAnalysis = new ActionListener() {
+
+      public void actionPerformed(ActionEvent arg0) {
+         long start = new Date().getTime();
+         long efinished;
+         long tfinished;
+
+         DataLayer sourceDataLayer = sourceFilePanel.getDataLayer();
+
+         // This will be used to store the reachability graph data
+         File reachabilityGraph = new File("results.rg");
+
+         String s = "<h2>GSPN Transient Analysis Results</h2>";
+
+         if (sourceDataLayer == null) {
+            JOptionPane.showMessageDialog( null, "Please, choose a source net",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+         }
+
+         double[] times;
+         double epsilon;
+         try {
+            times = parseTimes(jtfTimes.getText());
+            epsilon = Double.parseDouble(jtfEpsilon.getText());
+         } catch (NumberFormatException e) {
+            results.setText(s + "Invalid parameter!");
+            return;
+         }
+         if ((times.length == 0) || !(epsilon > 0.0) || !(epsilon < 1.0)) {
+            results.setText(s + "Invalid parameter!");
+            return;
+         }
+
+         if (!sourceDataLayer.hasTimedTransitions()) {
+            s += "This Petri net has no timed transitions, "
+                    + "so GSPN analysis cannot be performed.";
+            results.setText(s);
+            return;
+         }
+
+         TransientSolver solver;
+         try {
+            StateSpaceGenerator.generate(sourceDataLayer, reachabilityGraph,
+                    results, Runtime.getRuntime().availableProcessors());
+            efinished = new Date().getTime();
+            System.gc();
+            solver = new TransientSolver(reachabilityGraph, sourceDataLayer);
+            solver.solve(times, epsilon);
+            tfinished = new Date().getTime();
+            System.gc();
+         } catch (OutOfMemoryError e) {
+            s += "Memory error: " + e.getMessage();
+            results.setText(s);
+            return;
+         } catch (ImmediateAbortException e) {
+            s += "<br>Error: " + e.getMessage();
+            results.setText(s);
+            return;
+         } catch (TimelessTrapException e) {
+            s += "<br>" + e.getMessage();
+            results.setText(s);
+            return;
+         } catch (IOException e) {
+            s += "<br>" + e.getMessage();
+            results.setText(s);
+            return;
+         }
+
+         // Now format and display the results nicely
+         s += displayTransientResults(sourceDataLayer, reachabilityGraph,
+                 solver);
+         DecimalFormat f = new DecimalFormat();
+         f.setMaximumFractionDigits(5);
+         s += "<br>State space exploration took " +
+                 f.format((efinished - start)/1000.0) + "s";
+         s += "<br>Solving the transient distributions took " +
+                 f.format((tfinished - efinished)/1000.0) + "s, with " +
+                 solver.getIterations() + " matrix products";
+         s += "<br>Total time was " +
+                 f.format((new Date().getTime() - start)/1000.0) + "s";
+
+         results.setEnabled(true);
+         results.setText(s);
+
+         if (reachabilityGraph.exists()) {
+            if (!reachabilityGraph.delete()) {
+               System.err.println("Could not delete intermediate file.");
+            }
+         }
+      }
+   };
+
+
+   /**
+    * displayTransientResults()
+    * Produces nicely formatted output showing, for each time, the average
+    * number of tokens on each place and the token distribution at that time,
+    * and the average number of tokens on each place up to it.
+    *
+    * @param sourceDataLayer  The GSPN model data
+    * @param rgfile           The reachability graph
+    * @param solver           The solver, once it has solved for every time
+    */
+   private String displayTransientResults(DataLayer sourceDataLayer,
+           File rgfile, TransientSolver solver) {
+      RewardCalculator rewards = new RewardCalculator(sourceDataLayer,
+              RewardCalculator.AVERAGETOKENS |
+              RewardCalculator.TOKENDISTRIBUTION);
+      String s = new String();
+
+      try {
+         double[] times = solver.getTimes();
+         for (int t = 0; t < times.length; t++) {
+            s += "<h3>At time " + times[t] + "</h3>";
+            rewards.calculate(rgfile, solver.getDistribution(t));
+            s += renderAverages(sourceDataLayer, rewards.getAverageTokens());
+            s += "<br>" + renderTokenDistribution(sourceDataLayer,
+                    rewards.getTokenDistribution());
+
+            s += "<h3>Up to time " + times[t] + "</h3>";
+            rewards.calculate(rgfile, solver.getAverageDistribution(t));
+            s += renderAverages(sourceDataLayer, rewards.getAverageTokens());
+         }
+      } catch (IOException e) {
+         return s + e.getMessage();
+      }
+      return s;
+   }
+
+
+   /**
+    * parseTimes()
+    * @param text   A list of times, separated by commas or spaces
+    * @return       The times
+    * @throws NumberFormatException if any of them is not a number, or is
+    *         negative
+    */
+   private static double[] parseTimes(String text) {
+      StringTokenizer tokens = new StringTokenizer(text, ", \t");
+      double[] times = new double[tokens.countTokens()];
+      for (int i = 0; i < times.length; i++) {
+         times[i] = Double.parseDouble(tokens.nextToken());
+         if (!(times[i] >= 0.0) || Double.isInfinite(times[i])) {
+            throw new NumberFormatException(String.valueOf(times[i]));
+         }
+      }
+      return times;
+   }
+
+
+   public String getName() {
+      return MODULE_NAME;
+   }
+
+}
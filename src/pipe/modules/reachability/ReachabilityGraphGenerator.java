@@ -6,7 +6,6 @@ import java.awt.event.ActionListener;
 import java.awt.Checkbox;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -29,8 +28,11 @@ import net.sourceforge.jpowergraph.defaults.TextEdge;
 
 import pipe.dataLayer.DataLayer;
 import pipe.dataLayer.Place;
+import pipe.dataLayer.calculations.MinimalCoverabilitySet;
 import pipe.dataLayer.calculations.StateSpaceGenerator;
+import pipe.dataLayer.calculations.StateSpaceTooBigException;
 import pipe.dataLayer.calculations.TimelessTrapException;
+import pipe.dataLayer.calculations.TreeTooBigException;
 import pipe.dataLayer.calculations.myTree;
 import pipe.gui.CreateGui;
 import pipe.gui.widgets.ButtonBar;
@@ -41,7 +43,7 @@ import pipe.gui.widgets.ResultsHTMLPane;
 import pipe.io.AbortDotFileGenerationException;
 import pipe.io.ImmediateAbortException;
 import pipe.io.IncorrectFileFormatException;
-import pipe.io.RGFileHeader;
+import pipe.io.RGFileReader;
 import pipe.io.StateRecord;
 import pipe.io.TransitionRecord;
 import pipe.modules.Module;
@@ -60,6 +62,10 @@ public class ReachabilityGraphGenerator
         implements Module {
 
    private static final String MODULE_NAME = "Reachability Graph";
+   
+   // The most arcs of a reachability graph that are drawn. A net with more, 
+   // or an unbounded one, gets its coverability graph drawn instead.
+   private static final int MAXDRAWNARCS = 400;
    private PetriNetChooserPanel sourceFilePanel;
    private static ResultsHTMLPane results;
    private EscapableDialog guiDialog = 
@@ -68,6 +74,10 @@ public class ReachabilityGraphGenerator
    private static Checkbox checkBox1 =  
            new Checkbox("Show the intial state(S0) in a different color", false);
    
+   private static Checkbox checkBox2 = 
+           new Checkbox("Show a minimal coverability set if the net is " +
+                        "unbounded", false);
+   
    private static String dataLayerName;
    
    public void run(DataLayer pnmlData) {
@@ -89,6 +99,7 @@ public class ReachabilityGraphGenerator
       contentPane.add(new ButtonBar("Generate Reachability Graph", generateGraph,
               guiDialog.getRootPane()));
       contentPane.add(checkBox1);      
+      contentPane.add(checkBox2);
 
       // 5 Make window fit contents' preferred size
       guiDialog.pack();
@@ -137,17 +148,29 @@ public class ReachabilityGraphGenerator
                
                boolean generateCoverability = false;
                try {
-                  StateSpaceGenerator.generate(sourceDataLayer, reachabilityGraph);               
-               } catch (OutOfMemoryError e) {
-                  // net seems to be unbounded, let's try to generate the
-                  // coverability graph
+                  StateSpaceGenerator.generate(sourceDataLayer, 
+                          reachabilityGraph, MAXDRAWNARCS);
+               } catch (StateSpaceTooBigException e) {
+                  // Too big to draw, and the net may well be unbounded, so 
+                  // let's try to generate the coverability graph
+                  s += "<br>" + e.getMessage() + " Only graphs of up to " + 
+                          MAXDRAWNARCS + " arcs are drawn.";
                   generateCoverability = true;
                }  
 
                // TODO: reachability graph and coverability graph are the same 
                // when the net is bounded so we could just generate the 
                // coverability graph
-               if (generateCoverability) {
+               if (generateCoverability && checkBox2.getState()) {
+                  MinimalCoverabilitySet set = new MinimalCoverabilitySet(
+                          sourceDataLayer, 
+                          sourceDataLayer.getCurrentMarkingVector());
+                  set.writeGraph(reachabilityGraph);
+                  s += "<br>Reachability graph couldn't be generated ";
+                  s += "<br>Minimal coverability set is shown instead";
+                  s += "<br>" + set.toString();
+                  graph = "Minimal coverability set";
+               } else if (generateCoverability) {
                   new myTree(sourceDataLayer, 
                                         sourceDataLayer.getCurrentMarkingVector(),
                                         reachabilityGraph);        
@@ -188,6 +211,10 @@ public class ReachabilityGraphGenerator
                s += "<br>" + e.getMessage();
                results.setText(s);
                return;
+            } catch (TreeTooBigException e) {
+               s += "<br>" + e.getMessage();
+               results.setText(s);
+               return;
             } catch (IOException e) {
                s += "<br>" + e.getMessage();
                results.setText(s);
@@ -240,11 +267,9 @@ public class ReachabilityGraphGenerator
            boolean coverabilityGraph) throws IOException{
       DefaultGraph graph = new DefaultGraph();
       
-      RGFileHeader header = new RGFileHeader();
-      RandomAccessFile reachabilityFile;
+      RGFileReader reachabilityFile;
       try {
-         reachabilityFile = new RandomAccessFile(rgFile, "r");
-         header.read(reachabilityFile);
+         reachabilityFile = new RGFileReader(rgFile);
       } catch (IncorrectFileFormatException e1) {
          System.err.println("createGraph: " +
                  "incorrect file format on state space file");
@@ -254,7 +279,9 @@ public class ReachabilityGraphGenerator
          return graph;
       }
       
-      if ((header.getNumStates() + header.getNumTransitions()) > 400) {
+      if ((reachabilityFile.getNumStates() + 
+              reachabilityFile.getNumTransitions()) > 400) {
+         reachabilityFile.close();
          results.setText("The Petri Net contains in excess of 400 elements " +
                  "(state and transitions)");
          throw new IOException("Reachability graph too big for displaying");
@@ -267,9 +294,8 @@ public class ReachabilityGraphGenerator
       String label;
       String marking;
       
-      int stateArraySize = header.getStateArraySize();
       StateRecord record = new StateRecord();      
-      record.read1(stateArraySize, reachabilityFile);         
+      reachabilityFile.readState(record);         
       label = "S0";
       marking = record.getMarkingString();  
       if (record.getTangible()) {
@@ -294,8 +320,8 @@ public class ReachabilityGraphGenerator
          }
       }
       
-      for (int count = 1; count < header.getNumStates(); count++) {
-         record.read1(stateArraySize, reachabilityFile);         
+      for (int count = 1; count < reachabilityFile.getNumStates(); count++) {
+         reachabilityFile.readState(record);         
          label = "S" + count;
          marking = record.getMarkingString();
          if (record.getTangible()) {
@@ -309,12 +335,11 @@ public class ReachabilityGraphGenerator
          }
       }
       
-      reachabilityFile.seek(header.getOffsetToTransitions());
-      int numberTransitions = header.getNumTransitions();
+      int numberTransitions = reachabilityFile.getNumTransitions();
       for (int transitionCounter = 0; transitionCounter < numberTransitions; 
               transitionCounter++) {
          TransitionRecord transitions = new TransitionRecord();
-         transitions.read1(reachabilityFile);
+         reachabilityFile.readTransition(transitions);
 
          int from = transitions.getFromState();
          int to  = transitions.getToState();
@@ -338,6 +363,8 @@ public class ReachabilityGraphGenerator
          }
       }
       
+      reachabilityFile.close();
+      
       for (int i = 0; i < loopEdges.size(); i++) {
          edges.add(new PIPELoopWithTextEdge((DefaultNode)(loopEdges.get(i)),
                  (String)(loopEdgesTransitions.get(i))));
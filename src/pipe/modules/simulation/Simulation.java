@@ -34,6 +34,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Random;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -45,7 +47,7 @@ import javax.swing.border.EtchedBorder;
 import javax.swing.border.TitledBorder;
 
 import pipe.dataLayer.DataLayer;
-import pipe.dataLayer.Transition;
+import pipe.dataLayer.calculations.CompiledNet;
 import pipe.gui.CreateGui;
 import pipe.gui.widgets.ButtonBar;
 import pipe.gui.widgets.EscapableDialog;
@@ -147,9 +149,14 @@ public class Simulation
    
    
    String simulate(DataLayer data,int cycles,int firings) {
-      data.storeState();
+      // The net is simulated on a copy of its marking so nothing is shown
+      // changing in the editor while the simulation runs
+      CompiledNet net = new CompiledNet(data);
+      BitSet enabled = new BitSet(net.getTransitionCount());
+      Random random = new Random();
       
       int[] marking = data.getInitialMarkingVector();
+      int[] nextMarking = new int[marking.length];
       double averageTokens[] = new double[marking.length];
       int    totalTokens[]   = new int[marking.length];
       double avgResult[]     = new double[marking.length];
@@ -179,8 +186,7 @@ public class Simulation
          int transCount = 0;
          
          //Get initial marking
-         marking = data.getInitialMarkingVector();
-         data.restoreState();
+         marking = (int[])data.getInitialMarkingVector().clone();
          
          //Initialise matrices for each new cycle
          for (j = 0; j < marking.length; j++) {
@@ -199,15 +205,16 @@ public class Simulation
          for (j = 0; j < firings; j++) {
             System.out.println("Firing " + j + " now");
             //Fire a random transition
-            Transition fired = data.fireRandomTransition();
-            if ( fired  == null ) {
+            int fired = pickRandomTransition(net, marking, enabled, random);
+            if ( fired  == -1 ) {
                CreateGui.getApp().getStatusBar().changeText(
                        "ERROR: No transitions to fire after " + j + " firings" );
                break;		// no point to keep trying to find a transition
             } else { 
-               //data.createCurrentMarkingVector();
-               //Get the new marking from the dataLayer object
-               marking = data.getCurrentMarkingVector();
+               net.fire(marking, nextMarking, fired);
+               int[] previous = marking;
+               marking = nextMarking;
+               nextMarking = previous;
                
                /*     for (int k=0; k<marking.length; k++)
                 System.out.print("" + marking[k] + ",");
@@ -281,10 +288,45 @@ public class Simulation
             results.add(f.format(errorResult[i]));
          }
       }
-      data.restoreState();
       return ResultsHTMLPane.makeTable(results.toArray(),3,false,true,true,true);
    }
    
+   
+   /**
+    * Picks one of the transitions enabled in a marking at random, in the same
+    * way as DataLayer.fireRandomTransition(): the chance of picking each is 
+    * its rate divided by the sum of the rates of all the enabled transitions.
+    * @return the transition picked, or -1 if none is enabled
+    */
+   private int pickRandomTransition(CompiledNet net, int[] marking, 
+           BitSet enabled, Random random) {
+      int count = net.enabledSet(marking, enabled);
+      if (count == 0) {
+         return -1;
+      }
+      
+      int t = enabled.nextSetBit(0);
+      // if there is only one enabled transition, return this transition
+      if (count == 1) {
+         return t;
+      }
+      
+      double rate = 0;
+      for (; t >= 0; t = enabled.nextSetBit(t + 1)) {
+         rate += net.getRate(t);
+      }
+      
+      double x = random.nextDouble() * rate;
+      for (t = enabled.nextSetBit(0); t >= 0; t = enabled.nextSetBit(t + 1)) {
+         x -= net.getRate(t);
+         if (x < 0) {
+            return t;
+         }
+      }
+      // rounding error, so pick the last enabled transition
+      return enabled.length() - 1;
+   }
+   
    private void addTotal(int array[], int dest[]) {
       if (array.length == dest.length) {
          for (int i = 0; i < dest.length; i++) {
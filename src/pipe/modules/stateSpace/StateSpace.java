@@ -10,9 +10,11 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import javax.swing.BoxLayout;
+import javax.swing.JCheckBox;
 import javax.swing.JOptionPane;
 
 import pipe.dataLayer.DataLayer;
+import pipe.dataLayer.calculations.MinimalCoverabilitySet;
 import pipe.dataLayer.calculations.TreeTooBigException;
 import pipe.dataLayer.calculations.myTree;
 import pipe.gui.CreateGui;
@@ -32,6 +34,7 @@ public class StateSpace
    
    private PetriNetChooserPanel sourceFilePanel;
    private ResultsHTMLPane results;
+   private JCheckBox useMinimalSet;
    
    public void run(DataLayer pnmlData) {
       // Build interface
@@ -52,6 +55,9 @@ public class StateSpace
       // 4 Add button
       contentPane.add(new ButtonBar("Analyse", analyseButtonClick,
               guiDialog.getRootPane()));
+      contentPane.add(useMinimalSet = new JCheckBox(
+              "Prune the coverability tree to a minimal coverability set", 
+              false));
       
       // 5 Make window fit contents' preferred size
       guiDialog.pack();
@@ -87,6 +93,14 @@ public class StateSpace
          }
          if (!sourceDataLayer.hasPlaceTransitionObjects()) {
             s += "No Petri net objects defined!";
+         } else if (markup != null && useMinimalSet.isSelected()) {
+            try {
+               s += minimalSetResults(sourceDataLayer, 
+                       new MinimalCoverabilitySet(sourceDataLayer, markup));
+               results.setEnabled(true);
+            } catch (TreeTooBigException e){
+               s += e.getMessage();
+            }
          } else if (markup != null){
             try {
                tree = new myTree(sourceDataLayer, markup);
@@ -131,6 +145,43 @@ public class StateSpace
    };
 
    
+   /**
+    * minimalSetResults()
+    * Formats the boundedness, safeness and deadlock results of a minimal 
+    * coverability set, and how much of the tree it pruned.
+    */
+   private String minimalSetResults(DataLayer sourceDataLayer, 
+           MinimalCoverabilitySet set) {
+      String deadlock = set.isDeadlockKnown() 
+              ? "" + set.hasDeadlock() 
+              : "unknown";
+      String s = ResultsHTMLPane.makeTable(
+              new String[]{ "Bounded" , "" + set.isBounded(), 
+                            "Safe"    , "" + set.isSafe(),
+                            "Deadlock", deadlock},
+              2, false, true, false, true);
+      
+      if (set.hasDeadlock()) {
+         int[] path = set.getPathToDeadlock();
+         s += "<b>Shortest path to deadlock found:</b> ";
+         if (path.length == 0) {
+            s += "Initial state is deadlocked";
+         } else {
+            for (int i = 0; i < path.length; i++) {
+               if (sourceDataLayer.getTransition(path[i]) != null &&
+                       sourceDataLayer.getTransition(path[i]).getName() != null) {
+                  s += sourceDataLayer.getTransition(path[i]).getName() + " ";
+               }
+            }
+         }
+      } else if (!set.isDeadlockKnown()) {
+         s += "No deadlock was found, but pruning may have hidden one.";
+      }
+      s += "<br>" + set.toString();
+      return s;
+   }
+   
+   
    //<Marc>
    public boolean [] getStateSpace(DataLayer sourceDataLayer) throws EmptyNetException, TreeTooBigException{
         boolean [] result = new boolean [3];
@@ -155,6 +206,34 @@ public class StateSpace
    //</Marc>
    
    
+   /**
+    * getStateSpace()
+    * As above, optionally deciding boundedness and safeness from a minimal
+    * coverability set rather than the full coverability tree. Deadlock is 
+    * then only reported if one was found.
+    * @param minimal    Whether to use a minimal coverability set
+    */
+   public boolean [] getStateSpace(DataLayer sourceDataLayer, boolean minimal) 
+           throws EmptyNetException, TreeTooBigException {
+      if (!minimal) {
+         return getStateSpace(sourceDataLayer);
+      }
+      boolean [] result = new boolean [3];
+      
+      int[] markup = sourceDataLayer.getCurrentMarkingVector();
+      if (!sourceDataLayer.hasPlaceTransitionObjects()) {
+         throw new EmptyNetException();
+      } else if (markup != null) {
+         MinimalCoverabilitySet set = 
+                 new MinimalCoverabilitySet(sourceDataLayer, markup);
+         result[0] = set.isBounded();
+         result[1] = set.isSafe();
+         result[2] = set.hasDeadlock();
+      }
+      return result;
+   }
+   
+   
    public boolean [] getStateSpace(){
         boolean [] result = new boolean[3];
         